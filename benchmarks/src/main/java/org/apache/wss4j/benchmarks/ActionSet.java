@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.benchmarks;
+
+import org.apache.wss4j.common.ConfigurationConstants;
+
+/**
+ * The action sets that are benchmarked. Each action set is expressed as the value of the
+ * "action" configuration property, so that the same configuration drives the DOM (WSHandler)
+ * and the StAX (ConfigurationConverter) code.
+ */
+public enum ActionSet {
+
+    TimestampSignature(ConfigurationConstants.TIMESTAMP + " " + ConfigurationConstants.SIGNATURE),
+    Encrypt(ConfigurationConstants.ENCRYPT),
+    SignatureEncrypt(ConfigurationConstants.SIGNATURE + " " + ConfigurationConstants.ENCRYPT),
+    UsernameTokenDigest(ConfigurationConstants.USERNAME_TOKEN),
+    SAMLSenderVouches(ConfigurationConstants.SAML_TOKEN_SIGNED);
+
+    private final String action;
+
+    ActionSet(String action) {
+        this.action = action;
+    }
+
+    public String getAction() {
+        return action;
+    }
+}
@@ -0,0 +1,59 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.benchmarks;
+
+import org.apache.wss4j.common.WSS4JConstants;
+
+/**
+ * The algorithms used by the benchmarks, named after the corresponding WS-SecurityPolicy
+ * algorithm suites.
+ */
+public enum AlgorithmSuite {
+
+    Basic128(WSS4JConstants.RSA_SHA1, WSS4JConstants.SHA1, WSS4JConstants.AES_128),
+    Basic256Sha256(WSS4JConstants.RSA_SHA256, WSS4JConstants.SHA256, WSS4JConstants.AES_256),
+    Basic256GCMSha256(WSS4JConstants.RSA_SHA256, WSS4JConstants.SHA256, WSS4JConstants.AES_256_GCM);
+
+    private final String signatureAlgorithm;
+    private final String digestAlgorithm;
+    private final String encryptionAlgorithm;
+
+    AlgorithmSuite(String signatureAlgorithm, String digestAlgorithm, String encryptionAlgorithm) {
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.digestAlgorithm = digestAlgorithm;
+        this.encryptionAlgorithm = encryptionAlgorithm;
+    }
+
+    public String getSignatureAlgorithm() {
+        return signatureAlgorithm;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    public String getEncryptionAlgorithm() {
+        return encryptionAlgorithm;
+    }
+
+    public String getKeyTransportAlgorithm() {
+        return WSS4JConstants.KEYTRANSPORT_RSAOAEP;
+    }
+}
@@ -0,0 +1,137 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.benchmarks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.ConfigurationConstants;
+import org.apache.wss4j.common.WSS4JConstants;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
+import org.apache.wss4j.dom.common.SAML2CallbackHandler;
+
+/**
+ * The messages, keys and configuration shared by the DOM and StAX benchmarks. The "wss40" key
+ * of the test keystores is used for signature, encryption, UsernameToken and SAML, so that both
+ * sides of the exchange can be driven from a single Crypto instance.
+ */
+final class BenchmarkSupport {
+
+    static final String USER = "wss40";
+    static final String PASSWORD = "security";
+
+    private static final String CRYPTO_REF = "benchmarkCrypto";
+
+    private static final String ENVELOPE_START =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+        + "<soapenv:Body>"
+        + "<ns1:echo xmlns:ns1=\"http://benchmarks.wss4j.apache.org\">";
+    private static final String ENVELOPE_END =
+        "</ns1:echo>"
+        + "</soapenv:Body>"
+        + "</soapenv:Envelope>";
+    private static final String ITEM =
+        "<ns1:item>The quick brown fox jumps over the lazy dog, 0123456789.</ns1:item>";
+
+    private BenchmarkSupport() {
+        // complete
+    }
+
+    static Crypto loadCrypto() throws WSSecurityException {
+        return CryptoFactory.getInstance("wss40.properties");
+    }
+
+    /**
+     * Create an unsecured SOAP 1.1 message with a Body of (at least) the given size
+     * @param sizeInKB the size of the Body payload in kilobytes
+     */
+    static byte[] createMessage(int sizeInKB) {
+        int items = Math.max(1, (sizeInKB * 1024) / ITEM.length());
+        StringBuilder message = new StringBuilder(ENVELOPE_START.length() + ENVELOPE_END.length()
+                                                  + items * ITEM.length());
+        message.append(ENVELOPE_START);
+        for (int i = 0; i < items; i++) {
+            message.append(ITEM);
+        }
+        message.append(ENVELOPE_END);
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static CallbackHandler createPasswordCallbackHandler() {
+        return new KeystoreCallbackHandler();
+    }
+
+    /**
+     * Get the configuration to secure an outbound message with the given actions and algorithms
+     */
+    static Map<String, Object> getOutboundConfiguration(
+        ActionSet actionSet, AlgorithmSuite algorithmSuite, Crypto crypto
+    ) throws Exception {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConfigurationConstants.ACTION, actionSet.getAction());
+        config.put(ConfigurationConstants.USER, USER);
+        config.put(ConfigurationConstants.SIGNATURE_USER, USER);
+        config.put(ConfigurationConstants.ENCRYPTION_USER, USER);
+        config.put(ConfigurationConstants.PW_CALLBACK_REF, createPasswordCallbackHandler());
+        config.put(ConfigurationConstants.PASSWORD_TYPE, WSS4JConstants.PW_DIGEST);
+
+        config.put(CRYPTO_REF, crypto);
+        config.put(ConfigurationConstants.SIG_PROP_REF_ID, CRYPTO_REF);
+        config.put(ConfigurationConstants.ENC_PROP_REF_ID, CRYPTO_REF);
+        config.put(ConfigurationConstants.SIG_KEY_ID, "DirectReference");
+
+        config.put(ConfigurationConstants.SIG_ALGO, algorithmSuite.getSignatureAlgorithm());
+        config.put(ConfigurationConstants.SIG_DIGEST_ALGO, algorithmSuite.getDigestAlgorithm());
+        config.put(ConfigurationConstants.ENC_SYM_ALGO, algorithmSuite.getEncryptionAlgorithm());
+        config.put(ConfigurationConstants.ENC_KEY_TRANSPORT, algorithmSuite.getKeyTransportAlgorithm());
+
+        if (actionSet == ActionSet.SAMLSenderVouches) {
+            // A sender-vouches assertion, which is signed together with the Body by the sender
+            SAML2CallbackHandler samlCallbackHandler = new SAML2CallbackHandler();
+            samlCallbackHandler.setIssuer("www.example.com");
+            samlCallbackHandler.setIssuerCrypto(crypto);
+            samlCallbackHandler.setIssuerName(USER);
+            samlCallbackHandler.setIssuerPassword(PASSWORD);
+            config.put(ConfigurationConstants.SAML_CALLBACK_REF, samlCallbackHandler);
+        }
+        return config;
+    }
+
+    /**
+     * Get the configuration to process an inbound message that was secured with the outbound
+     * configuration. The replay caches are not configured, as the same message is processed
+     * repeatedly.
+     */
+    static Map<String, Object> getInboundConfiguration(Crypto crypto) {
+        Map<String, Object> config = new HashMap<>();
+        config.put(ConfigurationConstants.PW_CALLBACK_REF, createPasswordCallbackHandler());
+        config.put(CRYPTO_REF, crypto);
+        config.put(ConfigurationConstants.SIG_VER_PROP_REF_ID, CRYPTO_REF);
+        config.put(ConfigurationConstants.DEC_PROP_REF_ID, CRYPTO_REF);
+        return config;
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.common.CustomHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
+import org.apache.wss4j.dom.engine.WSSecurityEngine;
+import org.apache.wss4j.dom.handler.HandlerAction;
+import org.apache.wss4j.dom.handler.RequestData;
+import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.util.WSSecurityUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Benchmarks the DOM code. The outbound benchmark parses the message, secures it via the
+ * WSHandler actions and serializes it. The inbound benchmark parses a message secured with the
+ * same configuration and processes it with the WSSecurityEngine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class DOMBenchmark {
+
+    @Param({"TimestampSignature", "Encrypt", "SignatureEncrypt", "UsernameTokenDigest", "SAMLSenderVouches"})
+    private ActionSet actionSet;
+
+    @Param({"Basic128", "Basic256Sha256", "Basic256GCMSha256"})
+    private AlgorithmSuite algorithmSuite;
+
+    /**
+     * The size of the SOAP Body in kilobytes
+     */
+    @Param({"1", "32", "512"})
+    private int messageSize;
+
+    private Crypto crypto;
+    private CallbackHandler callbackHandler;
+    private byte[] message;
+    private byte[] securedMessage;
+
+    private Map<String, Object> config;
+    private WSSConfig wssConfig;
+    private List<HandlerAction> actions;
+    private CustomHandler handler;
+    private WSSecurityEngine secEngine;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        crypto = BenchmarkSupport.loadCrypto();
+        callbackHandler = BenchmarkSupport.createPasswordCallbackHandler();
+        message = BenchmarkSupport.createMessage(messageSize);
+
+        config = BenchmarkSupport.getOutboundConfiguration(actionSet, algorithmSuite, crypto);
+        wssConfig = WSSConfig.getNewInstance();
+        actions = WSSecurityUtil.decodeHandlerAction(actionSet.getAction(), wssConfig);
+        handler = new CustomHandler();
+        secEngine = new WSSecurityEngine();
+    }
+
+    /**
+     * The inbound message is secured again for every iteration, so that its Timestamp and
+     * SAML Assertion do not expire.
+     */
+    @Setup(Level.Iteration)
+    public void secureMessage() throws Exception {
+        securedMessage = outbound();
+    }
+
+    @Benchmark
+    public byte[] outbound() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(new ByteArrayInputStream(message));
+
+        RequestData reqData = new RequestData();
+        reqData.setWssConfig(wssConfig);
+        reqData.setMsgContext(config);
+        reqData.setUsername(BenchmarkSupport.USER);
+        handler.send(doc, reqData, actions, true);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(message.length * 2);
+        XMLUtils.elementToStream(doc.getDocumentElement(), out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public WSHandlerResult inbound() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(new ByteArrayInputStream(securedMessage));
+        return secEngine.processSecurityHeader(doc, null, callbackHandler, crypto);
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.benchmarks;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.wss4j.common.cache.ConcurrentReplayCache;
+import org.apache.wss4j.common.cache.MemoryReplayCache;
+import org.apache.wss4j.common.cache.ReplayCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ReplayCache implementations under contention, as seen by the nonce, timestamp
+ * and SAML one-time-use replay checks: every operation checks whether a fresh identifier is
+ * contained in the cache, and then adds it.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReplayCacheBenchmark {
+
+    @Param({"memory", "concurrent"})
+    private String implementation;
+
+    /**
+     * The number of identifiers in the cache before the measurement starts
+     */
+    @Param({"10000"})
+    private int initialSize;
+
+    private ReplayCache replayCache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        if ("memory".equals(implementation)) {
+            replayCache = new MemoryReplayCache();
+        } else if ("concurrent".equals(implementation)) {
+            replayCache = new ConcurrentReplayCache();
+        } else {
+            throw new IllegalArgumentException("Unknown ReplayCache implementation: " + implementation);
+        }
+
+        // Spread the expiry of the existing identifiers so that eviction work is exercised
+        Instant now = Instant.now();
+        for (int i = 0; i < initialSize; i++) {
+            replayCache.add("initial-" + i, now.plusSeconds(1L + i % 300));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        replayCache.close();
+    }
+
+    private static String newIdentifier() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+    }
+
+    private boolean checkAndAdd() {
+        String identifier = newIdentifier();
+        if (replayCache.contains(identifier)) {
+            return false;
+        }
+        replayCache.add(identifier);
+        return true;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean singleThread() {
+        return checkAndAdd();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean threads8() {
+        return checkAndAdd();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean threads32() {
+        return checkAndAdd();
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean threads32AddIfAbsent() {
+        // The atomic form of the replay check, as used by the processors and validators
+        return replayCache.addIfAbsent(newIdentifier());
+    }
+
+    @Benchmark
+    @Threads(32)
+    public boolean threads32ReadMostly() {
+        // A replayed identifier is checked, as for a message that is resent
+        return replayCache.contains("initial-" + ThreadLocalRandom.current().nextInt(initialSize));
+    }
+}
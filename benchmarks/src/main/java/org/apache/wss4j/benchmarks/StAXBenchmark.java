@@ -0,0 +1,134 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.XMLStreamWriter;
+
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.stax.setup.ConfigurationConverter;
+import org.apache.wss4j.stax.setup.InboundWSSec;
+import org.apache.wss4j.stax.setup.OutboundWSSec;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.wss4j.stax.test.utils.XmlReaderToWriter;
+import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the StAX code, with the same action sets, algorithms and message sizes as the
+ * DOMBenchmark. The OutboundWSSec and InboundWSSec are created once from the configuration and
+ * then reused for every message. The inbound benchmark reads the secured message to the end, as
+ * the security processing happens while the message is read.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class StAXBenchmark {
+
+    @Param({"TimestampSignature", "Encrypt", "SignatureEncrypt", "UsernameTokenDigest", "SAMLSenderVouches"})
+    private ActionSet actionSet;
+
+    @Param({"Basic128", "Basic256Sha256", "Basic256GCMSha256"})
+    private AlgorithmSuite algorithmSuite;
+
+    /**
+     * The size of the SOAP Body in kilobytes
+     */
+    @Param({"1", "32", "512"})
+    private int messageSize;
+
+    private byte[] message;
+    private byte[] securedMessage;
+
+    private XMLInputFactory xmlInputFactory;
+    private OutboundWSSec outboundWSSec;
+    private InboundWSSec inboundWSSec;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        Crypto crypto = BenchmarkSupport.loadCrypto();
+        message = BenchmarkSupport.createMessage(messageSize);
+
+        xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        outboundWSSec = WSSec.getOutboundWSSec(ConfigurationConverter.convert(
+            BenchmarkSupport.getOutboundConfiguration(actionSet, algorithmSuite, crypto)));
+        inboundWSSec = WSSec.getInboundWSSec(ConfigurationConverter.convert(
+            BenchmarkSupport.getInboundConfiguration(crypto)));
+    }
+
+    /**
+     * The inbound message is secured again for every iteration, so that its Timestamp and
+     * SAML Assertion do not expire.
+     */
+    @Setup(Level.Iteration)
+    public void secureMessage() throws Exception {
+        securedMessage = outbound();
+    }
+
+    @Benchmark
+    public byte[] outbound() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(message.length * 2);
+        XMLStreamWriter xmlStreamWriter =
+            outboundWSSec.processOutMessage(out, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+        XMLStreamReader xmlStreamReader =
+            xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message));
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+        xmlStreamReader.close();
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public int inbound() throws Exception {
+        XMLStreamReader xmlStreamReader = inboundWSSec.processInMessage(
+            xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(securedMessage)));
+        int events = 0;
+        while (xmlStreamReader.hasNext()) {
+            xmlStreamReader.next();
+            events++;
+        }
+        xmlStreamReader.close();
+        return events;
+    }
+}
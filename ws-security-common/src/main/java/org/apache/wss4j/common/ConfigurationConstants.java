@@ -480,6 +480,14 @@ public class ConfigurationConstants {
      */
     public static final String REQUIRE_TIMESTAMP_EXPIRES = "requireTimestampExpires";
 
+    /**
+     * Set the value of this parameter to true to index the Elements of an inbound message by their
+     * Id in a single pass, instead of searching the document tree for every Id that is referenced
+     * by a Signature, SecurityTokenReference or ReferenceList. This is beneficial for large
+     * messages with many references. The default is "false".
+     */
+    public static final String INDEX_ELEMENT_IDS = "indexElementIds";
+
     /**
      * Defines whether to encrypt the symmetric encryption key or not. If true
      * (the default), the symmetric key used for encryption is encrypted in turn,
@@ -514,6 +522,14 @@ public class ConfigurationConstants {
     public static final String VALIDATE_SAML_SUBJECT_CONFIRMATION =
         "validateSamlSubjectConfirmation";
 
+    /**
+     * Whether to process a received SAML Assertion on the XML event stream, without creating a DOM
+     * Element and OpenSAML objects for it, unless a Validator asks for them. The signature of the
+     * Assertion is then verified on the event stream. This is only used by the streaming (StAX) code.
+     * The default is false.
+     */
+    public static final String STREAMING_SAML_PROCESSING = "streamingSamlProcessing";
+
     /**
      * Whether to include the Signature Token in the security header as well or not. This is only
      * applicable to the IssuerSerial, Thumbprint and SKI Key Identifier cases. The default is false.
@@ -552,6 +568,53 @@ public class ConfigurationConstants {
      */
     public static final String STORE_BYTES_IN_ATTACHMENT = "storeBytesInAttachment";
 
+    /**
+     * Whether to serialize and encrypt Elements in a streaming manner, writing the BASE-64 encoded
+     * CipherValue without holding the serialized Element and its encrypted bytes in memory as a
+     * whole. This reduces the memory required to encrypt large messages. If "storeBytesInAttachment"
+     * is enabled, only the serialized Element is not held in memory: the encrypted bytes are still
+     * buffered in full, as the attachment is created from them. It is ignored if a custom encryption
+     * Serializer is set. The default is false.
+     */
+    public static final String STREAM_ENCRYPTION = "streamEncryption";
+
+    /**
+     * Whether to canonicalize and digest the References of a Signature concurrently, when signing
+     * and when verifying a Signature. This speeds up the signing or verification of messages with many
+     * signed parts, on a multi-core machine. Only References to elements in the SOAP message (and
+     * not to attachments) are processed concurrently. The message must not be modified concurrently
+     * by other threads. The References are processed on the Executor set with "digestExecutor",
+     * or on virtual threads if it is not set and the JVM supports them, otherwise on the common
+     * ForkJoinPool. When verifying, the References are only digested concurrently after the
+     * SignatureValue over the SignedInfo has been verified, so an unauthenticated message does not
+     * cause this extra work. The default is false.
+     */
+    public static final String PARALLEL_DIGEST = "parallelDigest";
+
+    /**
+     * Whether to digest the attachments referenced by a received Signature concurrently, instead of
+     * one after the other. This speeds up the verification of messages with many signed attachments.
+     * The attachments must be readable independently of each other, from different threads. The
+     * attachments are digested on the Executor set with "digestExecutor" if it is set, and otherwise
+     * on the same default Executor as the References with "parallelDigest". This is only used by the
+     * streaming (StAX) code. The default is false.
+     */
+    public static final String PARALLEL_ATTACHMENT_DIGEST = "parallelAttachmentDigest";
+
+    /**
+     * The Executor to canonicalize and digest the References of a Signature on, if "parallelDigest"
+     * or "parallelAttachmentDigest" is enabled. The value of this tag must be a
+     * {@link java.util.concurrent.Executor} instance.
+     */
+    public static final String DIGEST_EXECUTOR = "digestExecutor";
+
+    /**
+     * The size in bytes up to which a signed attachment is buffered in memory, while it is digested,
+     * before it is written to a temporary file instead. This applies when the attachment stream does
+     * not support mark/reset. The default is 131072 (128 KB).
+     */
+    public static final String ATTACHMENT_BUFFER_THRESHOLD = "attachmentBufferThreshold";
+
     /**
      * Whether to expand xop:Include Elements encountered when verifying a Signature. The default is true,
      * meaning that the relevant attachment bytes are BASE-64 encoded and inserted into the Element. This
@@ -909,6 +972,46 @@ public class ConfigurationConstants {
      */
     public static final String SAML_ONE_TIME_USE_CACHE_INSTANCE = "samlOneTimeUseCacheInstance";
 
+    /**
+     * This holds a reference to an EncryptedKeySessionCache instance, which is used to reuse the
+     * symmetric session key and the EncryptedKey of an earlier message to the same recipient, so
+     * that the key transport (e.g. RSA-OAEP) is performed once per session rather than once per
+     * message. The maximum age and the maximum number of uses of a session key are configured on the
+     * EncryptedKeySessionCache instance, which must be shared by the messages of a session. Session
+     * keys are only reused if the symmetric key is generated by WSS4J. The default is to generate
+     * a new session key for every message.
+     */
+    public static final String ENCRYPTED_KEY_SESSION_CACHE_INSTANCE = "encryptedKeySessionCacheInstance";
+
+    /**
+     * This holds a reference to an UnwrappedKeyCache instance, which is used to cache the decrypted
+     * secret keys of inbound EncryptedKeys, so that an EncryptedKey that is received again is not
+     * decrypted again with the private key. The maximum size and the TTL of the cache are configured
+     * on the UnwrappedKeyCache instance, which must be shared by the messages that are processed.
+     * The default is to decrypt every EncryptedKey.
+     */
+    public static final String UNWRAPPED_KEY_CACHE_INSTANCE = "unwrappedKeyCacheInstance";
+
+    /**
+     * This holds a reference to a SamlAssertionCache instance, which is used to cache the (signed)
+     * SAML Assertions that are created from the SAML CallbackHandler, so that an Assertion with the
+     * same content is not created and signed again for every message. Cached Assertions are reused
+     * until shortly before their NotOnOrAfter validity. The default is to create a new Assertion for
+     * every message.
+     */
+    public static final String SAML_ASSERTION_CACHE_INSTANCE = "samlAssertionCacheInstance";
+
+    /**
+     * This holds a reference to a VerifiedSamlAssertionCache instance, which is used to cache the
+     * signed SAML Assertions that have been received and successfully verified, so that the signature
+     * and the trust in the signing certificate of an identical Assertion are not verified again. The
+     * Conditions of the Assertion are still checked for every message. Verified Assertions are cached
+     * for at most the time to live of the cache (5 minutes by default), and the cache is not used if
+     * revocation is enabled. As the trust is cached, the instance must only be shared by endpoints
+     * with the same signature trust configuration. The default is to verify every Assertion.
+     */
+    public static final String VERIFIED_SAML_ASSERTION_CACHE_INSTANCE = "verifiedSamlAssertionCacheInstance";
+
     /**
      * This holds a reference to a PasswordEncryptor instance, which is used to encrypt or
      * decrypt passwords in the Merlin Crypto implementation (or any custom Crypto implementations).
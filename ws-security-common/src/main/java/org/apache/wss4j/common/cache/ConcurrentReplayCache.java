@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.time.Instant;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An in-memory ReplayCache implementation that does not serialize its callers on a global lock.
+ * The identifiers are held in a ConcurrentHashMap together with their expiry time. In addition,
+ * each identifier is filed in a bucket per second of expiry (a timing wheel with a resolution of
+ * one second), so that expired identifiers can be evicted without scanning the whole cache.
+ *
+ * Eviction is amortized over the calls to add and contains: at most once per second, a single
+ * caller evicts the buckets that have expired since the last eviction, while other callers
+ * proceed without waiting. An identifier is never reported as contained after it has expired,
+ * regardless of whether it has been evicted yet.
+ *
+ * The default TTL is 5 minutes and the max TTL is 1 hour, as for the MemoryReplayCache.
+ */
+public class ConcurrentReplayCache implements ReplayCache {
+
+    public static final long DEFAULT_TTL = MemoryReplayCache.DEFAULT_TTL;
+    public static final long MAX_TTL = MemoryReplayCache.MAX_TTL;
+
+    private final ConcurrentMap<String, Instant> ids = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Queue<String>> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong evictedUpTo = new AtomicLong(Instant.now().getEpochSecond());
+
+    /**
+     * Add the given identifier to the cache. It will be cached for a default amount of time.
+     * @param identifier The identifier to be added
+     */
+    public void add(String identifier) {
+        add(identifier, Instant.now().plusSeconds(DEFAULT_TTL));
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier
+     */
+    public void add(String identifier, Instant expiry) {
+        if (identifier == null || identifier.length() == 0) {
+            return;
+        }
+
+        Instant now = Instant.now();
+        Instant cacheExpiry = getCacheExpiry(expiry, now);
+        ids.put(identifier, cacheExpiry);
+        addToBucket(identifier, cacheExpiry);
+
+        evictExpired(now);
+    }
+
+    /**
+     * Add the given identifier to the cache if it is not already contained in the cache, as a
+     * single atomic operation. It will be cached for a default amount of time.
+     * @param identifier The identifier to be added
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    public boolean addIfAbsent(String identifier) {
+        return addIfAbsent(identifier, null);
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time if it is not already
+     * contained in the cache, as a single atomic operation.
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    public boolean addIfAbsent(String identifier, Instant expiry) {
+        if (identifier == null || identifier.length() == 0) {
+            return true;
+        }
+
+        Instant now = Instant.now();
+        evictExpired(now);
+
+        Instant cacheExpiry = getCacheExpiry(expiry, now);
+        Instant existing = ids.putIfAbsent(identifier, cacheExpiry);
+        while (existing != null) {
+            if (!existing.isBefore(now)) {
+                return false;
+            }
+            // The identifier has expired but has not been evicted yet
+            if (ids.replace(identifier, existing, cacheExpiry)) {
+                break;
+            }
+            existing = ids.putIfAbsent(identifier, cacheExpiry);
+        }
+        addToBucket(identifier, cacheExpiry);
+        return true;
+    }
+
+    private static Instant getCacheExpiry(Instant expiry, Instant now) {
+        Instant maxTTL = now.plusSeconds(MAX_TTL);
+        if (expiry == null || expiry.isBefore(now) || expiry.isAfter(maxTTL)) {
+            return now.plusSeconds(DEFAULT_TTL);
+        }
+        return expiry;
+    }
+
+    private void addToBucket(String identifier, Instant expiry) {
+        long second = expiry.getEpochSecond();
+        buckets.compute(second, (k, bucket) -> {
+            Queue<String> queue = bucket == null ? new ConcurrentLinkedQueue<>() : bucket;
+            queue.add(identifier);
+            return queue;
+        });
+        if (second < evictedUpTo.get()) {
+            // The bucket was evicted concurrently while the identifier was being added
+            evictBucket(second, Instant.now());
+        }
+    }
+
+    /**
+     * Return true if the given identifier is contained in the cache
+     * @param identifier The identifier to check
+     */
+    public boolean contains(String identifier) {
+        Instant now = Instant.now();
+        evictExpired(now);
+
+        if (identifier != null && identifier.length() != 0) {
+            Instant expiry = ids.get(identifier);
+            return expiry != null && !expiry.isBefore(now);
+        }
+        return false;
+    }
+
+    /**
+     * Evict the buckets that have expired since the last eviction. Only the caller that
+     * advances the eviction marker performs the eviction.
+     */
+    protected void evictExpired(Instant now) {
+        long nowSecond = now.getEpochSecond();
+        long from = evictedUpTo.get();
+        if (from >= nowSecond || !evictedUpTo.compareAndSet(from, nowSecond)) {
+            return;
+        }
+
+        for (long second = from; second < nowSecond; second++) {
+            evictBucket(second, now);
+        }
+    }
+
+    private void evictBucket(long second, Instant now) {
+        Queue<String> bucket = buckets.remove(second);
+        if (bucket != null) {
+            for (String id : bucket) {
+                // The identifier may have been added again with a later expiry
+                ids.computeIfPresent(id, (k, expiry) -> expiry.isBefore(now) ? null : expiry);
+            }
+        }
+    }
+
+    /**
+     * @return the number of identifiers held in the cache, including expired identifiers that
+     * have not been evicted yet
+     */
+    public int size() {
+        return ids.size();
+    }
+
+    @Override
+    public void close() {
+        buckets.clear();
+        ids.clear();
+    }
+}
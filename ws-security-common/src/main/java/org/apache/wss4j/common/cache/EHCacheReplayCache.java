@@ -127,6 +127,31 @@ public class EHCacheReplayCache implements ReplayCache {
         cache.put(identifier, new EHCacheValue(identifier, expiry));
     }
 
+    /**
+     * Add the given identifier to the cache if it is not already contained in the cache, as a
+     * single atomic operation. It will be cached for a default amount of time.
+     * @param identifier The identifier to be added
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    public boolean addIfAbsent(String identifier) {
+        return addIfAbsent(identifier, null);
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time if it is not already
+     * contained in the cache, as a single atomic operation.
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier. Can be null in which case, the default expiry is used.
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    public boolean addIfAbsent(String identifier, Instant expiry) {
+        if (identifier == null || identifier.length() == 0) {
+            return true;
+        }
+
+        return cache.putIfAbsent(identifier, new EHCacheValue(identifier, expiry)) == null;
+    }
+
     /**
      * Return true if the given identifier is contained in the cache
      * @param identifier The identifier to check
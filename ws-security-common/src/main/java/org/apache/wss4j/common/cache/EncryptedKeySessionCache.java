@@ -0,0 +1,198 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.Closeable;
+import java.security.Key;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A cache of outbound symmetric session keys together with their EncryptedKey CipherValue, i.e.
+ * the session key wrapped with the public key of the recipient. It allows the same session key
+ * and EncryptedKey to be sent in several messages to the same recipient, so that the (expensive)
+ * key transport operation is performed only once per session rather than once per message.
+ *
+ * A session is reused until it has expired, or until it has been used for the maximum number of
+ * messages, after which a new session key is generated and wrapped. Sessions are keyed by the
+ * public key of the recipient and by the algorithms that are used, see createSessionKey.
+ *
+ * Reusing a session key means that the recipient is able to link the messages of a session, and
+ * that a compromised session key exposes all of the messages of the session. Keep the limits
+ * short accordingly.
+ */
+public class EncryptedKeySessionCache implements Closeable {
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Duration maxAge;
+    private final int maxUses;
+
+    /**
+     * @param maxAge the maximum amount of time to reuse a session key for
+     * @param maxUses the maximum number of messages to use a session key in
+     */
+    public EncryptedKeySessionCache(Duration maxAge, int maxUses) {
+        if (maxAge == null || maxAge.isNegative() || maxAge.isZero()) {
+            throw new IllegalArgumentException("The maximum age of a session must be positive");
+        }
+        if (maxUses < 1) {
+            throw new IllegalArgumentException("The maximum number of uses of a session must be positive");
+        }
+        this.maxAge = maxAge;
+        this.maxUses = maxUses;
+    }
+
+    /**
+     * Create the key of a session, from the public key of the recipient and the algorithms that
+     * are used to wrap the session key and to encrypt with it.
+     * @param publicKey the public key of the recipient
+     * @param algorithms the algorithms and parameters that the session key is used with
+     */
+    public static String createSessionKey(PublicKey publicKey, String... algorithms) {
+        StringBuilder sessionKey = new StringBuilder(512);
+        sessionKey.append(Base64.getEncoder().encodeToString(publicKey.getEncoded()));
+        for (String algorithm : algorithms) {
+            sessionKey.append(' ');
+            if (algorithm != null) {
+                sessionKey.append(algorithm);
+            }
+        }
+        return sessionKey.toString();
+    }
+
+    /**
+     * Get a session to reuse for another message. The session counts as used once more.
+     * @param sessionKey the key of the session
+     * @return the session, or null if there is no session for the key, or if it has expired or has
+     * been used up, or if its EncryptedKey has not been created yet
+     */
+    public Session getSession(String sessionKey) {
+        Instant now = Instant.now();
+        Session[] result = new Session[1];
+        sessions.computeIfPresent(sessionKey, (k, session) -> {
+            if (now.isAfter(session.expiry) || session.uses >= maxUses) {
+                return null;
+            }
+            if (session.encryptedKey != null) {
+                session.uses++;
+                result[0] = session;
+            }
+            return session;
+        });
+        return result[0];
+    }
+
+    /**
+     * Add a new session, which counts as used once. Any existing session for the key is replaced.
+     * @param sessionKey the key of the session
+     * @param secretKey the symmetric session key
+     * @param encryptedKey the wrapped session key, or null if it is set later with setEncryptedKey
+     */
+    public void addSession(String sessionKey, Key secretKey, byte[] encryptedKey) {
+        Session session = new Session(secretKey, Instant.now().plus(maxAge));
+        session.encryptedKey = encryptedKey == null ? null : encryptedKey.clone();
+        session.uses = 1;
+        sessions.put(sessionKey, session);
+    }
+
+    /**
+     * Get the wrapped session key of a session, if the session uses the given symmetric key
+     * @param sessionKey the key of the session
+     * @param secretKey the symmetric session key
+     * @return the wrapped session key, or null if it is not known
+     */
+    public byte[] getEncryptedKey(String sessionKey, Key secretKey) {
+        Session session = sessions.get(sessionKey);
+        if (session != null && session.secretKey == secretKey) {
+            byte[] encryptedKey = session.encryptedKey;
+            return encryptedKey == null ? null : encryptedKey.clone();
+        }
+        return null;
+    }
+
+    /**
+     * Set the wrapped session key of a session that was added without it. Nothing is done if the
+     * session does not use the given symmetric key.
+     * @param sessionKey the key of the session
+     * @param secretKey the symmetric session key
+     * @param encryptedKey the wrapped session key
+     */
+    public void setEncryptedKey(String sessionKey, Key secretKey, byte[] encryptedKey) {
+        sessions.computeIfPresent(sessionKey, (k, session) -> {
+            if (session.secretKey == secretKey && session.encryptedKey == null) {
+                session.encryptedKey = encryptedKey.clone();
+            }
+            return session;
+        });
+    }
+
+    public Duration getMaxAge() {
+        return maxAge;
+    }
+
+    public int getMaxUses() {
+        return maxUses;
+    }
+
+    /**
+     * @return the number of sessions held in the cache, including expired sessions that have not
+     * been evicted yet
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    @Override
+    public void close() {
+        sessions.clear();
+    }
+
+    /**
+     * A symmetric session key, together with the EncryptedKey CipherValue that transports it
+     */
+    public static final class Session {
+
+        private final Key secretKey;
+        private final Instant expiry;
+        private volatile byte[] encryptedKey;
+        private int uses;
+
+        private Session(Key secretKey, Instant expiry) {
+            this.secretKey = secretKey;
+            this.expiry = expiry;
+        }
+
+        public Key getSecretKey() {
+            return secretKey;
+        }
+
+        public byte[] getEncryptedKey() {
+            return encryptedKey.clone();
+        }
+
+        public Instant getExpiry() {
+            return expiry;
+        }
+    }
+}
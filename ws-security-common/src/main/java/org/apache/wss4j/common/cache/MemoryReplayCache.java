@@ -60,21 +60,63 @@ public class MemoryReplayCache implements ReplayCache {
             return;
         }
 
+        Instant cacheExpiry = getCacheExpiry(expiry);
+        synchronized (cache) {
+            addToCache(identifier, cacheExpiry);
+        }
+        ids.add(identifier);
+    }
+
+    /**
+     * Add the given identifier to the cache if it is not already contained in the cache, as a
+     * single atomic operation. It will be cached for a default amount of time.
+     * @param identifier The identifier to be added
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    public boolean addIfAbsent(String identifier) {
+        return addIfAbsent(identifier, null);
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time if it is not already
+     * contained in the cache, as a single atomic operation.
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    public boolean addIfAbsent(String identifier, Instant expiry) {
+        if (identifier == null || identifier.length() == 0) {
+            return true;
+        }
+
+        processTokenExpiry();
+
+        Instant cacheExpiry = getCacheExpiry(expiry);
+        synchronized (cache) {
+            if (!ids.add(identifier)) {
+                return false;
+            }
+            addToCache(identifier, cacheExpiry);
+        }
+        return true;
+    }
+
+    private static Instant getCacheExpiry(Instant expiry) {
         Instant now = Instant.now();
         Instant maxTTL = now.plusSeconds(MAX_TTL);
         if (expiry == null || expiry.isBefore(now) || expiry.isAfter(maxTTL)) {
-            expiry = now.plusSeconds(DEFAULT_TTL);
+            return now.plusSeconds(DEFAULT_TTL);
         }
+        return expiry;
+    }
 
-        synchronized (cache) {
-            List<String> list = cache.get(expiry);
-            if (list == null) {
-                list = new ArrayList<>(1);
-                cache.put(expiry, list);
-            }
-            list.add(identifier);
+    private void addToCache(String identifier, Instant expiry) {
+        List<String> list = cache.get(expiry);
+        if (list == null) {
+            list = new ArrayList<>(1);
+            cache.put(expiry, list);
         }
-        ids.add(identifier);
+        list.add(identifier);
     }
 
     /**
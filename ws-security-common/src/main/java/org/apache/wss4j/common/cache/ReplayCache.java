@@ -47,4 +47,39 @@ public interface ReplayCache extends Closeable {
      */
     boolean contains(String identifier);
 
+    /**
+     * Add the given identifier to the cache if it is not already contained in the cache, as a
+     * single atomic operation. It will be cached for a default amount of time.
+     *
+     * The default implementation calls contains() followed by add(), and so is not atomic.
+     * Implementations should override it to make the check and the add a single operation.
+     * @param identifier The identifier to be added
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    default boolean addIfAbsent(String identifier) {
+        return addIfAbsent(identifier, null);
+    }
+
+    /**
+     * Add the given identifier to the cache to be cached for the given time if it is not already
+     * contained in the cache, as a single atomic operation.
+     *
+     * The default implementation calls contains() followed by add(), and so is not atomic.
+     * Implementations should override it to make the check and the add a single operation.
+     * @param identifier The identifier to be added
+     * @param expiry A custom expiry time for the identifier. Can be null in which case, the default expiry is used.
+     * @return true if the identifier was added, false if it was already contained in the cache
+     */
+    default boolean addIfAbsent(String identifier, Instant expiry) {
+        if (contains(identifier)) {
+            return false;
+        }
+        if (expiry == null) {
+            add(identifier);
+        } else {
+            add(identifier, expiry);
+        }
+        return true;
+    }
+
 }
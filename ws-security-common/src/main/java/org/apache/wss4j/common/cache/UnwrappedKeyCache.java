@@ -0,0 +1,206 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.cache;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of the secret keys of inbound EncryptedKeys, so that an EncryptedKey that is
+ * received again (e.g. because the sender reuses it over a number of messages) is not decrypted
+ * again with the private key of the recipient.
+ *
+ * The entries are keyed by a SHA-256 digest of the CipherValue, the key transport algorithm and
+ * parameters, and the public key of the recipient, so that the cache does not hold the CipherValue
+ * itself. The secret keys are held outside of the Java heap in direct buffers, which are zeroed
+ * when the entries expire, are evicted or are removed with close(). The entries expire after a
+ * fixed TTL, and the least recently used entry is evicted when the cache is full.
+ *
+ * Only successfully decrypted keys must be added. In particular, the random key that is used
+ * when the decryption of an EncryptedKey fails must never be cached.
+ */
+public class UnwrappedKeyCache implements Closeable {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+
+    private final int maxSize;
+    private final Duration ttl;
+    private final Map<String, CachedSecret> entries;
+
+    public UnwrappedKeyCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * @param maxSize the maximum number of secret keys to cache
+     * @param ttl the time to cache a secret key for
+     */
+    public UnwrappedKeyCache(int maxSize, Duration ttl) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size of the cache must be positive");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("The TTL of the cache must be positive");
+        }
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<String, CachedSecret>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedSecret> eldest) {
+                if (size() > UnwrappedKeyCache.this.maxSize) {
+                    eldest.getValue().clear();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Create the key of a cache entry
+     * @param encryptedKey the (decoded) CipherValue of the EncryptedKey
+     * @param publicKey the public key of the recipient
+     * @param parameters the key transport algorithm, and the algorithms and parameters that it is
+     *                   used with
+     */
+    public static String createCacheKey(byte[] encryptedKey, PublicKey publicKey, String... parameters) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(encryptedKey);
+            digest.update((byte) 0);
+            if (publicKey != null) {
+                digest.update(publicKey.getEncoded());
+            }
+            for (String parameter : parameters) {
+                digest.update((byte) 0);
+                if (parameter != null) {
+                    digest.update(parameter.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * Get a copy of the cached secret key for the given cache key
+     * @param cacheKey the key of the cache entry
+     * @return the secret key, or null if it is not cached or has expired
+     */
+    public synchronized byte[] get(String cacheKey) {
+        CachedSecret entry = entries.get(cacheKey);
+        if (entry == null) {
+            return null;
+        }
+        if (Instant.now().isAfter(entry.expiry)) {
+            entries.remove(cacheKey);
+            entry.clear();
+            return null;
+        }
+        byte[] secret = new byte[entry.secret.capacity()];
+        entry.secret.duplicate().get(secret);
+        return secret;
+    }
+
+    /**
+     * Cache a copy of the given secret key
+     * @param cacheKey the key of the cache entry
+     * @param secret the decrypted secret key of the EncryptedKey
+     */
+    public synchronized void put(String cacheKey, byte[] secret) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(secret.length);
+        buffer.duplicate().put(secret);
+        CachedSecret previous = entries.put(cacheKey, new CachedSecret(buffer, Instant.now().plus(ttl)));
+        if (previous != null) {
+            previous.clear();
+        }
+        evictExpired();
+    }
+
+    private void evictExpired() {
+        Instant now = Instant.now();
+        // Check the least recently used entries first, up to the first one that has not expired.
+        // Other expired entries are removed when they are looked up, or evicted when the cache is full
+        Iterator<CachedSecret> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            CachedSecret entry = iterator.next();
+            if (!now.isAfter(entry.expiry)) {
+                break;
+            }
+            iterator.remove();
+            entry.clear();
+        }
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Duration getTTL() {
+        return ttl;
+    }
+
+    /**
+     * @return the number of secret keys held in the cache, including expired keys that have not
+     * been evicted yet
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (CachedSecret entry : entries.values()) {
+            entry.clear();
+        }
+        entries.clear();
+    }
+
+    private static final class CachedSecret {
+
+        private final ByteBuffer secret;
+        private final Instant expiry;
+
+        CachedSecret(ByteBuffer secret, Instant expiry) {
+            this.secret = secret;
+            this.expiry = expiry;
+        }
+
+        void clear() {
+            for (int i = 0; i < secret.capacity(); i++) {
+                secret.put(i, (byte) 0);
+            }
+        }
+    }
+}
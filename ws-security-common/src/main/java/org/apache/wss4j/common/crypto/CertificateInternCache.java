@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A bounded cache of parsed certificates, keyed by a SHA-256 digest of their encoded form and
+ * by the provider of the CertificateFactory that parsed them. A certificate that is received
+ * repeatedly, e.g. in the BinarySecurityToken of every message from a partner, is then only
+ * parsed once, and the same X509Certificate instance (and so the same PublicKey instance) is
+ * returned for every message. The cached certificates must not be modified.
+ *
+ * An arbitrary entry is removed when the cache is full.
+ */
+public class CertificateInternCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private static final CertificateInternCache INSTANCE = new CertificateInternCache(DEFAULT_MAX_SIZE);
+
+    private static final ThreadLocal<MessageDigest> DIGEST = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Map<String, Object> cache = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    /**
+     * @param maxSize the maximum number of certificates and certificate paths held in the cache
+     */
+    public CertificateInternCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The certificate cache size must be greater than zero");
+        }
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the cache that is shared by default by all CryptoBase instances
+     */
+    public static CertificateInternCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the certificate for the given encoded form, parsing it with the CertificateFactory if
+     * it is not cached yet.
+     *
+     * @param encoded the encoded certificate
+     * @param certificateFactory the CertificateFactory to parse the certificate with
+     * @return the certificate
+     * @throws CertificateException if the certificate cannot be parsed
+     */
+    public X509Certificate getCertificate(byte[] encoded, CertificateFactory certificateFactory)
+        throws CertificateException {
+        String key = createKey("X.509", encoded, certificateFactory);
+        X509Certificate cert = (X509Certificate)cache.get(key);
+        if (cert == null) {
+            cert = (X509Certificate)certificateFactory.generateCertificate(new ByteArrayInputStream(encoded));
+            cert = (X509Certificate)intern(key, cert);
+        }
+        return cert;
+    }
+
+    /**
+     * Get the certificates of the given encoded PkiPath, parsing it with the CertificateFactory if
+     * it is not cached yet. The certificates of the path are interned individually as well.
+     *
+     * @param encoded the encoded certificate path
+     * @param certificateFactory the CertificateFactory to parse the certificate path with
+     * @return a new array containing the certificates
+     * @throws CertificateException if the certificate path cannot be parsed
+     */
+    public X509Certificate[] getCertificates(byte[] encoded, CertificateFactory certificateFactory)
+        throws CertificateException {
+        String key = createKey("PkiPath", encoded, certificateFactory);
+        X509Certificate[] certs = (X509Certificate[])cache.get(key);
+        if (certs == null) {
+            List<? extends Certificate> certificates =
+                certificateFactory.generateCertPath(new ByteArrayInputStream(encoded)).getCertificates();
+            certs = new X509Certificate[certificates.size()];
+            for (int i = 0; i < certs.length; i++) {
+                X509Certificate cert = (X509Certificate)certificates.get(i);
+                certs[i] = (X509Certificate)intern(createKey("X.509", cert.getEncoded(), certificateFactory), cert);
+            }
+            certs = (X509Certificate[])intern(key, certs);
+        }
+        return certs.clone();
+    }
+
+    /**
+     * Remove all of the cached certificates
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    /**
+     * @return the number of cached certificates and certificate paths
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Cache the value, unless a value has been cached concurrently for the same key
+     * @return the cached value
+     */
+    private Object intern(String key, Object value) {
+        if (cache.size() >= maxSize) {
+            Iterator<String> iterator = cache.keySet().iterator();
+            if (iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        Object cachedValue = cache.putIfAbsent(key, value);
+        return cachedValue != null ? cachedValue : value;
+    }
+
+    private static String createKey(String type, byte[] encoded, CertificateFactory certificateFactory) {
+        MessageDigest digest = DIGEST.get();
+        String hash = Base64.getEncoder().encodeToString(digest.digest(encoded));
+        return type + " " + certificateFactory.getProvider().getName() + " " + hash;
+    }
+}
@@ -188,7 +188,6 @@ public class CertificateStore extends CryptoBase {
             }
         }
 
-
         //
         // SECOND step - Search for the issuer cert (chain) of the transmitted certificate in the
         // keystore or the truststore
@@ -283,10 +282,26 @@ public class CertificateStore extends CryptoBase {
     @Override
     public void verifyTrust(X509Certificate[] certs, boolean enableRevocation, Collection<Pattern> subjectCertConstraints,
                             Collection<Pattern> issuerCertConstraints) throws WSSecurityException {
+        CertificateTrustCache trustCache = getTrustCache();
+        String cacheKey = null;
+        if (trustCache != null) {
+            cacheKey = trustCache.createKey(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+            if (trustCache.contains(cacheKey)) {
+                LOG.debug(
+                    "Cached trust for certificate with {}", certs[0].getSubjectX500Principal().getName()
+                );
+                return;
+            }
+        }
+
         verifyTrust(certs, enableRevocation, subjectCertConstraints);
         if (!matchesIssuerDnPattern(certs[0], issuerCertConstraints)) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
         }
+
+        if (cacheKey != null) {
+            trustCache.add(cacheKey, certs, null);
+        }
     }
 
     /**
@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CRL;
+import java.security.cert.CertStore;
+import java.security.cert.CertStoreException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A bounded cache of successful trust decisions for certificate chains. An entry is keyed on
+ * a digest of the encoded certificate chain, the revocation flag and the Subject/Issuer DN
+ * constraints that were applied. An entry expires after the configured time-to-live, or
+ * earlier if a certificate of the chain expires or the CRLs used for revocation checking
+ * are due to be updated.
+ */
+public class CertificateTrustCache {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(CertificateTrustCache.class);
+
+    private final Map<String, Instant> cache = new ConcurrentHashMap<>();
+    private final long ttl;
+    private final int maxSize;
+
+    /**
+     * @param ttl the time-to-live of an entry in seconds
+     * @param maxSize the maximum number of entries held in the cache
+     */
+    public CertificateTrustCache(long ttl, int maxSize) {
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("The trust cache TTL must be greater than zero");
+        }
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The trust cache size must be greater than zero");
+        }
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Create the cache key for a trust decision
+     * @param certs Certificate chain to validate
+     * @param enableRevocation whether CRL verification is enabled or not
+     * @param subjectCertConstraints A set of constraints on the Subject DN of the certificates
+     * @param issuerCertConstraints A set of constraints on the Issuer DN of the certificates
+     * @return the cache key
+     * @throws WSSecurityException
+     */
+    public String createKey(
+        X509Certificate[] certs,
+        boolean enableRevocation,
+        Collection<Pattern> subjectCertConstraints,
+        Collection<Pattern> issuerCertConstraints
+    ) throws WSSecurityException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (X509Certificate cert : certs) {
+                digest.update(cert.getEncoded());
+            }
+            digest.update((byte)(enableRevocation ? 1 : 0));
+            updateDigest(digest, subjectCertConstraints);
+            updateDigest(digest, issuerCertConstraints);
+            return Base64.getEncoder().encodeToString(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
+            );
+        } catch (CertificateEncodingException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "encodeError"
+            );
+        }
+    }
+
+    private static void updateDigest(MessageDigest digest, Collection<Pattern> patterns) {
+        // Separate the (possibly empty) collections of constraints from each other
+        digest.update((byte)0);
+        if (patterns != null) {
+            for (Pattern pattern : patterns) {
+                digest.update(pattern.pattern().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)0);
+                digest.update(Integer.toString(pattern.flags()).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)0);
+            }
+        }
+    }
+
+    /**
+     * @param key the cache key
+     * @return whether a trust decision that has not expired is cached for the given key
+     */
+    public boolean contains(String key) {
+        Instant expiry = cache.get(key);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry.isAfter(Instant.now())) {
+            return true;
+        }
+        cache.remove(key, expiry);
+        return false;
+    }
+
+    /**
+     * Cache a successful trust decision
+     * @param key the cache key
+     * @param certs the certificate chain that was validated
+     * @param crlCertStore the CertStore containing the CRLs that were used for revocation
+     * checking, or null if revocation checking was not enabled
+     */
+    public void add(String key, X509Certificate[] certs, CertStore crlCertStore) {
+        Instant now = Instant.now();
+        Instant expiry = now.plusSeconds(ttl);
+        for (X509Certificate cert : certs) {
+            Instant notAfter = cert.getNotAfter().toInstant();
+            if (notAfter.isBefore(expiry)) {
+                expiry = notAfter;
+            }
+        }
+        if (crlCertStore != null) {
+            try {
+                for (CRL crl : crlCertStore.getCRLs(null)) {
+                    if (crl instanceof X509CRL && ((X509CRL)crl).getNextUpdate() != null) {
+                        Instant nextUpdate = ((X509CRL)crl).getNextUpdate().toInstant();
+                        if (nextUpdate.isBefore(expiry)) {
+                            expiry = nextUpdate;
+                        }
+                    }
+                }
+            } catch (CertStoreException e) {
+                LOG.debug("Not caching the trust decision as the CRLs cannot be read", e);
+                return;
+            }
+        }
+        if (!expiry.isAfter(now)) {
+            return;
+        }
+
+        if (cache.size() >= maxSize) {
+            evict(now);
+        }
+        cache.put(key, expiry);
+    }
+
+    /**
+     * Remove the expired entries, and the entry that expires first if the cache is still full
+     */
+    private void evict(Instant now) {
+        cache.values().removeIf(expiry -> !expiry.isAfter(now));
+        if (cache.size() < maxSize) {
+            return;
+        }
+
+        Map.Entry<String, Instant> oldest = null;
+        for (Map.Entry<String, Instant> entry : cache.entrySet()) {
+            if (oldest == null || entry.getValue().isBefore(oldest.getValue())) {
+                oldest = entry;
+            }
+        }
+        if (oldest != null) {
+            cache.remove(oldest.getKey(), oldest.getValue());
+        }
+    }
+
+    /**
+     * Remove all of the cached trust decisions
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    public long getTtl() {
+        return ttl;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+}
@@ -63,6 +63,8 @@ public abstract class CryptoBase implements Crypto {
     private String defaultAlias;
     private String cryptoProvider;
     private String trustProvider;
+    private CertificateTrustCache trustCache;
+    private CertificateInternCache certificateCache = CertificateInternCache.getInstance();
 
     static {
         Constructor<?> cons = null;
@@ -113,6 +115,44 @@ public abstract class CryptoBase implements Crypto {
         return trustProvider;
     }
 
+    /**
+     * Set the cache of successful trust decisions for certificate chains. If it is set, then
+     * a certificate chain that has already been validated is trusted without validating the
+     * certificate path again, until its cache entry expires. The default is null, i.e. no
+     * trust decisions are cached.
+     * @param trustCache the cache of successful trust decisions
+     */
+    public void setTrustCache(CertificateTrustCache trustCache) {
+        this.trustCache = trustCache;
+    }
+
+    /**
+     * Get the cache of successful trust decisions for certificate chains
+     * @return the cache of successful trust decisions, or null if it is not enabled
+     */
+    public CertificateTrustCache getTrustCache() {
+        return trustCache;
+    }
+
+    /**
+     * Set the cache of parsed certificates. If it is set, then a certificate (or PkiPath) that is
+     * loaded from its encoded form is only parsed once, and the same X509Certificate instance is
+     * returned for the same encoded form. The default is the shared
+     * CertificateInternCache.getInstance(). A null value disables the cache.
+     * @param certificateCache the cache of parsed certificates
+     */
+    public void setCertificateCache(CertificateInternCache certificateCache) {
+        this.certificateCache = certificateCache;
+    }
+
+    /**
+     * Get the cache of parsed certificates
+     * @return the cache of parsed certificates, or null if it is not enabled
+     */
+    public CertificateInternCache getCertificateCache() {
+        return certificateCache;
+    }
+
     /**
      * Retrieves the identifier name of the default certificate. This should be the certificate
      * that is used for signature and encryption. This identifier corresponds to the certificate
@@ -189,8 +229,11 @@ public abstract class CryptoBase implements Crypto {
     public X509Certificate loadCertificate(InputStream in) throws WSSecurityException {
         try {
             CertificateFactory certFactory = getCertificateFactory();
+            if (certificateCache != null) {
+                return certificateCache.getCertificate(in.readAllBytes(), certFactory);
+            }
             return (X509Certificate) certFactory.generateCertificate(in);
-        } catch (CertificateException e) {
+        } catch (CertificateException | IOException e) {
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "parseError"
             );
@@ -277,6 +320,16 @@ public abstract class CryptoBase implements Crypto {
      */
     public X509Certificate[] getCertificatesFromBytes(byte[] data)
         throws WSSecurityException {
+        if (certificateCache != null) {
+            try {
+                return certificateCache.getCertificates(data, getCertificateFactory());
+            } catch (CertificateException e) {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, e, "parseError"
+                );
+            }
+        }
+
         CertPath path = null;
         try (InputStream in = new ByteArrayInputStream(data)) {
             path = getCertificateFactory().generateCertPath(in);
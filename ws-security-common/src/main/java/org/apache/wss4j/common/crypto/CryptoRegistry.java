@@ -0,0 +1,489 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Predicate;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+
+/**
+ * A bounded registry of Crypto instances and parsed Crypto properties, so that a KeyStore is
+ * not loaded again for every configuration that refers to the same properties. Crypto instances
+ * are keyed by the location of the properties file, or by the content of a Properties object,
+ * together with the ClassLoader used to load them. The least recently used entry is removed when
+ * the registry is full.
+ *
+ * The properties file and the keystore, truststore and CRL files named in the Merlin properties
+ * are checked for modification at most once per check interval, if they are files on the file
+ * system, and the Crypto is loaded again if one of them has been modified. Entries can also be
+ * invalidated explicitly.
+ *
+ * A Crypto that is Closeable (e.g. a ReloadableMerlin) reloads its keystore, truststore and CRL
+ * files itself, without blocking requests, so these files are not checked for it; only a modified
+ * properties file causes it to be loaded again. It is closed when its entry is removed, so it can
+ * still be used by code that holds it, but stops watching its files. Note that the
+ * PasswordEncryptor used when the Crypto is first loaded is the one used by the cached Crypto.
+ */
+public class CryptoRegistry {
+
+    public static final int DEFAULT_MAX_SIZE = 100;
+    public static final Duration DEFAULT_CHECK_INTERVAL = Duration.ofSeconds(10);
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(CryptoRegistry.class);
+
+    private static final CryptoRegistry INSTANCE = new CryptoRegistry();
+
+    private static final String CRYPTO_LOCATION = "crypto";
+    private static final String CRYPTO_CONTENT = "content";
+    private static final String PROPERTIES_LOCATION = "properties";
+
+    /**
+     * The Merlin properties that name a keystore, truststore or CRL file used by the Crypto
+     */
+    private static final List<String> STORE_FILE_PROPERTIES = Arrays.asList(
+        Merlin.PREFIX + Merlin.KEYSTORE_FILE,
+        Merlin.OLD_PREFIX + Merlin.KEYSTORE_FILE,
+        Merlin.OLD_PREFIX + Merlin.OLD_KEYSTORE_FILE,
+        Merlin.PREFIX + Merlin.TRUSTSTORE_FILE,
+        Merlin.OLD_PREFIX + Merlin.TRUSTSTORE_FILE,
+        Merlin.PREFIX + Merlin.X509_CRL_FILE,
+        Merlin.OLD_PREFIX + Merlin.X509_CRL_FILE
+    );
+
+    private final Map<Key, Entry> entries;
+    private final long checkInterval;
+
+    public CryptoRegistry() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_CHECK_INTERVAL);
+    }
+
+    /**
+     * @param maxSize the maximum number of entries held in the registry
+     * @param checkInterval the minimum time between two checks of a properties file for modification.
+     * A zero interval checks the file every time the entry is used.
+     */
+    public CryptoRegistry(int maxSize, Duration checkInterval) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("The registry size must be greater than zero");
+        }
+        if (checkInterval.isNegative()) {
+            throw new IllegalArgumentException("The check interval must not be negative");
+        }
+        this.checkInterval = checkInterval.toMillis();
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > maxSize) {
+                    close(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the registry shared by the WSHandler and the StAX ConfigurationConverter
+     */
+    public static CryptoRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Loads a Crypto instance
+     */
+    @FunctionalInterface
+    public interface CryptoLoader {
+        Crypto loadCrypto() throws WSSecurityException;
+    }
+
+    /**
+     * Get the Crypto instance for a properties file, loading it via CryptoFactory if it is not
+     * registered yet, or if the properties file or one of its keystore files has been modified.
+     *
+     * @param propFilename the location of the properties file
+     * @param classLoader the ClassLoader to load the properties file and the Crypto with
+     * @param passwordEncryptor the PasswordEncryptor to decrypt encrypted passwords with
+     * @return the Crypto instance
+     * @throws WSSecurityException if the Crypto cannot be loaded
+     */
+    public Crypto getCrypto(
+        String propFilename,
+        ClassLoader classLoader,
+        PasswordEncryptor passwordEncryptor
+    ) throws WSSecurityException {
+        return getCrypto(propFilename, classLoader,
+            () -> CryptoFactory.getInstance(getProperties(propFilename, classLoader), classLoader, passwordEncryptor)
+        );
+    }
+
+    /**
+     * Get the Crypto instance for a properties file, loading it with the given CryptoLoader if it
+     * is not registered yet, or if the properties file or one of its keystore files has been
+     * modified. The Crypto is registered for the location and the ClassLoader only, so the
+     * CryptoLoader must load the Crypto that CryptoFactory would load for the properties file.
+     *
+     * @param propFilename the location of the properties file
+     * @param classLoader the ClassLoader to resolve the properties file with
+     * @param cryptoLoader the CryptoLoader to load the Crypto with
+     * @return the Crypto instance
+     * @throws WSSecurityException if the Crypto cannot be loaded
+     */
+    public Crypto getCrypto(
+        String propFilename,
+        ClassLoader classLoader,
+        CryptoLoader cryptoLoader
+    ) throws WSSecurityException {
+        Key key = new Key(Arrays.asList(CRYPTO_LOCATION, propFilename), classLoader);
+        Object crypto = get(key);
+        if (crypto == null) {
+            // Read the modification times before loading, so that a concurrent modification is seen
+            List<TrackedFile> files = new ArrayList<>();
+            addTrackedFile(files, propFilename, classLoader);
+            List<TrackedFile> storeFiles = new ArrayList<>();
+            addStoreFiles(storeFiles, getStoreProperties(propFilename, classLoader), classLoader);
+            crypto = cryptoLoader.loadCrypto();
+            if (!reloadsItself(crypto)) {
+                files.addAll(storeFiles);
+            }
+            put(key, new Entry(crypto, files));
+        }
+        return (Crypto)crypto;
+    }
+
+    /**
+     * Get the Crypto instance for the given Crypto properties, loading it via CryptoFactory if no
+     * Crypto is registered for properties with the same content, or if one of the keystore files
+     * named in the properties has been modified.
+     *
+     * @param properties the Crypto properties
+     * @param classLoader the ClassLoader to load the Crypto with
+     * @param passwordEncryptor the PasswordEncryptor to decrypt encrypted passwords with
+     * @return the Crypto instance
+     * @throws WSSecurityException if the Crypto cannot be loaded
+     */
+    public Crypto getCrypto(
+        Properties properties,
+        ClassLoader classLoader,
+        PasswordEncryptor passwordEncryptor
+    ) throws WSSecurityException {
+        Key key = new Key(Arrays.asList(CRYPTO_CONTENT, new HashMap<>(properties)), classLoader);
+        Object crypto = get(key);
+        if (crypto == null) {
+            List<TrackedFile> storeFiles = new ArrayList<>();
+            addStoreFiles(storeFiles, properties, classLoader);
+            crypto = CryptoFactory.getInstance(properties, classLoader, passwordEncryptor);
+            put(key, new Entry(crypto, reloadsItself(crypto) ? Collections.emptyList() : storeFiles));
+        }
+        return (Crypto)crypto;
+    }
+
+    /**
+     * Get the parsed Crypto properties from a properties file, loading them via CryptoFactory if
+     * they are not registered yet, or if the properties file has been modified.
+     *
+     * @param propFilename the location of the properties file
+     * @param classLoader the ClassLoader to load the properties file with
+     * @return a copy of the parsed properties
+     * @throws WSSecurityException if the properties file cannot be loaded
+     */
+    public Properties getProperties(String propFilename, ClassLoader classLoader) throws WSSecurityException {
+        Key key = new Key(Arrays.asList(PROPERTIES_LOCATION, propFilename), classLoader);
+        Object properties = get(key);
+        if (properties == null) {
+            List<TrackedFile> files = new ArrayList<>();
+            addTrackedFile(files, propFilename, classLoader);
+            properties = CryptoFactory.getProperties(propFilename, classLoader);
+            put(key, new Entry(properties, files));
+        }
+        Properties copy = new Properties();
+        copy.putAll((Properties)properties);
+        return copy;
+    }
+
+    /**
+     * Remove the Crypto instance and the parsed properties registered for a properties file
+     * @param propFilename the location of the properties file
+     */
+    public synchronized void invalidate(String propFilename) {
+        removeIf(key -> propFilename.equals(key.id.get(1)));
+    }
+
+    /**
+     * Remove the Crypto instance registered for Crypto properties with the same content
+     * @param properties the Crypto properties
+     */
+    public synchronized void invalidate(Properties properties) {
+        Map<Object, Object> content = new HashMap<>(properties);
+        removeIf(key -> CRYPTO_CONTENT.equals(key.id.get(0)) && content.equals(key.id.get(1)));
+    }
+
+    /**
+     * Remove all of the registered Crypto instances and properties
+     */
+    public synchronized void clear() {
+        removeIf(key -> true);
+    }
+
+    /**
+     * @return the number of registered Crypto instances and properties
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private synchronized Object get(Key key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isModified(checkInterval)) {
+            LOG.debug("{} has been modified and is loaded again", key.id.get(1));
+            close(entries.remove(key));
+            return null;
+        }
+        return entry.value;
+    }
+
+    private synchronized void put(Key key, Entry entry) {
+        // Remove entries whose ClassLoader has been garbage collected
+        removeIf(Key::isCleared);
+        close(entries.put(key, entry));
+    }
+
+    private void removeIf(Predicate<Key> filter) {
+        for (Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator(); iterator.hasNext();) {
+            Map.Entry<Key, Entry> entry = iterator.next();
+            if (filter.test(entry.getKey())) {
+                iterator.remove();
+                close(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Whether a Crypto reloads its keystore, truststore and CRL files itself (e.g. a ReloadableMerlin),
+     * so that the registry does not need to check them for modification
+     */
+    private static boolean reloadsItself(Object crypto) {
+        return crypto instanceof Closeable;
+    }
+
+    /**
+     * Close a removed Crypto, e.g. to stop the thread of a ReloadableMerlin that watches its files
+     */
+    private static void close(Entry entry) {
+        if (entry != null && entry.value instanceof Closeable) {
+            try {
+                ((Closeable)entry.value).close();
+            } catch (IOException ex) {
+                LOG.debug("Cannot close the removed Crypto: {}", ex.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Get the properties of a properties file to find its keystore files, or null if they cannot
+     * be loaded (e.g. as the Crypto is loaded in a different way)
+     */
+    private Properties getStoreProperties(String propFilename, ClassLoader classLoader) {
+        try {
+            return getProperties(propFilename, classLoader);
+        } catch (WSSecurityException ex) {
+            LOG.debug("Cannot check the keystores of {} for modification: {}", propFilename, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static void addStoreFiles(List<TrackedFile> files, Properties properties, ClassLoader classLoader) {
+        if (properties == null) {
+            return;
+        }
+        for (String storeFileProperty : STORE_FILE_PROPERTIES) {
+            String locations = properties.getProperty(storeFileProperty);
+            if (locations != null) {
+                for (String location : locations.split(",")) {
+                    addTrackedFile(files, location.trim(), classLoader);
+                }
+            }
+        }
+    }
+
+    private static void addTrackedFile(List<TrackedFile> files, String location, ClassLoader classLoader) {
+        Path path = getPath(location, classLoader);
+        if (path != null) {
+            files.add(new TrackedFile(path, getAttributes(path)));
+        }
+    }
+
+    /**
+     * Get the file system path of a properties file or KeyStore, resolved the same way as by
+     * Loader.loadInputStream, or null if it is not a file on the file system
+     */
+    static Path getPath(String propFilename, ClassLoader classLoader) {
+        try {
+            URL url;
+            try {
+                url = new URL(propFilename);
+            } catch (MalformedURLException ex) {
+                url = Loader.getResource(classLoader, propFilename);
+            }
+            if (url != null) {
+                return "file".equals(url.getProtocol()) ? Paths.get(url.toURI()) : null;
+            }
+            Path path = Paths.get(propFilename);
+            return Files.isRegularFile(path) ? path : null;
+        } catch (URISyntaxException | RuntimeException ex) {
+            LOG.debug("Cannot check {} for modification: {}", propFilename, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static BasicFileAttributes getAttributes(Path path) {
+        if (path != null) {
+            try {
+                return Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (Exception ex) {
+                LOG.debug("Cannot read the attributes of {}: {}", path, ex.getMessage());
+            }
+        }
+        return null;
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final List<TrackedFile> files;
+        private long nextCheck;
+
+        Entry(Object value, List<TrackedFile> files) {
+            this.value = value;
+            this.files = files.isEmpty() ? Collections.emptyList() : files;
+        }
+
+        boolean isModified(long checkInterval) {
+            if (files.isEmpty()) {
+                return false;
+            }
+            long now = System.currentTimeMillis();
+            if (now < nextCheck) {
+                return false;
+            }
+            nextCheck = now + checkInterval;
+
+            for (TrackedFile file : files) {
+                if (file.isModified()) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A file on the file system that an entry is loaded from, with its attributes at load time
+     */
+    private static final class TrackedFile {
+        private final Path path;
+        private final FileTime lastModifiedTime;
+        private final long size;
+
+        TrackedFile(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.lastModifiedTime = attributes != null ? attributes.lastModifiedTime() : null;
+            this.size = attributes != null ? attributes.size() : -1L;
+        }
+
+        boolean isModified() {
+            BasicFileAttributes attributes = getAttributes(path);
+            return attributes == null
+                || !attributes.lastModifiedTime().equals(lastModifiedTime)
+                || attributes.size() != size;
+        }
+    }
+
+    /**
+     * The key of an entry. The ClassLoader is only weakly referenced, so that the registry does
+     * not prevent it from being garbage collected.
+     */
+    private static final class Key {
+        private final List<Object> id;
+        private final WeakReference<ClassLoader> classLoader;
+        private final boolean nullClassLoader;
+        private final int hashCode;
+
+        Key(List<Object> id, ClassLoader classLoader) {
+            this.id = id;
+            this.classLoader = new WeakReference<>(classLoader);
+            this.nullClassLoader = classLoader == null;
+            this.hashCode = 31 * id.hashCode() + System.identityHashCode(classLoader);
+        }
+
+        boolean isCleared() {
+            return !nullClassLoader && classLoader.get() == null;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof Key)) {
+                return false;
+            }
+            Key key = (Key)object;
+            return hashCode == key.hashCode
+                && nullClassLoader == key.nullClassLoader
+                && !isCleared()
+                && classLoader.get() == key.classLoader.get()
+                && id.equals(key.id);
+        }
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.crypto;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * An immutable in-memory index over the certificate entries of a KeyStore. It allows a
+ * certificate (chain) to be located by issuer and serial number, SHA-1 thumbprint, Subject Key
+ * Identifier or Subject DN, without enumerating every alias of the KeyStore for each lookup.
+ *
+ * The index is a snapshot of the KeyStore at the time it was built. It is considered stale if
+ * it was built for a different KeyStore instance, or if the number of entries in the KeyStore
+ * has changed since.
+ */
+final class KeyStoreCertificateIndex {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(KeyStoreCertificateIndex.class);
+
+    private final KeyStore store;
+    private final int size;
+    private final Map<BigInteger, List<IssuerEntry>> serialIndex = new HashMap<>();
+    private final Map<ByteBuffer, Certificate[]> thumbprintIndex = new HashMap<>();
+    private final Map<ByteBuffer, Certificate[]> skiIndex = new HashMap<>();
+    private final Map<Object, List<Certificate[]>> subjectIndex = new HashMap<>();
+    private final Map<Certificate, String> aliasIndex = new HashMap<>();
+
+    private KeyStoreCertificateIndex(KeyStore store, int size) {
+        this.store = store;
+        this.size = size;
+    }
+
+    /**
+     * Build an index over all of the certificate entries of the given KeyStore
+     * @param store The KeyStore to index
+     * @param crypto The CryptoBase instance used to compute the DN and SKI representations
+     * @return the index
+     * @throws WSSecurityException
+     */
+    static KeyStoreCertificateIndex build(KeyStore store, CryptoBase crypto) throws WSSecurityException {
+        MessageDigest sha = null;
+        try {
+            sha = MessageDigest.getInstance("SHA1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
+            );
+        }
+
+        try {
+            KeyStoreCertificateIndex index = new KeyStoreCertificateIndex(store, store.size());
+            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
+                String alias = e.nextElement();
+                Certificate[] certs = store.getCertificateChain(alias);
+                if (certs == null || certs.length == 0) {
+                    // no cert chain, so lets check if getCertificate gives us a result.
+                    Certificate cert = store.getCertificate(alias);
+                    if (cert != null) {
+                        certs = new Certificate[]{cert};
+                    }
+                }
+                if (certs == null || certs.length == 0) {
+                    continue;
+                }
+
+                index.aliasIndex.putIfAbsent(certs[0], alias);
+                if (certs[0] instanceof X509Certificate) {
+                    index.add(alias, certs, crypto, sha);
+                }
+            }
+            LOG.debug("Indexed {} KeyStore entries", index.size);
+            return index;
+        } catch (KeyStoreException e) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
+            );
+        }
+    }
+
+    private void add(
+        String alias, Certificate[] certs, CryptoBase crypto, MessageDigest sha
+    ) throws WSSecurityException {
+        X509Certificate x509cert = (X509Certificate) certs[0];
+
+        Object issuerName = crypto.createBCX509Name(x509cert.getIssuerX500Principal().getName());
+        serialIndex.computeIfAbsent(x509cert.getSerialNumber(), k -> new ArrayList<>(1))
+            .add(new IssuerEntry(issuerName, certs));
+
+        Object subjectName = crypto.createBCX509Name(x509cert.getSubjectX500Principal().getName());
+        subjectIndex.computeIfAbsent(subjectName, k -> new ArrayList<>(1)).add(certs);
+
+        try {
+            byte[] thumbprint = sha.digest(x509cert.getEncoded());
+            thumbprintIndex.putIfAbsent(ByteBuffer.wrap(thumbprint), certs);
+        } catch (CertificateEncodingException ex) {
+            throw new WSSecurityException(
+                WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, ex, "encodeError"
+            );
+        }
+
+        try {
+            byte[] skiBytes = crypto.getSKIBytesFromCert(x509cert);
+            skiIndex.putIfAbsent(ByteBuffer.wrap(skiBytes), certs);
+        } catch (WSSecurityException ex) {
+            LOG.debug("Cannot compute the SKI of the certificate with keystore alias {}", alias, ex);
+        }
+    }
+
+    /**
+     * @return whether this index is still current for the given KeyStore
+     */
+    boolean isCurrent(KeyStore keyStore) {
+        if (store != keyStore) {
+            return false;
+        }
+        try {
+            return size == keyStore.size();
+        } catch (KeyStoreException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Get the certificate (chain) with the given issuer and serial number
+     * @param issuerRDN either an X500Principal or a BouncyCastle X509Name instance.
+     */
+    Certificate[] getCertificates(Object issuerRDN, BigInteger serialNumber) {
+        List<IssuerEntry> entries = serialIndex.get(serialNumber);
+        if (entries != null) {
+            for (IssuerEntry entry : entries) {
+                if (entry.issuerName.equals(issuerRDN)) {
+                    return entry.certs;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the certificate (chain) with the given SHA-1 thumbprint
+     */
+    Certificate[] getCertificatesByThumbprint(byte[] thumbprint) {
+        return thumbprintIndex.get(ByteBuffer.wrap(thumbprint));
+    }
+
+    /**
+     * Get the certificate (chain) with the given Subject Key Identifier bytes
+     */
+    Certificate[] getCertificatesBySKI(byte[] skiBytes) {
+        return skiIndex.get(ByteBuffer.wrap(skiBytes));
+    }
+
+    /**
+     * Get all of the certificate (chain)s with the given Subject DN
+     * @param subjectRDN either an X500Principal or a BouncyCastle X509Name instance.
+     */
+    List<Certificate[]> getCertificatesBySubject(Object subjectRDN) {
+        List<Certificate[]> certs = subjectIndex.get(subjectRDN);
+        if (certs == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(certs);
+    }
+
+    /**
+     * Get the KeyStore alias of the given certificate
+     */
+    String getAlias(Certificate cert) {
+        return aliasIndex.get(cert);
+    }
+
+    private static final class IssuerEntry {
+        private final Object issuerName;
+        private final Certificate[] certs;
+
+        IssuerEntry(Object issuerName, Certificate[] certs) {
+            this.issuerName = issuerName;
+            this.certs = certs;
+        }
+    }
+}
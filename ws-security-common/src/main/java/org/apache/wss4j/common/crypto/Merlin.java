@@ -29,7 +29,6 @@ import java.security.InvalidAlgorithmParameterException;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
-import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.PrivateKey;
@@ -39,7 +38,6 @@ import java.security.cert.CertPath;
 import java.security.cert.CertPathValidator;
 import java.security.cert.CertStore;
 import java.security.cert.Certificate;
-import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateFactory;
@@ -52,6 +50,7 @@ import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.List;
@@ -119,9 +118,16 @@ public class Merlin extends CryptoBase {
      */
     public static final String X509_CRL_FILE = "x509crl.file";
 
+    /*
+     * Trust decision cache configuration
+     */
+    public static final String TRUST_CACHE_TTL = "trust.cache.ttl";
+    public static final String TRUST_CACHE_SIZE = "trust.cache.size";
+
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(Merlin.class);
     private static final String COMMA_SEPARATOR = ",";
+    private static final int DEFAULT_TRUST_CACHE_SIZE = 1000;
 
     protected Properties properties;
     protected KeyStore keystore;
@@ -134,6 +140,9 @@ public class Merlin extends CryptoBase {
     private boolean certProviderHandlesNameConstraints = false;
     private boolean enablePrivateKeyCaching = true;
     private Map<String, PrivateKey> privateKeyCache = new ConcurrentHashMap<>();
+    private volatile KeyStoreCertificateIndex keystoreIndex;
+    private volatile KeyStoreCertificateIndex truststoreIndex;
+    private volatile TrustParameters trustParameters;
 
     public Merlin() {
         // default constructor
@@ -346,6 +355,39 @@ public class Merlin extends CryptoBase {
             }
             LOG.debug("The CRL files {} have been loaded", crlLocations);
         }
+
+        //
+        // Configure the cache of trust decisions
+        //
+        String trustCacheTTL = properties.getProperty(prefix + TRUST_CACHE_TTL);
+        if (trustCacheTTL != null) {
+            String trustCacheSize = properties.getProperty(prefix + TRUST_CACHE_SIZE);
+            try {
+                long ttl = Long.parseLong(trustCacheTTL.trim());
+                int size = trustCacheSize == null
+                    ? DEFAULT_TRUST_CACHE_SIZE : Integer.parseInt(trustCacheSize.trim());
+                setTrustCache(ttl > 0 ? new CertificateTrustCache(ttl, size) : null);
+            } catch (IllegalArgumentException e) {
+                LOG.debug(e.getMessage(), e);
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.FAILURE, e, "empty",
+                    new Object[] {"Invalid trust cache configuration: " + e.getMessage()}
+                );
+            }
+        }
+        clearTrustCache();
+
+        //
+        // Index the certificates of the KeyStore and TrustStore
+        //
+        keystoreIndex = null;
+        truststoreIndex = null;
+        if (keystore != null) {
+            getCertificateIndex(keystore, false);
+        }
+        if (truststore != null) {
+            getCertificateIndex(truststore, true);
+        }
     }
 
     /**
@@ -404,6 +446,8 @@ public class Merlin extends CryptoBase {
      */
     public void setKeyStore(KeyStore keyStore) {
         keystore = keyStore;
+        keystoreIndex = null;
+        clearTrustCache();
     }
 
     /**
@@ -422,6 +466,8 @@ public class Merlin extends CryptoBase {
      */
     public void setTrustStore(KeyStore trustStore) {
         truststore = trustStore;
+        truststoreIndex = null;
+        clearTrustCache();
     }
 
     /**
@@ -432,6 +478,7 @@ public class Merlin extends CryptoBase {
      */
     public void setCRLCertStore(CertStore crlCertStore) {
         this.crlCertStore = crlCertStore;
+        clearTrustCache();
     }
 
     /**
@@ -593,11 +640,11 @@ public class Merlin extends CryptoBase {
         String identifier = null;
 
         if (keystore != null) {
-            identifier = getIdentifier(cert, keystore);
+            identifier = getCertificateIndex(keystore, false).getAlias(cert);
         }
 
         if (identifier == null && truststore != null) {
-            identifier = getIdentifier(cert, truststore);
+            identifier = getCertificateIndex(truststore, true).getAlias(cert);
         }
 
         return identifier;
@@ -623,7 +670,7 @@ public class Merlin extends CryptoBase {
                                           new Object[] {"The CallbackHandler is null"});
         }
 
-        String identifier = getIdentifier(certificate, keystore);
+        String identifier = getCertificateIndex(keystore, false).getAlias(certificate);
         if (identifier == null) {
             try {
                 String msg = "Cannot find key for certificate";
@@ -828,21 +875,9 @@ public class Merlin extends CryptoBase {
         );
 
         try {
-            Set<TrustAnchor> set = new HashSet<>();
-            if (truststore != null) {
-                addTrustAnchors(set, truststore);
-            }
-
-            //
-            // Add certificates from the keystore - only if there is no TrustStore, apart from
-            // the case that the truststore is the JDK CA certs. This behaviour is preserved
-            // for backwards compatibility reasons
-            //
-            if (keystore != null && (truststore == null || loadCACerts)) {
-                addTrustAnchors(set, keystore);
-            }
+            // Verify the trust path using the cached trust anchors
+            PKIXParameters param = getPKIXParameters(enableRevocation);
 
-            // Verify the trust path using the above settings
             String provider = getCryptoProvider();
             CertPathValidator validator = null;
             if (provider == null || provider.length() == 0) {
@@ -851,8 +886,6 @@ public class Merlin extends CryptoBase {
                 validator = CertPathValidator.getInstance("PKIX", provider);
             }
 
-            PKIXParameters param = createPKIXParameters(set, enableRevocation);
-
             // Generate cert path
             if (foundIssuingCertChains != null && !foundIssuingCertChains.isEmpty()) {
                 java.security.cert.CertPathValidatorException validatorException = null;
@@ -903,13 +936,46 @@ public class Merlin extends CryptoBase {
     public void verifyTrust(X509Certificate[] certs, boolean enableRevocation,
                             Collection<Pattern> subjectCertConstraints,
                             Collection<Pattern> issuerCertConstraints) throws WSSecurityException {
+        CertificateTrustCache trustCache = getTrustCache();
+        String cacheKey = null;
+        if (trustCache != null) {
+            // Make sure that cached trust decisions are discarded if a store has changed
+            if (keystore != null) {
+                getCertificateIndex(keystore, false);
+            }
+            if (truststore != null) {
+                getCertificateIndex(truststore, true);
+            }
+            cacheKey = trustCache.createKey(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+            if (trustCache.contains(cacheKey)) {
+                LOG.debug(
+                    "Cached trust for certificate with {}", certs[0].getSubjectX500Principal().getName()
+                );
+                return;
+            }
+        }
+
         verifyTrust(certs, enableRevocation, subjectCertConstraints);
         if (!matchesIssuerDnPattern(certs[0], issuerCertConstraints)) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_AUTHENTICATION);
         }
+
+        if (cacheKey != null) {
+            trustCache.add(cacheKey, certs, enableRevocation ? crlCertStore : null);
+        }
     }
 
-    // Separated out to allow subclasses to override it
+    /**
+     * Create the PKIXParameters for the given trust anchors. Separated out to allow subclasses
+     * to override it. Note that this method is only called when the cached parameters are
+     * rebuilt, i.e. when the keystore, truststore or CRL CertStore changes, and not for every
+     * certificate path that is validated. A subclass that derives the parameters from any other
+     * state must call {@link #clearCache()} when that state changes.
+     *
+     * @param trustAnchors the (unmodifiable) set of trust anchors
+     * @param enableRevocation whether to enable CRL verification or not
+     * @return the PKIXParameters
+     */
     protected PKIXParameters createPKIXParameters(
         Set<TrustAnchor> trustAnchors, boolean enableRevocation
     ) throws InvalidAlgorithmParameterException {
@@ -922,6 +988,50 @@ public class Merlin extends CryptoBase {
         return param;
     }
 
+    /**
+     * Get the PKIXParameters to use to validate a certificate path. The trust anchors and the
+     * derived parameters are computed once, and are shared between calls until the keystore,
+     * truststore or CRL CertStore changes. The returned parameters must not be modified.
+     *
+     * @param enableRevocation whether to enable CRL verification or not
+     * @return the PKIXParameters
+     */
+    protected PKIXParameters getPKIXParameters(boolean enableRevocation)
+        throws KeyStoreException, InvalidAlgorithmParameterException, WSSecurityException {
+        KeyStoreCertificateIndex currentKeystoreIndex =
+            keystore != null ? getCertificateIndex(keystore, false) : null;
+        KeyStoreCertificateIndex currentTruststoreIndex =
+            truststore != null ? getCertificateIndex(truststore, true) : null;
+
+        TrustParameters params = trustParameters;
+        if (params == null
+            || !params.isCurrent(currentKeystoreIndex, currentTruststoreIndex, crlCertStore, loadCACerts)) {
+            Set<TrustAnchor> set = new HashSet<>();
+            if (truststore != null) {
+                addTrustAnchors(set, truststore);
+            }
+
+            //
+            // Add certificates from the keystore - only if there is no TrustStore, apart from
+            // the case that the truststore is the JDK CA certs. This behaviour is preserved
+            // for backwards compatibility reasons
+            //
+            if (keystore != null && (truststore == null || loadCACerts)) {
+                addTrustAnchors(set, keystore);
+            }
+            Set<TrustAnchor> trustAnchors = Collections.unmodifiableSet(set);
+
+            params = new TrustParameters(
+                currentKeystoreIndex, currentTruststoreIndex, crlCertStore, loadCACerts,
+                createPKIXParameters(trustAnchors, false), createPKIXParameters(trustAnchors, true)
+            );
+            trustParameters = params;
+            LOG.debug("Created the PKIX parameters for {} trust anchors", trustAnchors.size());
+        }
+
+        return enableRevocation ? params.revocationParameters : params.parameters;
+    }
+
     /**
      * Evaluate whether a given public key should be trusted.
      *
@@ -1008,36 +1118,10 @@ public class Merlin extends CryptoBase {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert with issuer {} and serial {}", keystore, issuerRDN, serialNumber);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    LOG.debug("Keystore alias {} has issuer {} and serial {}", alias,
-                              x509cert.getIssuerX500Principal().getName(), x509cert.getSerialNumber());
-                    if (x509cert.getSerialNumber().compareTo(serialNumber) == 0) {
-                        Object certName =
-                            createBCX509Name(x509cert.getIssuerX500Principal().getName());
-                        if (certName.equals(issuerRDN)) {
-                            LOG.debug("Issuer Serial match found using keystore alias {}", alias);
-                            return certs;
-                        }
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = getCertificateIndex(store, truststore).getCertificates(issuerRDN, serialNumber);
+        if (certs != null) {
+            LOG.debug("Issuer Serial match found in {}", keystore);
+            return certs;
         }
 
         LOG.debug("No issuer serial match found in {}", keystore);
@@ -1052,23 +1136,14 @@ public class Merlin extends CryptoBase {
      * @throws WSSecurityException if problems during keystore handling or wrong certificate
      */
     private X509Certificate[] getX509Certificates(byte[] thumbprint) throws WSSecurityException {
-        MessageDigest sha = null;
-
-        try {
-            sha = MessageDigest.getInstance("SHA1");
-        } catch (NoSuchAlgorithmException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "decoding.general"
-            );
-        }
         Certificate[] certs = null;
         if (keystore != null) {
-            certs = getCertificates(thumbprint, keystore, sha, false);
+            certs = getCertificatesByThumbprint(thumbprint, keystore, false);
         }
 
         //If we can't find the issuer in the keystore then look at the truststore
         if ((certs == null || certs.length == 0) && truststore != null) {
-            certs = getCertificates(thumbprint, truststore, sha, true);
+            certs = getCertificatesByThumbprint(thumbprint, truststore, true);
         }
 
         if (certs == null || certs.length == 0) {
@@ -1085,10 +1160,9 @@ public class Merlin extends CryptoBase {
      * @return an X509 Certificate (chain)
      * @throws WSSecurityException
      */
-    private Certificate[] getCertificates(
+    private Certificate[] getCertificatesByThumbprint(
         byte[] thumbprint,
         KeyStore store,
-        MessageDigest sha,
         boolean truststore
     ) throws WSSecurityException {
         String keystore = "keystore";
@@ -1096,39 +1170,10 @@ public class Merlin extends CryptoBase {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert using a SHA-1 thumbprint", keystore);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    try {
-                        sha.update(x509cert.getEncoded());
-                    } catch (CertificateEncodingException ex) {
-                        throw new WSSecurityException(
-                            WSSecurityException.ErrorCode.SECURITY_TOKEN_UNAVAILABLE, ex, "encodeError"
-                        );
-                    }
-                    byte[] data = sha.digest();
-
-                    if (Arrays.equals(data, thumbprint)) {
-                        LOG.debug("Thumbprint match found using keystore alias {}", alias);
-                        return certs;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = getCertificateIndex(store, truststore).getCertificatesByThumbprint(thumbprint);
+        if (certs != null) {
+            LOG.debug("Thumbprint match found in {}", keystore);
+            return certs;
         }
 
         LOG.debug("No thumbprint match found in {}", keystore);
@@ -1176,31 +1221,10 @@ public class Merlin extends CryptoBase {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert using Subject Key Identifier bytes", keystore);
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X509Certificate x509cert = (X509Certificate) certs[0];
-                    byte[] data = getSKIBytesFromCert(x509cert);
-                    if (data.length == skiBytes.length && Arrays.equals(data, skiBytes)) {
-                        LOG.debug("SKI match found using keystore alias {}", alias);
-                        return certs;
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
+        Certificate[] certs = getCertificateIndex(store, truststore).getCertificatesBySKI(skiBytes);
+        if (certs != null) {
+            LOG.debug("SKI match found in {}", keystore);
+            return certs;
         }
 
         LOG.debug("No SKI match found in {}", keystore);
@@ -1351,33 +1375,8 @@ public class Merlin extends CryptoBase {
             keystore = "truststore";
         }
         LOG.debug("Searching {} for cert with Subject {}", keystore, subjectRDN);
-        List<Certificate[]> foundCerts = new ArrayList<>();
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a result.
-                    Certificate cert = store.getCertificate(alias);
-                    if (cert != null) {
-                        certs = new Certificate[]{cert};
-                    }
-                }
-                if (certs != null && certs.length > 0 && certs[0] instanceof X509Certificate) {
-                    X500Principal foundRDN = ((X509Certificate)certs[0]).getSubjectX500Principal();
-                    Object certName = createBCX509Name(foundRDN.getName());
-
-                    if (subjectRDN.equals(certName)) {
-                        LOG.debug("Subject certificate match found using keystore alias {}", alias);
-                        foundCerts.add(certs);
-                    }
-                }
-            }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(
-                WSSecurityException.ErrorCode.FAILURE, e, "keystore"
-            );
-        }
+        List<Certificate[]> foundCerts =
+            getCertificateIndex(store, truststore).getCertificatesBySubject(subjectRDN);
 
         if (foundCerts.isEmpty()) {
             LOG.debug("No Subject match found in {}", keystore);
@@ -1440,35 +1439,28 @@ public class Merlin extends CryptoBase {
     }
 
     /**
-     * Get an implementation-specific identifier that corresponds to the X509Certificate. In
-     * this case, the identifier is the KeyStore alias.
-     * @param cert The X509Certificate corresponding to the returned identifier
-     * @param store The KeyStore to search
-     * @return An implementation-specific identifier that corresponds to the X509Certificate
+     * Get the certificate index of the supplied KeyStore, (re)building it if it does not exist
+     * yet or if the KeyStore has changed since it was built.
+     * @param store The KeyStore
+     * @param truststore whether the KeyStore is the truststore or the keystore
+     * @return the certificate index of the KeyStore
+     * @throws WSSecurityException
      */
-    private String getIdentifier(X509Certificate cert, KeyStore store)
+    private KeyStoreCertificateIndex getCertificateIndex(KeyStore store, boolean truststore)
         throws WSSecurityException {
-        try {
-            for (Enumeration<String> e = store.aliases(); e.hasMoreElements();) {
-                String alias = e.nextElement();
-
-                Certificate[] certs = store.getCertificateChain(alias);
-                if (certs == null || certs.length == 0) {
-                    // no cert chain, so lets check if getCertificate gives us a  result.
-                    Certificate retrievedCert = store.getCertificate(alias);
-                    if (retrievedCert != null) {
-                        certs = new Certificate[]{retrievedCert};
-                    }
-                }
-
-                if (certs != null && certs.length > 0 && certs[0].equals(cert)) {
-                    return alias;
-                }
+        KeyStoreCertificateIndex index = truststore ? truststoreIndex : keystoreIndex;
+        if (index == null || !index.isCurrent(store)) {
+            if (index != null) {
+                clearTrustCache();
+            }
+            index = KeyStoreCertificateIndex.build(store, this);
+            if (truststore) {
+                truststoreIndex = index;
+            } else {
+                keystoreIndex = index;
             }
-        } catch (KeyStoreException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "keystore");
         }
-        return null;
+        return index;
     }
 
     private String getIdentifier(PublicKey publicKey, KeyStore store)
@@ -1542,10 +1534,26 @@ public class Merlin extends CryptoBase {
         this.passwordEncryptor = passwordEncryptor;
     }
 
+    /**
+     * Clear the private key cache and the cached trust decisions, and discard the certificate
+     * indexes of the keystore and truststore. The indexes are rebuilt on the next lookup. This method must be called if
+     * an entry of the keystore or truststore is replaced in place.
+     */
     public void clearCache() {
         if (enablePrivateKeyCaching) {
             privateKeyCache.clear();
         }
+        keystoreIndex = null;
+        truststoreIndex = null;
+        trustParameters = null;
+        clearTrustCache();
+    }
+
+    private void clearTrustCache() {
+        CertificateTrustCache trustCache = getTrustCache();
+        if (trustCache != null) {
+            trustCache.clear();
+        }
     }
 
     public boolean isEnablePrivateKeyCaching() {
@@ -1555,4 +1563,44 @@ public class Merlin extends CryptoBase {
     public void setEnablePrivateKeyCaching(boolean enablePrivateKeyCaching) {
         this.enablePrivateKeyCaching = enablePrivateKeyCaching;
     }
+
+    /**
+     * The PKIXParameters derived from the trust anchors, along with the state they were derived from
+     */
+    private static final class TrustParameters {
+        private final KeyStoreCertificateIndex keystoreIndex;
+        private final KeyStoreCertificateIndex truststoreIndex;
+        private final CertStore crlCertStore;
+        private final boolean loadCACerts;
+        private final PKIXParameters parameters;
+        private final PKIXParameters revocationParameters;
+
+        TrustParameters(
+            KeyStoreCertificateIndex keystoreIndex,
+            KeyStoreCertificateIndex truststoreIndex,
+            CertStore crlCertStore,
+            boolean loadCACerts,
+            PKIXParameters parameters,
+            PKIXParameters revocationParameters
+        ) {
+            this.keystoreIndex = keystoreIndex;
+            this.truststoreIndex = truststoreIndex;
+            this.crlCertStore = crlCertStore;
+            this.loadCACerts = loadCACerts;
+            this.parameters = parameters;
+            this.revocationParameters = revocationParameters;
+        }
+
+        boolean isCurrent(
+            KeyStoreCertificateIndex currentKeystoreIndex,
+            KeyStoreCertificateIndex currentTruststoreIndex,
+            CertStore currentCrlCertStore,
+            boolean currentLoadCACerts
+        ) {
+            return keystoreIndex == currentKeystoreIndex
+                && truststoreIndex == currentTruststoreIndex
+                && crlCertStore == currentCrlCertStore
+                && loadCACerts == currentLoadCACerts;
+        }
+    }
 }
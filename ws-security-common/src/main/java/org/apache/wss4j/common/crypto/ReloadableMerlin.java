@@ -0,0 +1,495 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * A Crypto implementation that delegates to a Merlin instance, which is loaded again when the
+ * keystore, truststore or CRL files configured in the Merlin properties are modified.
+ *
+ * The files are watched with a WatchService on a background thread. When a file has been
+ * modified, and has not been modified again for the reload delay, a new Merlin instance is
+ * loaded on that thread, and its derived data (the certificate indexes, the trust anchors and,
+ * if a private key password is configured, the private keys) is computed. The new instance then
+ * replaces the current one in a single step. Requests never wait for a reload, and a single
+ * method call never sees a partially loaded instance. If the new instance cannot be loaded, the
+ * current one is kept.
+ *
+ * Every method call is delegated to the instance that is current at the time of the call, so the
+ * calls made for one request may be served by different instances if a reload happens in between
+ * (e.g. the certificate returned by getX509Certificates and the key returned by a later
+ * getPrivateKey). Code that needs a consistent view should call getMerlin() once per request, and
+ * use the returned instance for the whole request.
+ *
+ * Only files on the file system are watched. The watching thread stops when close() is called,
+ * when this instance is removed from a CryptoRegistry, or when it is garbage collected.
+ */
+public class ReloadableMerlin extends CryptoBase implements Closeable {
+
+    public static final long DEFAULT_RELOAD_DELAY = 1000L;
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ReloadableMerlin.class);
+
+    private static final long IDLE_POLL_INTERVAL = 10000L;
+
+    private final Properties properties;
+    private final ClassLoader loader;
+    private final PasswordEncryptor passwordEncryptor;
+    private final Object reloadLock = new Object();
+    private final WatchService watchService;
+
+    private volatile Merlin merlin;
+    private volatile boolean closed;
+
+    // Values set on this instance, which are applied to every reloaded Merlin instance
+    private volatile String cryptoProvider;
+    private volatile String trustProvider;
+    private volatile String defaultX509Identifier;
+    private volatile CertificateFactory certificateFactory;
+    private volatile boolean trustCacheSet;
+    private volatile CertificateTrustCache trustCache;
+    private volatile boolean certificateCacheSet;
+    private volatile CertificateInternCache certificateCache;
+
+    public ReloadableMerlin(Properties properties, ClassLoader loader)
+        throws WSSecurityException, IOException {
+        this(properties, loader, null);
+    }
+
+    public ReloadableMerlin(Properties properties, ClassLoader loader, PasswordEncryptor passwordEncryptor)
+        throws WSSecurityException, IOException {
+        this(properties, loader, passwordEncryptor, DEFAULT_RELOAD_DELAY);
+    }
+
+    /**
+     * @param properties the Merlin properties
+     * @param loader the ClassLoader to load the keystore, truststore and CRL files with
+     * @param passwordEncryptor the PasswordEncryptor to decrypt encrypted passwords with
+     * @param reloadDelay the time in milliseconds without further modification to wait for
+     * before a modified file is loaded
+     */
+    public ReloadableMerlin(
+        Properties properties, ClassLoader loader, PasswordEncryptor passwordEncryptor, long reloadDelay
+    ) throws WSSecurityException, IOException {
+        if (reloadDelay <= 0) {
+            throw new IllegalArgumentException("The reload delay must be greater than zero");
+        }
+        this.properties = properties;
+        this.loader = loader;
+        this.passwordEncryptor = passwordEncryptor;
+        this.merlin = load();
+        this.watchService = watch(reloadDelay);
+    }
+
+    /**
+     * Get the Merlin instance that is currently used. The instance must not be modified. It is
+     * not affected by a later reload, so it can be used for all of the calls of a request.
+     */
+    public Merlin getMerlin() {
+        return merlin;
+    }
+
+    /**
+     * Load the keystore, truststore and CRL files again, and replace the current Merlin instance
+     * once the new one is fully loaded.
+     *
+     * @throws WSSecurityException if the files cannot be loaded. The current instance is kept
+     * in this case.
+     */
+    public void reload() throws WSSecurityException {
+        synchronized (reloadLock) {
+            merlin = load();
+        }
+        LOG.debug("The keystore and truststore have been reloaded");
+    }
+
+    /**
+     * Stop watching the keystore, truststore and CRL files
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    /**
+     * @return whether close() has been called
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    private Merlin load() throws WSSecurityException {
+        Merlin newMerlin;
+        try {
+            newMerlin = new Merlin(properties, loader, passwordEncryptor);
+        } catch (IOException e) {
+            LOG.debug(e.getMessage(), e);
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "ioError00");
+        }
+
+        if (cryptoProvider != null) {
+            newMerlin.setCryptoProvider(cryptoProvider);
+        }
+        if (trustProvider != null) {
+            newMerlin.setTrustProvider(trustProvider);
+        }
+        if (defaultX509Identifier != null) {
+            newMerlin.setDefaultX509Identifier(defaultX509Identifier);
+        }
+        if (certificateFactory != null) {
+            newMerlin.setCertificateFactory(certificateFactory);
+        }
+        if (trustCacheSet) {
+            // The trust decisions of the previous truststore do not apply to the new one, so the new
+            // instance gets an empty cache before it is published
+            CertificateTrustCache currentTrustCache = trustCache;
+            if (currentTrustCache != null) {
+                currentTrustCache =
+                    new CertificateTrustCache(currentTrustCache.getTtl(), currentTrustCache.getMaxSize());
+                trustCache = currentTrustCache;
+            }
+            newMerlin.setTrustCache(currentTrustCache);
+        }
+        if (certificateCacheSet) {
+            newMerlin.setCertificateCache(certificateCache);
+        }
+
+        initialize(newMerlin);
+        return newMerlin;
+    }
+
+    /**
+     * Compute the data that is otherwise computed on the first request that needs it
+     */
+    private static void initialize(Merlin newMerlin) {
+        try {
+            newMerlin.getPKIXParameters(false);
+        } catch (KeyStoreException | InvalidAlgorithmParameterException | WSSecurityException e) {
+            LOG.debug("The trust anchors cannot be computed: {}", e.getMessage());
+        }
+
+        KeyStore keystore = newMerlin.getKeyStore();
+        if (keystore != null && newMerlin.privatePasswordSet && newMerlin.isEnablePrivateKeyCaching()) {
+            try {
+                for (String alias : Collections.list(keystore.aliases())) {
+                    if (keystore.entryInstanceOf(alias, KeyStore.PrivateKeyEntry.class)) {
+                        newMerlin.getPrivateKey(alias, (String)null);
+                    }
+                }
+            } catch (KeyStoreException | WSSecurityException e) {
+                LOG.debug("The private keys cannot be loaded: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Start watching the directories of the keystore, truststore and CRL files on the file system
+     */
+    private WatchService watch(long reloadDelay) throws IOException {
+        Set<Path> files = new HashSet<>();
+        for (String prefix : new String[] {Merlin.PREFIX, Merlin.OLD_PREFIX}) {
+            addFile(files, properties.getProperty(prefix + Merlin.KEYSTORE_FILE));
+            addFile(files, properties.getProperty(prefix + Merlin.OLD_KEYSTORE_FILE));
+            addFile(files, properties.getProperty(prefix + Merlin.TRUSTSTORE_FILE));
+            String crlLocations = properties.getProperty(prefix + Merlin.X509_CRL_FILE);
+            if (crlLocations != null) {
+                for (String crlLocation : crlLocations.split(",")) {
+                    addFile(files, crlLocation);
+                }
+            }
+        }
+        if (files.isEmpty()) {
+            LOG.debug("No keystore, truststore or CRL file on the file system to watch");
+            return null;
+        }
+
+        WatchService newWatchService = FileSystems.getDefault().newWatchService();
+        try {
+            Set<Path> directories = new HashSet<>();
+            for (Path file : files) {
+                Path directory = file.getParent();
+                if (directories.add(directory)) {
+                    directory.register(
+                        newWatchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY
+                    );
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            newWatchService.close();
+            throw e;
+        }
+
+        Thread thread = new Thread(
+            new Watcher(new WeakReference<>(this), newWatchService, files, reloadDelay),
+            "wss4j-crypto-reload"
+        );
+        thread.setDaemon(true);
+        thread.start();
+        LOG.debug("Watching {} for modifications", files);
+        return newWatchService;
+    }
+
+    private void addFile(Set<Path> files, String location) {
+        if (location != null) {
+            Path path = CryptoRegistry.getPath(location.trim(), loader);
+            if (path != null) {
+                files.add(path.toAbsolutePath().normalize());
+            }
+        }
+    }
+
+    //
+    // Crypto methods, delegated to the current Merlin instance
+    //
+
+    @Override
+    public String getCryptoProvider() {
+        return merlin.getCryptoProvider();
+    }
+
+    @Override
+    public void setCryptoProvider(String provider) {
+        cryptoProvider = provider;
+        merlin.setCryptoProvider(provider);
+    }
+
+    @Override
+    public String getTrustProvider() {
+        return merlin.getTrustProvider();
+    }
+
+    @Override
+    public void setTrustProvider(String provider) {
+        trustProvider = provider;
+        merlin.setTrustProvider(provider);
+    }
+
+    @Override
+    public String getDefaultX509Identifier() throws WSSecurityException {
+        return merlin.getDefaultX509Identifier();
+    }
+
+    @Override
+    public void setDefaultX509Identifier(String identifier) {
+        defaultX509Identifier = identifier;
+        merlin.setDefaultX509Identifier(identifier);
+    }
+
+    @Override
+    public void setCertificateFactory(CertificateFactory certFactory) {
+        certificateFactory = certFactory;
+        merlin.setCertificateFactory(certFactory);
+    }
+
+    @Override
+    public CertificateFactory getCertificateFactory() throws WSSecurityException {
+        return merlin.getCertificateFactory();
+    }
+
+    @Override
+    public void setTrustCache(CertificateTrustCache trustCache) {
+        this.trustCache = trustCache;
+        trustCacheSet = true;
+        merlin.setTrustCache(trustCache);
+    }
+
+    @Override
+    public CertificateTrustCache getTrustCache() {
+        return merlin.getTrustCache();
+    }
+
+    @Override
+    public void setCertificateCache(CertificateInternCache certificateCache) {
+        this.certificateCache = certificateCache;
+        certificateCacheSet = true;
+        merlin.setCertificateCache(certificateCache);
+    }
+
+    @Override
+    public CertificateInternCache getCertificateCache() {
+        return merlin.getCertificateCache();
+    }
+
+    @Override
+    public X509Certificate loadCertificate(InputStream in) throws WSSecurityException {
+        return merlin.loadCertificate(in);
+    }
+
+    @Override
+    public byte[] getSKIBytesFromCert(X509Certificate cert) throws WSSecurityException {
+        return merlin.getSKIBytesFromCert(cert);
+    }
+
+    @Override
+    public byte[] getBytesFromCertificates(X509Certificate[] certs) throws WSSecurityException {
+        return merlin.getBytesFromCertificates(certs);
+    }
+
+    @Override
+    public X509Certificate[] getCertificatesFromBytes(byte[] data) throws WSSecurityException {
+        return merlin.getCertificatesFromBytes(data);
+    }
+
+    @Override
+    public X509Certificate[] getX509Certificates(CryptoType cryptoType) throws WSSecurityException {
+        return merlin.getX509Certificates(cryptoType);
+    }
+
+    @Override
+    public String getX509Identifier(X509Certificate cert) throws WSSecurityException {
+        return merlin.getX509Identifier(cert);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(X509Certificate certificate, CallbackHandler callbackHandler)
+        throws WSSecurityException {
+        return merlin.getPrivateKey(certificate, callbackHandler);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(PublicKey publicKey, CallbackHandler callbackHandler)
+        throws WSSecurityException {
+        return merlin.getPrivateKey(publicKey, callbackHandler);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String identifier, String password) throws WSSecurityException {
+        return merlin.getPrivateKey(identifier, password);
+    }
+
+    @Override
+    public void verifyTrust(
+        X509Certificate[] certs, boolean enableRevocation,
+        Collection<Pattern> subjectCertConstraints, Collection<Pattern> issuerCertConstraints
+    ) throws WSSecurityException {
+        merlin.verifyTrust(certs, enableRevocation, subjectCertConstraints, issuerCertConstraints);
+    }
+
+    @Override
+    public void verifyTrust(PublicKey publicKey) throws WSSecurityException {
+        merlin.verifyTrust(publicKey);
+    }
+
+    /**
+     * Waits for modifications of the watched files, and reloads the Crypto once the files have not
+     * been modified for the reload delay. The Crypto is only weakly referenced, so that the thread
+     * stops once it has been garbage collected.
+     */
+    private static final class Watcher implements Runnable {
+
+        private final WeakReference<ReloadableMerlin> crypto;
+        private final WatchService watchService;
+        private final Set<Path> files;
+        private final long reloadDelay;
+
+        Watcher(
+            WeakReference<ReloadableMerlin> crypto, WatchService watchService, Set<Path> files, long reloadDelay
+        ) {
+            this.crypto = crypto;
+            this.watchService = watchService;
+            this.files = files;
+            this.reloadDelay = reloadDelay;
+        }
+
+        @Override
+        public void run() {
+            try {
+                boolean modified = false;
+                while (true) {
+                    WatchKey key = watchService.poll(modified ? reloadDelay : IDLE_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                    if (key == null) {
+                        ReloadableMerlin reloadableMerlin = crypto.get();
+                        if (reloadableMerlin == null) {
+                            return;
+                        }
+                        if (modified) {
+                            modified = false;
+                            reload(reloadableMerlin);
+                        }
+                        continue;
+                    }
+
+                    Path directory = (Path)key.watchable();
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || files.contains(directory.resolve((Path)event.context()))) {
+                            modified = true;
+                        }
+                    }
+                    key.reset();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ClosedWatchServiceException e) {
+                LOG.debug("Stopped watching {}", files);
+            } finally {
+                try {
+                    watchService.close();
+                } catch (IOException e) {
+                    LOG.debug(e.getMessage(), e);
+                }
+            }
+        }
+
+        private static void reload(ReloadableMerlin reloadableMerlin) {
+            try {
+                reloadableMerlin.reload();
+            } catch (WSSecurityException | RuntimeException e) {
+                LOG.warn("The keystore and truststore cannot be reloaded, the current ones are kept: {}",
+                         e.getMessage());
+                LOG.debug(e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -23,6 +23,10 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 
 public final class AlgoFactory {
 
+    // The DerivationAlgorithms are stateless, and so can be shared
+    private static final DerivationAlgorithm P_SHA1_ALGORITHM = new P_SHA1();
+    private static final DerivationAlgorithm P_SHA256_ALGORITHM = new P_SHA256();
+
     private AlgoFactory() {
         // Complete
     }
@@ -38,7 +42,9 @@ public final class AlgoFactory {
     public static DerivationAlgorithm getInstance(String algorithm) throws WSSecurityException {
         if (ConversationConstants.DerivationAlgorithm.P_SHA_1_2005_12.equals(algorithm)
             || ConversationConstants.DerivationAlgorithm.P_SHA_1.equals(algorithm)) {
-            return new P_SHA1();
+            return P_SHA1_ALGORITHM;
+        } else if (ConversationConstants.DerivationAlgorithm.P_SHA_256_2005_12.equals(algorithm)) {
+            return P_SHA256_ALGORITHM;
         } else {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
                                           "unknownAlgorithm", new Object[] {algorithm});
@@ -181,6 +181,9 @@ public final class ConversationConstants {
         String P_SHA_1_2005_12 =
             "http://docs.oasis-open.org/ws-sx/ws-secureconversation/200512/dk/p_sha1";
 
+        String P_SHA_256_2005_12 =
+            "http://docs.oasis-open.org/ws-sx/ws-secureconversation/200512/dk/p_sha256";
+
         byte[] createKey(byte[] secret, byte[] seed, int offset, long length)
             throws WSSecurityException;
     }
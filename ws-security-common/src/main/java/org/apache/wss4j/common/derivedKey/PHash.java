@@ -0,0 +1,152 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.derivedKey;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import javax.security.auth.DestroyFailedException;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+
+/**
+ * P_hash as defined in RFC 2246 for TLS, for a given HMAC algorithm:
+ * <pre>
+ * P_hash(secret, seed) = HMAC_hash(secret, A(1) + seed) +
+ *                        HMAC_hash(secret, A(2) + seed) + ...
+ * A(0) = seed
+ * A(i) = HMAC_hash(secret, A(i-1))
+ * </pre>
+ *
+ * The Mac instances are cached per thread. A cached Mac is initialized with a dummy key after
+ * use, so that it does not retain any state derived from the secret. Only the requested bytes
+ * are generated: the HMAC_hash(secret, A(i) + seed) blocks before the offset are not computed,
+ * and complete blocks are written directly into the returned key.
+ */
+public abstract class PHash implements DerivationAlgorithm {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(PHash.class);
+
+    private static final ThreadLocal<Map<String, Mac>> MAC_CACHE = ThreadLocal.withInitial(HashMap::new);
+    private static final byte[] DUMMY_SECRET = new byte[1];
+
+    private final String macAlgorithm;
+
+    protected PHash(String macAlgorithm) {
+        this.macAlgorithm = macAlgorithm;
+    }
+
+    @Override
+    public byte[] createKey(byte[] secret, byte[] seed, int offset, long length)
+            throws WSSecurityException {
+
+        try {
+            Mac mac = getMac();
+
+            SecretKeySpec key = new SecretKeySpec(secret, macAlgorithm);
+            mac.init(key);
+            try {
+                return pHash(mac, seed, offset, (int) length);
+            } finally {
+                try {
+                    key.destroy();
+                } catch (DestroyFailedException e) {
+                    LOG.debug("Error destroying key: {}", e.getMessage());
+                }
+                // Replace the key state of the cached Mac
+                mac.init(new SecretKeySpec(DUMMY_SECRET, macAlgorithm));
+            }
+        } catch (NoSuchAlgorithmException | InvalidKeyException | ShortBufferException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e, "errorInKeyDerivation");
+        }
+    }
+
+    private Mac getMac() throws NoSuchAlgorithmException {
+        Map<String, Mac> macs = MAC_CACHE.get();
+        Mac mac = macs.get(macAlgorithm);
+        if (mac == null) {
+            mac = Mac.getInstance(macAlgorithm);
+            macs.put(macAlgorithm, mac);
+        }
+        return mac;
+    }
+
+    /**
+     * Generate the bytes [offset, offset + length) of P_hash(secret, seed)
+     *
+     * @param mac the HMAC algorithm, initialized with the secret
+     * @param seed the seed value to start the generation - A(0)
+     * @param offset the number of leading bytes to skip
+     * @param length the number of bytes to return
+     * @return a byte array that contains a secret key
+     * @throws ShortBufferException
+     */
+    private static byte[] pHash(Mac mac, byte[] seed, int offset, int length) throws ShortBufferException {
+        byte[] out = new byte[length];
+        int macLength = mac.getMacLength();
+        byte[] a = new byte[macLength];
+        byte[] block = null;
+
+        // A(1)
+        mac.update(seed);
+        mac.doFinal(a, 0);
+
+        int position = 0;
+        int written = 0;
+        while (written < length) {
+            if (position + macLength > offset) {
+                mac.update(a);
+                mac.update(seed);
+                int start = Math.max(offset - position, 0);
+                int tocpy = Math.min(macLength - start, length - written);
+                if (start == 0 && tocpy == macLength) {
+                    mac.doFinal(out, written);
+                } else {
+                    if (block == null) {
+                        block = new byte[macLength];
+                    }
+                    mac.doFinal(block, 0);
+                    System.arraycopy(block, start, out, written, tocpy);
+                }
+                written += tocpy;
+            }
+            position += macLength;
+
+            if (written < length) {
+                // A(i + 1)
+                mac.update(a);
+                mac.doFinal(a, 0);
+            }
+        }
+
+        Arrays.fill(a, (byte) 0);
+        if (block != null) {
+            Arrays.fill(block, (byte) 0);
+        }
+        return out;
+    }
+}
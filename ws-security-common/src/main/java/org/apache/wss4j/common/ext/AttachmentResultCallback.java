@@ -20,6 +20,14 @@ package org.apache.wss4j.common.ext;
 
 import javax.security.auth.callback.Callback;
 
+/**
+ * A Callback to hand a processed (e.g. decrypted or verified) attachment back to the caller.
+ *
+ * The source stream of the Attachment may be backed by a temporary file, if the attachment had to
+ * be buffered (see ThresholdAttachmentBufferFactory). The CallbackHandler takes over the source
+ * stream and must close it once it is read, which deletes the temporary file. A temporary file
+ * whose stream is not closed is only deleted once the stream has been garbage collected.
+ */
 public class AttachmentResultCallback implements Callback {
 
     private String attachmentId;
@@ -0,0 +1,457 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.saml;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.bean.ActionBean;
+import org.apache.wss4j.common.saml.bean.AdviceBean;
+import org.apache.wss4j.common.saml.bean.AttributeBean;
+import org.apache.wss4j.common.saml.bean.AttributeStatementBean;
+import org.apache.wss4j.common.saml.bean.AudienceRestrictionBean;
+import org.apache.wss4j.common.saml.bean.AuthDecisionStatementBean;
+import org.apache.wss4j.common.saml.bean.AuthenticationStatementBean;
+import org.apache.wss4j.common.saml.bean.ConditionsBean;
+import org.apache.wss4j.common.saml.bean.DelegateBean;
+import org.apache.wss4j.common.saml.bean.KeyInfoBean;
+import org.apache.wss4j.common.saml.bean.NameIDBean;
+import org.apache.wss4j.common.saml.bean.ProxyRestrictionBean;
+import org.apache.wss4j.common.saml.bean.SubjectBean;
+import org.apache.wss4j.common.saml.bean.SubjectConfirmationDataBean;
+import org.opensaml.saml.common.SAMLVersion;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * A cache of the (signed) SAML Assertions that are created on the outbound side from a SAMLCallback,
+ * so that an Assertion with the same content is not created, signed and marshalled again for every
+ * message, but imported into the message from its cached DOM form.
+ *
+ * The Assertions are keyed by an immutable copy of the content of the SAMLCallback: the version,
+ * Issuer, Subject, statements, Advice, Conditions except for the validity period, and for a signed
+ * Assertion the signing configuration, including the issuer Crypto instance. The beans of the
+ * SAMLCallback are copied, so a CallbackHandler that modifies and reuses them does not change the
+ * key of a cached Assertion. The ephemeral key of the Subject KeyInfo is part of the key as a SHA-256
+ * digest, so that the key itself is not held by the cache.
+ * Assertions with a OneTimeUse Condition, without a NotOnOrAfter validity, that are supplied by the
+ * CallbackHandler as a DOM Element, or whose content includes values that cannot be copied (DOM
+ * Elements or other objects, such as a KeyInfo Element or XMLObject attribute values) are not cached. A cached Assertion is used until the
+ * expiry margin before its NotOnOrAfter validity, after which a new Assertion is created.
+ */
+public class SamlAssertionCache {
+
+    public static final int DEFAULT_MAX_SIZE = 100;
+    public static final Duration DEFAULT_EXPIRY_MARGIN = Duration.ofSeconds(60);
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(SamlAssertionCache.class);
+
+    private final int maxSize;
+    private final Duration expiryMargin;
+    private final Map<List<Object>, CachedAssertion> assertions = new ConcurrentHashMap<>();
+
+    public SamlAssertionCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_EXPIRY_MARGIN);
+    }
+
+    /**
+     * @param maxSize the maximum number of Assertions to cache
+     * @param expiryMargin the time before the NotOnOrAfter validity of an Assertion after which
+     *        it is not used any more
+     */
+    public SamlAssertionCache(int maxSize, Duration expiryMargin) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size of the cache must be positive");
+        }
+        if (expiryMargin == null || expiryMargin.isNegative()) {
+            throw new IllegalArgumentException("The expiry margin of the cache must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.expiryMargin = expiryMargin;
+    }
+
+    /**
+     * Get a cached Assertion for the given SAMLCallback.
+     *
+     * @param samlCallback the SAMLCallback, as populated by the CallbackHandler
+     * @param doc the Document to import the cached Assertion into
+     * @return a SamlAssertionWrapper of the cached Assertion, imported into the given Document,
+     *         or null if no valid Assertion is cached for the SAMLCallback
+     * @throws WSSecurityException
+     */
+    public SamlAssertionWrapper getAssertion(SAMLCallback samlCallback, Document doc)
+        throws WSSecurityException {
+        List<Object> key = createCacheKey(samlCallback);
+        if (key == null) {
+            return null;
+        }
+        CachedAssertion cachedAssertion = assertions.get(key);
+        if (cachedAssertion == null) {
+            return null;
+        }
+        if (!Instant.now().isBefore(cachedAssertion.expiry)) {
+            assertions.remove(key, cachedAssertion);
+            return null;
+        }
+        return new SamlAssertionWrapper(cachedAssertion.importInto(doc));
+    }
+
+    /**
+     * Add a newly created Assertion to the cache. This marshals (and so signs) the Assertion, so
+     * the given SamlAssertionWrapper must not be used afterwards. Instead, the returned
+     * SamlAssertionWrapper of the marshalled Assertion must be added to the message.
+     *
+     * @param samlCallback the SAMLCallback the Assertion was created from
+     * @param samlAssertion the Assertion, which is not marshalled yet
+     * @param doc the Document to import the marshalled Assertion into
+     * @return a SamlAssertionWrapper of the marshalled Assertion, imported into the given Document
+     * @throws WSSecurityException
+     */
+    public SamlAssertionWrapper addAssertion(
+        SAMLCallback samlCallback, SamlAssertionWrapper samlAssertion, Document doc
+    ) throws WSSecurityException {
+        List<Object> key = createCacheKey(samlCallback);
+        Instant notOnOrAfter = getNotOnOrAfter(samlAssertion);
+        if (key == null || notOnOrAfter == null) {
+            return samlAssertion;
+        }
+
+        CachedAssertion cachedAssertion =
+            new CachedAssertion(samlAssertion.toDOM(null), notOnOrAfter.minus(expiryMargin));
+        if (Instant.now().isBefore(cachedAssertion.expiry)) {
+            if (assertions.size() >= maxSize) {
+                removeExpiredAssertions();
+            }
+            if (assertions.size() < maxSize || assertions.containsKey(key)) {
+                assertions.put(key, cachedAssertion);
+            } else {
+                LOG.debug("The SAML Assertion cache is full");
+            }
+        }
+        return new SamlAssertionWrapper(cachedAssertion.importInto(doc));
+    }
+
+    public int size() {
+        return assertions.size();
+    }
+
+    public void clear() {
+        assertions.clear();
+    }
+
+    private void removeExpiredAssertions() {
+        Instant now = Instant.now();
+        Iterator<CachedAssertion> iterator = assertions.values().iterator();
+        while (iterator.hasNext()) {
+            if (!now.isBefore(iterator.next().expiry)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Create the cache key for a SAMLCallback, or return null if the Assertion is not cacheable
+     */
+    private static List<Object> createCacheKey(SAMLCallback samlCallback) {
+        if (samlCallback.getAssertionElement() != null) {
+            return null;
+        }
+        ConditionsBean conditions = samlCallback.getConditions();
+        if (conditions != null && conditions.isOneTimeUse()) {
+            return null;
+        }
+        return new CacheKeyBuilder().build(samlCallback);
+    }
+
+    private static Instant getNotOnOrAfter(SamlAssertionWrapper samlAssertion) {
+        if (samlAssertion.getSamlVersion() == SAMLVersion.VERSION_20) {
+            org.opensaml.saml.saml2.core.Conditions conditions = samlAssertion.getSaml2().getConditions();
+            return conditions == null ? null : conditions.getNotOnOrAfter();
+        }
+        org.opensaml.saml.saml1.core.Conditions conditions = samlAssertion.getSaml1().getConditions();
+        return conditions == null ? null : conditions.getNotOnOrAfter();
+    }
+
+    /**
+     * Copies the content of a SAMLCallback into an immutable key of nested unmodifiable Lists. Only
+     * values that are immutable themselves are copied into the key, the Assertion is not cacheable
+     * if the SAMLCallback contains any other value.
+     */
+    private static final class CacheKeyBuilder {
+
+        private boolean cacheable = true;
+
+        List<Object> build(SAMLCallback samlCallback) {
+            List<Object> key = new ArrayList<>();
+            key.add(samlCallback.getSamlVersion());
+            key.add(samlCallback.getIssuer());
+            key.add(samlCallback.getIssuerFormat());
+            key.add(samlCallback.getIssuerQualifier());
+            key.add(copySubject(samlCallback.getSubject()));
+            key.add(copyAll(samlCallback.getAuthenticationStatementData(), this::copyAuthenticationStatement));
+            key.add(copyAll(samlCallback.getAttributeStatementData(), this::copyAttributeStatement));
+            key.add(copyAll(samlCallback.getAuthDecisionStatementData(), this::copyAuthDecisionStatement));
+            key.add(copyAdvice(samlCallback.getAdvice()));
+            key.add(copyConditions(samlCallback.getConditions()));
+            key.add(samlCallback.isSignAssertion());
+            if (samlCallback.isSignAssertion()) {
+                key.add(samlCallback.getIssuerCrypto());
+                key.add(samlCallback.getIssuerKeyName());
+                key.add(samlCallback.isSendKeyValue());
+                key.add(samlCallback.getCanonicalizationAlgorithm());
+                key.add(samlCallback.getSignatureAlgorithm());
+                key.add(samlCallback.getSignatureDigestAlgorithm());
+            }
+            return cacheable ? Collections.unmodifiableList(key) : null;
+        }
+
+        private List<Object> copySubject(SubjectBean subject) {
+            if (subject == null) {
+                return null;
+            }
+            return values(
+                subject.getSubjectName(),
+                subject.getSubjectNameQualifier(),
+                subject.getSubjectNameIDFormat(),
+                subject.getSubjectNameSPNameQualifier(),
+                subject.getSubjectNameSPProvidedID(),
+                subject.getSubjectConfirmationMethod(),
+                copyKeyInfo(subject.getKeyInfo()),
+                copySubjectConfirmationData(subject.getSubjectConfirmationData()),
+                copyNameID(subject.getSubjectConfirmationNameID())
+            );
+        }
+
+        private List<Object> copyKeyInfo(KeyInfoBean keyInfo) {
+            if (keyInfo == null) {
+                return null;
+            }
+            if (keyInfo.getElement() != null) {
+                cacheable = false;
+            }
+            return values(
+                keyInfo.getCertIdentifer(),
+                keyInfo.getCertificate(),
+                keyInfo.getPublicKey(),
+                getEphemeralKeyDigest(keyInfo.getEphemeralKey())
+            );
+        }
+
+        private List<Object> copySubjectConfirmationData(SubjectConfirmationDataBean subjectConfirmationData) {
+            if (subjectConfirmationData == null) {
+                return null;
+            }
+            return values(
+                subjectConfirmationData.getRecipient(),
+                subjectConfirmationData.getAddress(),
+                subjectConfirmationData.getInResponseTo(),
+                subjectConfirmationData.getNotBefore(),
+                subjectConfirmationData.getNotAfter(),
+                copyAll(subjectConfirmationData.getAny(), this::copyValue)
+            );
+        }
+
+        private List<Object> copyNameID(NameIDBean nameID) {
+            if (nameID == null) {
+                return null;
+            }
+            return values(
+                nameID.getNameValue(),
+                nameID.getNameIDFormat(),
+                nameID.getNameQualifier(),
+                nameID.getSPNameQualifier(),
+                nameID.getSPProvidedID()
+            );
+        }
+
+        private List<Object> copyAuthenticationStatement(AuthenticationStatementBean statement) {
+            return values(
+                copySubject(statement.getSubject()),
+                statement.getAuthenticationMethod(),
+                statement.getAuthenticationInstant(),
+                statement.getSessionNotOnOrAfter(),
+                statement.getSubjectLocality() == null ? null : values(
+                    statement.getSubjectLocality().getIpAddress(),
+                    statement.getSubjectLocality().getDnsAddress()
+                ),
+                statement.getSessionIndex()
+            );
+        }
+
+        private List<Object> copyAttributeStatement(AttributeStatementBean statement) {
+            return values(
+                copySubject(statement.getSubject()),
+                copyAll(statement.getSamlAttributes(), this::copyAttribute)
+            );
+        }
+
+        private List<Object> copyAttribute(AttributeBean attribute) {
+            return values(
+                attribute.getSimpleName(),
+                attribute.getQualifiedName(),
+                attribute.getNameFormat(),
+                copyAll(attribute.getAttributeValues(), this::copyValue)
+            );
+        }
+
+        private List<Object> copyAuthDecisionStatement(AuthDecisionStatementBean statement) {
+            return values(
+                copySubject(statement.getSubject()),
+                statement.getDecision(),
+                statement.getResource(),
+                copyAll(statement.getActions(), this::copyAction),
+                copyValue(statement.getEvidence())
+            );
+        }
+
+        private List<Object> copyAction(ActionBean action) {
+            return values(action.getActionNamespace(), action.getContents());
+        }
+
+        private List<Object> copyAdvice(AdviceBean advice) {
+            if (advice == null) {
+                return null;
+            }
+            if (!advice.getAssertions().isEmpty()) {
+                cacheable = false;
+            }
+            return values(
+                copyAll(advice.getIdReferences(), this::copyValue),
+                copyAll(advice.getUriReferences(), this::copyValue)
+            );
+        }
+
+        /**
+         * The validity period is left out, as a cached Assertion is used until it expires
+         */
+        private List<Object> copyConditions(ConditionsBean conditions) {
+            if (conditions == null) {
+                return null;
+            }
+            return values(
+                conditions.getTokenPeriodSeconds(),
+                copyAll(conditions.getAudienceRestrictions(), this::copyAudienceRestriction),
+                copyProxyRestriction(conditions.getProxyRestriction()),
+                copyAll(conditions.getDelegates(), this::copyDelegate)
+            );
+        }
+
+        private List<Object> copyAudienceRestriction(AudienceRestrictionBean audienceRestriction) {
+            return copyAll(audienceRestriction.getAudienceURIs(), this::copyValue);
+        }
+
+        private List<Object> copyProxyRestriction(ProxyRestrictionBean proxyRestriction) {
+            if (proxyRestriction == null) {
+                return null;
+            }
+            return values(
+                proxyRestriction.getCount(),
+                copyAll(proxyRestriction.getAudienceURIs(), this::copyValue)
+            );
+        }
+
+        private List<Object> copyDelegate(DelegateBean delegate) {
+            return values(
+                delegate.getDelegationInstant(),
+                delegate.getConfirmationMethod(),
+                copyNameID(delegate.getNameIDBean())
+            );
+        }
+
+        private <T> List<Object> copyAll(List<T> beans, Function<T, Object> copier) {
+            if (beans == null) {
+                return null;
+            }
+            List<Object> copies = new ArrayList<>(beans.size());
+            for (T bean : beans) {
+                copies.add(bean == null ? null : copier.apply(bean));
+            }
+            return Collections.unmodifiableList(copies);
+        }
+
+        /**
+         * Return an immutable value as it is, and mark the Assertion as not cacheable otherwise
+         */
+        private Object copyValue(Object value) {
+            if (value == null || value instanceof String || value instanceof Boolean
+                || value instanceof Integer || value instanceof Long || value instanceof Enum
+                || value instanceof Instant || value instanceof X509Certificate || value instanceof PublicKey) {
+                return value;
+            }
+            cacheable = false;
+            return null;
+        }
+
+        /**
+         * The ephemeral key is added to the key as a digest, so that the key itself is not held by the cache
+         */
+        private String getEphemeralKeyDigest(byte[] ephemeralKey) {
+            if (ephemeralKey == null) {
+                return null;
+            }
+            try {
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                return Base64.getEncoder().encodeToString(digest.digest(ephemeralKey));
+            } catch (NoSuchAlgorithmException e) {
+                LOG.debug("Not caching a SAML Assertion with an ephemeral key: {}", e.getMessage());
+                cacheable = false;
+                return null;
+            }
+        }
+
+        private static List<Object> values(Object... values) {
+            return Collections.unmodifiableList(Arrays.asList(values));
+        }
+    }
+
+    private static final class CachedAssertion {
+
+        private final Element assertionElement;
+        private final Instant expiry;
+
+        CachedAssertion(Element assertionElement, Instant expiry) {
+            this.assertionElement = assertionElement;
+            this.expiry = expiry;
+        }
+
+        /**
+         * The DOM implementation is not thread-safe for reading, so concurrent imports of the
+         * cached Element are serialized
+         */
+        synchronized Element importInto(Document doc) {
+            return (Element)doc.importNode(assertionElement, true);
+        }
+    }
+}
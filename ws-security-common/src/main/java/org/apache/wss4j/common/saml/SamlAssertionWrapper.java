@@ -733,6 +733,15 @@ public class SamlAssertionWrapper {
         return signatureKeyInfo;
     }
 
+    /**
+     * Set the SAMLKeyInfo associated with the signature of the assertion, if the signature
+     * has already been verified, e.g. for an assertion that is cached as verified.
+     * @param signatureKeyInfo the SAMLKeyInfo associated with the verified signature
+     */
+    public void setSignatureKeyInfo(SAMLKeyInfo signatureKeyInfo) {
+        this.signatureKeyInfo = signatureKeyInfo;
+    }
+
     /**
      * Get the SAMLKeyInfo associated with the Subject KeyInfo
      * @return the SAMLKeyInfo associated with the Subject KeyInfo
@@ -0,0 +1,207 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.saml;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.opensaml.saml.common.SAMLVersion;
+import org.w3c.dom.Element;
+
+/**
+ * A cache of the signed SAML Assertions that have been received and successfully verified, so that
+ * the signature and the trust in the signing certificate of an Assertion that is presented again
+ * (e.g. because a client reuses a token for its whole lifetime) are not verified again. The
+ * Conditions, audience and other checks of the Assertion are still performed for every message.
+ *
+ * The Assertions are keyed by their ID and a SHA-256 digest of their exclusive canonical form
+ * (with comments), so that an Assertion is only found in the cache if it is identical to the
+ * verified one. Assertions are cached until their NotOnOrAfter validity, but no longer than a
+ * configurable time to live, so that a revoked or removed signing certificate is not trusted
+ * indefinitely. Assertions without a NotOnOrAfter validity are not cached. As the trust in the
+ * signing certificate is cached, a cache instance must only be shared by endpoints with the same
+ * signature trust configuration. The cache is not used if certificate revocation is enabled.
+ */
+public class VerifiedSamlAssertionCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+    public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofMinutes(5);
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(VerifiedSamlAssertionCache.class);
+
+    private final int maxSize;
+    private final Duration timeToLive;
+    private final Map<String, VerifiedAssertion> assertions = new ConcurrentHashMap<>();
+
+    public VerifiedSamlAssertionCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param maxSize the maximum number of verified Assertions to cache
+     */
+    public VerifiedSamlAssertionCache(int maxSize) {
+        this(maxSize, DEFAULT_TIME_TO_LIVE);
+    }
+
+    /**
+     * @param maxSize the maximum number of verified Assertions to cache
+     * @param timeToLive the maximum time a verified Assertion is cached, after which its signature and
+     *        the trust in its signing certificate are verified again
+     */
+    public VerifiedSamlAssertionCache(int maxSize, Duration timeToLive) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximum size of the cache must be positive");
+        }
+        if (timeToLive == null || timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("The time to live of the cache must be positive");
+        }
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Create the cache key of a received Assertion
+     *
+     * @param samlAssertion the received Assertion
+     * @return the cache key of the Assertion
+     * @throws WSSecurityException
+     */
+    public static String createCacheKey(SamlAssertionWrapper samlAssertion) throws WSSecurityException {
+        Element assertionElement = samlAssertion.getElement();
+        if (assertionElement == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+        }
+
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            try (OutputStream outputStream = new BufferedOutputStream(
+                new DigestOutputStream(OutputStream.nullOutputStream(), messageDigest))) {
+                Canonicalizer canonicalizer =
+                    Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_EXCL_WITH_COMMENTS);
+                canonicalizer.canonicalizeSubtree(assertionElement, outputStream);
+            }
+            return samlAssertion.getId() + " " + Base64.getEncoder().encodeToString(messageDigest.digest());
+        } catch (NoSuchAlgorithmException | XMLSecurityException | IOException ex) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex);
+        }
+    }
+
+    /**
+     * Get the SAMLKeyInfo of the signature of a verified Assertion.
+     *
+     * @param cacheKey the cache key of the Assertion
+     * @return the SAMLKeyInfo of the verified signature of the Assertion, or null if the Assertion
+     *         is not cached as verified, or its cache entry has expired
+     */
+    public SAMLKeyInfo getSignatureKeyInfo(String cacheKey) {
+        VerifiedAssertion verifiedAssertion = assertions.get(cacheKey);
+        if (verifiedAssertion == null) {
+            return null;
+        }
+        if (!Instant.now().isBefore(verifiedAssertion.expiry)) {
+            assertions.remove(cacheKey, verifiedAssertion);
+            return null;
+        }
+        return verifiedAssertion.signatureKeyInfo;
+    }
+
+    /**
+     * Add an Assertion, whose signature and trust in the signing certificate have been successfully
+     * verified, to the cache.
+     *
+     * @param cacheKey the cache key of the Assertion
+     * @param samlAssertion the verified Assertion
+     * @param signatureKeyInfo the SAMLKeyInfo of the verified signature
+     */
+    public void addVerifiedAssertion(
+        String cacheKey, SamlAssertionWrapper samlAssertion, SAMLKeyInfo signatureKeyInfo
+    ) {
+        Instant notOnOrAfter = getNotOnOrAfter(samlAssertion);
+        Instant now = Instant.now();
+        if (notOnOrAfter == null || signatureKeyInfo == null || !now.isBefore(notOnOrAfter)) {
+            return;
+        }
+        Instant expiry = now.plus(timeToLive);
+        if (notOnOrAfter.isBefore(expiry)) {
+            expiry = notOnOrAfter;
+        }
+        if (assertions.size() >= maxSize) {
+            removeExpiredAssertions();
+        }
+        if (assertions.size() < maxSize) {
+            assertions.put(cacheKey, new VerifiedAssertion(signatureKeyInfo, expiry));
+        } else {
+            LOG.debug("The verified SAML Assertion cache is full");
+        }
+    }
+
+    public int size() {
+        return assertions.size();
+    }
+
+    public void clear() {
+        assertions.clear();
+    }
+
+    private void removeExpiredAssertions() {
+        Instant now = Instant.now();
+        Iterator<VerifiedAssertion> iterator = assertions.values().iterator();
+        while (iterator.hasNext()) {
+            if (!now.isBefore(iterator.next().expiry)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private static Instant getNotOnOrAfter(SamlAssertionWrapper samlAssertion) {
+        if (samlAssertion.getSamlVersion() == SAMLVersion.VERSION_20) {
+            org.opensaml.saml.saml2.core.Conditions conditions = samlAssertion.getSaml2().getConditions();
+            return conditions == null ? null : conditions.getNotOnOrAfter();
+        }
+        org.opensaml.saml.saml1.core.Conditions conditions = samlAssertion.getSaml1().getConditions();
+        return conditions == null ? null : conditions.getNotOnOrAfter();
+    }
+
+    private static final class VerifiedAssertion {
+
+        private final SAMLKeyInfo signatureKeyInfo;
+        private final Instant expiry;
+
+        VerifiedAssertion(SAMLKeyInfo signatureKeyInfo, Instant expiry) {
+            this.signatureKeyInfo = signatureKeyInfo;
+            this.expiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Holds the bytes of an attachment, so that an attachment stream can be read again after it has
+ * been digested or transformed. The bytes are written to the OutputStream once, and are then read
+ * from the InputStream.
+ */
+public interface AttachmentBuffer extends Closeable {
+
+    /**
+     * Get the OutputStream to write the bytes to. The buffer is complete when it is closed.
+     */
+    OutputStream getOutputStream() throws IOException;
+
+    /**
+     * Get an InputStream to read the buffered bytes. This may only be called once, after the
+     * OutputStream was closed. The resources of the buffer are released when the InputStream is
+     * closed.
+     */
+    InputStream getInputStream() throws IOException;
+
+    /**
+     * Release the resources of the buffer, if the InputStream was not requested.
+     */
+    @Override
+    void close() throws IOException;
+}
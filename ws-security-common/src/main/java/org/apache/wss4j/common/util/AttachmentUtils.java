@@ -661,6 +661,17 @@ public final class AttachmentUtils {
         String attachmentId,
         byte[] bytes,
         CallbackHandler attachmentCallbackHandler
+    ) throws WSSecurityException {
+        storeBytesInAttachment(parentElement, doc, attachmentId, new ByteArrayInputStream(bytes),
+                               attachmentCallbackHandler);
+    }
+
+    public static void storeBytesInAttachment(
+        Element parentElement,
+        Document doc,
+        String attachmentId,
+        InputStream sourceStream,
+        CallbackHandler attachmentCallbackHandler
     ) throws WSSecurityException {
         parentElement.setAttributeNS(XMLUtils.XMLNS_NS, "xmlns:xop", WSS4JConstants.XOP_NS);
         Element xopInclude =
@@ -675,7 +686,7 @@ public final class AttachmentUtils {
         Attachment resultAttachment = new Attachment();
         resultAttachment.setId(attachmentId);
         resultAttachment.setMimeType("application/ciphervalue");
-        resultAttachment.setSourceStream(new ByteArrayInputStream(bytes));
+        resultAttachment.setSourceStream(sourceStream);
 
         AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
         attachmentResultCallback.setAttachmentId(attachmentId);
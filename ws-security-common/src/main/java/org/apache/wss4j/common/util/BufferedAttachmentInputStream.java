@@ -0,0 +1,148 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * An InputStream over the source stream of an attachment, which can be read again from the start
+ * after it was digested or transformed, to pass it on in an AttachmentResultCallback. If the source
+ * stream supports mark/reset, it is marked and reset. Otherwise the bytes are copied into an
+ * AttachmentBuffer while they are read, so that the attachment is read only once from its source,
+ * and is not held in memory as a whole if the AttachmentBuffer spills to disk.
+ *
+ * Closing this stream does not close the source stream, as the transforms close the streams
+ * they read.
+ */
+public class BufferedAttachmentInputStream extends FilterInputStream {
+
+    private final AttachmentBuffer attachmentBuffer;
+    private final OutputStream bufferOutputStream;
+
+    /**
+     * @param sourceStream the source stream of the attachment
+     * @param attachmentBufferFactory the AttachmentBufferFactory to buffer a source stream that does
+     *                                not support mark/reset, or null for the default
+     */
+    public BufferedAttachmentInputStream(
+        InputStream sourceStream, AttachmentBufferFactory attachmentBufferFactory
+    ) throws IOException {
+        super(sourceStream);
+        if (sourceStream.markSupported()) {
+            //try to reuse the inputStream in the hope that the provided inputStream is backed by a disk storage
+            sourceStream.mark(Integer.MAX_VALUE);
+            attachmentBuffer = null;
+            bufferOutputStream = null;
+        } else {
+            AttachmentBufferFactory factory = attachmentBufferFactory;
+            if (factory == null) {
+                factory = ThresholdAttachmentBufferFactory.getDefault();
+            }
+            attachmentBuffer = factory.newAttachmentBuffer();
+            bufferOutputStream = attachmentBuffer.getOutputStream();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = in.read();
+        if (b != -1 && bufferOutputStream != null) {
+            bufferOutputStream.write(b);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = in.read(b, off, len);
+        if (read > 0 && bufferOutputStream != null) {
+            bufferOutputStream.write(b, off, read);
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        if (bufferOutputStream == null) {
+            return in.skip(n);
+        }
+        byte[] buf = new byte[(int) Math.min(n, 8192)];
+        long skipped = 0;
+        while (skipped < n) {
+            int read = read(buf, 0, (int) Math.min(n - skipped, buf.length));
+            if (read == -1) {
+                break;
+            }
+            skipped += read;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        // mark/reset is not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the source stream is read again by getReplayStream()
+    }
+
+    /**
+     * Get a stream to read the attachment again from the start. The rest of the source stream is read
+     * first, if it was not read completely. This stream must not be read anymore afterwards. The
+     * returned stream must be closed, to release a temporary file that backs the buffer.
+     */
+    public InputStream getReplayStream() throws IOException {
+        if (attachmentBuffer == null) {
+            in.reset();
+            return in;
+        }
+        byte[] buf = new byte[8192];
+        while (read(buf, 0, buf.length) != -1) { //NOPMD
+            // read the rest of the attachment into the buffer
+        }
+        in.close();
+        bufferOutputStream.close();
+        return attachmentBuffer.getInputStream();
+    }
+
+    /**
+     * Release the AttachmentBuffer, if the attachment is not going to be read again
+     */
+    public void release() throws IOException {
+        if (attachmentBuffer != null) {
+            attachmentBuffer.close();
+        }
+    }
+}
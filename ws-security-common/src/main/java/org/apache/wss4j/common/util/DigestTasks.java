@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the digest tasks of a Signature concurrently on an Executor. This is shared by the DOM and
+ * the streaming (StAX) code, so that References and attachments are digested in the same way.
+ */
+public final class DigestTasks {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(DigestTasks.class);
+
+    private DigestTasks() {
+        // Complete
+    }
+
+    /**
+     * Get the default Executor to digest with. This is an Executor that starts a virtual thread per
+     * task if the JVM supports it, and the common ForkJoinPool otherwise.
+     */
+    public static Executor getDefaultExecutor() {
+        return DefaultExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * Run the tasks on the Executor, the first one on the calling thread, and wait for all of them.
+     * A task that is rejected by the Executor is run on the calling thread instead.
+     */
+    public static void runAll(List<? extends Runnable> tasks, Executor executor) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        List<CompletableFuture<Void>> futures = new ArrayList<>(tasks.size() - 1);
+        for (int i = 1; i < tasks.size(); i++) {
+            Runnable task = tasks.get(i);
+            try {
+                futures.add(CompletableFuture.runAsync(task, executor));
+            } catch (RejectedExecutionException ex) {
+                LOG.debug("Digesting on the calling thread: {}", ex.getMessage());
+                task.run();
+            }
+        }
+        tasks.get(0).run();
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+    }
+
+    private static final class DefaultExecutorHolder {
+
+        private static final Executor EXECUTOR = createExecutor();
+
+        private static Executor createExecutor() {
+            try {
+                Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                return (Executor)method.invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                LOG.debug("Virtual threads are not available, using the common ForkJoinPool");
+                return ForkJoinPool.commonPool();
+            }
+        }
+    }
+}
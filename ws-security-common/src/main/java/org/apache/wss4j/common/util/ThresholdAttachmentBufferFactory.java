@@ -0,0 +1,248 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.ref.Cleaner;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An AttachmentBufferFactory for AttachmentBuffers that hold the bytes of an attachment in memory
+ * up to a threshold, and spill them to a temporary file when the threshold is exceeded. The
+ * temporary file is deleted when the InputStream of the buffer is closed. As a fallback, it is also
+ * deleted once an InputStream that was not closed has been garbage collected.
+ */
+public class ThresholdAttachmentBufferFactory implements AttachmentBufferFactory {
+
+    /**
+     * The default threshold of 128 KB
+     */
+    public static final int DEFAULT_THRESHOLD = 128 * 1024;
+
+    private static final ThresholdAttachmentBufferFactory DEFAULT_INSTANCE =
+        new ThresholdAttachmentBufferFactory(DEFAULT_THRESHOLD);
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final int threshold;
+    private final Path directory;
+
+    /**
+     * @param threshold the number of bytes above which the bytes are written to a temporary file
+     */
+    public ThresholdAttachmentBufferFactory(int threshold) {
+        this(threshold, null);
+    }
+
+    /**
+     * @param threshold the number of bytes above which the bytes are written to a temporary file
+     * @param directory the directory to create the temporary files in, or null for the default
+     *                  temporary-file directory
+     */
+    public ThresholdAttachmentBufferFactory(int threshold, Path directory) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("The threshold must not be negative");
+        }
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    /**
+     * Get a ThresholdAttachmentBufferFactory with the default threshold and temporary-file directory
+     */
+    public static ThresholdAttachmentBufferFactory getDefault() {
+        return DEFAULT_INSTANCE;
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public AttachmentBuffer newAttachmentBuffer() throws IOException {
+        return new ThresholdAttachmentBuffer(threshold, directory);
+    }
+
+    private static final class ThresholdAttachmentBuffer implements AttachmentBuffer {
+
+        private final int threshold;
+        private final Path directory;
+        private ByteArrayOutputStream memoryOutputStream = new ByteArrayOutputStream();
+        private Path file;
+        private OutputStream fileOutputStream;
+        private boolean written;
+        private boolean read;
+
+        private final OutputStream outputStream = new OutputStream() {
+
+            @Override
+            public void write(int b) throws IOException {
+                if (file == null && memoryOutputStream.size() >= threshold) {
+                    spill();
+                }
+                getTarget().write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (file == null && memoryOutputStream.size() + len > threshold) {
+                    spill();
+                }
+                getTarget().write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                getTarget().flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (!written) {
+                    written = true;
+                    if (fileOutputStream != null) {
+                        fileOutputStream.close();
+                    }
+                }
+            }
+        };
+
+        ThresholdAttachmentBuffer(int threshold, Path directory) {
+            this.threshold = threshold;
+            this.directory = directory;
+        }
+
+        private OutputStream getTarget() throws IOException {
+            if (written) {
+                throw new IOException("The attachment buffer is already complete");
+            }
+            return file == null ? memoryOutputStream : fileOutputStream;
+        }
+
+        private void spill() throws IOException {
+            if (directory == null) {
+                file = Files.createTempFile("wss4j-attachment-", ".tmp");
+            } else {
+                file = Files.createTempFile(directory, "wss4j-attachment-", ".tmp");
+            }
+            fileOutputStream = new BufferedOutputStream(Files.newOutputStream(file));
+            memoryOutputStream.writeTo(fileOutputStream);
+            memoryOutputStream = null;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (!written) {
+                throw new IOException("The attachment buffer is not complete");
+            }
+            if (read) {
+                throw new IOException("The attachment buffer was already read");
+            }
+            read = true;
+            if (file == null) {
+                InputStream inputStream = new ByteArrayInputStream(memoryOutputStream.toByteArray());
+                memoryOutputStream = null;
+                return inputStream;
+            }
+            return new TemporaryFileInputStream(file);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!read) {
+                read = true;
+                memoryOutputStream = null;
+                if (file != null) {
+                    try {
+                        if (fileOutputStream != null) {
+                            fileOutputStream.close();
+                        }
+                    } finally {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * An InputStream over a temporary file, which is deleted when the stream is closed, or when
+     * the stream is garbage collected without having been closed
+     */
+    private static final class TemporaryFileInputStream extends FilterInputStream {
+
+        private final Cleaner.Cleanable cleanable;
+
+        TemporaryFileInputStream(Path file) throws IOException {
+            this(Files.newInputStream(file, StandardOpenOption.DELETE_ON_CLOSE));
+        }
+
+        private TemporaryFileInputStream(InputStream fileInputStream) {
+            super(new BufferedInputStream(fileInputStream));
+            // The cleanup action must not refer to this stream
+            cleanable = CLEANER.register(this, new CloseAction(fileInputStream));
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                cleanable.clean();
+            }
+        }
+    }
+
+    private static final class CloseAction implements Runnable {
+
+        private final InputStream fileInputStream;
+
+        CloseAction(InputStream fileInputStream) {
+            this.fileInputStream = fileInputStream;
+        }
+
+        @Override
+        public void run() {
+            try {
+                fileInputStream.close();
+            } catch (IOException ex) { //NOPMD
+                // the temporary file could not be deleted
+            }
+        }
+    }
+}
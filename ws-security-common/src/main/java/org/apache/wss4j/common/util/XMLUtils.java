@@ -25,6 +25,7 @@ import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.XMLConstants;
 import javax.xml.transform.Source;
@@ -327,6 +328,70 @@ public final class XMLUtils {
     }
 
 
+    /**
+     * Index all of the elements of the tree below (and including) <code>startNode</code> by their
+     * Id, in a single depth-first pass. An element with a wsu:Id or an Id attribute with no
+     * namespace is added to <code>idIndex</code> under each of those values, and an element with an
+     * ID or AssertionID attribute with no namespace (i.e. a SAML Assertion) is added to
+     * <code>samlIdIndex</code>. Elements with the same Id are collected in a list in document order,
+     * so that duplicates can be detected. The siblings of <code>startNode</code> are not indexed.
+     *
+     * @param startNode Where to start the indexing
+     * @param idIndex The index of wsu:Id and Id values
+     * @param samlIdIndex The index of ID and AssertionID values
+     */
+    public static void indexElementIds(
+        Node startNode, Map<String, List<Element>> idIndex, Map<String, List<Element>> samlIdIndex
+    ) {
+        if (startNode == null) {
+            return;
+        }
+        final Node rootNode = startNode;
+        Node processedNode = null;
+
+        while (startNode != null) {
+            // start node processing at this point
+            if (startNode.getNodeType() == Node.ELEMENT_NODE) {
+                Element se = (Element) startNode;
+                if (se.hasAttributes()) {
+                    addToIndex(idIndex, se.getAttributeNS(WSU_NS, "Id"), se.getAttributeNS(null, "Id"), se);
+                    addToIndex(samlIdIndex, se.getAttributeNS(null, "ID"), se.getAttributeNS(null, "AssertionID"), se);
+                }
+            }
+
+            processedNode = startNode;
+            startNode = startNode.getFirstChild();
+
+            // no child, this node is done.
+            if (startNode == null) {
+                if (processedNode == rootNode) {
+                    return;
+                }
+                // close node processing, get sibling
+                startNode = processedNode.getNextSibling();
+            }
+            // no more siblings, get parent, all children
+            // of parent are processed.
+            while (startNode == null) {
+                processedNode = processedNode.getParentNode();
+                if (processedNode == rootNode) {
+                    return;
+                }
+                // close parent node processing (processed node now)
+                startNode = processedNode.getNextSibling();
+            }
+        }
+    }
+
+    private static void addToIndex(Map<String, List<Element>> index, String id, String otherId, Element element) {
+        if (id.length() != 0) {
+            index.computeIfAbsent(id, k -> new ArrayList<>(1)).add(element);
+        }
+        if (otherId.length() != 0 && !otherId.equals(id)) {
+            index.computeIfAbsent(otherId, k -> new ArrayList<>(1)).add(element);
+        }
+    }
+
     /**
      * Returns the first element that matches <code>name</code> and
      * <code>namespace</code>. <p/> This is a replacement for a XPath lookup
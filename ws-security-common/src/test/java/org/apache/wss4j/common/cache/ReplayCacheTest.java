@@ -23,7 +23,12 @@ import java.io.IOException;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -50,6 +55,102 @@ public class ReplayCacheTest {
         }
     }
 
+    @Test
+    public void testConcurrentReplayCache() throws InterruptedException, IOException {
+        try (ReplayCache replayCache = new ConcurrentReplayCache()) {
+            testReplayCacheInstance(replayCache);
+        }
+    }
+
+    @Test
+    public void testConcurrentReplayCacheEviction() throws Exception {
+        try (ConcurrentReplayCache replayCache = new ConcurrentReplayCache()) {
+            for (int i = 0; i < 100; i++) {
+                replayCache.add(UUID.randomUUID().toString(), Instant.now().plusSeconds(1L));
+            }
+            String id = UUID.randomUUID().toString();
+            replayCache.add(id);
+            assertEquals(101, replayCache.size());
+
+            Thread.sleep(2250L);
+            assertTrue(replayCache.contains(id));
+            assertEquals(1, replayCache.size());
+        }
+    }
+
+    @Test
+    public void testConcurrentReplayCacheMultipleThreads() throws Exception {
+        try (ConcurrentReplayCache replayCache = new ConcurrentReplayCache()) {
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        String id = UUID.randomUUID().toString();
+                        assertFalse(replayCache.contains(id));
+                        replayCache.add(id);
+                        assertTrue(replayCache.contains(id));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            executor.shutdown();
+            assertEquals(8000, replayCache.size());
+        }
+    }
+
+    @Test
+    public void testMemoryReplayCacheAddIfAbsentMultipleThreads() throws Exception {
+        try (ReplayCache replayCache = new MemoryReplayCache()) {
+            testAddIfAbsentMultipleThreads(replayCache);
+        }
+    }
+
+    @Test
+    public void testConcurrentReplayCacheAddIfAbsentMultipleThreads() throws Exception {
+        try (ReplayCache replayCache = new ConcurrentReplayCache()) {
+            testAddIfAbsentMultipleThreads(replayCache);
+        }
+    }
+
+    @Test
+    public void testDefaultAddIfAbsent() throws InterruptedException, IOException {
+        // A custom ReplayCache that only implements add and contains
+        try (ReplayCache delegate = new MemoryReplayCache()) {
+            ReplayCache replayCache = new ReplayCache() {
+                @Override
+                public void add(String identifier) {
+                    delegate.add(identifier);
+                }
+
+                @Override
+                public void add(String identifier, Instant expiry) {
+                    delegate.add(identifier, expiry);
+                }
+
+                @Override
+                public boolean contains(String identifier) {
+                    return delegate.contains(identifier);
+                }
+
+                @Override
+                public void close() {
+                    // nothing to close
+                }
+            };
+            testReplayCacheInstance(replayCache);
+        }
+    }
+
+    @Test
+    public void testEhCacheReplayCacheAddIfAbsentMultipleThreads() throws Exception {
+        try (ReplayCache replayCache = new EHCacheReplayCache("addIfAbsent", tempDir)) {
+            testAddIfAbsentMultipleThreads(replayCache);
+        }
+    }
+
     @Test
     public void testEhCacheReplayCache() throws Exception {
         try (ReplayCache replayCache = new EHCacheReplayCache("xyz", tempDir)) {
@@ -197,6 +298,49 @@ public class ReplayCacheTest {
         replayCache.add(id, Instant.now().plusSeconds(1L));
         Thread.sleep(1250L);
         assertFalse(replayCache.contains(id));
+
+        // Test addIfAbsent
+        id = UUID.randomUUID().toString();
+        assertTrue(replayCache.addIfAbsent(id));
+        assertTrue(replayCache.contains(id));
+        assertFalse(replayCache.addIfAbsent(id));
+        assertFalse(replayCache.addIfAbsent(id, Instant.now().plusSeconds(100L)));
+
+        // Test addIfAbsent after expiration
+        id = UUID.randomUUID().toString();
+        assertTrue(replayCache.addIfAbsent(id, Instant.now().plusSeconds(1L)));
+        Thread.sleep(1250L);
+        assertTrue(replayCache.addIfAbsent(id));
+        assertTrue(replayCache.contains(id));
+    }
+
+    private void testAddIfAbsentMultipleThreads(ReplayCache replayCache) throws Exception {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            futures.add(executor.submit(() -> {
+                int added = 0;
+                for (String id : ids) {
+                    if (replayCache.addIfAbsent(id)) {
+                        added++;
+                    }
+                }
+                return added;
+            }));
+        }
+        int added = 0;
+        for (Future<Integer> future : futures) {
+            added += future.get();
+        }
+        executor.shutdown();
+
+        // Each identifier must have been accepted exactly once
+        assertEquals(ids.size(), added);
     }
 
 }
\ No newline at end of file
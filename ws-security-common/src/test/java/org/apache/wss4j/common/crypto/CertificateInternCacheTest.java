@@ -0,0 +1,95 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.cert.X509Certificate;
+
+import org.apache.wss4j.common.util.Loader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Some tests for the CertificateInternCache
+ */
+public class CertificateInternCacheTest {
+
+    private static byte[] certBytes;
+    private static byte[] serverCertBytes;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        WSProviderConfig.init();
+        certBytes = readResource("keys/wss40.crt");
+        serverCertBytes = readResource("keys/wss40_server.crt");
+    }
+
+    @Test
+    public void testLoadCertificate() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setCertificateCache(new CertificateInternCache(10));
+
+        X509Certificate cert = crypto.loadCertificate(new ByteArrayInputStream(certBytes));
+        X509Certificate cert2 = crypto.loadCertificate(new ByteArrayInputStream(certBytes.clone()));
+        assertSame(cert, cert2);
+        assertSame(cert.getPublicKey(), cert2.getPublicKey());
+        assertEquals(1, crypto.getCertificateCache().size());
+
+        // The certificates of a PkiPath are interned as well
+        byte[] pkiPath = crypto.getBytesFromCertificates(new X509Certificate[] {cert});
+        X509Certificate[] certs = crypto.getCertificatesFromBytes(pkiPath);
+        assertSame(cert, certs[0]);
+        X509Certificate[] certs2 = crypto.getCertificatesFromBytes(pkiPath);
+        assertNotSame(certs, certs2);
+        assertSame(cert, certs2[0]);
+        assertEquals(2, crypto.getCertificateCache().size());
+
+        crypto.setCertificateCache(null);
+        assertNotSame(cert, crypto.loadCertificate(new ByteArrayInputStream(certBytes)));
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        CertificateInternCache cache = new CertificateInternCache(1);
+        Merlin crypto = new Merlin();
+        crypto.setCertificateCache(cache);
+
+        X509Certificate cert = crypto.loadCertificate(new ByteArrayInputStream(certBytes));
+        X509Certificate serverCert = crypto.loadCertificate(new ByteArrayInputStream(serverCertBytes));
+        assertEquals(1, cache.size());
+        assertSame(serverCert, crypto.loadCertificate(new ByteArrayInputStream(serverCertBytes)));
+        assertNotSame(cert, crypto.loadCertificate(new ByteArrayInputStream(certBytes)));
+
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    private static byte[] readResource(String resource) throws Exception {
+        try (InputStream inputStream = Loader.getResourceAsStream(resource)) {
+            return inputStream.readAllBytes();
+        }
+    }
+}
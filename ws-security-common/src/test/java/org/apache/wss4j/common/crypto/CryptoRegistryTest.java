@@ -0,0 +1,172 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Properties;
+
+import org.apache.wss4j.common.util.Loader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for the CryptoRegistry
+ */
+public class CryptoRegistryTest {
+
+    private static final ClassLoader CLASS_LOADER = Loader.getClassLoader(CryptoRegistryTest.class);
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        WSProviderConfig.init();
+    }
+
+    @Test
+    public void testPropertiesFile() throws Exception {
+        CryptoRegistry registry = new CryptoRegistry();
+        Crypto crypto = registry.getCrypto("wss40.properties", CLASS_LOADER, (PasswordEncryptor)null);
+        assertEquals("wss40", crypto.getDefaultX509Identifier());
+        assertSame(crypto, registry.getCrypto("wss40.properties", CLASS_LOADER, (PasswordEncryptor)null));
+
+        // The parsed properties are a copy
+        Properties properties = registry.getProperties("wss40.properties", CLASS_LOADER);
+        properties.clear();
+        assertEquals("wss40",
+            registry.getProperties("wss40.properties", CLASS_LOADER).getProperty("org.apache.wss4j.crypto.merlin.keystore.alias"));
+
+        registry.invalidate("wss40.properties");
+        assertEquals(0, registry.size());
+        assertNotSame(crypto, registry.getCrypto("wss40.properties", CLASS_LOADER, (PasswordEncryptor)null));
+    }
+
+    @Test
+    public void testPropertiesContent() throws Exception {
+        CryptoRegistry registry = new CryptoRegistry();
+        Crypto crypto = registry.getCrypto(loadProperties(), CLASS_LOADER, null);
+        assertSame(crypto, registry.getCrypto(loadProperties(), CLASS_LOADER, null));
+
+        Properties properties = loadProperties();
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.alias", "wss86");
+        assertNotSame(crypto, registry.getCrypto(properties, CLASS_LOADER, null));
+
+        registry.invalidate(loadProperties());
+        assertEquals(1, registry.size());
+        assertNotSame(crypto, registry.getCrypto(loadProperties(), CLASS_LOADER, null));
+    }
+
+    @Test
+    public void testModifiedPropertiesFile() throws Exception {
+        Path propertiesFile = tempDir.resolve("wss40.properties");
+        try (InputStream inputStream = Loader.getResourceAsStream("wss40.properties")) {
+            Files.copy(inputStream, propertiesFile);
+        }
+        String location = propertiesFile.toString();
+
+        CryptoRegistry registry = new CryptoRegistry(10, Duration.ZERO);
+        Crypto crypto = registry.getCrypto(location, CLASS_LOADER, (PasswordEncryptor)null);
+        assertSame(crypto, registry.getCrypto(location, CLASS_LOADER, (PasswordEncryptor)null));
+
+        Files.write(propertiesFile, "\n# modified\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertNotSame(crypto, registry.getCrypto(location, CLASS_LOADER, (PasswordEncryptor)null));
+    }
+
+    @Test
+    public void testModifiedKeyStoreFile() throws Exception {
+        Path keyStoreFile = tempDir.resolve("wss40.jks");
+        try (InputStream inputStream = Loader.getResourceAsStream("keys/wss40.jks")) {
+            Files.copy(inputStream, keyStoreFile);
+        }
+        Properties properties = loadProperties();
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.file", keyStoreFile.toString());
+        Path propertiesFile = tempDir.resolve("wss40.properties");
+        try (OutputStream outputStream = Files.newOutputStream(propertiesFile)) {
+            properties.store(outputStream, null);
+        }
+        String location = propertiesFile.toString();
+
+        CryptoRegistry registry = new CryptoRegistry(10, Duration.ZERO);
+        Crypto crypto = registry.getCrypto(location, CLASS_LOADER, (PasswordEncryptor)null);
+        assertSame(crypto, registry.getCrypto(location, CLASS_LOADER, (PasswordEncryptor)null));
+        Crypto contentCrypto = registry.getCrypto(properties, CLASS_LOADER, null);
+        assertSame(contentCrypto, registry.getCrypto(properties, CLASS_LOADER, null));
+
+        // Replacing the keystore reloads the Crypto, even though the properties are unchanged
+        FileTime lastModifiedTime = Files.getLastModifiedTime(keyStoreFile);
+        Files.setLastModifiedTime(keyStoreFile, FileTime.fromMillis(lastModifiedTime.toMillis() + 10000L));
+        assertNotSame(crypto, registry.getCrypto(location, CLASS_LOADER, (PasswordEncryptor)null));
+        assertNotSame(contentCrypto, registry.getCrypto(properties, CLASS_LOADER, null));
+    }
+
+    @Test
+    public void testModifiedKeyStoreFileOfReloadableMerlin() throws Exception {
+        Path keyStoreFile = tempDir.resolve("wss40.jks");
+        try (InputStream inputStream = Loader.getResourceAsStream("keys/wss40.jks")) {
+            Files.copy(inputStream, keyStoreFile);
+        }
+        Properties properties = loadProperties();
+        properties.put("org.apache.wss4j.crypto.provider", ReloadableMerlin.class.getName());
+        properties.put("org.apache.wss4j.crypto.merlin.keystore.file", keyStoreFile.toString());
+
+        CryptoRegistry registry = new CryptoRegistry(10, Duration.ZERO);
+        ReloadableMerlin crypto = (ReloadableMerlin)registry.getCrypto(properties, CLASS_LOADER, null);
+
+        // A ReloadableMerlin reloads a modified keystore itself, so the registry keeps it
+        FileTime lastModifiedTime = Files.getLastModifiedTime(keyStoreFile);
+        Files.setLastModifiedTime(keyStoreFile, FileTime.fromMillis(lastModifiedTime.toMillis() + 10000L));
+        assertSame(crypto, registry.getCrypto(properties, CLASS_LOADER, null));
+        assertFalse(crypto.isClosed());
+        registry.clear();
+        assertTrue(crypto.isClosed());
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        CryptoRegistry registry = new CryptoRegistry(2, CryptoRegistry.DEFAULT_CHECK_INTERVAL);
+        registry.getCrypto("wss40.properties", CLASS_LOADER, (PasswordEncryptor)null);
+        assertEquals(2, registry.size());
+        registry.getCrypto(loadProperties(), CLASS_LOADER, null);
+        assertEquals(2, registry.size());
+
+        registry.clear();
+        assertEquals(0, registry.size());
+    }
+
+    private static Properties loadProperties() throws Exception {
+        return CryptoFactory.getProperties("wss40.properties", CLASS_LOADER);
+    }
+}
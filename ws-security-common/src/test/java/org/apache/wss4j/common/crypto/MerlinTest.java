@@ -21,13 +21,25 @@ package org.apache.wss4j.common.crypto;
 
 import java.io.InputStream;
 import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.PKIXParameters;
+import java.security.cert.X509Certificate;
 
+import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.Loader;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Some tests for the Merlin Crypto provider
@@ -77,6 +89,86 @@ public class MerlinTest {
         assertNotNull(pkcs12Crypto.getX509Certificates(cryptoType));
     }
 
+    @Test
+    public void testIndexedCertificateLookup() throws Exception {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        X509Certificate cert = jksCrypto.getX509Certificates(cryptoType)[0];
+
+        cryptoType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        cryptoType.setIssuerSerial(cert.getIssuerX500Principal().getName(), cert.getSerialNumber());
+        assertEquals(cert, jksCrypto.getX509Certificates(cryptoType)[0]);
+
+        cryptoType = new CryptoType(CryptoType.TYPE.THUMBPRINT_SHA1);
+        cryptoType.setBytes(MessageDigest.getInstance("SHA-1").digest(cert.getEncoded()));
+        assertEquals(cert, jksCrypto.getX509Certificates(cryptoType)[0]);
+
+        cryptoType = new CryptoType(CryptoType.TYPE.SKI_BYTES);
+        cryptoType.setBytes(jksCrypto.getSKIBytesFromCert(cert));
+        assertEquals(cert, jksCrypto.getX509Certificates(cryptoType)[0]);
+
+        cryptoType = new CryptoType(CryptoType.TYPE.SUBJECT_DN);
+        cryptoType.setSubjectDN(cert.getSubjectX500Principal().getName());
+        assertEquals(cert, jksCrypto.getX509Certificates(cryptoType)[0]);
+
+        assertEquals("wss40", jksCrypto.getX509Identifier(cert));
+    }
+
+    @Test
+    public void testCertificateIndexRebuiltOnKeyStoreChange() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setKeyStore(loadKeyStore("keys/wss40.jks", "security"));
+
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("wss40");
+        X509Certificate cert = crypto.getX509Certificates(cryptoType)[0];
+
+        cryptoType = new CryptoType(CryptoType.TYPE.ISSUER_SERIAL);
+        cryptoType.setIssuerSerial(cert.getIssuerX500Principal().getName(), cert.getSerialNumber());
+        assertNotNull(crypto.getX509Certificates(cryptoType));
+
+        KeyStore emptyKeyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        emptyKeyStore.load(null, null);
+        crypto.setKeyStore(emptyKeyStore);
+        assertNull(crypto.getX509Certificates(cryptoType));
+
+        emptyKeyStore.setCertificateEntry("wss40", cert);
+        assertEquals(cert, crypto.getX509Certificates(cryptoType)[0]);
+    }
+
+    @Test
+    public void testCachedPKIXParameters() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setKeyStore(loadKeyStore("keys/wss40.jks", "security"));
+
+        PKIXParameters params = crypto.getPKIXParameters(false);
+        assertSame(params, crypto.getPKIXParameters(false));
+        assertNotSame(params, crypto.getPKIXParameters(true));
+
+        crypto.setTrustStore(loadKeyStore("keys/wss40.jks", "security"));
+        assertNotSame(params, crypto.getPKIXParameters(false));
+    }
+
+    @Test
+    public void testTrustCache() throws Exception {
+        Merlin crypto = new Merlin();
+        crypto.setTrustStore(loadKeyStore("keys/wss40CA.jks", "security"));
+        crypto.setTrustCache(new CertificateTrustCache(60L, 10));
+
+        X509Certificate cert =
+            (X509Certificate)loadKeyStore("keys/wss40.jks", "security").getCertificate("wss40");
+        X509Certificate[] certs = new X509Certificate[] {cert};
+        crypto.verifyTrust(certs, false, null, null);
+        String cacheKey = crypto.getTrustCache().createKey(certs, false, null, null);
+        assertTrue(crypto.getTrustCache().contains(cacheKey));
+        crypto.verifyTrust(certs, false, null, null);
+
+        // Changing the truststore discards the cached trust decisions
+        crypto.setTrustStore(loadKeyStore("keys/wss86.keystore", "security"));
+        assertFalse(crypto.getTrustCache().contains(cacheKey));
+        assertThrows(WSSecurityException.class, () -> crypto.verifyTrust(certs, false, null, null));
+    }
+
     private static KeyStore loadKeyStore(String path, String password) throws Exception {
         KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
         ClassLoader loader = Loader.getClassLoader(MerlinTest.class);
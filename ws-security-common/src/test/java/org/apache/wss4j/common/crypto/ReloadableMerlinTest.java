@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+
+package org.apache.wss4j.common.crypto;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.X509Certificate;
+import java.util.Properties;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some tests for the ReloadableMerlin Crypto provider
+ */
+public class ReloadableMerlinTest {
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeAll
+    public static void setup() throws Exception {
+        WSProviderConfig.init();
+    }
+
+    @Test
+    public void testReload() throws Exception {
+        Path keystore = copy("keys/wss40.jks", "keystore.jks");
+        // Only reload explicitly in this test
+        try (ReloadableMerlin crypto =
+                new ReloadableMerlin(createProperties(keystore, null), getClassLoader(), null, 600000L)) {
+            Merlin merlin = crypto.getMerlin();
+            assertEquals("wss40", crypto.getDefaultX509Identifier());
+            assertNotNull(getCertificate(crypto, "wss40"));
+            assertNotNull(crypto.getPrivateKey("wss40", "security"));
+
+            copy("keys/wss40_server.jks", "keystore.jks");
+            crypto.reload();
+            assertNotSame(merlin, crypto.getMerlin());
+            assertNull(getCertificate(crypto, "wss40"));
+            assertNotNull(getCertificate(crypto, "wss40_server"));
+
+            // A keystore that cannot be loaded does not replace the current one
+            Files.write(keystore, new byte[] {1, 2, 3});
+            merlin = crypto.getMerlin();
+            assertThrows(WSSecurityException.class, crypto::reload);
+            assertSame(merlin, crypto.getMerlin());
+        }
+    }
+
+    @Test
+    public void testReloadModifiedTrustStore() throws Exception {
+        Path truststore = copy("keys/wss40CA.jks", "truststore.jks");
+        X509Certificate cert = getCertificate(CryptoFactory.getInstance("wss40.properties"), "wss40");
+
+        try (ReloadableMerlin crypto =
+                new ReloadableMerlin(createProperties(null, truststore), getClassLoader(), null, 100L)) {
+            Merlin merlin = crypto.getMerlin();
+            crypto.verifyTrust(new X509Certificate[] {cert}, false, null, null);
+
+            // A different CA certificate replaces the trusted one
+            copy("keys/wss40badcatrust.jks", "truststore.jks");
+            long timeout = System.currentTimeMillis() + 30000L;
+            while (crypto.getMerlin() == merlin && System.currentTimeMillis() < timeout) {
+                Thread.sleep(50L);
+            }
+            assertNotSame(merlin, crypto.getMerlin());
+            assertThrows(WSSecurityException.class,
+                () -> crypto.verifyTrust(new X509Certificate[] {cert}, false, null, null));
+        }
+    }
+
+    @Test
+    public void testCryptoFactory() throws Exception {
+        Path keystore = copy("keys/wss40.jks", "keystore.jks");
+        Properties properties = createProperties(keystore, null);
+        properties.put("org.apache.wss4j.crypto.provider", ReloadableMerlin.class.getName());
+
+        Crypto crypto = CryptoFactory.getInstance(properties);
+        assertTrue(crypto instanceof ReloadableMerlin);
+        assertEquals("wss40", crypto.getDefaultX509Identifier());
+        ((ReloadableMerlin)crypto).close();
+    }
+
+    @Test
+    public void testCaches() throws Exception {
+        Path keystore = copy("keys/wss40.jks", "keystore.jks");
+        try (ReloadableMerlin crypto =
+                new ReloadableMerlin(createProperties(keystore, null), getClassLoader(), null, 600000L)) {
+            // The certificate cache of the current Merlin instance is used for the parsed certificates
+            assertTrue(crypto instanceof CryptoBase);
+            assertSame(CertificateInternCache.getInstance(), crypto.getCertificateCache());
+
+            CertificateTrustCache trustCache = new CertificateTrustCache(60L, 10);
+            CertificateInternCache certificateCache = new CertificateInternCache(10);
+            crypto.setTrustCache(trustCache);
+            crypto.setCertificateCache(certificateCache);
+
+            assertSame(trustCache, crypto.getMerlin().getTrustCache());
+
+            // The reloaded instance gets an empty trust cache with the same settings, and the same
+            // certificate cache
+            Merlin previous = crypto.getMerlin();
+            crypto.reload();
+            CertificateTrustCache reloadedTrustCache = crypto.getMerlin().getTrustCache();
+            assertNotSame(trustCache, reloadedTrustCache);
+            assertSame(trustCache, previous.getTrustCache());
+            assertEquals(60L, reloadedTrustCache.getTtl());
+            assertEquals(10, reloadedTrustCache.getMaxSize());
+            assertSame(certificateCache, crypto.getMerlin().getCertificateCache());
+        }
+    }
+
+    @Test
+    public void testClosedOnRegistryRemoval() throws Exception {
+        Path keystore = copy("keys/wss40.jks", "keystore.jks");
+        Properties properties = createProperties(keystore, null);
+        properties.put("org.apache.wss4j.crypto.provider", ReloadableMerlin.class.getName());
+
+        CryptoRegistry registry = new CryptoRegistry();
+        ReloadableMerlin crypto = (ReloadableMerlin)registry.getCrypto(properties, getClassLoader(), null);
+        assertFalse(crypto.isClosed());
+        registry.invalidate(properties);
+        assertTrue(crypto.isClosed());
+    }
+
+    private Path copy(String resource, String fileName) throws Exception {
+        Path file = tempDir.resolve(fileName);
+        try (InputStream inputStream = Loader.getResourceAsStream(resource)) {
+            Files.copy(inputStream, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return file;
+    }
+
+    private static Properties createProperties(Path keystore, Path truststore) {
+        Properties properties = new Properties();
+        if (keystore != null) {
+            properties.put("org.apache.wss4j.crypto.merlin.keystore.type", "jks");
+            properties.put("org.apache.wss4j.crypto.merlin.keystore.password", "security");
+            properties.put("org.apache.wss4j.crypto.merlin.keystore.alias", "wss40");
+            properties.put("org.apache.wss4j.crypto.merlin.keystore.file", keystore.toString());
+        }
+        if (truststore != null) {
+            properties.put("org.apache.wss4j.crypto.merlin.truststore.type", "jks");
+            properties.put("org.apache.wss4j.crypto.merlin.truststore.password", "security");
+            properties.put("org.apache.wss4j.crypto.merlin.truststore.file", truststore.toString());
+        }
+        return properties;
+    }
+
+    private static X509Certificate getCertificate(Crypto crypto, String alias) throws WSSecurityException {
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias(alias);
+        X509Certificate[] certs = crypto.getX509Certificates(cryptoType);
+        return certs == null || certs.length == 0 ? null : certs[0];
+    }
+
+    private static ClassLoader getClassLoader() {
+        return Loader.getClassLoader(ReloadableMerlinTest.class);
+    }
+}
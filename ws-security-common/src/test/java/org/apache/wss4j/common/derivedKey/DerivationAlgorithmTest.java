@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.derivedKey;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some unit tests for the P_SHA-1 and P_SHA-256 derivation algorithms
+ */
+public class DerivationAlgorithmTest {
+
+    private static final byte[] SECRET = "some shared secret".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] SEED = "WS-SecureConversationnonce-of-sixteen".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void testPSHA1() throws Exception {
+        DerivationAlgorithm algorithm =
+            AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_1_2005_12);
+        assertTrue(algorithm instanceof P_SHA1);
+        assertSame(algorithm, AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_1));
+        testDerivationAlgorithm(algorithm, "HmacSHA1");
+    }
+
+    @Test
+    public void testPSHA256() throws Exception {
+        DerivationAlgorithm algorithm =
+            AlgoFactory.getInstance(ConversationConstants.DerivationAlgorithm.P_SHA_256_2005_12);
+        assertTrue(algorithm instanceof P_SHA256);
+        testDerivationAlgorithm(algorithm, "HmacSHA256");
+    }
+
+    private void testDerivationAlgorithm(DerivationAlgorithm algorithm, String macAlgorithm) throws Exception {
+        // Offsets and lengths within, on and across the HMAC block boundaries
+        int[] offsets = {0, 1, 19, 20, 31, 32, 33, 64, 100};
+        int[] lengths = {0, 1, 16, 20, 24, 32, 33, 64, 100};
+        for (int offset : offsets) {
+            for (int length : lengths) {
+                byte[] expected = Arrays.copyOfRange(pHash(macAlgorithm, offset + length), offset, offset + length);
+                assertArrayEquals(expected, algorithm.createKey(SECRET, SEED, offset, length),
+                                  "offset " + offset + ", length " + length);
+            }
+        }
+    }
+
+    @Test
+    public void testUnknownAlgorithm() {
+        assertThrows(WSSecurityException.class, () -> AlgoFactory.getInstance("http://example.com/unknown"));
+    }
+
+    /**
+     * A straightforward implementation of P_hash, as defined in RFC 2246
+     */
+    private static byte[] pHash(String macAlgorithm, int required) throws Exception {
+        Mac mac = Mac.getInstance(macAlgorithm);
+        mac.init(new SecretKeySpec(SECRET, macAlgorithm));
+
+        byte[] out = new byte[required];
+        int offset = 0;
+        byte[] a = SEED;
+        while (offset < required) {
+            a = mac.doFinal(a);
+            mac.update(a);
+            byte[] block = mac.doFinal(SEED);
+            int tocpy = Math.min(required - offset, block.length);
+            System.arraycopy(block, 0, out, offset, tocpy);
+            offset += tocpy;
+        }
+        return out;
+    }
+}
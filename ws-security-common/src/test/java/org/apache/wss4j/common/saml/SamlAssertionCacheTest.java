@@ -0,0 +1,114 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.saml;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.apache.wss4j.common.saml.bean.AttributeBean;
+import org.apache.wss4j.common.saml.bean.AttributeStatementBean;
+import org.apache.wss4j.common.saml.bean.ConditionsBean;
+import org.apache.wss4j.common.saml.bean.SubjectBean;
+import org.apache.wss4j.common.saml.bean.Version;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Some unit tests for the SamlAssertionCache
+ */
+public class SamlAssertionCacheTest {
+
+    @Test
+    public void testModifiedCallbackBeans() throws Exception {
+        SamlAssertionCache samlAssertionCache = new SamlAssertionCache();
+        AttributeBean attributeBean = new AttributeBean();
+        attributeBean.setQualifiedName("role");
+        attributeBean.setAttributeValues(new ArrayList<>(Collections.singletonList("user")));
+        SAMLCallback samlCallback = createSAMLCallback(attributeBean);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        SamlAssertionWrapper samlAssertion = samlAssertionCache.addAssertion(
+            samlCallback, new SamlAssertionWrapper(samlCallback), doc
+        );
+        assertEquals(1, samlAssertionCache.size());
+
+        SamlAssertionWrapper cachedAssertion = samlAssertionCache.getAssertion(samlCallback, doc);
+        assertNotNull(cachedAssertion);
+        assertEquals(samlAssertion.getId(), cachedAssertion.getId());
+
+        // Modifying a bean of the SAMLCallback must not modify the key of the cached Assertion
+        attributeBean.getAttributeValues().add("admin");
+        assertNull(samlAssertionCache.getAssertion(samlCallback, doc));
+
+        attributeBean.getAttributeValues().remove("admin");
+        assertNotNull(samlAssertionCache.getAssertion(samlCallback, doc));
+    }
+
+    @Test
+    public void testSigningConfigurationOfUnsignedAssertion() throws Exception {
+        SamlAssertionCache samlAssertionCache = new SamlAssertionCache();
+        AttributeBean attributeBean = new AttributeBean();
+        attributeBean.setQualifiedName("role");
+        attributeBean.setAttributeValues(Collections.singletonList("user"));
+        SAMLCallback samlCallback = createSAMLCallback(attributeBean);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        samlAssertionCache.addAssertion(samlCallback, new SamlAssertionWrapper(samlCallback), doc);
+
+        // The signing configuration is not used for an unsigned Assertion
+        samlCallback.setSignatureDigestAlgorithm("http://www.w3.org/2001/04/xmlenc#sha512");
+        assertNotNull(samlAssertionCache.getAssertion(samlCallback, doc));
+
+        samlCallback.setSignAssertion(true);
+        assertNull(samlAssertionCache.getAssertion(samlCallback, doc));
+    }
+
+    @Test
+    public void testUncopyableAttributeValue() throws Exception {
+        SamlAssertionCache samlAssertionCache = new SamlAssertionCache();
+        AttributeBean attributeBean = new AttributeBean();
+        attributeBean.setQualifiedName("role");
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        attributeBean.setAttributeValues(Collections.singletonList(doc.createElementNS(null, "role")));
+        SAMLCallback samlCallback = createSAMLCallback(attributeBean);
+
+        samlAssertionCache.addAssertion(samlCallback, new SamlAssertionWrapper(samlCallback), doc);
+        assertEquals(0, samlAssertionCache.size());
+        assertNull(samlAssertionCache.getAssertion(samlCallback, doc));
+    }
+
+    private static SAMLCallback createSAMLCallback(AttributeBean attributeBean) {
+        SAMLCallback samlCallback = new SAMLCallback();
+        samlCallback.setSamlVersion(Version.SAML_20);
+        samlCallback.setIssuer("www.example.com");
+        samlCallback.setSubject(new SubjectBean("uid=joe", null, "urn:oasis:names:tc:SAML:2.0:cm:sender-vouches"));
+        samlCallback.setConditions(new ConditionsBean());
+
+        AttributeStatementBean attributeStatementBean = new AttributeStatementBean();
+        attributeStatementBean.setSamlAttributes(Collections.singletonList(attributeBean));
+        samlCallback.setAttributeStatementData(Collections.singletonList(attributeStatementBean));
+        return samlCallback;
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Some unit tests for the BufferedAttachmentInputStream and the ThresholdAttachmentBufferFactory
+ */
+public class BufferedAttachmentInputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testInMemory() throws Exception {
+        testReplay(50, 1000, false);
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void testSpillToDisk() throws Exception {
+        testReplay(5000, 100, true);
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void testPartiallyRead() throws Exception {
+        testReplay(5000, 100, false);
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void testRelease() throws Exception {
+        byte[] data = randomBytes(5000);
+        BufferedAttachmentInputStream inputStream = new BufferedAttachmentInputStream(
+            unmarkable(data), new ThresholdAttachmentBufferFactory(100, tempDir));
+        inputStream.readNBytes(1000);
+        assertEquals(1, countFiles());
+        inputStream.release();
+        assertEquals(0, countFiles());
+    }
+
+    @Test
+    public void testMarkSupported() throws Exception {
+        byte[] data = randomBytes(5000);
+        BufferedAttachmentInputStream inputStream = new BufferedAttachmentInputStream(
+            new ByteArrayInputStream(data), new ThresholdAttachmentBufferFactory(100, tempDir));
+        assertArrayEquals(data, inputStream.readAllBytes());
+        assertArrayEquals(data, inputStream.getReplayStream().readAllBytes());
+        inputStream.release();
+        assertEquals(0, countFiles());
+    }
+
+    private void testReplay(int size, int threshold, boolean readFully) throws Exception {
+        byte[] data = randomBytes(size);
+        BufferedAttachmentInputStream inputStream = new BufferedAttachmentInputStream(
+            unmarkable(data), new ThresholdAttachmentBufferFactory(threshold, tempDir));
+        if (readFully) {
+            assertArrayEquals(data, inputStream.readAllBytes());
+        } else {
+            inputStream.readNBytes(size / 2);
+        }
+        try (InputStream replayStream = inputStream.getReplayStream()) {
+            assertArrayEquals(data, replayStream.readAllBytes());
+        }
+        inputStream.release();
+    }
+
+    private long countFiles() throws Exception {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.count();
+        }
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static InputStream unmarkable(byte[] data) {
+        return new FilterInputStream(new ByteArrayInputStream(data)) {
+            @Override
+            public boolean markSupported() {
+                return false;
+            }
+        };
+    }
+}
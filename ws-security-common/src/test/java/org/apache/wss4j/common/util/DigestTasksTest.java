@@ -0,0 +1,92 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.common.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Some unit tests for running the digest tasks of a Signature concurrently
+ */
+public class DigestTasksTest {
+
+    @Test
+    public void testRunAll() throws Exception {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        AtomicInteger completed = new AtomicInteger();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            tasks.add(() -> {
+                threads.add(Thread.currentThread());
+                completed.incrementAndGet();
+            });
+        }
+
+        AtomicInteger submitted = new AtomicInteger();
+        Executor executor = task -> {
+            submitted.incrementAndGet();
+            new Thread(task).start();
+        };
+        DigestTasks.runAll(tasks, executor);
+
+        assertEquals(5, completed.get());
+        assertEquals(4, submitted.get());
+        assertTrue(threads.contains(Thread.currentThread()));
+        assertTrue(threads.size() > 1);
+    }
+
+    @Test
+    public void testRejectedTasksRunOnCallingThread() throws Exception {
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        List<Runnable> tasks = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            tasks.add(() -> threads.add(Thread.currentThread()));
+        }
+
+        Executor executor = task -> {
+            throw new RejectedExecutionException("full");
+        };
+        DigestTasks.runAll(tasks, executor);
+
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    @Test
+    public void testNoTasks() throws Exception {
+        Executor executor = task -> {
+            throw new AssertionError("No task should be submitted");
+        };
+        DigestTasks.runAll(Collections.emptyList(), executor);
+
+        assertNotNull(DigestTasks.getDefaultExecutor());
+    }
+}
@@ -118,6 +118,8 @@ public class EncryptionAction implements Action {
         } else {
             KeyGenerator keyGen = KeyUtils.getKeyGenerator(wsEncrypt.getSymmetricEncAlgorithm());
             symmetricKey = keyGen.generateKey();
+            // Only a generated key may be replaced by the session key of an earlier message
+            wsEncrypt.setEncryptedKeySessionCache(reqData.getEncryptedKeySessionCache());
         }
 
         if (encryptionToken.getTokenId() != null) {
@@ -129,6 +131,7 @@ public class EncryptionAction implements Action {
 
         wsEncrypt.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
         wsEncrypt.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
+        wsEncrypt.setStreamEncryption(reqData.isStreamEncryption());
 
         try {
             wsEncrypt.build(encryptionToken.getCrypto(), symmetricKey);
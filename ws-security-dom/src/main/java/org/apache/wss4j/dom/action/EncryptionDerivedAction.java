@@ -107,6 +107,7 @@ public class EncryptionDerivedAction extends AbstractDerivedAction implements Ac
 
         wsEncrypt.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
         wsEncrypt.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
+        wsEncrypt.setStreamEncryption(reqData.isStreamEncryption());
 
         try {
             List<WSEncryptionPart> parts = encryptionToken.getParts();
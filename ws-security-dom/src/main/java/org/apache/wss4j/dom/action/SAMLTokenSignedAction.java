@@ -26,6 +26,7 @@ import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.SAMLUtil;
@@ -34,6 +35,7 @@ import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandler;
 import org.apache.wss4j.dom.handler.WSHandlerConstants;
 import org.apache.wss4j.dom.saml.WSSecSignatureSAML;
+import org.w3c.dom.Document;
 
 public class SAMLTokenSignedAction implements Action {
 
@@ -68,17 +70,28 @@ public class SAMLTokenSignedAction implements Action {
         SAMLCallback samlCallback = new SAMLCallback();
         SAMLUtil.doSAMLCallback(samlCallbackHandler, samlCallback);
 
-        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
-        if (samlCallback.isSignAssertion()) {
-            samlAssertion.signAssertion(
-                samlCallback.getIssuerKeyName(),
-                samlCallback.getIssuerKeyPassword(),
-                samlCallback.getIssuerCrypto(),
-                samlCallback.isSendKeyValue(),
-                samlCallback.getCanonicalizationAlgorithm(),
-                samlCallback.getSignatureAlgorithm(),
-                samlCallback.getSignatureDigestAlgorithm()
-            );
+        Document doc = reqData.getSecHeader().getSecurityHeaderElement().getOwnerDocument();
+        SamlAssertionCache samlAssertionCache = reqData.getSamlAssertionCache();
+        SamlAssertionWrapper samlAssertion = null;
+        if (samlAssertionCache != null) {
+            samlAssertion = samlAssertionCache.getAssertion(samlCallback, doc);
+        }
+        if (samlAssertion == null) {
+            samlAssertion = new SamlAssertionWrapper(samlCallback);
+            if (samlCallback.isSignAssertion()) {
+                samlAssertion.signAssertion(
+                    samlCallback.getIssuerKeyName(),
+                    samlCallback.getIssuerKeyPassword(),
+                    samlCallback.getIssuerCrypto(),
+                    samlCallback.isSendKeyValue(),
+                    samlCallback.getCanonicalizationAlgorithm(),
+                    samlCallback.getSignatureAlgorithm(),
+                    samlCallback.getSignatureDigestAlgorithm()
+                );
+            }
+            if (samlAssertionCache != null) {
+                samlAssertion = samlAssertionCache.addAssertion(samlCallback, samlAssertion, doc);
+            }
         }
         WSSecSignatureSAML wsSign = new WSSecSignatureSAML(reqData.getSecHeader());
         wsSign.setIdAllocator(reqData.getWssConfig().getIdAllocator());
@@ -86,6 +99,7 @@ public class SAMLTokenSignedAction implements Action {
         wsSign.setWsDocInfo(reqData.getWsDocInfo());
         wsSign.setExpandXopInclude(reqData.isExpandXopInclude());
         wsSign.setSignatureProvider(reqData.getSignatureProvider());
+        wsSign.setDigestExecutor(reqData.getDigestExecutor());
 
         CallbackHandler callbackHandler =
             handler.getPasswordCallbackHandler(reqData);
@@ -23,6 +23,7 @@ import javax.security.auth.callback.CallbackHandler;
 
 import org.apache.wss4j.common.SecurityActionToken;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.SAMLUtil;
@@ -30,6 +31,7 @@ import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandler;
 import org.apache.wss4j.dom.handler.WSHandlerConstants;
 import org.apache.wss4j.dom.message.WSSecSAMLToken;
+import org.w3c.dom.Document;
 
 public class SAMLTokenUnsignedAction implements Action {
 
@@ -55,16 +57,27 @@ public class SAMLTokenUnsignedAction implements Action {
         SAMLCallback samlCallback = new SAMLCallback();
         SAMLUtil.doSAMLCallback(samlCallbackHandler, samlCallback);
 
-        SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(samlCallback);
-        if (samlCallback.isSignAssertion()) {
-            samlAssertion.signAssertion(
-                samlCallback.getIssuerKeyName(),
-                samlCallback.getIssuerKeyPassword(),
-                samlCallback.getIssuerCrypto(),
-                samlCallback.isSendKeyValue(),
-                samlCallback.getCanonicalizationAlgorithm(),
-                samlCallback.getSignatureAlgorithm()
-            );
+        Document doc = reqData.getSecHeader().getSecurityHeaderElement().getOwnerDocument();
+        SamlAssertionCache samlAssertionCache = reqData.getSamlAssertionCache();
+        SamlAssertionWrapper samlAssertion = null;
+        if (samlAssertionCache != null) {
+            samlAssertion = samlAssertionCache.getAssertion(samlCallback, doc);
+        }
+        if (samlAssertion == null) {
+            samlAssertion = new SamlAssertionWrapper(samlCallback);
+            if (samlCallback.isSignAssertion()) {
+                samlAssertion.signAssertion(
+                    samlCallback.getIssuerKeyName(),
+                    samlCallback.getIssuerKeyPassword(),
+                    samlCallback.getIssuerCrypto(),
+                    samlCallback.isSendKeyValue(),
+                    samlCallback.getCanonicalizationAlgorithm(),
+                    samlCallback.getSignatureAlgorithm()
+                );
+            }
+            if (samlAssertionCache != null) {
+                samlAssertion = samlAssertionCache.addAssertion(samlCallback, samlAssertion, doc);
+            }
         }
 
         // add the SAMLAssertion Token to the SOAP Envelope
@@ -63,6 +63,7 @@ public class SignatureAction implements Action {
         wsSign.setWsDocInfo(reqData.getWsDocInfo());
         wsSign.setExpandXopInclude(reqData.isExpandXopInclude());
         wsSign.setSignatureProvider(reqData.getSignatureProvider());
+        wsSign.setDigestExecutor(reqData.getDigestExecutor());
 
         if (signatureToken.getKeyIdentifierId() != 0) {
             wsSign.setKeyIdentifierType(signatureToken.getKeyIdentifierId());
@@ -104,6 +105,7 @@ public class SignatureAction implements Action {
         }
 
         wsSign.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
+        wsSign.setAttachmentBufferFactory(reqData.getAttachmentBufferFactory());
         wsSign.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
 
         try {
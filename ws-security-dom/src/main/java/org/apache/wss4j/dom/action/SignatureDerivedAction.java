@@ -117,7 +117,9 @@ public class SignatureDerivedAction extends AbstractDerivedAction implements Act
         }
 
         wsSign.setAttachmentCallbackHandler(reqData.getAttachmentCallbackHandler());
+        wsSign.setAttachmentBufferFactory(reqData.getAttachmentBufferFactory());
         wsSign.setStoreBytesInAttachment(reqData.isStoreBytesInAttachment());
+        wsSign.setDigestExecutor(reqData.getDigestExecutor());
 
         try {
             List<WSEncryptionPart> parts = signatureToken.getParts();
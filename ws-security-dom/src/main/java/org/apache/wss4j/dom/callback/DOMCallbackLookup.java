@@ -20,7 +20,10 @@
 package org.apache.wss4j.dom.callback;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.crypto.dom.DOMCryptoContext;
 
@@ -30,16 +33,39 @@ import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 /**
  * This class uses a DOM-based approach to locate Elements that are referenced via an Id.
+ *
+ * By default, each lookup searches the document tree for the Id. Alternatively, the Elements can
+ * be indexed by their Id (wsu:Id, Id, ID and AssertionID), in a single pass over the document
+ * that is performed on the first lookup. Elements that are removed from the document are
+ * ignored by the index. Nodes that are added to the document afterwards (e.g. the plaintext
+ * of decrypted EncryptedData) must be registered with the index via registerNodes.
  */
 public class DOMCallbackLookup implements CallbackLookup {
 
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(DOMCallbackLookup.class);
+
     private Document doc;
+    private final boolean indexIds;
+    private Map<String, List<Element>> idIndex;
+    private Map<String, List<Element>> samlIdIndex;
 
     public DOMCallbackLookup(Document doc) {
+        this(doc, false);
+    }
+
+    /**
+     * @param doc The document in which to locate Elements
+     * @param indexIds Whether to index the Elements of the document by their Id, rather than
+     *        to search the document tree for every lookup
+     */
+    public DOMCallbackLookup(Document doc, boolean indexIds) {
         this.doc = doc;
+        this.indexIds = indexIds;
     }
 
     /**
@@ -93,8 +119,14 @@ public class DOMCallbackLookup implements CallbackLookup {
             }
         }
         // Otherwise do a general search
-        Element foundElement =
-            XMLUtils.findElementById(doc.getDocumentElement(), idToMatch, checkMultipleElements);
+        Element foundElement = null;
+        if (indexIds) {
+            buildIndex();
+            foundElement = getIndexedElement(idIndex, idToMatch, checkMultipleElements, false);
+        } else {
+            foundElement =
+                XMLUtils.findElementById(doc.getDocumentElement(), idToMatch, checkMultipleElements);
+        }
         if (foundElement != null) {
             if (context != null) {
                 if (foundElement.hasAttributeNS(WSConstants.WSU_NS, "Id")
@@ -116,10 +148,14 @@ public class DOMCallbackLookup implements CallbackLookup {
         if (WSConstants.WSS_SAML_KI_VALUE_TYPE.equals(valueType)
             || WSConstants.WSS_SAML2_KI_VALUE_TYPE.equals(valueType)
             || valueType == null || valueType.length() == 0) {
-            foundElement =
-                XMLUtils.findSAMLAssertionElementById(
-                    doc.getDocumentElement(), idToMatch
-                );
+            if (indexIds) {
+                foundElement = getIndexedElement(samlIdIndex, idToMatch, true, true);
+            } else {
+                foundElement =
+                    XMLUtils.findSAMLAssertionElementById(
+                        doc.getDocumentElement(), idToMatch
+                    );
+            }
             if (foundElement != null) {
                 if (context != null) {
                     if (foundElement.hasAttributeNS(null, "ID")
@@ -138,6 +174,134 @@ public class DOMCallbackLookup implements CallbackLookup {
         return null;
     }
 
+    /**
+     * Register the Elements of the tree below (and including) the given Element with the Id
+     * index. This must be called for Elements that are added to the document after the index
+     * was built, such as the plaintext of decrypted EncryptedData. It has no effect if Elements
+     * are not indexed, or if the index has not been built yet.
+     *
+     * @param element The root of the tree of Elements to register
+     */
+    public void registerElements(Element element) {
+        if (element != null) {
+            registerNodes(element, element.getNextSibling());
+        }
+    }
+
+    /**
+     * Register the Elements of the trees below (and including) the sibling Nodes from firstNode
+     * up to (but excluding) endNode with the Id index, whatever the type of the Nodes. The Elements
+     * are added to the index in document order. It has no effect if Elements are not indexed, or
+     * if the index has not been built yet.
+     *
+     * @param firstNode The first Node to register
+     * @param endNode The sibling Node after the last Node to register, or null to register all
+     *        the following siblings of firstNode
+     */
+    public void registerNodes(Node firstNode, Node endNode) {
+        if (!indexIds || idIndex == null) {
+            return;
+        }
+        Map<String, List<Element>> newIdIndex = new HashMap<>();
+        Map<String, List<Element>> newSamlIdIndex = new HashMap<>();
+        for (Node node = firstNode; node != null && node != endNode; node = node.getNextSibling()) {
+            XMLUtils.indexElementIds(node, newIdIndex, newSamlIdIndex);
+        }
+        mergeIndex(idIndex, newIdIndex);
+        mergeIndex(samlIdIndex, newSamlIdIndex);
+    }
+
+    private static void mergeIndex(Map<String, List<Element>> index, Map<String, List<Element>> newIndex) {
+        for (Map.Entry<String, List<Element>> entry : newIndex.entrySet()) {
+            List<Element> elements = index.get(entry.getKey());
+            if (elements == null) {
+                index.put(entry.getKey(), entry.getValue());
+            } else {
+                for (Element element : entry.getValue()) {
+                    insertInDocumentOrder(elements, element);
+                }
+            }
+        }
+    }
+
+    /**
+     * Insert the Element into the list of Elements in document order, unless it is already in it.
+     * Elements that were removed from the document are dropped from the list.
+     */
+    private static void insertInDocumentOrder(List<Element> elements, Element element) {
+        int index = elements.size();
+        while (index > 0) {
+            Element previous = elements.get(index - 1);
+            if (previous == element) {
+                return;
+            }
+            short position = previous.compareDocumentPosition(element);
+            if ((position & Node.DOCUMENT_POSITION_DISCONNECTED) != 0) {
+                elements.remove(index - 1);
+            } else if ((position & Node.DOCUMENT_POSITION_FOLLOWING) != 0) {
+                break;
+            }
+            index--;
+        }
+        elements.add(index, element);
+    }
+
+    private void buildIndex() {
+        if (idIndex == null) {
+            idIndex = new HashMap<>();
+            samlIdIndex = new HashMap<>();
+            XMLUtils.indexElementIds(doc.getDocumentElement(), idIndex, samlIdIndex);
+        }
+    }
+
+    private Element getIndexedElement(
+        Map<String, List<Element>> index, String id, boolean checkMultipleElements, boolean samlId
+    ) {
+        List<Element> elements = index.get(id);
+        if (elements == null) {
+            return null;
+        }
+
+        Element foundElement = null;
+        Iterator<Element> iterator = elements.iterator();
+        while (iterator.hasNext()) {
+            Element element = iterator.next();
+            if (!isIndexed(element, id, samlId)) {
+                // The Element was removed from the document, or its Id was changed
+                iterator.remove();
+            } else if (!checkMultipleElements) {
+                return element;
+            } else if (foundElement == null) {
+                foundElement = element; // Continue searching to find duplicates
+            } else {
+                LOG.warn("Multiple elements with the same '{}' attribute value!", samlId ? "ID" : "Id");
+                return null;
+            }
+        }
+        return foundElement;
+    }
+
+    /**
+     * @return whether the given Element is still part of the document, with the given Id
+     */
+    private boolean isIndexed(Element element, String id, boolean samlId) {
+        if (samlId) {
+            if (!id.equals(element.getAttributeNS(null, "ID"))
+                && !id.equals(element.getAttributeNS(null, "AssertionID"))) {
+                return false;
+            }
+        } else if (!id.equals(element.getAttributeNS(WSConstants.WSU_NS, "Id"))
+            && !id.equals(element.getAttributeNS(null, "Id"))) {
+            return false;
+        }
+
+        Node node = element;
+        while (node.getParentNode() != null) {
+            node = node.getParentNode();
+        }
+        return node == doc;
+    }
+
     /**
      * Get the DOM element(s) that correspond to the given localname/namespace.
      * @param localname The localname of the Element(s)
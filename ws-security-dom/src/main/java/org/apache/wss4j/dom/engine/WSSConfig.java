@@ -19,11 +19,15 @@
 
 package org.apache.wss4j.dom.engine;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.security.Security;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.datatype.DatatypeConfigurationException;
 import javax.xml.datatype.DatatypeFactory;
@@ -253,6 +257,23 @@ public final class WSSConfig {
      */
     private static boolean staticallyInitialized = false;
 
+    /**
+     * The no-argument constructors of the Action, Processor and Validator classes, looked up once
+     * per class rather than reflectively for every invocation.
+     */
+    private static final ClassValue<MethodHandle> CONSTRUCTORS = new ClassValue<MethodHandle>() {
+        @Override
+        protected MethodHandle computeValue(Class<?> type) {
+            try {
+                return MethodHandles.publicLookup()
+                    .findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+            } catch (NoSuchMethodException | IllegalAccessException ex) {
+                throw new IllegalArgumentException(ex);
+            }
+        }
+    };
+
     /**
      * This allows the user to specify a different time than that of the current System time.
      */
@@ -298,6 +319,17 @@ public final class WSSConfig {
      */
     private final Map<QName, Object> validatorMap = new HashMap<>(DEFAULT_VALIDATORS);
 
+    /**
+     * Whether Action, Processor and Validator classes are instantiated once and shared, rather
+     * than instantiated per invocation. Classes annotated with PerMessageInstance are never shared.
+     */
+    private boolean shareInstances;
+
+    /**
+     * The shared instances, keyed on the Action, Processor or Validator class
+     */
+    private final Map<Class<?>, Object> sharedInstances = new ConcurrentHashMap<>();
+
     static {
         try {
             Transform.register(WSConstants.SWA_ATTACHMENT_CIPHERTEXT_TRANS,
@@ -423,13 +455,7 @@ public final class WSSConfig {
         final Object actionObject = actionMap.get(action);
 
         if (actionObject instanceof Class<?>) {
-            try {
-                return (Action)((Class<?>)actionObject).newInstance();
-            } catch (Exception ex) {
-                LOG.debug(ex.getMessage(), ex);
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex,
-                        "unableToLoadClass", new Object[] {((Class<?>)actionObject).getName()});
-            }
+            return (Action)getInstance((Class<?>)actionObject);
         } else if (actionObject instanceof Action) {
             return (Action)actionObject;
         }
@@ -513,13 +539,7 @@ public final class WSSConfig {
         final Object validatorObject = validatorMap.get(el);
 
         if (validatorObject instanceof Class<?>) {
-            try {
-                return (Validator)((Class<?>)validatorObject).newInstance();
-            } catch (Exception ex) {
-                LOG.debug(ex.getMessage(), ex);
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex,
-                    "unableToLoadClass", new Object[] {((Class<?>)validatorObject).getName()});
-            }
+            return (Validator)getInstance((Class<?>)validatorObject);
         } else if (validatorObject instanceof Validator) {
             return (Validator)validatorObject;
         }
@@ -537,19 +557,66 @@ public final class WSSConfig {
         final Object processorObject = processorMap.get(el);
 
         if (processorObject instanceof Class<?>) {
-            try {
-                return (Processor)((Class<?>)processorObject).newInstance();
-            } catch (Exception ex) {
-                LOG.debug(ex.getMessage(), ex);
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex,
-                        "unableToLoadClass", new Object[] {((Class<?>)processorObject).getName()});
-            }
+            return (Processor)getInstance((Class<?>)processorObject);
         } else if (processorObject instanceof Processor) {
             return (Processor)processorObject;
         }
         return null;
     }
 
+    /**
+     * Get an instance of the given Action, Processor or Validator class. If instances are shared,
+     * and the class is not annotated with PerMessageInstance, then the same instance is returned
+     * for every invocation. Otherwise a new instance is created.
+     */
+    private Object getInstance(Class<?> clazz) throws WSSecurityException {
+        if (!shareInstances || clazz.isAnnotationPresent(PerMessageInstance.class)) {
+            return newInstance(clazz);
+        }
+
+        Object instance = sharedInstances.get(clazz);
+        if (instance == null) {
+            instance = newInstance(clazz);
+            Object existing = sharedInstances.putIfAbsent(clazz, instance);
+            if (existing != null) {
+                instance = existing;
+            }
+        }
+        return instance;
+    }
+
+    private static Object newInstance(Class<?> clazz) throws WSSecurityException {
+        try {
+            return (Object)CONSTRUCTORS.get(clazz).invokeExact();
+        } catch (Throwable ex) {
+            LOG.debug(ex.getMessage(), ex);
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, ex,
+                    "unableToLoadClass", new Object[] {clazz.getName()});
+        }
+    }
+
+    /**
+     * @return whether Action, Processor and Validator classes are instantiated once and shared
+     */
+    public boolean isShareInstances() {
+        return shareInstances;
+    }
+
+    /**
+     * Set whether Action, Processor and Validator classes are instantiated once and shared across
+     * invocations, rather than instantiated for every invocation. The default is false.
+     *
+     * Please note that a shared instance is used concurrently, and so it is up to the implementing
+     * class to ensure that it is thread-safe. Classes that are not thread-safe must be annotated
+     * with PerMessageInstance, in which case they are instantiated for every invocation regardless.
+     */
+    public void setShareInstances(boolean shareInstances) {
+        this.shareInstances = shareInstances;
+        if (!shareInstances) {
+            sharedInstances.clear();
+        }
+    }
+
     public WSTimeSource getCurrentTime() {
         if (currentTime != null) {
             return currentTime;
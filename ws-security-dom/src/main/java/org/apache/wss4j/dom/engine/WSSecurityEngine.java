@@ -307,7 +307,8 @@ public class WSSecurityEngine {
         WSDocInfo wsDocInfo = new WSDocInfo(securityHeader.getOwnerDocument());
         CallbackLookup callbackLookupToUse = callbackLookup;
         if (callbackLookupToUse == null) {
-            callbackLookupToUse = new DOMCallbackLookup(securityHeader.getOwnerDocument());
+            callbackLookupToUse =
+                new DOMCallbackLookup(securityHeader.getOwnerDocument(), requestData.isIndexElementIds());
         }
         wsDocInfo.setCallbackLookup(callbackLookupToUse);
         wsDocInfo.setCrypto(requestData.getSigVerCrypto());
@@ -26,6 +26,7 @@ import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import javax.security.auth.callback.CallbackHandler;
@@ -36,11 +37,16 @@ import org.apache.wss4j.common.EncryptionActionToken;
 import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.cache.ReplayCache;
+import org.apache.wss4j.common.cache.UnwrappedKeyCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
+import org.apache.wss4j.common.saml.VerifiedSamlAssertionCache;
+import org.apache.wss4j.common.util.AttachmentBufferFactory;
 import org.apache.wss4j.dom.SOAPConstants;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDocInfo;
@@ -70,11 +76,16 @@ public class RequestData {
     private boolean useDerivedKeyForMAC = true;
     private CallbackHandler callback;
     private CallbackHandler attachmentCallbackHandler;
+    private AttachmentBufferFactory attachmentBufferFactory;
     private boolean enableRevocation;
     private boolean requireSignedEncryptedDataElements;
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private EncryptedKeySessionCache encryptedKeySessionCache;
+    private UnwrappedKeyCache unwrappedKeyCache;
+    private SamlAssertionCache samlAssertionCache;
+    private VerifiedSamlAssertionCache verifiedSamlAssertionCache;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
     private final List<BSPRule> ignoredBSPRules = new LinkedList<>();
@@ -92,7 +103,10 @@ public class RequestData {
     private boolean use200512Namespace = true;
     private final List<String> audienceRestrictions = new ArrayList<>();
     private boolean requireTimestampExpires;
+    private boolean indexElementIds;
     private boolean storeBytesInAttachment;
+    private boolean streamEncryption;
+    private Executor digestExecutor;
     private Serializer encryptionSerializer;
     private WSDocInfo wsDocInfo;
     private Provider signatureProvider;
@@ -379,6 +393,18 @@ public class RequestData {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
     }
 
+    public AttachmentBufferFactory getAttachmentBufferFactory() {
+        return attachmentBufferFactory;
+    }
+
+    /**
+     * Set the AttachmentBufferFactory to buffer signed attachments with, while they are digested.
+     * The default is null, meaning that ThresholdAttachmentBufferFactory.getDefault() is used.
+     */
+    public void setAttachmentBufferFactory(AttachmentBufferFactory attachmentBufferFactory) {
+        this.attachmentBufferFactory = attachmentBufferFactory;
+    }
+
     /**
      * Get the Validator instance corresponding to the QName
      * @param qName the QName with which to find a Validator instance
@@ -446,6 +472,54 @@ public class RequestData {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the cache of session keys, to reuse the symmetric key and the EncryptedKey of an earlier
+     * message to the same recipient
+     */
+    public void setEncryptedKeySessionCache(EncryptedKeySessionCache encryptedKeySessionCache) {
+        this.encryptedKeySessionCache = encryptedKeySessionCache;
+    }
+
+    public EncryptedKeySessionCache getEncryptedKeySessionCache() {
+        return encryptedKeySessionCache;
+    }
+
+    /**
+     * Set the cache of the secret keys of inbound EncryptedKeys, so that an EncryptedKey that is
+     * received again is not decrypted again with the private key
+     */
+    public void setUnwrappedKeyCache(UnwrappedKeyCache unwrappedKeyCache) {
+        this.unwrappedKeyCache = unwrappedKeyCache;
+    }
+
+    public UnwrappedKeyCache getUnwrappedKeyCache() {
+        return unwrappedKeyCache;
+    }
+
+    /**
+     * Set the cache of the SAML Assertions created from the SAML CallbackHandler, so that an
+     * Assertion with the same content is not created and signed again for every message
+     */
+    public void setSamlAssertionCache(SamlAssertionCache samlAssertionCache) {
+        this.samlAssertionCache = samlAssertionCache;
+    }
+
+    public SamlAssertionCache getSamlAssertionCache() {
+        return samlAssertionCache;
+    }
+
+    /**
+     * Set the cache of the received SAML Assertions that have been successfully verified, so that
+     * the signature of an identical Assertion is not verified again
+     */
+    public void setVerifiedSamlAssertionCache(VerifiedSamlAssertionCache verifiedSamlAssertionCache) {
+        this.verifiedSamlAssertionCache = verifiedSamlAssertionCache;
+    }
+
+    public VerifiedSamlAssertionCache getVerifiedSamlAssertionCache() {
+        return verifiedSamlAssertionCache;
+    }
+
     /**
      * Set the Signature Subject Cert Constraints
      */
@@ -609,6 +683,18 @@ public class RequestData {
         this.requireTimestampExpires = requireTimestampExpires;
     }
 
+    public boolean isIndexElementIds() {
+        return indexElementIds;
+    }
+
+    /**
+     * Set whether to index the Elements of an inbound message by their Id, rather than to search
+     * the document tree for every Id that is referenced. The default is false.
+     */
+    public void setIndexElementIds(boolean indexElementIds) {
+        this.indexElementIds = indexElementIds;
+    }
+
     public boolean isValidateSamlSubjectConfirmation() {
         return validateSamlSubjectConfirmation;
     }
@@ -729,6 +815,27 @@ public class RequestData {
         this.storeBytesInAttachment = storeBytesInAttachment;
     }
 
+    public boolean isStreamEncryption() {
+        return streamEncryption;
+    }
+
+    public void setStreamEncryption(boolean streamEncryption) {
+        this.streamEncryption = streamEncryption;
+    }
+
+    public Executor getDigestExecutor() {
+        return digestExecutor;
+    }
+
+    /**
+     * Set the Executor to canonicalize and digest the References of a Signature on concurrently.
+     * When verifying, this is only done after the SignatureValue has been verified. The default
+     * is null, meaning that the References are digested sequentially.
+     */
+    public void setDigestExecutor(Executor digestExecutor) {
+        this.digestExecutor = digestExecutor;
+    }
+
     public boolean isExpandXopInclude() {
         return expandXopInclude;
     }
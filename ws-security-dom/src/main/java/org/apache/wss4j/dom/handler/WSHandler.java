@@ -22,6 +22,7 @@ package org.apache.wss4j.dom.handler;
 import java.security.cert.X509Certificate;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -36,16 +37,24 @@ import org.apache.wss4j.common.EncryptionActionToken;
 import org.apache.wss4j.common.SignatureActionToken;
 import org.apache.wss4j.common.SignatureEncryptionActionToken;
 import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
+import org.apache.wss4j.common.cache.UnwrappedKeyCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoRegistry;
 import org.apache.wss4j.common.crypto.JasyptPasswordEncryptor;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
+import org.apache.wss4j.common.saml.VerifiedSamlAssertionCache;
+import org.apache.wss4j.common.util.AttachmentBufferFactory;
 import org.apache.wss4j.common.util.Loader;
+import org.apache.wss4j.common.util.ThresholdAttachmentBufferFactory;
 import org.apache.wss4j.dom.message.WSSecHeader;
 import org.apache.wss4j.dom.message.token.SignatureConfirmation;
+import org.apache.wss4j.dom.util.ReferenceDigester;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.w3c.dom.Document;
 
@@ -57,6 +66,74 @@ public abstract class WSHandler {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(WSHandler.class);
     protected Map<String, Crypto> cryptos = new ConcurrentHashMap<>();
+    private volatile WSHandlerConfiguration handlerConfiguration;
+    private volatile Boolean customCryptoLoader;
+
+    /**
+     * Compile the current options of this handler into a WSHandlerConfiguration, which is then used
+     * for every message instead of looking up and decoding the options again. The properties of the
+     * message context still apply to the options that are not set. This must be called again (or
+     * the configuration removed with setHandlerConfiguration(null)) when the options are changed.
+     *
+     * @return the compiled configuration
+     */
+    public WSHandlerConfiguration compileHandlerConfiguration() {
+        WSHandlerConfiguration configuration = new WSHandlerConfiguration(this);
+        handlerConfiguration = configuration;
+        return configuration;
+    }
+
+    public WSHandlerConfiguration getHandlerConfiguration() {
+        return handlerConfiguration;
+    }
+
+    /**
+     * Set the compiled configuration to use, e.g. one shared by several handlers with the same
+     * options, or null to look up the options for every message
+     */
+    public void setHandlerConfiguration(WSHandlerConfiguration handlerConfiguration) {
+        this.handlerConfiguration = handlerConfiguration;
+    }
+
+    /**
+     * Decode an action String on the outbound side. If the action String is the one of the
+     * compiled configuration, it is not parsed again.
+     *
+     * @param action the String of actions to perform
+     * @param wssConfig the WSSConfig that holds the custom actions
+     * @return the list of HandlerAction Objects
+     * @throws WSSecurityException
+     */
+    public List<HandlerAction> decodeSenderActions(String action, WSSConfig wssConfig)
+        throws WSSecurityException {
+        WSHandlerConfiguration configuration = handlerConfiguration;
+        if (configuration != null) {
+            List<HandlerAction> actions = configuration.getSenderActions(action);
+            if (actions != null) {
+                return actions;
+            }
+        }
+        return WSSecurityUtil.decodeHandlerAction(action, wssConfig);
+    }
+
+    /**
+     * Decode an action String on the inbound side. If the action String is the one of the
+     * compiled configuration, it is not parsed again.
+     *
+     * @param action the String of actions to perform
+     * @return the list of actions, which must not be modified
+     * @throws WSSecurityException
+     */
+    public List<Integer> decodeReceiverActions(String action) throws WSSecurityException {
+        WSHandlerConfiguration configuration = handlerConfiguration;
+        if (configuration != null) {
+            List<Integer> actions = configuration.getReceiverActions(action);
+            if (actions != null) {
+                return actions;
+            }
+        }
+        return WSSecurityUtil.decodeAction(action);
+    }
 
     /**
      * Performs all defined security actions to set-up the SOAP request.
@@ -122,6 +199,25 @@ public abstract class WSHandler {
             reqData.setStoreBytesInAttachment(storeBytesInAttachment);
         }
 
+        if (!reqData.isStreamEncryption()) {
+            reqData.setStreamEncryption(
+                decodeBooleanConfigValue(mc, WSHandlerConstants.STREAM_ENCRYPTION, false)
+            );
+        }
+
+        if (reqData.getDigestExecutor() == null) {
+            reqData.setDigestExecutor(getDigestExecutor(reqData));
+        }
+        if (reqData.getAttachmentBufferFactory() == null) {
+            reqData.setAttachmentBufferFactory(getAttachmentBufferFactory(reqData));
+        }
+        if (reqData.getEncryptedKeySessionCache() == null) {
+            reqData.setEncryptedKeySessionCache(getEncryptedKeySessionCache(reqData));
+        }
+        if (reqData.getSamlAssertionCache() == null) {
+            reqData.setSamlAssertionCache(getSamlAssertionCache(reqData));
+        }
+
         // Perform configuration
         boolean encryptionFound = false;
         for (HandlerAction actionToDo : actions) {
@@ -341,6 +437,19 @@ public abstract class WSHandler {
             reqData.setDisableBSPEnforcement(true);
         }
 
+        if (reqData.getDigestExecutor() == null) {
+            reqData.setDigestExecutor(getDigestExecutor(reqData));
+        }
+        if (reqData.getAttachmentBufferFactory() == null) {
+            reqData.setAttachmentBufferFactory(getAttachmentBufferFactory(reqData));
+        }
+        if (reqData.getUnwrappedKeyCache() == null) {
+            reqData.setUnwrappedKeyCache(getUnwrappedKeyCache(reqData));
+        }
+        if (reqData.getVerifiedSamlAssertionCache() == null) {
+            reqData.setVerifiedSamlAssertionCache(getVerifiedSamlAssertionCache(reqData));
+        }
+
         // Load CallbackHandler
         if (reqData.getCallbackHandler() == null) {
             CallbackHandler passwordCallbackHandler = getPasswordCallbackHandler(reqData);
@@ -363,6 +472,9 @@ public abstract class WSHandler {
         reqData.setRequireTimestampExpires(
             decodeBooleanConfigValue(mc, WSHandlerConstants.REQUIRE_TIMESTAMP_EXPIRES, false)
         );
+        reqData.setIndexElementIds(
+            decodeBooleanConfigValue(mc, WSHandlerConstants.INDEX_ELEMENT_IDS, false)
+        );
     }
 
     protected boolean checkReceiverResults(
@@ -795,6 +907,10 @@ public abstract class WSHandler {
         if (!timestamp) {
             tag = WSHandlerConstants.TTL_USERNAMETOKEN;
         }
+        Integer compiledTtl = getCompiledIntegerOption(tag);
+        if (compiledTtl != null && compiledTtl >= 0) {
+            return compiledTtl;
+        }
         String ttl = getString(tag, reqData.getMsgContext());
         int defaultTimeToLive = 300;
         if (ttl != null) {
@@ -820,6 +936,10 @@ public abstract class WSHandler {
         if (!timestamp) {
             tag = WSHandlerConstants.TTL_FUTURE_USERNAMETOKEN;
         }
+        Integer compiledTtl = getCompiledIntegerOption(tag);
+        if (compiledTtl != null && compiledTtl >= 0) {
+            return compiledTtl;
+        }
         String ttl = getString(tag, reqData.getMsgContext());
         int defaultFutureTimeToLive = 60;
         if (ttl != null) {
@@ -852,6 +972,14 @@ public abstract class WSHandler {
         Object messageContext, String configTag, boolean defaultToTrue
     ) throws WSSecurityException {
 
+        WSHandlerConfiguration configuration = handlerConfiguration;
+        if (configuration != null) {
+            Boolean compiledValue = configuration.getBooleanOption(configTag);
+            if (compiledValue != null) {
+                return compiledValue;
+            }
+        }
+
         String value = getString(configTag, messageContext);
 
         if (value == null) {
@@ -960,10 +1088,10 @@ public abstract class WSHandler {
             if (crypto == null) {
                 Object obj = getProperty(mc, refId);
                 if (obj instanceof Properties) {
-                    crypto = CryptoFactory.getInstance((Properties)obj,
-                                                       Loader.getClassLoader(CryptoFactory.class),
-                                                       getPasswordEncryptor(requestData));
-                    cryptos.put(refId, crypto);
+                    // Not cached per handler, as the registry loads the Crypto again if a keystore is modified
+                    crypto = getCryptoRegistry().getCrypto((Properties)obj,
+                                                           Loader.getClassLoader(CryptoFactory.class),
+                                                           getPasswordEncryptor(requestData));
                 } else if (obj instanceof Crypto) {
                     // No need to cache this as it's already loaded
                     crypto = (Crypto)obj;
@@ -982,10 +1110,18 @@ public abstract class WSHandler {
         if (crypto == null) {
             String propFile = getString(cryptoPropertyFile, mc);
             if (propFile != null) {
-                crypto = cryptos.get(propFile);
-                if (crypto == null) {
-                    crypto = loadCryptoFromPropertiesFile(propFile, requestData);
-                    cryptos.put(propFile, crypto);
+                if (isCustomCryptoLoader()) {
+                    // A subclass loads the Crypto in its own way, so it is only cached by this handler
+                    crypto = cryptos.get(propFile);
+                    if (crypto == null) {
+                        crypto = loadCryptoFromPropertiesFile(propFile, requestData);
+                        cryptos.put(propFile, crypto);
+                    }
+                } else {
+                    // The registry loads the Crypto again if the properties file or a keystore has been modified
+                    crypto = getCryptoRegistry().getCrypto(
+                        propFile, getClassLoader(mc), getPasswordEncryptor(requestData)
+                    );
                 }
                 if (crypto == null) {
                     LOG.warn(
@@ -999,6 +1135,38 @@ public abstract class WSHandler {
         return crypto;
     }
 
+    /**
+     * Get the CryptoRegistry that caches the Crypto instances loaded from property files, and
+     * from Crypto properties. By default this is the registry shared with the StAX
+     * ConfigurationConverter. The registry is not used for property files if a subclass overrides
+     * loadCryptoFromPropertiesFile.
+     * @return the CryptoRegistry to use
+     */
+    protected CryptoRegistry getCryptoRegistry() {
+        return CryptoRegistry.getInstance();
+    }
+
+    /**
+     * @return whether a subclass overrides loadCryptoFromPropertiesFile
+     */
+    private boolean isCustomCryptoLoader() {
+        Boolean custom = customCryptoLoader;
+        if (custom == null) {
+            custom = Boolean.FALSE;
+            for (Class<?> clazz = getClass(); clazz != WSHandler.class; clazz = clazz.getSuperclass()) {
+                try {
+                    clazz.getDeclaredMethod("loadCryptoFromPropertiesFile", String.class, RequestData.class);
+                    custom = Boolean.TRUE;
+                    break;
+                } catch (NoSuchMethodException ex) { //NOPMD
+                    // not overridden by this class
+                }
+            }
+            customCryptoLoader = custom;
+        }
+        return custom;
+    }
+
     /**
      * A hook to allow subclass to load Crypto instances from property files in a different
      * way.
@@ -1064,6 +1232,102 @@ public abstract class WSHandler {
             );
     }
 
+    /**
+     * Get the Executor to digest the References of a Signature on concurrently, or null if the
+     * References are to be digested sequentially
+     */
+    protected Executor getDigestExecutor(RequestData requestData) throws WSSecurityException {
+        Object mc = requestData.getMsgContext();
+        if (!decodeBooleanConfigValue(mc, WSHandlerConstants.PARALLEL_DIGEST, false)) {
+            return null;
+        }
+        Object o = getOption(WSHandlerConstants.DIGEST_EXECUTOR);
+        if (!(o instanceof Executor)) {
+            o = getProperty(mc, WSHandlerConstants.DIGEST_EXECUTOR);
+        }
+        if (o instanceof Executor) {
+            return (Executor) o;
+        }
+        return ReferenceDigester.getDefaultExecutor();
+    }
+
+    /**
+     * Get the AttachmentBufferFactory for the configured attachment buffer threshold, or null if
+     * no threshold is configured
+     */
+    protected AttachmentBufferFactory getAttachmentBufferFactory(RequestData requestData) {
+        String threshold =
+            getString(WSHandlerConstants.ATTACHMENT_BUFFER_THRESHOLD, requestData.getMsgContext());
+        if (threshold != null) {
+            try {
+                return new ThresholdAttachmentBufferFactory(Integer.parseInt(threshold));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Error in configuring the attachment buffer threshold: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the cache of session keys to reuse the EncryptedKey of an earlier message with, or null
+     * if a new session key is to be generated for every message
+     */
+    protected EncryptedKeySessionCache getEncryptedKeySessionCache(RequestData requestData) {
+        Object o = getOption(WSHandlerConstants.ENCRYPTED_KEY_SESSION_CACHE_INSTANCE);
+        if (!(o instanceof EncryptedKeySessionCache)) {
+            o = getProperty(requestData.getMsgContext(), WSHandlerConstants.ENCRYPTED_KEY_SESSION_CACHE_INSTANCE);
+        }
+        if (o instanceof EncryptedKeySessionCache) {
+            return (EncryptedKeySessionCache) o;
+        }
+        return null;
+    }
+
+    /**
+     * Get the cache of the secret keys of inbound EncryptedKeys, or null if every EncryptedKey is to
+     * be decrypted
+     */
+    protected UnwrappedKeyCache getUnwrappedKeyCache(RequestData requestData) {
+        Object o = getOption(WSHandlerConstants.UNWRAPPED_KEY_CACHE_INSTANCE);
+        if (!(o instanceof UnwrappedKeyCache)) {
+            o = getProperty(requestData.getMsgContext(), WSHandlerConstants.UNWRAPPED_KEY_CACHE_INSTANCE);
+        }
+        if (o instanceof UnwrappedKeyCache) {
+            return (UnwrappedKeyCache) o;
+        }
+        return null;
+    }
+
+    /**
+     * Get the cache of the SAML Assertions created from the SAML CallbackHandler, or null if a new
+     * Assertion is to be created for every message
+     */
+    protected SamlAssertionCache getSamlAssertionCache(RequestData requestData) {
+        Object o = getOption(WSHandlerConstants.SAML_ASSERTION_CACHE_INSTANCE);
+        if (!(o instanceof SamlAssertionCache)) {
+            o = getProperty(requestData.getMsgContext(), WSHandlerConstants.SAML_ASSERTION_CACHE_INSTANCE);
+        }
+        if (o instanceof SamlAssertionCache) {
+            return (SamlAssertionCache) o;
+        }
+        return null;
+    }
+
+    /**
+     * Get the cache of the received SAML Assertions that have been successfully verified, or null
+     * if every Assertion is to be verified
+     */
+    protected VerifiedSamlAssertionCache getVerifiedSamlAssertionCache(RequestData requestData) {
+        Object o = getOption(WSHandlerConstants.VERIFIED_SAML_ASSERTION_CACHE_INSTANCE);
+        if (!(o instanceof VerifiedSamlAssertionCache)) {
+            o = getProperty(requestData.getMsgContext(), WSHandlerConstants.VERIFIED_SAML_ASSERTION_CACHE_INSTANCE);
+        }
+        if (o instanceof VerifiedSamlAssertionCache) {
+            return (VerifiedSamlAssertionCache) o;
+        }
+        return null;
+    }
+
     /**
      * Load a CallbackHandler instance.
      * @param callbackHandlerClass The class name of the CallbackHandler instance
@@ -1078,11 +1342,15 @@ public abstract class WSHandler {
 
         Class<? extends CallbackHandler> cbClass = null;
         CallbackHandler cbHandler = null;
+        ClassLoader classLoader = getClassLoader(requestData.getMsgContext());
+        WSHandlerConfiguration configuration = handlerConfiguration;
+        if (configuration != null) {
+            cbClass = configuration.getCallbackHandlerClass(callbackHandlerClass, classLoader);
+        }
         try {
-            cbClass =
-                Loader.loadClass(getClassLoader(requestData.getMsgContext()),
-                                 callbackHandlerClass,
-                                 CallbackHandler.class);
+            if (cbClass == null) {
+                cbClass = Loader.loadClass(classLoader, callbackHandlerClass, CallbackHandler.class);
+            }
         } catch (ClassNotFoundException e) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e,
                     "empty",
@@ -1233,55 +1501,31 @@ public abstract class WSHandler {
     private void splitEncParts(boolean required, String tmpS,
                                List<WSEncryptionPart> parts, RequestData reqData)
         throws WSSecurityException {
-        WSEncryptionPart encPart = null;
-        String[] rawParts = tmpS.split(";");
-
-        for (String rawPart : rawParts) {
-            String[] partDef = rawPart.split("}");
-
-            if (partDef.length == 1) {
-                LOG.debug("single partDef: '{}'", partDef[0]);
-                encPart =
-                    new WSEncryptionPart(partDef[0].trim(),
-                            reqData.getSoapConstants().getEnvelopeURI(),
-                            "Content");
-            } else if (partDef.length == 2) {
-                String mode = partDef[0].trim().substring(1);
-                String element = partDef[1].trim();
-                encPart = new WSEncryptionPart(element, mode);
-            } else if (partDef.length == 3) {
-                String mode = partDef[0].trim();
-                if (mode.length() <= 1) {
-                    mode = "Content";
-                } else {
-                    mode = mode.substring(1);
-                }
-                String nmSpace = partDef[1].trim();
-                if (nmSpace.length() <= 1) {
-                    nmSpace = reqData.getSoapConstants().getEnvelopeURI();
-                } else {
-                    nmSpace = nmSpace.substring(1);
-                    if (nmSpace.equals(WSConstants.NULL_NS)) {
-                        nmSpace = null;
-                    }
-                }
-                String element = partDef[2].trim();
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug(
-                        "partDefs: '" + mode + "' ,'" + nmSpace + "' ,'" + element + "'"
-                    );
-                }
-                encPart = new WSEncryptionPart(element, nmSpace, mode);
-            } else {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
-                        "empty",
-                        new Object[] {"WSHandler: wrong part definition: " + tmpS});
-            }
+        String envelopeURI = reqData.getSoapConstants().getEnvelopeURI();
+        List<WSEncryptionPart> newParts = null;
+        WSHandlerConfiguration configuration = handlerConfiguration;
+        if (configuration != null) {
+            newParts = configuration.getParts(tmpS, envelopeURI);
+        }
+        if (newParts == null) {
+            newParts = WSHandlerConfiguration.newParts(
+                WSHandlerConfiguration.parsePartDefinitions(tmpS), envelopeURI
+            );
+        }
+        for (WSEncryptionPart encPart : newParts) {
             encPart.setRequired(required);
             parts.add(encPart);
         }
     }
 
+    private Integer getCompiledIntegerOption(String key) {
+        WSHandlerConfiguration configuration = handlerConfiguration;
+        if (configuration != null) {
+            return configuration.getIntegerOption(key);
+        }
+        return null;
+    }
+
     @SuppressWarnings("unchecked")
     private void handleSpecialUser(RequestData reqData) {
         EncryptionActionToken actionToken = reqData.getEncryptionToken();
@@ -1447,6 +1691,10 @@ public abstract class WSHandler {
      *  exists and is of type java.lang.String; otherwise null.
      */
     public String getStringOption(String key) {
+        WSHandlerConfiguration configuration = handlerConfiguration;
+        if (configuration != null && configuration.isCompiled(key)) {
+            return configuration.getStringOption(key);
+        }
         Object o = getOption(key);
         if (o instanceof String) {
             return (String) o;
@@ -0,0 +1,425 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.handler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.callback.CallbackHandler;
+
+import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.Loader;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.util.WSSecurityUtil;
+
+/**
+ * An immutable snapshot of the String options of a WSHandler, decoded once, so that they are not
+ * looked up and decoded again for every message.
+ *
+ * The options of a handler take precedence over the properties of the message context. So the
+ * value of an option in the snapshot is used as is, and only the properties of the options that are
+ * not set are looked up on the message context of every message. A decoded value (the actions, the
+ * parts lists, the time-to-live values or the class of a CallbackHandler) is reused if the String
+ * it is decoded from is the one of the handler option, and is decoded again otherwise. Option values
+ * that cannot be decoded are not compiled, so that they are reported for the message that uses them,
+ * as without a snapshot.
+ *
+ * The Crypto instances are not part of the snapshot, as they are already cached by the WSHandler and
+ * the CryptoRegistry, which also reloads a Crypto if its keystore has been modified.
+ */
+public final class WSHandlerConfiguration {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(WSHandlerConfiguration.class);
+
+    /**
+     * The String options that are compiled into the snapshot
+     */
+    private static final Set<String> COMPILED_OPTIONS = new HashSet<>(Arrays.asList(
+        WSHandlerConstants.ACTION,
+        WSHandlerConstants.ACTOR,
+        WSHandlerConstants.USER,
+        WSHandlerConstants.ADD_INCLUSIVE_PREFIXES,
+        WSHandlerConstants.ADD_USERNAMETOKEN_CREATED,
+        WSHandlerConstants.ADD_USERNAMETOKEN_NONCE,
+        WSHandlerConstants.ALLOW_NAMESPACE_QUALIFIED_PASSWORD_TYPES,
+        WSHandlerConstants.ALLOW_RSA15_KEY_TRANSPORT_ALGORITHM,
+        WSHandlerConstants.ALLOW_USERNAMETOKEN_NOPASSWORD,
+        WSHandlerConstants.ATTACHMENT_BUFFER_THRESHOLD,
+        WSHandlerConstants.DEC_PROP_FILE,
+        WSHandlerConstants.DEC_PROP_REF_ID,
+        WSHandlerConstants.DERIVED_ENCRYPTION_KEY_LENGTH,
+        WSHandlerConstants.DERIVED_KEY_ITERATIONS,
+        WSHandlerConstants.DERIVED_SIGNATURE_KEY_LENGTH,
+        WSHandlerConstants.DERIVED_TOKEN_KEY_ID,
+        WSHandlerConstants.DERIVED_TOKEN_REFERENCE,
+        WSHandlerConstants.ENABLE_REVOCATION,
+        WSHandlerConstants.ENABLE_SIGNATURE_CONFIRMATION,
+        WSHandlerConstants.ENCRYPTION_PARTS,
+        WSHandlerConstants.ENCRYPTION_USER,
+        WSHandlerConstants.ENC_DIGEST_ALGO,
+        WSHandlerConstants.ENC_KEY_ID,
+        WSHandlerConstants.ENC_KEY_TRANSPORT,
+        WSHandlerConstants.ENC_MGF_ALGO,
+        WSHandlerConstants.ENC_PROP_FILE,
+        WSHandlerConstants.ENC_PROP_REF_ID,
+        WSHandlerConstants.ENC_SYM_ALGO,
+        WSHandlerConstants.ENC_SYM_ENC_KEY,
+        WSHandlerConstants.EXPAND_XOP_INCLUDE,
+        WSHandlerConstants.EXPAND_XOP_INCLUDE_FOR_SIGNATURE,
+        WSHandlerConstants.GET_SECRET_KEY_FROM_CALLBACK_HANDLER,
+        WSHandlerConstants.HANDLE_CUSTOM_PASSWORD_TYPES,
+        WSHandlerConstants.INCLUDE_ENCRYPTION_TOKEN,
+        WSHandlerConstants.INCLUDE_SIGNATURE_TOKEN,
+        WSHandlerConstants.INDEX_ELEMENT_IDS,
+        WSHandlerConstants.IS_BSP_COMPLIANT,
+        WSHandlerConstants.MUST_UNDERSTAND,
+        WSHandlerConstants.OPTIONAL_ENCRYPTION_PARTS,
+        WSHandlerConstants.OPTIONAL_SIGNATURE_PARTS,
+        WSHandlerConstants.PARALLEL_DIGEST,
+        WSHandlerConstants.PASSWORD_TYPE,
+        WSHandlerConstants.PW_CALLBACK_CLASS,
+        WSHandlerConstants.REQUIRE_SIGNED_ENCRYPTED_DATA_ELEMENTS,
+        WSHandlerConstants.REQUIRE_TIMESTAMP_EXPIRES,
+        WSHandlerConstants.SAML_CALLBACK_CLASS,
+        WSHandlerConstants.SIGNATURE_PARTS,
+        WSHandlerConstants.SIGNATURE_USER,
+        WSHandlerConstants.SIG_ALGO,
+        WSHandlerConstants.SIG_C14N_ALGO,
+        WSHandlerConstants.SIG_CERT_CONSTRAINTS_SEPARATOR,
+        WSHandlerConstants.SIG_DIGEST_ALGO,
+        WSHandlerConstants.SIG_ISSUER_CERT_CONSTRAINTS,
+        WSHandlerConstants.SIG_KEY_ID,
+        WSHandlerConstants.SIG_PROP_FILE,
+        WSHandlerConstants.SIG_PROP_REF_ID,
+        WSHandlerConstants.SIG_SUBJECT_CERT_CONSTRAINTS,
+        WSHandlerConstants.SIG_VER_PROP_FILE,
+        WSHandlerConstants.SIG_VER_PROP_REF_ID,
+        WSHandlerConstants.STORE_BYTES_IN_ATTACHMENT,
+        WSHandlerConstants.STREAM_ENCRYPTION,
+        WSHandlerConstants.TIMESTAMP_PRECISION,
+        WSHandlerConstants.TIMESTAMP_STRICT,
+        WSHandlerConstants.TTL_FUTURE_TIMESTAMP,
+        WSHandlerConstants.TTL_FUTURE_USERNAMETOKEN,
+        WSHandlerConstants.TTL_TIMESTAMP,
+        WSHandlerConstants.TTL_USERNAMETOKEN,
+        WSHandlerConstants.USE_2005_12_NAMESPACE,
+        WSHandlerConstants.USE_DERIVED_KEY_FOR_MAC,
+        WSHandlerConstants.USE_ENCODED_PASSWORDS,
+        WSHandlerConstants.USE_SINGLE_CERTIFICATE,
+        WSHandlerConstants.VALIDATE_SAML_SUBJECT_CONFIRMATION
+    ));
+
+    private static final List<String> PARTS_OPTIONS = Arrays.asList(
+        WSHandlerConstants.SIGNATURE_PARTS,
+        WSHandlerConstants.OPTIONAL_SIGNATURE_PARTS,
+        WSHandlerConstants.ENCRYPTION_PARTS,
+        WSHandlerConstants.OPTIONAL_ENCRYPTION_PARTS
+    );
+
+    private static final List<String> CALLBACK_CLASS_OPTIONS = Arrays.asList(
+        WSHandlerConstants.PW_CALLBACK_CLASS,
+        WSHandlerConstants.SAML_CALLBACK_CLASS
+    );
+
+    private final Map<String, String> stringOptions;
+    private final Map<String, Boolean> booleanOptions;
+    private final Map<String, Integer> integerOptions;
+    private final Map<String, List<PartDefinition>> partDefinitions;
+    private final String action;
+    private final List<Integer> senderActions;
+    private final List<Integer> receiverActions;
+    private final ClassLoader classLoader;
+    private final Map<String, Class<? extends CallbackHandler>> callbackHandlerClasses;
+
+    /**
+     * Compile the current String options of the handler
+     * @param handler the WSHandler to compile the options of
+     */
+    public WSHandlerConfiguration(WSHandler handler) {
+        Map<String, String> strings = new HashMap<>();
+        Map<String, Boolean> booleans = new HashMap<>();
+        Map<String, Integer> integers = new HashMap<>();
+        for (String key : COMPILED_OPTIONS) {
+            Object o = handler.getOption(key);
+            if (!(o instanceof String)) {
+                continue;
+            }
+            String value = (String) o;
+            strings.put(key, value);
+            if ("0".equals(value) || "false".equals(value)) {
+                booleans.put(key, Boolean.FALSE);
+            } else if ("1".equals(value) || "true".equals(value)) {
+                booleans.put(key, Boolean.TRUE);
+            }
+            try {
+                integers.put(key, Integer.parseInt(value));
+            } catch (NumberFormatException e) { //NOPMD
+                // not an integer option
+            }
+        }
+        stringOptions = Collections.unmodifiableMap(strings);
+        booleanOptions = Collections.unmodifiableMap(booleans);
+        integerOptions = Collections.unmodifiableMap(integers);
+
+        Map<String, List<PartDefinition>> parts = new HashMap<>();
+        for (String key : PARTS_OPTIONS) {
+            String value = strings.get(key);
+            if (value != null && !parts.containsKey(value)) {
+                try {
+                    parts.put(value, parsePartDefinitions(value));
+                } catch (WSSecurityException e) {
+                    LOG.debug("Not compiling the {} option: {}", key, e.getMessage());
+                }
+            }
+        }
+        partDefinitions = Collections.unmodifiableMap(parts);
+
+        action = strings.get(WSHandlerConstants.ACTION);
+        senderActions = decodeSenderActions(action);
+        receiverActions = decodeReceiverActions(action);
+
+        ClassLoader loader = null;
+        boolean loaderAvailable = false;
+        try {
+            loader = handler.getClassLoader(null);
+            loaderAvailable = true;
+        } catch (RuntimeException e) {
+            LOG.debug("Not compiling the CallbackHandler classes: {}", e.getMessage());
+        }
+        classLoader = loader;
+        Map<String, Class<? extends CallbackHandler>> callbackClasses = new HashMap<>();
+        for (String key : CALLBACK_CLASS_OPTIONS) {
+            String className = strings.get(key);
+            if (className != null && loaderAvailable) {
+                try {
+                    callbackClasses.put(className, Loader.loadClass(classLoader, className, CallbackHandler.class));
+                } catch (ClassNotFoundException e) {
+                    LOG.debug("Not compiling the {} option: {}", key, e.getMessage());
+                }
+            }
+        }
+        callbackHandlerClasses = Collections.unmodifiableMap(callbackClasses);
+    }
+
+    private static List<Integer> decodeSenderActions(String action) {
+        if (action == null) {
+            return null;
+        }
+        try {
+            List<Integer> actions = new ArrayList<>();
+            for (HandlerAction handlerAction : WSSecurityUtil.decodeHandlerAction(action, null)) {
+                actions.add(handlerAction.getAction());
+            }
+            return Collections.unmodifiableList(actions);
+        } catch (WSSecurityException e) {
+            // e.g. custom actions, which depend on the WSSConfig
+            return null;
+        }
+    }
+
+    private static List<Integer> decodeReceiverActions(String action) {
+        if (action == null) {
+            return null;
+        }
+        try {
+            return Collections.unmodifiableList(WSSecurityUtil.decodeAction(action));
+        } catch (WSSecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Whether the given option is compiled into this snapshot. The value of a compiled option is
+     * returned by getStringOption, without looking up the option of the handler.
+     */
+    public boolean isCompiled(String key) {
+        return COMPILED_OPTIONS.contains(key);
+    }
+
+    /**
+     * Get the value of a compiled String option, or null if the option is not set
+     */
+    public String getStringOption(String key) {
+        return stringOptions.get(key);
+    }
+
+    /**
+     * Get the decoded value of a boolean option, or null if the option is not set or is not a
+     * valid boolean value
+     */
+    public Boolean getBooleanOption(String key) {
+        return booleanOptions.get(key);
+    }
+
+    /**
+     * Get the decoded value of an integer option, or null if the option is not set or is not a
+     * valid integer value
+     */
+    public Integer getIntegerOption(String key) {
+        return integerOptions.get(key);
+    }
+
+    /**
+     * Get new sender actions for the given action String, or null if the action String is not the
+     * one of the handler option
+     */
+    public List<HandlerAction> getSenderActions(String actionString) {
+        if (senderActions == null || !action.equals(actionString)) {
+            return null;
+        }
+        List<HandlerAction> actions = new ArrayList<>(senderActions.size());
+        for (Integer senderAction : senderActions) {
+            actions.add(new HandlerAction(senderAction));
+        }
+        return actions;
+    }
+
+    /**
+     * Get the receiver actions for the given action String, or null if the action String is not
+     * the one of the handler option
+     */
+    public List<Integer> getReceiverActions(String actionString) {
+        if (receiverActions == null || !action.equals(actionString)) {
+            return null;
+        }
+        return receiverActions;
+    }
+
+    /**
+     * Create the WSEncryptionParts defined by the given parts String, if the parts String is the
+     * one of a parts option
+     *
+     * @return the new WSEncryptionParts, or null if the parts String is not compiled
+     */
+    List<WSEncryptionPart> getParts(String parts, String envelopeURI) {
+        List<PartDefinition> definitions = partDefinitions.get(parts);
+        if (definitions == null) {
+            return null;
+        }
+        return newParts(definitions, envelopeURI);
+    }
+
+    /**
+     * Get the class of the CallbackHandler with the given class name, if it was loaded with the
+     * given ClassLoader, or null otherwise
+     */
+    Class<? extends CallbackHandler> getCallbackHandlerClass(String className, ClassLoader loader) {
+        if (loader != classLoader) {
+            return null;
+        }
+        return callbackHandlerClasses.get(className);
+    }
+
+    static List<WSEncryptionPart> newParts(List<PartDefinition> definitions, String envelopeURI) {
+        List<WSEncryptionPart> parts = new ArrayList<>(definitions.size());
+        for (PartDefinition definition : definitions) {
+            parts.add(definition.newPart(envelopeURI));
+        }
+        return parts;
+    }
+
+    /**
+     * Parse a parts String of the form "{mode}{namespace}name;...", where a missing namespace
+     * stands for the SOAP envelope namespace
+     */
+    static List<PartDefinition> parsePartDefinitions(String tmpS) throws WSSecurityException {
+        String[] rawParts = tmpS.split(";");
+        List<PartDefinition> definitions = new ArrayList<>(rawParts.length);
+
+        for (String rawPart : rawParts) {
+            String[] partDef = rawPart.split("}");
+
+            if (partDef.length == 1) {
+                LOG.debug("single partDef: '{}'", partDef[0]);
+                definitions.add(new PartDefinition(partDef[0].trim(), null, true, "Content", false));
+            } else if (partDef.length == 2) {
+                String mode = partDef[0].trim().substring(1);
+                String element = partDef[1].trim();
+                definitions.add(new PartDefinition(element, null, false, mode, true));
+            } else if (partDef.length == 3) {
+                String mode = partDef[0].trim();
+                if (mode.length() <= 1) {
+                    mode = "Content";
+                } else {
+                    mode = mode.substring(1);
+                }
+                String nmSpace = partDef[1].trim();
+                boolean envelopeNamespace = false;
+                if (nmSpace.length() <= 1) {
+                    nmSpace = null;
+                    envelopeNamespace = true;
+                } else {
+                    nmSpace = nmSpace.substring(1);
+                    if (nmSpace.equals(WSConstants.NULL_NS)) {
+                        nmSpace = null;
+                    }
+                }
+                String element = partDef[2].trim();
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug(
+                        "partDefs: '" + mode + "' ,'" + nmSpace + "' ,'" + element + "'"
+                    );
+                }
+                definitions.add(new PartDefinition(element, nmSpace, envelopeNamespace, mode, false));
+            } else {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
+                        "empty",
+                        new Object[] {"WSHandler: wrong part definition: " + tmpS});
+            }
+        }
+        return definitions;
+    }
+
+    /**
+     * A parsed part of a parts String. A new WSEncryptionPart is created from it for every message,
+     * as the WSEncryptionParts are modified while a message is secured.
+     */
+    static final class PartDefinition {
+
+        private final String name;
+        private final String namespace;
+        private final boolean envelopeNamespace;
+        private final String encModifier;
+        private final boolean id;
+
+        PartDefinition(String name, String namespace, boolean envelopeNamespace, String encModifier, boolean id) {
+            this.name = name;
+            this.namespace = namespace;
+            this.envelopeNamespace = envelopeNamespace;
+            this.encModifier = encModifier;
+            this.id = id;
+        }
+
+        WSEncryptionPart newPart(String envelopeURI) {
+            if (id) {
+                return new WSEncryptionPart(name, encModifier);
+            }
+            return new WSEncryptionPart(name, envelopeNamespace ? envelopeURI : namespace, encModifier);
+        }
+    }
+}
@@ -19,9 +19,16 @@
 
 package org.apache.wss4j.dom.message;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -48,6 +55,7 @@ import org.apache.wss4j.dom.callback.CallbackLookup;
 import org.apache.wss4j.dom.callback.DOMCallbackLookup;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.apache.xml.security.algorithms.JCEMapper;
+import org.apache.xml.security.c14n.Canonicalizer;
 import org.apache.xml.security.encryption.AbstractSerializer;
 import org.apache.xml.security.encryption.EncryptedData;
 import org.apache.xml.security.encryption.Serializer;
@@ -55,6 +63,7 @@ import org.apache.xml.security.encryption.TransformSerializer;
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.encryption.XMLCipherUtil;
 import org.apache.xml.security.encryption.XMLEncryptionException;
+import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.keys.KeyInfo;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.utils.EncryptionConstants;
@@ -70,12 +79,19 @@ import org.w3c.dom.NodeList;
  */
 public class Encryptor {
 
+    // The size of the buffer between the serialization and the Cipher
+    private static final int BUFFER_SIZE = 8192;
+
+    // The maximum number of BASE-64 characters in a single Text node of a CipherValue
+    private static final int MAX_TEXT_NODE_LENGTH = 65536;
+
     private Document doc;
     private WSSecHeader securityHeader;
     private WsuIdAllocator idAllocator;
     private CallbackLookup callbackLookup;
     private CallbackHandler attachmentCallbackHandler;
     private boolean storeBytesInAttachment;
+    private boolean streamEncryption;
     private Serializer encryptionSerializer;
     private boolean expandXopInclude;
     private WSDocInfo wsDocInfo;
@@ -175,7 +191,8 @@ public class Encryptor {
                         }
                     } else {
                         String id =
-                            encryptElement(encrElement, encPart.getEncModifier(), xmlCipher, secretKey, keyInfo);
+                            encryptElement(encrElement, encPart.getEncModifier(), xmlCipher, secretKey, keyInfo,
+                                           encryptionAlgorithm);
                         encPart.setEncId(id);
                         encDataRef.add("#" + id);
                     }
@@ -196,7 +213,8 @@ public class Encryptor {
             } else {
                 for (Element elementToEncrypt : elementsToEncrypt) {
                     String id =
-                        encryptElement(elementToEncrypt, encPart.getEncModifier(), xmlCipher, secretKey, keyInfo);
+                        encryptElement(elementToEncrypt, encPart.getEncModifier(), xmlCipher, secretKey, keyInfo,
+                                       encryptionAlgorithm);
                     encPart.setEncId(id);
                     encDataRef.add("#" + id);
                 }
@@ -255,71 +273,56 @@ public class Encryptor {
         }
 
         Element encryptedData =
-            doc.createElementNS(WSConstants.ENC_NS, WSConstants.ENC_PREFIX + ":EncryptedData");
-        encryptedData.setAttributeNS(null, "Id", encEncryptedDataId);
-        encryptedData.setAttributeNS(null, "Type", type);
-
-        Element encryptionMethod =
-            doc.createElementNS(WSConstants.ENC_NS, WSConstants.ENC_PREFIX + ":EncryptionMethod");
-        encryptionMethod.setAttributeNS(null, "Algorithm", encryptionAlgorithm);
-
-        encryptedData.appendChild(encryptionMethod);
-        encryptedData.appendChild(WSSecurityUtil.cloneElement(doc, keyInfo.getElement()));
-
-        Element cipherData =
-            doc.createElementNS(WSConstants.ENC_NS, WSConstants.ENC_PREFIX + ":CipherData");
-        Element cipherValue =
-            doc.createElementNS(WSConstants.ENC_NS, WSConstants.ENC_PREFIX + ":CipherValue");
-        cipherData.appendChild(cipherValue);
-        encryptedData.appendChild(cipherData);
+            createEncryptedData(encEncryptedDataId, type, encryptionAlgorithm, keyInfo, false);
+        Element cipherValue = getCipherValue(encryptedData);
 
         Cipher cipher = createCipher(encryptionAlgorithm, secretKey);
 
-        // Serialize and encrypt the element
-        AbstractSerializer serializer = new TransformSerializer(true);
-
-        byte[] serializedOctets = null;
-        if (type.equals(EncryptionConstants.TYPE_CONTENT)) {
-            NodeList children = elementToEncrypt.getChildNodes();
-            if (null != children) {
-                serializedOctets = serializer.serializeToByteArray(children);
+        boolean content = type.equals(EncryptionConstants.TYPE_CONTENT);
+        InputStream encryptedStream = null;
+        if (streamEncryption) {
+            // Serialize and encrypt the element straight into the attachment bytes
+            EncryptedBytesOutputStream encryptedBytes = new EncryptedBytesOutputStream();
+            encrypt(elementToEncrypt, content, cipher, encryptedBytes);
+            encryptedStream = encryptedBytes.toInputStream();
+        } else {
+            // Serialize and encrypt the element
+            AbstractSerializer serializer = new TransformSerializer(true);
+
+            byte[] serializedOctets = null;
+            if (content) {
+                NodeList children = elementToEncrypt.getChildNodes();
+                if (null != children) {
+                    serializedOctets = serializer.serializeToByteArray(children);
+                } else {
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION,
+                                                  "Element has no content.");
+                }
             } else {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION,
-                                              "Element has no content.");
+                serializedOctets = serializer.serializeToByteArray(elementToEncrypt);
             }
-        } else {
-            serializedOctets = serializer.serializeToByteArray(elementToEncrypt);
-        }
-
-        byte[] encryptedBytes = null;
-        try {
-            encryptedBytes = cipher.doFinal(serializedOctets);
-        } catch (IllegalBlockSizeException ibse) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, ibse);
-        } catch (BadPaddingException bpe) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, bpe);
-        }
-
-        // Now build up to a properly XML Encryption encoded octet stream
-        byte[] iv = cipher.getIV();
-        byte[] finalEncryptedBytes = new byte[iv.length + encryptedBytes.length];
-        System.arraycopy(iv, 0, finalEncryptedBytes, 0, iv.length);
-        System.arraycopy(encryptedBytes, 0, finalEncryptedBytes, iv.length, encryptedBytes.length);
 
-        if ("Content".equals(encryptionPart.getEncModifier())) {
-            Node child = elementToEncrypt.getFirstChild();
-            while (child != null) {
-                Node sibling = child.getNextSibling();
-                elementToEncrypt.removeChild(child);
-                child = sibling;
+            byte[] encryptedBytes = null;
+            try {
+                encryptedBytes = cipher.doFinal(serializedOctets);
+            } catch (IllegalBlockSizeException ibse) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, ibse);
+            } catch (BadPaddingException bpe) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, bpe);
             }
-            elementToEncrypt.appendChild(encryptedData);
-        } else {
-            elementToEncrypt.getParentNode().replaceChild(encryptedData, elementToEncrypt);
+
+            // Now build up to a properly XML Encryption encoded octet stream
+            byte[] iv = cipher.getIV();
+            byte[] finalEncryptedBytes = new byte[iv.length + encryptedBytes.length];
+            System.arraycopy(iv, 0, finalEncryptedBytes, 0, iv.length);
+            System.arraycopy(encryptedBytes, 0, finalEncryptedBytes, iv.length, encryptedBytes.length);
+            encryptedStream = new ByteArrayInputStream(finalEncryptedBytes);
         }
 
+        replaceWithEncryptedData(elementToEncrypt, encryptedData, content);
+
         AttachmentUtils.storeBytesInAttachment(cipherValue, doc, attachmentId,
-                                              finalEncryptedBytes, attachmentCallbackHandler);
+                                              encryptedStream, attachmentCallbackHandler);
 
         return encEncryptedDataId;
     }
@@ -442,7 +445,8 @@ public class Encryptor {
         String modifier,
         XMLCipher xmlCipher,
         SecretKey secretKey,
-        KeyInfo keyInfo
+        KeyInfo keyInfo,
+        String encryptionAlgorithm
     ) throws WSSecurityException {
 
         boolean content = "Content".equals(modifier);
@@ -459,6 +463,12 @@ public class Encryptor {
                 }
             }
 
+            if (streamEncryption && encryptionSerializer == null) {
+                encryptElementStreaming(elementToEncrypt, content, xencEncryptedDataId,
+                                        encryptionAlgorithm, secretKey, keyInfo);
+                return xencEncryptedDataId;
+            }
+
             xmlCipher.init(XMLCipher.ENCRYPT_MODE, secretKey);
             EncryptedData encData = xmlCipher.getEncryptedData();
             encData.setId(xencEncryptedDataId);
@@ -472,6 +482,110 @@ public class Encryptor {
         }
     }
 
+    /**
+     * Encrypt an element without materializing the serialized element or the encrypted bytes.
+     * The element is serialized into the Cipher, and the encrypted bytes are BASE-64 encoded
+     * straight into Text nodes of the CipherValue.
+     */
+    private void encryptElementStreaming(
+        Element elementToEncrypt,
+        boolean content,
+        String xencEncryptedDataId,
+        String encryptionAlgorithm,
+        SecretKey secretKey,
+        KeyInfo keyInfo
+    ) throws WSSecurityException {
+        String type = content ? EncryptionConstants.TYPE_CONTENT : EncryptionConstants.TYPE_ELEMENT;
+        // Declare the namespace on the EncryptedData, as XMLCipher does
+        Element encryptedData =
+            createEncryptedData(xencEncryptedDataId, type, encryptionAlgorithm, keyInfo, true);
+        Element cipherValue = getCipherValue(encryptedData);
+
+        Cipher cipher = createCipher(encryptionAlgorithm, secretKey);
+        Base64.Encoder encoder = org.apache.xml.security.utils.XMLUtils.ignoreLineBreaks()
+            ? Base64.getEncoder() : Base64.getMimeEncoder();
+        encrypt(elementToEncrypt, content, cipher, encoder.wrap(new TextNodeOutputStream(cipherValue)));
+
+        replaceWithEncryptedData(elementToEncrypt, encryptedData, content);
+    }
+
+    /**
+     * Serialize the element (or its content) and write the IV followed by the encrypted bytes
+     * to the given OutputStream, which is closed afterwards.
+     */
+    private static void encrypt(
+        Element elementToEncrypt, boolean content, Cipher cipher, OutputStream outputStream
+    ) throws WSSecurityException {
+        try (OutputStream cipherStream =
+            new BufferedOutputStream(new EncryptingOutputStream(cipher, outputStream), BUFFER_SIZE)) {
+            byte[] iv = cipher.getIV();
+            if (iv != null) {
+                outputStream.write(iv);
+            }
+
+            Canonicalizer canon = Canonicalizer.getInstance(Canonicalizer.ALGO_ID_C14N_PHYSICAL);
+            if (content) {
+                NodeList children = elementToEncrypt.getChildNodes();
+                for (int i = 0; i < children.getLength(); i++) {
+                    canon.canonicalizeSubtree(children.item(i), cipherStream);
+                }
+            } else {
+                canon.canonicalizeSubtree(elementToEncrypt, cipherStream);
+            }
+        } catch (XMLSecurityException | IOException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, e);
+        }
+    }
+
+    private Element createEncryptedData(
+        String encryptedDataId, String type, String encryptionAlgorithm, KeyInfo keyInfo,
+        boolean declareNamespace
+    ) {
+        Element encryptedData =
+            doc.createElementNS(WSConstants.ENC_NS, WSConstants.ENC_PREFIX + ":EncryptedData");
+        if (declareNamespace) {
+            encryptedData.setAttributeNS(XMLUtils.XMLNS_NS, "xmlns:" + WSConstants.ENC_PREFIX, WSConstants.ENC_NS);
+        }
+        encryptedData.setAttributeNS(null, "Id", encryptedDataId);
+        encryptedData.setAttributeNS(null, "Type", type);
+
+        Element encryptionMethod =
+            doc.createElementNS(WSConstants.ENC_NS, WSConstants.ENC_PREFIX + ":EncryptionMethod");
+        encryptionMethod.setAttributeNS(null, "Algorithm", encryptionAlgorithm);
+
+        encryptedData.appendChild(encryptionMethod);
+        encryptedData.appendChild(WSSecurityUtil.cloneElement(doc, keyInfo.getElement()));
+
+        Element cipherData =
+            doc.createElementNS(WSConstants.ENC_NS, WSConstants.ENC_PREFIX + ":CipherData");
+        Element cipherValue =
+            doc.createElementNS(WSConstants.ENC_NS, WSConstants.ENC_PREFIX + ":CipherValue");
+        cipherData.appendChild(cipherValue);
+        encryptedData.appendChild(cipherData);
+
+        return encryptedData;
+    }
+
+    private static Element getCipherValue(Element encryptedData) {
+        return (Element)encryptedData.getLastChild().getFirstChild();
+    }
+
+    private static void replaceWithEncryptedData(
+        Element elementToEncrypt, Element encryptedData, boolean content
+    ) {
+        if (content) {
+            Node child = elementToEncrypt.getFirstChild();
+            while (child != null) {
+                Node sibling = child.getNextSibling();
+                elementToEncrypt.removeChild(child);
+                child = sibling;
+            }
+            elementToEncrypt.appendChild(encryptedData);
+        } else {
+            elementToEncrypt.getParentNode().replaceChild(encryptedData, elementToEncrypt);
+        }
+    }
+
     private static void createEncryptedHeaderElement(
         WSSecHeader securityHeader,
         Element elementToEncrypt,
@@ -567,6 +681,21 @@ public class Encryptor {
         this.storeBytesInAttachment = storeBytesInAttachment;
     }
 
+    public boolean isStreamEncryption() {
+        return streamEncryption;
+    }
+
+    /**
+     * Set whether to serialize and encrypt the Elements in a streaming manner, so that neither
+     * the serialized Element nor the encrypted bytes are held in memory as a whole. If the bytes
+     * are stored in an attachment, the encrypted bytes are still buffered in full for the
+     * attachment. This is not supported in combination with a custom encryption Serializer. The
+     * default is false.
+     */
+    public void setStreamEncryption(boolean streamEncryption) {
+        this.streamEncryption = streamEncryption;
+    }
+
     public Serializer getEncryptionSerializer() {
         return encryptionSerializer;
     }
@@ -591,4 +720,110 @@ public class Encryptor {
         this.wsDocInfo = wsDocInfo;
     }
 
+    /**
+     * Encrypts the bytes written to it, and writes the encrypted bytes to the underlying stream.
+     * The final block is written when the stream is closed.
+     */
+    private static final class EncryptingOutputStream extends OutputStream {
+
+        private final Cipher cipher;
+        private final OutputStream out;
+        private byte[] buffer = new byte[0];
+
+        EncryptingOutputStream(Cipher cipher, OutputStream out) {
+            this.cipher = cipher;
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                ensureBufferSize(cipher.getOutputSize(len));
+                int written = cipher.update(b, off, len, buffer, 0);
+                out.write(buffer, 0, written);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                ensureBufferSize(cipher.getOutputSize(0));
+                int written = cipher.doFinal(buffer, 0);
+                out.write(buffer, 0, written);
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            } finally {
+                out.close();
+            }
+        }
+
+        private void ensureBufferSize(int size) {
+            if (buffer.length < size) {
+                buffer = new byte[Math.max(size, BUFFER_SIZE)];
+            }
+        }
+    }
+
+    /**
+     * Appends the (BASE-64) characters written to it as Text nodes to an Element
+     */
+    private static final class TextNodeOutputStream extends OutputStream {
+
+        private final Element element;
+        private final char[] chars = new char[MAX_TEXT_NODE_LENGTH];
+        private int length;
+
+        TextNodeOutputStream(Element element) {
+            this.element = element;
+        }
+
+        @Override
+        public void write(int b) {
+            if (length == chars.length) {
+                appendText();
+            }
+            chars[length++] = (char) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        @Override
+        public void close() {
+            appendText();
+        }
+
+        private void appendText() {
+            if (length > 0) {
+                element.appendChild(element.getOwnerDocument().createTextNode(new String(chars, 0, length)));
+                length = 0;
+            }
+        }
+    }
+
+    /**
+     * A ByteArrayOutputStream that hands out its bytes without copying them
+     */
+    private static final class EncryptedBytesOutputStream extends ByteArrayOutputStream {
+
+        EncryptedBytesOutputStream() {
+            super(BUFFER_SIZE);
+        }
+
+        InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+
 }
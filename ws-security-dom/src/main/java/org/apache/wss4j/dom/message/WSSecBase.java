@@ -47,6 +47,7 @@ public class WSSecBase {
     protected CallbackLookup callbackLookup;
     protected CallbackHandler attachmentCallbackHandler;
     protected boolean storeBytesInAttachment;
+    protected boolean streamEncryption;
     protected boolean expandXopInclude;
     protected boolean addWSUNamespace;
 
@@ -141,6 +142,10 @@ public class WSSecBase {
         this.storeBytesInAttachment = storeBytesInAttachment;
     }
 
+    public void setStreamEncryption(boolean streamEncryption) {
+        this.streamEncryption = streamEncryption;
+    }
+
     /**
      * Looks up or adds a body id. <p/> First try to locate the
      * <code>wsu:Id</code> in the SOAP body element. If one is found, the
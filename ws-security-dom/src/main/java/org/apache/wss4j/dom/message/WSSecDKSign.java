@@ -244,16 +244,6 @@ public class WSSecDKSign extends WSSecDerivedKeyBase {
             java.security.Key key = getDerivedKey(sigAlgo);
             SignatureMethod signatureMethod =
                 signatureFactory.newSignatureMethod(sigAlgo, null);
-            SignedInfo signedInfo =
-                signatureFactory.newSignedInfo(c14nMethod, signatureMethod, referenceList);
-
-            sig = signatureFactory.newXMLSignature(
-                    signedInfo,
-                    keyInfo,
-                    null,
-                    getIdAllocator().createId("SIG-", null),
-                    null);
-
             //
             // Figure out where to insert the signature element
             //
@@ -285,6 +275,17 @@ public class WSSecDKSign extends WSSecDerivedKeyBase {
             // Add the elements to sign to the Signature Context
             wsDocInfo.setTokensOnContext((DOMSignContext)signContext);
 
+            List<javax.xml.crypto.dsig.Reference> references =
+                digestReferences(referenceList, signatureFactory, (DOMSignContext)signContext);
+            SignedInfo signedInfo =
+                signatureFactory.newSignedInfo(c14nMethod, signatureMethod, references);
+
+            sig = signatureFactory.newXMLSignature(
+                    signedInfo,
+                    keyInfo,
+                    null,
+                    getIdAllocator().createId("SIG-", null),
+                    null);
             sig.sign(signContext);
 
             signatureValue = sig.getSignatureValue().getValue();
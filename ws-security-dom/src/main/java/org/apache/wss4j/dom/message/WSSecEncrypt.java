@@ -133,7 +133,9 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
 
         LOG.debug("Beginning Encryption...");
 
-        Element refs = encrypt(symmetricKey);
+        // The symmetric key of an earlier message is reused, if an EncryptedKeySessionCache is set
+        SecretKey encryptionKey = encryptSymmKey ? getSymmetricKey() : symmetricKey;
+        Element refs = encrypt(encryptionKey);
 
         addAttachmentEncryptedDataElements();
         if (getEncryptedKeyElement() != null) {
@@ -204,6 +206,7 @@ public class WSSecEncrypt extends WSSecEncryptedKey {
         encryptor.setCallbackLookup(callbackLookup);
         encryptor.setAttachmentCallbackHandler(attachmentCallbackHandler);
         encryptor.setStoreBytesInAttachment(storeBytesInAttachment);
+        encryptor.setStreamEncryption(streamEncryption);
         encryptor.setEncryptionSerializer(getEncryptionSerializer());
         encryptor.setExpandXopInclude(isExpandXopInclude());
         encryptor.setWsDocInfo(getWsDocInfo());
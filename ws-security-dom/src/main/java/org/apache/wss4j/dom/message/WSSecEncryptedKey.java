@@ -40,6 +40,7 @@ import javax.xml.crypto.dsig.keyinfo.KeyInfo;
 import javax.xml.crypto.dsig.keyinfo.KeyInfoFactory;
 import javax.xml.crypto.dsig.keyinfo.KeyValue;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -130,6 +131,13 @@ public class WSSecEncryptedKey extends WSSecBase {
 
     private String encryptedKeySHA1;
 
+    private EncryptedKeySessionCache encryptedKeySessionCache;
+
+    /**
+     * The symmetric key that is transported in the EncryptedKey
+     */
+    private SecretKey symmetricKey;
+
     public WSSecEncryptedKey(WSSecHeader securityHeader) {
         super(securityHeader);
     }
@@ -179,10 +187,11 @@ public class WSSecEncryptedKey extends WSSecBase {
      * @throws WSSecurityException
      */
     public void prepare(Crypto crypto, SecretKey symmetricKey) throws WSSecurityException {
+        this.symmetricKey = symmetricKey;
 
         if (useThisPublicKey != null) {
             createEncryptedKeyElement(useThisPublicKey);
-            byte[] encryptedEphemeralKey = encryptSymmetricKey(useThisPublicKey, symmetricKey);
+            byte[] encryptedEphemeralKey = getEncryptedEphemeralKey(useThisPublicKey, symmetricKey);
             addCipherValueElement(encryptedEphemeralKey);
         } else {
             //
@@ -210,11 +219,49 @@ public class WSSecEncryptedKey extends WSSecBase {
             }
 
             createEncryptedKeyElement(remoteCert, crypto);
-            byte[] encryptedEphemeralKey = encryptSymmetricKey(remoteCert.getPublicKey(), symmetricKey);
+            byte[] encryptedEphemeralKey = getEncryptedEphemeralKey(remoteCert.getPublicKey(), symmetricKey);
             addCipherValueElement(encryptedEphemeralKey);
         }
     }
 
+    /**
+     * Encrypt the symmetric key with the public key, or reuse the symmetric key and its encrypted
+     * bytes of an earlier message to the same recipient, if an EncryptedKeySessionCache is set.
+     */
+    private byte[] getEncryptedEphemeralKey(PublicKey encryptingKey, SecretKey keyToBeEncrypted)
+        throws WSSecurityException {
+        if (encryptedKeySessionCache == null) {
+            return encryptSymmetricKey(encryptingKey, keyToBeEncrypted);
+        }
+
+        String sessionKey =
+            EncryptedKeySessionCache.createSessionKey(
+                encryptingKey, keyEncAlgo, digestAlgo, mgfAlgo,
+                keyToBeEncrypted.getAlgorithm() + keyToBeEncrypted.getEncoded().length,
+                getSymmetricEncAlgorithm()
+            );
+        EncryptedKeySessionCache.Session session = encryptedKeySessionCache.getSession(sessionKey);
+        if (session != null && session.getSecretKey() instanceof SecretKey) {
+            LOG.debug("Reusing the session key of an earlier EncryptedKey");
+            symmetricKey = (SecretKey)session.getSecretKey();
+            return session.getEncryptedKey();
+        }
+
+        byte[] encryptedEphemeralKey = encryptSymmetricKey(encryptingKey, keyToBeEncrypted);
+        encryptedKeySessionCache.addSession(sessionKey, keyToBeEncrypted, encryptedEphemeralKey);
+        return encryptedEphemeralKey;
+    }
+
+    /**
+     * Get the symmetric encryption algorithm that the transported key is used with. A session of the
+     * EncryptedKeySessionCache is only reused for the same algorithm, so that a key is never used
+     * with two different algorithms (e.g. AES-CBC and AES-GCM). The default is null, as this class
+     * does not use the key itself.
+     */
+    protected String getSymmetricEncAlgorithm() {
+        return null;
+    }
+
     /**
      * Create and add the CipherValue Element to the EncryptedKey Element.
      */
@@ -828,4 +875,28 @@ public class WSSecEncryptedKey extends WSSecBase {
     public String getEncryptedKeySHA1() {
         return encryptedKeySHA1;
     }
+
+    /**
+     * Set the cache of session keys to reuse the symmetric key and the EncryptedKey of an earlier
+     * message to the same recipient. If a session key is reused, the symmetric key passed to
+     * <code>prepare()</code> is not used: the symmetric key to encrypt with must then be
+     * obtained with <code>getSymmetricKey()</code> after <code>prepare()</code>.
+     *
+     * @param encryptedKeySessionCache the cache of session keys, or null to not reuse session keys
+     */
+    public void setEncryptedKeySessionCache(EncryptedKeySessionCache encryptedKeySessionCache) {
+        this.encryptedKeySessionCache = encryptedKeySessionCache;
+    }
+
+    public EncryptedKeySessionCache getEncryptedKeySessionCache() {
+        return encryptedKeySessionCache;
+    }
+
+    /**
+     * Get the symmetric key that is transported in the EncryptedKey. This is the symmetric key that
+     * was passed to <code>prepare()</code>, unless a session key was reused.
+     */
+    public SecretKey getSymmetricKey() {
+        return symmetricKey;
+    }
 }
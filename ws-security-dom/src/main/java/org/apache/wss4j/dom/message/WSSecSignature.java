@@ -574,16 +574,6 @@ public class WSSecSignature extends WSSecSignatureBase {
             }
             SignatureMethod signatureMethod =
                 signatureFactory.newSignatureMethod(sigAlgo, null);
-            SignedInfo signedInfo =
-                signatureFactory.newSignedInfo(c14nMethod, signatureMethod, referenceList);
-
-            sig = signatureFactory.newXMLSignature(
-                    signedInfo,
-                    keyInfo,
-                    null,
-                    getIdAllocator().createId("SIG-", null),
-                    null);
-
             //
             // Figure out where to insert the signature element
             //
@@ -621,6 +611,18 @@ public class WSSecSignature extends WSSecSignatureBase {
 
             // Add the elements to sign to the Signature Context
             getWsDocInfo().setTokensOnContext((DOMSignContext)signContext);
+
+            List<javax.xml.crypto.dsig.Reference> references =
+                digestReferences(referenceList, signatureFactory, (DOMSignContext)signContext);
+            SignedInfo signedInfo =
+                signatureFactory.newSignedInfo(c14nMethod, signatureMethod, references);
+
+            sig = signatureFactory.newXMLSignature(
+                    signedInfo,
+                    keyInfo,
+                    null,
+                    getIdAllocator().createId("SIG-", null),
+                    null);
             sig.sign(signContext);
 
             signatureValue = sig.getSignatureValue().getValue();
@@ -24,6 +24,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import javax.security.auth.callback.Callback;
 import javax.xml.crypto.XMLStructure;
@@ -31,6 +32,7 @@ import javax.xml.crypto.dom.DOMStructure;
 import javax.xml.crypto.dsig.DigestMethod;
 import javax.xml.crypto.dsig.Transform;
 import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
 import javax.xml.crypto.dsig.spec.ExcC14NParameterSpec;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 
@@ -39,6 +41,7 @@ import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.AttachmentBufferFactory;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
@@ -46,6 +49,7 @@ import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.DOMCallbackLookup;
 import org.apache.wss4j.dom.transform.AttachmentTransformParameterSpec;
 import org.apache.wss4j.dom.transform.STRTransform;
+import org.apache.wss4j.dom.util.ReferenceDigester;
 import org.apache.wss4j.dom.util.SignatureUtils;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.w3c.dom.Document;
@@ -61,6 +65,8 @@ public class WSSecSignatureBase extends WSSecBase {
         org.slf4j.LoggerFactory.getLogger(WSSecSignatureBase.class);
 
     private List<Element> clonedElements = new ArrayList<>();
+    private Executor digestExecutor;
+    private AttachmentBufferFactory attachmentBufferFactory;
 
     public WSSecSignatureBase(WSSecHeader securityHeader) {
         super(securityHeader);
@@ -281,7 +287,7 @@ public class WSSecSignatureBase extends WSSecBase {
 
                     AttachmentTransformParameterSpec attachmentTransformParameterSpec =
                         new AttachmentTransformParameterSpec(
-                            attachmentCallbackHandler, attachment
+                            attachmentCallbackHandler, attachment, attachmentBufferFactory
                         );
 
                     String attachmentSignatureTransform = WSConstants.SWA_ATTACHMENT_CONTENT_SIG_TRANS;
@@ -345,6 +351,52 @@ public class WSSecSignatureBase extends WSSecBase {
         return transformParam;
     }
 
+    /**
+     * Set the Executor to canonicalize and digest the References on concurrently, before the
+     * SignedInfo is signed. The default is null, meaning that the References are digested
+     * sequentially when the Signature is computed. See ReferenceDigester.
+     */
+    public void setDigestExecutor(Executor digestExecutor) {
+        this.digestExecutor = digestExecutor;
+    }
+
+    public Executor getDigestExecutor() {
+        return digestExecutor;
+    }
+
+    /**
+     * Set the AttachmentBufferFactory to buffer the signed attachments with, while they are digested.
+     * The default is ThresholdAttachmentBufferFactory.getDefault().
+     */
+    public void setAttachmentBufferFactory(AttachmentBufferFactory attachmentBufferFactory) {
+        this.attachmentBufferFactory = attachmentBufferFactory;
+    }
+
+    public AttachmentBufferFactory getAttachmentBufferFactory() {
+        return attachmentBufferFactory;
+    }
+
+    /**
+     * Digest the References concurrently, if a digest Executor is set. This must be called after the
+     * elements to sign are set on the signing context.
+     *
+     * @return the References to sign, some of which may be already digested
+     */
+    protected List<javax.xml.crypto.dsig.Reference> digestReferences(
+        List<javax.xml.crypto.dsig.Reference> referenceList,
+        XMLSignatureFactory signatureFactory,
+        DOMSignContext signContext
+    ) {
+        if (digestExecutor == null) {
+            return referenceList;
+        }
+        List<javax.xml.crypto.dsig.Reference> digestedReferences = new ArrayList<>(referenceList);
+        ReferenceDigester.digestReferences(
+            digestedReferences, signatureFactory, signContext, getDocument(), digestExecutor
+        );
+        return digestedReferences;
+    }
+
     protected void cleanup() {
         if (!clonedElements.isEmpty()) {
             for (Element clonedElement : clonedElements) {
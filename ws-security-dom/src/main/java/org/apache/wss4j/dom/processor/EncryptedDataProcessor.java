@@ -166,7 +166,7 @@ public class EncryptedDataProcessor implements Processor {
 
         WSDataRef dataRef = EncryptionUtils.decryptEncryptedData(
                 elem.getOwnerDocument(), encryptedDataId, elem, key, symEncAlgo,
-                data.getAttachmentCallbackHandler(), data.getEncryptionSerializer());
+                data.getAttachmentCallbackHandler(), data.getEncryptionSerializer(), data.getWsDocInfo());
 
         WSSecurityEngineResult result =
                 new WSSecurityEngineResult(WSConstants.ENCR, Collections.singletonList(dataRef));
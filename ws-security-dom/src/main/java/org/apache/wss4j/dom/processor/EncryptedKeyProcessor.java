@@ -30,6 +30,7 @@ import java.security.PublicKey;
 import java.security.cert.X509Certificate;
 import java.security.spec.MGF1ParameterSpec;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 
@@ -45,6 +46,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.apache.wss4j.common.bsp.BSPEnforcer;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.UnwrappedKeyCache;
 import org.apache.wss4j.common.crypto.AlgorithmSuite;
 import org.apache.wss4j.common.crypto.AlgorithmSuiteValidator;
 import org.apache.wss4j.common.crypto.CryptoType;
@@ -222,10 +224,32 @@ public class EncryptedKeyProcessor implements Processor {
         if (symmetricKeyWrap) {
             decryptedBytes = getSymmetricDecryptedBytes(data, data.getWsDocInfo(), keyInfoChildElement, refList);
         } else {
-            PrivateKey privateKey = getPrivateKey(data, certs, publicKey);
-            decryptedBytes = getAsymmetricDecryptedBytes(data, data.getWsDocInfo(), encryptedKeyTransportMethod,
-                                                         encryptedEphemeralKey, refList,
-                                                         elem, privateKey);
+            // See if the same EncryptedKey has been decrypted before
+            UnwrappedKeyCache unwrappedKeyCache = data.getUnwrappedKeyCache();
+            String cacheKey = null;
+            if (unwrappedKeyCache != null) {
+                byte[] pSource = EncryptionUtils.getPSource(elem);
+                cacheKey =
+                    UnwrappedKeyCache.createCacheKey(
+                        encryptedEphemeralKey, publicKey, encryptedKeyTransportMethod,
+                        EncryptionUtils.getDigestAlgorithm(elem), EncryptionUtils.getMGFAlgorithm(elem),
+                        pSource == null ? null : Base64.getEncoder().encodeToString(pSource)
+                    );
+                decryptedBytes = unwrappedKeyCache.get(cacheKey);
+            }
+
+            if (decryptedBytes == null) {
+                PrivateKey privateKey = getPrivateKey(data, certs, publicKey);
+                decryptedBytes = getAsymmetricDecryptedBytes(data, encryptedKeyTransportMethod,
+                                                             encryptedEphemeralKey, elem, privateKey);
+                if (decryptedBytes == null) {
+                    decryptedBytes = getRandomKey(refList, data.getWsDocInfo());
+                } else if (cacheKey != null) {
+                    unwrappedKeyCache.put(cacheKey, decryptedBytes);
+                }
+            } else {
+                LOG.debug("Using the cached secret key of the EncryptedKey");
+            }
         }
 
         List<WSDataRef> dataRefs = decryptDataRefs(refList, data.getWsDocInfo(), decryptedBytes, data);
@@ -288,12 +312,14 @@ public class EncryptedKeyProcessor implements Processor {
         return X509Util.getSecretKey(keyInfoChildElement, algorithmURI, data.getCallbackHandler());
     }
 
+    /**
+     * Decrypt the EncryptedKey with the private key of the recipient
+     * @return the decrypted key, or null if the decryption failed
+     */
     private static byte[] getAsymmetricDecryptedBytes(
         RequestData data,
-        WSDocInfo wsDocInfo,
         String encryptedKeyTransportMethod,
         byte[] encryptedEphemeralKey,
-        Element refList,
         Element encryptedKeyElement,
         PrivateKey privateKey
     ) throws WSSecurityException {
@@ -354,7 +380,7 @@ public class EncryptedKeyProcessor implements Processor {
         } catch (IllegalStateException ex) {
             throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_CHECK, ex);
         } catch (Exception ex) {
-            return getRandomKey(refList, wsDocInfo);
+            return null;
         }
     }
 
@@ -598,7 +624,7 @@ public class EncryptedKeyProcessor implements Processor {
 
         return EncryptionUtils.decryptEncryptedData(
             doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
-            data.getEncryptionSerializer()
+            data.getEncryptionSerializer(), docInfo
         );
     }
 
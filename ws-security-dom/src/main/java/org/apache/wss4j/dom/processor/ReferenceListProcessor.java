@@ -192,7 +192,7 @@ public class ReferenceListProcessor implements Processor {
         return
             EncryptionUtils.decryptEncryptedData(
                 doc, dataRefURI, encryptedDataElement, symmetricKey, symEncAlgo, data.getAttachmentCallbackHandler(),
-                data.getEncryptionSerializer()
+                data.getEncryptionSerializer(), data.getWsDocInfo()
             );
     }
 
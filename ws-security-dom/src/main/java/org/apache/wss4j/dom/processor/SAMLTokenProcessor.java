@@ -41,9 +41,11 @@ import org.apache.wss4j.common.principal.SAMLTokenPrincipalImpl;
 import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SAMLUtil;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.VerifiedSamlAssertionCache;
 import org.apache.wss4j.common.util.DOM2Writer;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
+import org.apache.wss4j.dom.engine.PerMessageInstance;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.saml.WSSSAMLKeyInfoProcessor;
@@ -54,6 +56,11 @@ import org.opensaml.xmlsec.signature.KeyInfo;
 import org.opensaml.xmlsec.signature.Signature;
 import org.w3c.dom.Element;
 
+/**
+ * The XMLSignatureFactory held by this processor is not thread-safe, so an instance must not be
+ * shared across messages.
+ */
+@PerMessageInstance
 public class SAMLTokenProcessor implements Processor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(SAMLTokenProcessor.class);
@@ -91,10 +98,26 @@ public class SAMLTokenProcessor implements Processor {
             data.getValidator(new QName(elem.getNamespaceURI(), elem.getLocalName()));
 
         SamlAssertionWrapper samlAssertion = new SamlAssertionWrapper(elem);
-        XMLSignature xmlSignature = verifySignatureKeysAndAlgorithms(samlAssertion, data);
+
+        // See if an identical Assertion has already been verified. The cache is not used if
+        // revocation is enabled, as the revocation status must be checked for every message
+        VerifiedSamlAssertionCache verifiedAssertionCache = data.getVerifiedSamlAssertionCache();
+        String cacheKey = null;
+        SAMLKeyInfo verifiedKeyInfo = null;
+        if (verifiedAssertionCache != null && samlAssertion.isSigned() && !data.isRevocationEnabled()) {
+            cacheKey = VerifiedSamlAssertionCache.createCacheKey(samlAssertion);
+            verifiedKeyInfo = verifiedAssertionCache.getSignatureKeyInfo(cacheKey);
+        }
+
+        XMLSignature xmlSignature = verifySignatureKeysAndAlgorithms(samlAssertion, data, verifiedKeyInfo);
         List<WSDataRef> dataRefs = createDataRefs(elem, samlAssertion, xmlSignature);
 
-        Credential credential = handleSAMLToken(samlAssertion, data, validator);
+        Credential credential = handleSAMLToken(samlAssertion, data, validator, verifiedKeyInfo != null);
+        if (cacheKey != null && verifiedKeyInfo == null && validator != null) {
+            verifiedAssertionCache.addVerifiedAssertion(
+                cacheKey, samlAssertion, samlAssertion.getSignatureKeyInfo()
+            );
+        }
         samlAssertion = credential.getSamlAssertion();
         if (LOG.isDebugEnabled()) {
             LOG.debug("SAML Assertion issuer " + samlAssertion.getIssuerString());
@@ -155,6 +178,15 @@ public class SAMLTokenProcessor implements Processor {
         SamlAssertionWrapper samlAssertion,
         RequestData data,
         Validator validator
+    ) throws WSSecurityException {
+        return handleSAMLToken(samlAssertion, data, validator, false);
+    }
+
+    private Credential handleSAMLToken(
+        SamlAssertionWrapper samlAssertion,
+        RequestData data,
+        Validator validator,
+        boolean signatureTrusted
     ) throws WSSecurityException {
         // Parse the subject if it exists
         samlAssertion.parseSubject(
@@ -165,6 +197,7 @@ public class SAMLTokenProcessor implements Processor {
         // Now delegate the rest of the verification to the Validator
         Credential credential = new Credential();
         credential.setSamlAssertion(samlAssertion);
+        credential.setSamlSignatureTrusted(signatureTrusted);
         if (validator != null) {
             return validator.validate(credential, data);
         }
@@ -173,7 +206,8 @@ public class SAMLTokenProcessor implements Processor {
 
     private XMLSignature verifySignatureKeysAndAlgorithms(
         SamlAssertionWrapper samlAssertion,
-        RequestData data
+        RequestData data,
+        SAMLKeyInfo verifiedKeyInfo
     ) throws WSSecurityException {
         if (samlAssertion.isSigned()) {
             Signature sig = samlAssertion.getSignature();
@@ -184,10 +218,13 @@ public class SAMLTokenProcessor implements Processor {
                     new Object[] {"cannot get certificate or key"}
                 );
             }
-            SAMLKeyInfo samlKeyInfo =
-                SAMLUtil.getCredentialFromKeyInfo(
-                    keyInfo.getDOM(), new WSSSAMLKeyInfoProcessor(data), data.getSigVerCrypto()
-                );
+            SAMLKeyInfo samlKeyInfo = verifiedKeyInfo;
+            if (samlKeyInfo == null) {
+                samlKeyInfo =
+                    SAMLUtil.getCredentialFromKeyInfo(
+                        keyInfo.getDOM(), new WSSSAMLKeyInfoProcessor(data), data.getSigVerCrypto()
+                    );
+            }
 
             PublicKey key = null;
             if (samlKeyInfo.getCerts() != null && samlKeyInfo.getCerts()[0] != null) {
@@ -234,7 +271,11 @@ public class SAMLTokenProcessor implements Processor {
                 }
             }
 
-            samlAssertion.verifySignature(samlKeyInfo);
+            if (verifiedKeyInfo == null) {
+                samlAssertion.verifySignature(samlKeyInfo);
+            } else {
+                samlAssertion.setSignatureKeyInfo(verifiedKeyInfo);
+            }
 
             return xmlSignature;
         }
@@ -65,6 +65,7 @@ import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
+import org.apache.wss4j.dom.engine.PerMessageInstance;
 import org.apache.wss4j.dom.engine.WSSecurityEngineResult;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.message.token.Timestamp;
@@ -77,6 +78,7 @@ import org.apache.wss4j.dom.transform.AttachmentContentSignatureTransform;
 import org.apache.wss4j.dom.transform.STRTransform;
 import org.apache.wss4j.dom.transform.STRTransformUtil;
 import org.apache.wss4j.dom.util.EncryptionUtils;
+import org.apache.wss4j.dom.util.ReferenceDigester;
 import org.apache.wss4j.dom.util.WSSecurityUtil;
 import org.apache.wss4j.dom.util.X509Util;
 import org.apache.wss4j.dom.validate.Credential;
@@ -85,6 +87,11 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+/**
+ * The XMLSignatureFactory held by this processor is not thread-safe, so an instance must not be
+ * shared across messages.
+ */
+@PerMessageInstance
 public class SignatureProcessor implements Processor {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(SignatureProcessor.class);
@@ -360,6 +367,8 @@ public class SignatureProcessor implements Processor {
 
         context.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_CALLBACKHANDLER,
                             data.getAttachmentCallbackHandler());
+        context.setProperty(AttachmentContentSignatureTransform.ATTACHMENT_BUFFER_FACTORY,
+                            data.getAttachmentBufferFactory());
 
         try {
             XMLSignature xmlSignature = signatureFactory.unmarshalXMLSignature(context);
@@ -378,6 +387,15 @@ public class SignatureProcessor implements Processor {
 
             setElementsOnContext(xmlSignature, (DOMValidateContext)context, data, wsDocInfo);
 
+            // Only digest the References concurrently once the SignatureValue is verified. The
+            // result is cached, so XMLSignature.validate does not verify the SignatureValue again
+            if (data.getDigestExecutor() != null && xmlSignature.getSignatureValue().validate(context)) {
+                ReferenceDigester.validateReferences(
+                    xmlSignature.getSignedInfo().getReferences(), context,
+                    elem.getOwnerDocument(), data.getDigestExecutor()
+                );
+            }
+
             boolean signatureOk = xmlSignature.validate(context);
             if (signatureOk) {
                 return xmlSignature;
@@ -672,19 +690,13 @@ public class SignatureProcessor implements Processor {
         String identifier = timeStamp.getCreatedString() + "" + Arrays.hashCode(signatureValue)
             + "" + Arrays.hashCode(key.getEncoded());
 
-        if (replayCache.contains(identifier)) {
+        // Store the Timestamp/SignatureValue/Key combination in the cache, unless it is already there
+        if (!replayCache.addIfAbsent(identifier, timeStamp.getExpires())) {
             throw new WSSecurityException(
                 WSSecurityException.ErrorCode.INVALID_SECURITY,
                 "invalidTimestamp",
                 new Object[] {"A replay attack has been detected"});
         }
-
-        // Store the Timestamp/SignatureValue/Key combination in the cache
-        if (timeStamp.getExpires() != null) {
-            replayCache.add(identifier, timeStamp.getExpires());
-        } else {
-            replayCache.add(identifier);
-        }
     }
 
     /**
@@ -498,16 +498,6 @@ public class WSSecSignatureSAML extends WSSecSignature {
             }
             SignatureMethod signatureMethod =
                 signatureFactory.newSignatureMethod(getSignatureAlgorithm(), null);
-            SignedInfo signedInfo =
-                signatureFactory.newSignedInfo(c14nMethod, signatureMethod, referenceList);
-
-            sig = signatureFactory.newXMLSignature(
-                    signedInfo,
-                    keyInfo,
-                    null,
-                    getIdAllocator().createId("SIG-", null),
-                    null);
-
             Element securityHeaderElement = getSecurityHeader().getSecurityHeaderElement();
             //
             // Prepend the signature element to the security header (after the assertion)
@@ -536,6 +526,17 @@ public class WSSecSignatureSAML extends WSSecSignature {
             // Add the elements to sign to the Signature Context
             getWsDocInfo().setTokensOnContext((DOMSignContext)signContext);
 
+            List<javax.xml.crypto.dsig.Reference> references =
+                digestReferences(referenceList, signatureFactory, (DOMSignContext)signContext);
+            SignedInfo signedInfo =
+                signatureFactory.newSignedInfo(c14nMethod, signatureMethod, references);
+
+            sig = signatureFactory.newXMLSignature(
+                    signedInfo,
+                    keyInfo,
+                    null,
+                    getIdAllocator().createId("SIG-", null),
+                    null);
             sig.sign(signContext);
 
             signatureValue = sig.getSignatureValue().getValue();
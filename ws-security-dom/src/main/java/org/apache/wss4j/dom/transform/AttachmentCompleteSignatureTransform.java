@@ -18,14 +18,13 @@
  */
 package org.apache.wss4j.dom.transform;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
 import org.apache.jcp.xml.dsig.internal.dom.ApacheNodeSetData;
 import org.apache.jcp.xml.dsig.internal.dom.ApacheOctetStreamData;
 import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.util.AttachmentBuffer;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.xml.security.signature.XMLSignatureInput;
@@ -69,25 +68,33 @@ public class AttachmentCompleteSignatureTransform extends AttachmentContentSigna
             attachment = attachmentRequestCallback(context, attachmentId);
         }
 
+        AttachmentBuffer outputBuffer = null;
+        boolean success = false;
         try {
             OutputStream outputStream = os;
             if (outputStream == null) {
-                outputStream = new ByteArrayOutputStream();
+                outputBuffer = getAttachmentBufferFactory(context).newAttachmentBuffer();
+                outputStream = outputBuffer.getOutputStream();
             }
-            AttachmentUtils.canonizeMimeHeaders(os, attachment.getHeaders());
-            processAttachment(context, os, attachmentUri, attachment);
+            AttachmentUtils.canonizeMimeHeaders(outputStream, attachment.getHeaders());
+            processAttachment(context, outputStream, attachmentUri, attachment);
 
+            Data result;
             if (os == null) {
+                outputStream.close();
                 String mimeType = attachment.getMimeType();
-                return new OctetStreamData(
-                        new ByteArrayInputStream(
-                                ((ByteArrayOutputStream)outputStream).toByteArray()
-                        ),
-                        attachmentUri, mimeType);
+                result = new OctetStreamData(outputBuffer.getInputStream(), attachmentUri, mimeType);
+            } else {
+                result = new ApacheNodeSetData(new XMLSignatureInput((byte[])null));
             }
-            return new ApacheNodeSetData(new XMLSignatureInput((byte[])null));
+            success = true;
+            return result;
         } catch (IOException e) {
             throw new TransformException(e);
+        } finally {
+            if (!success) {
+                release(null, outputBuffer);
+            }
         }
     }
 
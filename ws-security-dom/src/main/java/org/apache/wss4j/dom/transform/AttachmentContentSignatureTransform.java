@@ -24,8 +24,12 @@ import org.apache.wss4j.common.ext.Attachment;
 import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.AttachmentBuffer;
+import org.apache.wss4j.common.util.AttachmentBufferFactory;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.BufferedAttachmentInputStream;
 import org.apache.wss4j.common.util.CRLFOutputStream;
+import org.apache.wss4j.common.util.ThresholdAttachmentBufferFactory;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.xml.security.c14n.CanonicalizationException;
 import org.apache.xml.security.c14n.Canonicalizer;
@@ -44,12 +48,7 @@ import javax.xml.crypto.dsig.TransformException;
 import javax.xml.crypto.dsig.TransformService;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.FilterInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.spec.AlgorithmParameterSpec;
@@ -59,6 +58,10 @@ public class AttachmentContentSignatureTransform extends TransformService {
 
     public static final String TRANSFORM_URI = WSConstants.SWA_ATTACHMENT_CONTENT_SIG_TRANS;
     public static final String ATTACHMENT_CALLBACKHANDLER = "AttachmentContentTransform.attachmentCallbackHandler";
+    public static final String ATTACHMENT_BUFFER_FACTORY = "AttachmentContentTransform.attachmentBufferFactory";
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(AttachmentContentSignatureTransform.class);
 
     private AttachmentTransformParameterSpec attachmentTransformParameterSpec;
 
@@ -160,26 +163,38 @@ public class AttachmentContentSignatureTransform extends TransformService {
         }
     }
 
-    @SuppressWarnings("resource")
+    /**
+     * Get the AttachmentBufferFactory to buffer attachments with, from the AttachmentTransformParameterSpec
+     * or the ATTACHMENT_BUFFER_FACTORY property of the context, or the default one.
+     */
+    protected AttachmentBufferFactory getAttachmentBufferFactory(XMLCryptoContext context) {
+        AttachmentBufferFactory attachmentBufferFactory = null;
+        if (attachmentTransformParameterSpec != null) {
+            attachmentBufferFactory = attachmentTransformParameterSpec.getAttachmentBufferFactory();
+        }
+        if (attachmentBufferFactory == null) {
+            attachmentBufferFactory = (AttachmentBufferFactory) context.getProperty(ATTACHMENT_BUFFER_FACTORY);
+        }
+        if (attachmentBufferFactory == null) {
+            attachmentBufferFactory = ThresholdAttachmentBufferFactory.getDefault();
+        }
+        return attachmentBufferFactory;
+    }
+
     protected Data processAttachment(XMLCryptoContext context, OutputStream os, String attachmentUri,
                                      Attachment attachment) throws TransformException {
+        AttachmentBufferFactory attachmentBufferFactory = getAttachmentBufferFactory(context);
+        BufferedAttachmentInputStream inputStream = null;
+        AttachmentBuffer outputBuffer = null;
+        boolean success = false;
         try {
-            //try to reuse the inputStream in the hope that the provided inputStream is backed by a disk storage
-            InputStream inputStream = attachment.getSourceStream();
-            if (!inputStream.markSupported()) {
-                inputStream = new BufferedInputStream(inputStream);
-            }
-            inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
-            inputStream = new FilterInputStream(inputStream) {
-                @Override
-                public void close() throws IOException {
-                    //I hate stuff which are closing _my_ streams!
-                }
-            };
+            inputStream =
+                new BufferedAttachmentInputStream(attachment.getSourceStream(), attachmentBufferFactory);
 
             OutputStream outputStream = os;
             if (outputStream == null) {
-                outputStream = new ByteArrayOutputStream();
+                outputBuffer = attachmentBufferFactory.newAttachmentBuffer();
+                outputStream = outputBuffer.getOutputStream();
             }
 
             String mimeType = attachment.getMimeType();
@@ -219,28 +234,43 @@ public class AttachmentContentSignatureTransform extends TransformService {
                 }
             }
 
-            //reset the inputStream to be able to reuse it
-            inputStream.reset();
-
-            //create a new attachment and do the result callback
+            //create a new attachment, which reads the attachment again from the start, and do the result callback
             final Attachment resultAttachment = new Attachment();
             resultAttachment.setId(attachment.getId());
             resultAttachment.setMimeType(mimeType);
             resultAttachment.addHeaders(attachment.getHeaders());
-            resultAttachment.setSourceStream(inputStream);
+            resultAttachment.setSourceStream(inputStream.getReplayStream());
             attachmentResultCallback(context, resultAttachment);
 
+            Data result;
             if (os == null) {
-                return new OctetStreamData(
-                        new ByteArrayInputStream(
-                                ((ByteArrayOutputStream)outputStream).toByteArray()
-                        ),
-                        attachmentUri, mimeType);
+                outputStream.close();
+                result = new OctetStreamData(outputBuffer.getInputStream(), attachmentUri, mimeType);
+            } else {
+                result = new ApacheNodeSetData(new XMLSignatureInput((byte[])null));
             }
-            return new ApacheNodeSetData(new XMLSignatureInput((byte[])null));
+            success = true;
+            return result;
         } catch (IOException | InvalidCanonicalizerException | CanonicalizationException
             | XMLParserException e) {
             throw new TransformException(e);
+        } finally {
+            if (!success) {
+                release(inputStream, outputBuffer);
+            }
+        }
+    }
+
+    protected static void release(BufferedAttachmentInputStream inputStream, AttachmentBuffer outputBuffer) {
+        try {
+            if (inputStream != null) {
+                inputStream.release();
+            }
+            if (outputBuffer != null) {
+                outputBuffer.close();
+            }
+        } catch (IOException e) {
+            LOG.debug("Error releasing the attachment buffer: {}", e.getMessage());
         }
     }
 
@@ -19,6 +19,7 @@
 package org.apache.wss4j.dom.transform;
 
 import org.apache.wss4j.common.ext.Attachment;
+import org.apache.wss4j.common.util.AttachmentBufferFactory;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
@@ -27,12 +28,21 @@ public class AttachmentTransformParameterSpec implements TransformParameterSpec
 
     private CallbackHandler attachmentCallbackHandler;
     private Attachment attachment;
+    private AttachmentBufferFactory attachmentBufferFactory;
 
     public AttachmentTransformParameterSpec(
             CallbackHandler attachmentCallbackHandler,
             Attachment attachment) {
+        this(attachmentCallbackHandler, attachment, null);
+    }
+
+    public AttachmentTransformParameterSpec(
+            CallbackHandler attachmentCallbackHandler,
+            Attachment attachment,
+            AttachmentBufferFactory attachmentBufferFactory) {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
         this.attachment = attachment;
+        this.attachmentBufferFactory = attachmentBufferFactory;
     }
 
     public CallbackHandler getAttachmentCallbackHandler() {
@@ -42,4 +52,8 @@ public class AttachmentTransformParameterSpec implements TransformParameterSpec
     public Attachment getAttachment() {
         return attachment;
     }
+
+    public AttachmentBufferFactory getAttachmentBufferFactory() {
+        return attachmentBufferFactory;
+    }
 }
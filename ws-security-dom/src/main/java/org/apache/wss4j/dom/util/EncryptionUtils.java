@@ -29,6 +29,7 @@ import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.WSDataRef;
 import org.apache.wss4j.dom.WSDocInfo;
 import org.apache.wss4j.dom.callback.CallbackLookup;
+import org.apache.wss4j.dom.callback.DOMCallbackLookup;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.encryption.Serializer;
 import org.apache.xml.security.encryption.XMLCipher;
@@ -141,6 +142,36 @@ public final class EncryptionUtils {
         CallbackHandler attachmentCallbackHandler,
         Serializer encryptionSerializer
     ) throws WSSecurityException {
+        return decryptEncryptedData(doc, dataRefURI, encData, symmetricKey, symEncAlgo,
+                                    attachmentCallbackHandler, encryptionSerializer, null);
+    }
+
+    /**
+     * Decrypt the EncryptedData argument using a SecretKey. The Nodes of the plaintext are
+     * registered with the CallbackLookup of the given WSDocInfo, so that the Elements they contain
+     * can be located by their Id if the CallbackLookup maintains an index of the Elements of the
+     * document.
+     * @param doc The (document) owner of EncryptedData
+     * @param dataRefURI The URI of EncryptedData
+     * @param encData The EncryptedData element
+     * @param symmetricKey The SecretKey with which to decrypt EncryptedData
+     * @param symEncAlgo The symmetric encryption algorithm to use
+     * @param attachmentCallbackHandler The CallbackHandler from which to get attachments
+     * @param encryptionSerializer The Serializer to use to parse the plaintext
+     * @param wsDocInfo The WSDocInfo object to use (can be null)
+     * @throws WSSecurityException
+     */
+    public static WSDataRef
+    decryptEncryptedData(
+        Document doc,
+        String dataRefURI,
+        Element encData,
+        SecretKey symmetricKey,
+        String symEncAlgo,
+        CallbackHandler attachmentCallbackHandler,
+        Serializer encryptionSerializer,
+        WSDocInfo wsDocInfo
+    ) throws WSSecurityException {
 
         // See if it is an attachment, and handle that differently
         String typeStr = encData.getAttributeNS(null, "Type");
@@ -177,6 +208,7 @@ public final class EncryptionUtils {
             encData = (Element) encData.getParentNode();
             parent = encData.getParentNode();
         }
+        Node nextSibling = encData.getNextSibling();
 
         XMLCipher xmlCipher = null;
         try {
@@ -227,26 +259,36 @@ public final class EncryptionUtils {
 
             dataRef.setProtectedElement((Element)decryptedHeader);
             dataRef.setXpath(getXPath(decryptedHeader));
+            registerDecryptedNodes(wsDocInfo, decryptedHeader, decryptedHeader.getNextSibling());
         } else if (content) {
             dataRef.setProtectedElement(encData);
             dataRef.setXpath(getXPath(encData));
+            registerDecryptedNodes(wsDocInfo, encData.getFirstChild(), null);
         } else {
+            Node firstDecryptedNode =
+                previousSibling == null ? parent.getFirstChild() : previousSibling.getNextSibling();
             if (decryptedNode == null) {
-                if (previousSibling == null) {
-                    decryptedNode = parent.getFirstChild();
-                } else {
-                    decryptedNode = previousSibling.getNextSibling();
-                }
+                decryptedNode = firstDecryptedNode;
             }
             if (decryptedNode != null && Node.ELEMENT_NODE == decryptedNode.getNodeType()) {
                 dataRef.setProtectedElement((Element)decryptedNode);
             }
             dataRef.setXpath(getXPath(decryptedNode));
+            // The plaintext can start with any type of Node, so all of the Nodes that replaced
+            // the EncryptedData are registered
+            registerDecryptedNodes(wsDocInfo, firstDecryptedNode, nextSibling);
         }
 
         return dataRef;
     }
 
+    private static void registerDecryptedNodes(WSDocInfo wsDocInfo, Node firstNode, Node endNode) {
+        if (wsDocInfo != null && firstNode != null
+            && wsDocInfo.getCallbackLookup() instanceof DOMCallbackLookup) {
+            ((DOMCallbackLookup)wsDocInfo.getCallbackLookup()).registerNodes(firstNode, endNode);
+        }
+    }
+
     private static String getXOPURIFromEncryptedData(Element encData) {
         Element cipherValue = getCipherValueFromEncryptedData(encData);
         if (cipherValue != null) {
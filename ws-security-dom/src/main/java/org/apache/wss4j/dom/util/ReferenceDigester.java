@@ -0,0 +1,271 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.util;
+
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import javax.xml.crypto.dom.DOMCryptoContext;
+import javax.xml.crypto.dsig.CanonicalizationMethod;
+import javax.xml.crypto.dsig.Reference;
+import javax.xml.crypto.dsig.Transform;
+import javax.xml.crypto.dsig.XMLSignatureFactory;
+import javax.xml.crypto.dsig.XMLValidateContext;
+import javax.xml.crypto.dsig.spec.ExcC14NParameterSpec;
+
+import org.apache.wss4j.common.util.DigestTasks;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.xml.security.algorithms.JCEMapper;
+import org.apache.xml.security.c14n.Canonicalizer;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Canonicalizes and digests the References of a Signature concurrently on an Executor, instead of
+ * sequentially on the calling thread in XMLSignature.sign/validate.
+ *
+ * Only References to Elements in the same document, with canonicalization transforms, are
+ * processed concurrently. Other References (attachments, STR-Transform) call back into user code or
+ * modify the DOM, and are left to the sequential processing of the XMLSignature. The DOM is
+ * traversed once beforehand, so that a deferred DOM (e.g. Xerces) is fully expanded, as the
+ * References are then read from several threads. The DOM must not be modified by another thread
+ * while the References are digested.
+ */
+public final class ReferenceDigester {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ReferenceDigester.class);
+
+    private static final Set<String> CONCURRENT_TRANSFORMS = new HashSet<>(Arrays.asList(
+        WSConstants.C14N_EXCL_OMIT_COMMENTS,
+        WSConstants.C14N_EXCL_WITH_COMMENTS,
+        CanonicalizationMethod.INCLUSIVE,
+        CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS,
+        "http://www.w3.org/2006/12/xml-c14n11",
+        "http://www.w3.org/2006/12/xml-c14n11#WithComments"
+    ));
+
+    private static final Set<String> OMIT_COMMENTS_TRANSFORMS = new HashSet<>(Arrays.asList(
+        WSConstants.C14N_EXCL_OMIT_COMMENTS,
+        CanonicalizationMethod.INCLUSIVE,
+        "http://www.w3.org/2006/12/xml-c14n11"
+    ));
+
+    private ReferenceDigester() {
+        // Complete
+    }
+
+    /**
+     * Get the default Executor to digest References with. This is an Executor that starts a virtual
+     * thread per task if the JVM supports it, and the common ForkJoinPool otherwise.
+     */
+    public static Executor getDefaultExecutor() {
+        return DigestTasks.getDefaultExecutor();
+    }
+
+    /**
+     * Compute the digests of the References concurrently. Each digested Reference is replaced in the
+     * List by a Reference with the same URI, DigestMethod, Transforms, Type and Id, and the
+     * computed DigestValue, which XMLSignature.sign does not digest again. References that are not
+     * suitable for concurrent digesting, or that fail to be digested, are left unchanged.
+     *
+     * @param references the References to sign
+     * @param signatureFactory the XMLSignatureFactory to create the digested References with
+     * @param context the signing context, with the elements to sign registered on it by Id
+     * @param document the document that contains the elements to sign
+     * @param executor the Executor to digest the References on
+     */
+    public static void digestReferences(
+        List<Reference> references,
+        XMLSignatureFactory signatureFactory,
+        DOMCryptoContext context,
+        Node document,
+        Executor executor
+    ) {
+        List<Integer> indexes = new ArrayList<>(references.size());
+        for (int i = 0; i < references.size(); i++) {
+            Reference reference = references.get(i);
+            if (isDigestableReference(reference)) {
+                indexes.add(i);
+            }
+        }
+        if (indexes.size() < 2) {
+            return;
+        }
+
+        byte[][] digests = new byte[indexes.size()][];
+        List<Runnable> tasks = new ArrayList<>(indexes.size());
+        for (int i = 0; i < indexes.size(); i++) {
+            final int index = i;
+            final Reference reference = references.get(indexes.get(i));
+            tasks.add(() -> digests[index] = digest(reference, context));
+        }
+
+        expand(document);
+        DigestTasks.runAll(tasks, executor);
+
+        for (int i = 0; i < digests.length; i++) {
+            if (digests[i] != null) {
+                Reference reference = references.get(indexes.get(i));
+                references.set(indexes.get(i), signatureFactory.newReference(
+                    reference.getURI(), reference.getDigestMethod(), reference.getTransforms(),
+                    reference.getType(), reference.getId(), digests[i]
+                ));
+            }
+        }
+    }
+
+    /**
+     * Validate the References concurrently. A Reference caches the result of its validation, so
+     * XMLSignature.validate does not digest the validated References again. Validation errors are
+     * not reported here, but by the subsequent XMLSignature.validate. This should only be called
+     * once the SignatureValue has been verified, to avoid digesting the References of a forged
+     * Signature.
+     *
+     * @param references the References of the Signature
+     * @param context the validation context, with the signed elements registered on it
+     * @param document the document that contains the signed elements
+     * @param executor the Executor to validate the References on
+     */
+    public static void validateReferences(
+        List<Reference> references,
+        XMLValidateContext context,
+        Node document,
+        Executor executor
+    ) {
+        List<Runnable> tasks = new ArrayList<>(references.size());
+        for (Reference reference : references) {
+            if (isConcurrentReference(reference)) {
+                tasks.add(() -> {
+                    try {
+                        reference.validate(context);
+                    } catch (Exception ex) {
+                        LOG.debug("Error validating Reference {}: {}", reference.getURI(), ex.getMessage());
+                    }
+                });
+            }
+        }
+        if (tasks.size() < 2) {
+            return;
+        }
+
+        expand(document);
+        DigestTasks.runAll(tasks, executor);
+    }
+
+    private static boolean isConcurrentReference(Reference reference) {
+        String uri = reference.getURI();
+        if (uri == null || uri.length() < 2 || uri.charAt(0) != '#') {
+            return false;
+        }
+        for (Transform transform : reference.getTransforms()) {
+            if (!CONCURRENT_TRANSFORMS.contains(transform.getAlgorithm())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The Transforms of a Reference that is not yet marshalled cannot be applied through the
+     * JSR-105 API, so a single canonicalization transform is applied here directly, the same way
+     * as it is for a same-document Reference when the Signature is generated.
+     */
+    private static boolean isDigestableReference(Reference reference) {
+        return reference.getDigestValue() == null
+            && reference.getTransforms().size() == 1
+            && OMIT_COMMENTS_TRANSFORMS.contains(reference.getTransforms().get(0).getAlgorithm())
+            && isConcurrentReference(reference);
+    }
+
+    private static byte[] digest(Reference reference, DOMCryptoContext context) {
+        try {
+            Element element = context.getElementById(reference.getURI().substring(1));
+            if (element == null) {
+                return null;
+            }
+
+            Transform transform = reference.getTransforms().get(0);
+            String inclusiveNamespaces = null;
+            if (transform.getParameterSpec() instanceof ExcC14NParameterSpec) {
+                List<String> prefixes = ((ExcC14NParameterSpec)transform.getParameterSpec()).getPrefixList();
+                if (!prefixes.isEmpty()) {
+                    inclusiveNamespaces = String.join(" ", prefixes);
+                }
+            }
+
+            String digestAlgorithm =
+                JCEMapper.translateURItoJCEID(reference.getDigestMethod().getAlgorithm());
+            MessageDigest messageDigest = MessageDigest.getInstance(digestAlgorithm);
+            try (OutputStream outputStream = new BufferedOutputStream(
+                new DigestOutputStream(OutputStream.nullOutputStream(), messageDigest))) {
+                Canonicalizer canonicalizer = Canonicalizer.getInstance(transform.getAlgorithm());
+                if (inclusiveNamespaces == null) {
+                    canonicalizer.canonicalizeSubtree(element, outputStream);
+                } else {
+                    canonicalizer.canonicalizeSubtree(element, inclusiveNamespaces, outputStream);
+                }
+            }
+            return messageDigest.digest();
+        } catch (Exception ex) {
+            LOG.debug("Error digesting Reference {}: {}", reference.getURI(), ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Visit every Node, so that a deferred DOM is fully expanded before it is read concurrently
+     */
+    private static void expand(Node root) {
+        Node node = root;
+        while (node != null) {
+            if (node.getNodeType() == Node.ELEMENT_NODE) {
+                NamedNodeMap attributes = node.getAttributes();
+                for (int i = 0; i < attributes.getLength(); i++) {
+                    ((Attr)attributes.item(i)).getValue();
+                }
+            } else {
+                node.getNodeValue();
+            }
+
+            Node next = node.getFirstChild();
+            while (next == null && node != null) {
+                if (node == root) {
+                    return;
+                }
+                next = node.getNextSibling();
+                if (next == null) {
+                    node = node.getParentNode();
+                }
+            }
+            node = next;
+        }
+    }
+}
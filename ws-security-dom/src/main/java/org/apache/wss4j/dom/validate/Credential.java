@@ -50,6 +50,7 @@ public class Credential {
     private byte[] secretKey;
     private Subject subject;
     private Object delegationCredential;
+    private boolean samlSignatureTrusted;
 
     /**
      * Set a SecurityContextToken to be validated
@@ -180,6 +181,24 @@ public class Credential {
         return samlAssertion;
     }
 
+    /**
+     * Set whether the signature of the SamlAssertionWrapper, and the trust in its signing
+     * certificate, have already been verified, e.g. because the assertion is cached as verified.
+     * @param samlSignatureTrusted whether the signature of the SamlAssertionWrapper is trusted
+     */
+    public void setSamlSignatureTrusted(boolean samlSignatureTrusted) {
+        this.samlSignatureTrusted = samlSignatureTrusted;
+    }
+
+    /**
+     * Get whether the signature of the SamlAssertionWrapper, and the trust in its signing
+     * certificate, have already been verified.
+     * @return whether the signature of the SamlAssertionWrapper is trusted
+     */
+    public boolean isSamlSignatureTrusted() {
+        return samlSignatureTrusted;
+    }
+
     /**
      * Set an SamlAssertionWrapper instance which corresponds to a Transformed Token.
      * @param transformedToken a transformed SamlAssertionWrapper instance
@@ -113,11 +113,14 @@ public class SamlAssertionValidator extends SignatureTrustValidator {
         // Check OneTimeUse Condition
         checkOneTimeUse(samlAssertion, data);
 
-        // Validate the assertion against schemas/profiles
-        validateAssertion(samlAssertion);
+        // Validate the assertion against schemas/profiles, unless an identical assertion has
+        // already been validated
+        if (!credential.isSamlSignatureTrusted()) {
+            validateAssertion(samlAssertion);
+        }
 
         // Verify trust on the signature
-        if (samlAssertion.isSigned()) {
+        if (samlAssertion.isSigned() && !credential.isSamlSignatureTrusted()) {
             verifySignedAssertion(samlAssertion, data);
         }
         return credential;
@@ -253,21 +256,13 @@ public class SamlAssertionValidator extends SignatureTrustValidator {
             String identifier = samlAssertion.getId();
 
             ReplayCache replayCache = data.getSamlOneTimeUseReplayCache();
-            if (replayCache.contains(identifier)) {
+            Instant expires = samlAssertion.getSaml2().getConditions().getNotOnOrAfter();
+            if (!replayCache.addIfAbsent(identifier, expires)) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.INVALID_SECURITY,
                     "badSamlToken",
                     new Object[] {"A replay attack has been detected"});
             }
-
-            Instant expires = samlAssertion.getSaml2().getConditions().getNotOnOrAfter();
-            if (expires != null) {
-                replayCache.add(identifier, expires);
-            } else {
-                replayCache.add(identifier);
-            }
-
-            replayCache.add(identifier);
         }
     }
 
@@ -0,0 +1,163 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.callback;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.SecretKey;
+
+import org.apache.wss4j.common.util.KeyUtils;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.WSDataRef;
+import org.apache.wss4j.dom.WSDocInfo;
+import org.apache.wss4j.dom.util.EncryptionUtils;
+import org.apache.xml.security.encryption.EncryptedData;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.utils.EncryptionConstants;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Some tests for locating Elements by their Id, with and without an index of the Ids.
+ */
+public class DOMCallbackLookupTest {
+
+    private static final String SOAPMSG =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+        + "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\" "
+        +   "xmlns:wsu=\"" + WSConstants.WSU_NS + "\">"
+        +   "<soapenv:Header>"
+        +       "<saml2:Assertion xmlns:saml2=\"urn:oasis:names:tc:SAML:2.0:assertion\" ID=\"_assertion\"/>"
+        +   "</soapenv:Header>"
+        +   "<soapenv:Body wsu:Id=\"body\">"
+        +       "<add xmlns=\"http://ws.apache.org/counter/counter_port_type\" wsu:Id=\"add\">"
+        +           "<value Id=\"value\">15</value>"
+        +           "<other wsu:Id=\"duplicate\"/>"
+        +           "<other wsu:Id=\"duplicate\"/>"
+        +       "</add>"
+        +   "</soapenv:Body>"
+        + "</soapenv:Envelope>";
+
+    @Test
+    public void testLookup() throws Exception {
+        testLookup(false);
+    }
+
+    @Test
+    public void testIndexedLookup() throws Exception {
+        testLookup(true);
+    }
+
+    @Test
+    public void testIndexedLookupAfterModification() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        DOMCallbackLookup callbackLookup = new DOMCallbackLookup(doc, true);
+
+        Element add = callbackLookup.getElement("#add", null, true);
+        assertEquals("add", add.getLocalName());
+
+        // Replace the "add" Element, as decryption does
+        Element replacement = doc.createElementNS("http://ws.apache.org/counter/counter_port_type", "add");
+        replacement.setAttributeNS(WSConstants.WSU_NS, "wsu:Id", "add");
+        Element child = doc.createElementNS(null, "child");
+        child.setAttributeNS(WSConstants.WSU_NS, "wsu:Id", "child");
+        replacement.appendChild(child);
+        add.getParentNode().replaceChild(replacement, add);
+
+        // The removed Elements are no longer found, and the new Elements are not found until
+        // they are registered
+        assertNull(callbackLookup.getElement("#add", null, true));
+        assertNull(callbackLookup.getElement("#value", null, true));
+        assertNull(callbackLookup.getElement("#child", null, true));
+
+        callbackLookup.registerElements(replacement);
+        assertEquals(replacement, callbackLookup.getElement("#add", null, true));
+        assertEquals(child, callbackLookup.getElement("#child", null, true));
+
+        // Registering the same Elements again does not report them as duplicates
+        callbackLookup.registerElements(replacement);
+        assertEquals(replacement, callbackLookup.getElement("#add", null, true));
+    }
+
+    /**
+     * The plaintext of decrypted EncryptedData starts with whitespace, and contains an Element with
+     * the Id of an Element of the document. The duplicate Id must still be detected.
+     */
+    @Test
+    public void testIndexedLookupAfterDecryption() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        DOMCallbackLookup callbackLookup = new DOMCallbackLookup(doc, true);
+        WSDocInfo wsDocInfo = new WSDocInfo(doc);
+        wsDocInfo.setCallbackLookup(callbackLookup);
+
+        Element add = callbackLookup.getElement("#add", null, true);
+        assertEquals("add", add.getLocalName());
+
+        // Replace the "value" Element with EncryptedData
+        String plaintext = "\n    <other xmlns:wsu=\"" + WSConstants.WSU_NS + "\" wsu:Id=\"add\"/>";
+        SecretKey key = KeyUtils.getKeyGenerator(WSConstants.AES_128).generateKey();
+        XMLCipher cipher = XMLCipher.getInstance(WSConstants.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        EncryptedData encryptedData =
+            cipher.encryptData(doc, EncryptionConstants.TYPE_ELEMENT,
+                               new ByteArrayInputStream(plaintext.getBytes(StandardCharsets.UTF_8)));
+        Element encryptedDataElement = cipher.martial(doc, encryptedData);
+        Element value = callbackLookup.getElement("#value", null, true);
+        value.getParentNode().replaceChild(encryptedDataElement, value);
+
+        WSDataRef dataRef =
+            EncryptionUtils.decryptEncryptedData(doc, "#encrypted", encryptedDataElement, key,
+                                                 WSConstants.AES_128, null, null, wsDocInfo);
+        assertNull(dataRef.getProtectedElement());
+        Node decryptedText = add.getFirstChild();
+        assertEquals(Node.TEXT_NODE, decryptedText.getNodeType());
+        assertEquals("other", decryptedText.getNextSibling().getLocalName());
+
+        // The duplicate Id is detected, and the first Element with the Id in document order is found
+        assertNull(callbackLookup.getElement("#add", null, true));
+        assertSame(add, callbackLookup.getElement("#add", null, false));
+    }
+
+    private void testLookup(boolean indexIds) throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+        DOMCallbackLookup callbackLookup = new DOMCallbackLookup(doc, indexIds);
+
+        assertEquals(WSConstants.ELEM_BODY, callbackLookup.getElement("#body", null, true).getLocalName());
+        assertEquals("add", callbackLookup.getElement("#add", null, true).getLocalName());
+        assertEquals("value", callbackLookup.getElement("value", null, true).getLocalName());
+        assertEquals(
+            "Assertion", callbackLookup.getElement("#_assertion", WSConstants.WSS_SAML2_KI_VALUE_TYPE, true).getLocalName()
+        );
+        assertNull(callbackLookup.getElement("#unknown", null, true));
+
+        // Multiple Elements with the same Id are only rejected if checkMultipleElements is true
+        assertNull(callbackLookup.getElement("#duplicate", null, true));
+        assertEquals("other", callbackLookup.getElement("#duplicate", null, false).getLocalName());
+    }
+
+}
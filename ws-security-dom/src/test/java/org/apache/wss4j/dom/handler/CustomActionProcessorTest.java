@@ -43,6 +43,8 @@ import java.util.Collections;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -268,4 +270,27 @@ public class CustomActionProcessorTest {
         }
     }
 
-}
\ No newline at end of file
+
+    /**
+     * Test that processor, validator and action classes are shared when configured to do so,
+     * except for those that are annotated as PerMessageInstance
+     */
+    @Test
+    public void
+    testSharedInstances() throws Exception {
+        final WSSConfig cfg = WSSConfig.getNewInstance();
+        final int action = 0xDEADF000;
+        cfg.setAction(action, CustomAction.class);
+
+        assertNotSame(cfg.getProcessor(WSConstants.TIMESTAMP), cfg.getProcessor(WSConstants.TIMESTAMP));
+        assertNotSame(cfg.getValidator(WSConstants.TIMESTAMP), cfg.getValidator(WSConstants.TIMESTAMP));
+        assertNotSame(cfg.getAction(action), cfg.getAction(action));
+
+        cfg.setShareInstances(true);
+        assertSame(cfg.getProcessor(WSConstants.TIMESTAMP), cfg.getProcessor(WSConstants.TIMESTAMP));
+        assertSame(cfg.getValidator(WSConstants.TIMESTAMP), cfg.getValidator(WSConstants.TIMESTAMP));
+        assertSame(cfg.getAction(action), cfg.getAction(action));
+        // The SignatureProcessor is not thread-safe
+        assertNotSame(cfg.getProcessor(WSConstants.SIGNATURE), cfg.getProcessor(WSConstants.SIGNATURE));
+    }
+}
@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.dom.handler;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.wss4j.common.WSEncryptionPart;
+import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.common.util.XMLUtils;
+import org.apache.wss4j.dom.WSConstants;
+import org.apache.wss4j.dom.common.CustomHandler;
+import org.apache.wss4j.dom.engine.WSSConfig;
+
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A set of test-cases for a compiled WSHandlerConfiguration.
+ */
+public class WSHandlerConfigurationTest {
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(WSHandlerConfigurationTest.class);
+
+    @Test
+    public void testCompiledSignature() throws Exception {
+        CustomHandler handler = new CustomHandler();
+        handler.setOption(WSHandlerConstants.ACTION, WSHandlerConstants.TIMESTAMP + " " + WSHandlerConstants.SIGNATURE);
+        handler.setOption(WSHandlerConstants.SIG_PROP_FILE, "crypto.properties");
+        handler.setOption(WSHandlerConstants.SIG_KEY_ID, "DirectReference");
+        handler.setOption(WSHandlerConstants.SIGNATURE_PARTS,
+            "{}{" + WSConstants.WSU_NS + "}Timestamp;{}{}Body");
+        handler.setOption(WSHandlerConstants.TTL_TIMESTAMP, "60");
+        handler.compileHandlerConfiguration();
+
+        for (int i = 0; i < 2; i++) {
+            RequestData reqData = new RequestData();
+            Map<String, Object> msgContext = new TreeMap<>();
+            msgContext.put("password", "security");
+            reqData.setMsgContext(msgContext);
+            reqData.setUsername("16c73ab6-b892-458f-abf5-2f875f74882e");
+
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            List<HandlerAction> actions =
+                handler.decodeSenderActions(
+                    handler.getString(WSHandlerConstants.ACTION, msgContext), WSSConfig.getNewInstance()
+                );
+            handler.send(doc, reqData, actions, true);
+
+            String outputString = XMLUtils.prettyDocumentToString(doc);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug(outputString);
+            }
+            assertTrue(outputString.contains("Timestamp"));
+            assertTrue(outputString.contains("BinarySecurityToken"));
+            assertEquals(60, reqData.getTimeStampTTL());
+
+            List<WSEncryptionPart> parts = reqData.getSignatureToken().getParts();
+            assertEquals(2, parts.size());
+            assertEquals(WSConstants.WSU_NS, parts.get(0).getNamespace());
+            assertEquals(WSConstants.URI_SOAP11_ENV, parts.get(1).getNamespace());
+        }
+    }
+
+    @Test
+    public void testMessageContextDelta() throws Exception {
+        CustomHandler handler = new CustomHandler();
+        handler.setOption(WSHandlerConstants.TTL_TIMESTAMP, "60");
+        handler.setOption(WSHandlerConstants.TIMESTAMP_STRICT, "false");
+        handler.compileHandlerConfiguration();
+
+        Map<String, Object> msgContext = new TreeMap<>();
+        // Options take precedence over the message context properties
+        msgContext.put(WSHandlerConstants.TTL_TIMESTAMP, "120");
+        msgContext.put(WSHandlerConstants.TTL_FUTURE_TIMESTAMP, "30");
+        msgContext.put(WSHandlerConstants.REQUIRE_TIMESTAMP_EXPIRES, "true");
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(msgContext);
+
+        handler.receive(java.util.Collections.singletonList(WSConstants.TS), reqData);
+        assertEquals(60, reqData.getTimeStampTTL());
+        assertEquals(30, reqData.getTimeStampFutureTTL());
+        assertFalse(reqData.isTimeStampStrict());
+        assertTrue(reqData.isRequireTimestampExpires());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        CustomHandler handler = new CustomHandler();
+        handler.setOption(WSHandlerConstants.ACTION, WSHandlerConstants.SIGNATURE);
+        WSHandlerConfiguration configuration = handler.compileHandlerConfiguration();
+
+        // Changed options are not used until the configuration is compiled again
+        handler.setOption(WSHandlerConstants.ACTION, WSHandlerConstants.ENCRYPTION);
+        assertEquals(WSHandlerConstants.SIGNATURE, handler.getStringOption(WSHandlerConstants.ACTION));
+        handler.compileHandlerConfiguration();
+        assertEquals(WSHandlerConstants.ENCRYPTION, handler.getStringOption(WSHandlerConstants.ACTION));
+
+        // A new list of HandlerActions is returned for every message
+        List<HandlerAction> actions = configuration.getSenderActions(WSHandlerConstants.SIGNATURE);
+        assertEquals(1, actions.size());
+        assertEquals(WSConstants.SIGN, actions.get(0).getAction().intValue());
+        assertNotSame(actions.get(0), configuration.getSenderActions(WSHandlerConstants.SIGNATURE).get(0));
+        assertNull(configuration.getSenderActions(WSHandlerConstants.TIMESTAMP));
+
+        assertEquals(
+            java.util.Collections.singletonList(WSConstants.SIGN),
+            configuration.getReceiverActions(WSHandlerConstants.SIGNATURE)
+        );
+    }
+
+    @Test
+    public void testIllegalOptionIsReportedPerMessage() throws Exception {
+        CustomHandler handler = new CustomHandler();
+        handler.setOption(WSHandlerConstants.TIMESTAMP_STRICT, "maybe");
+        handler.compileHandlerConfiguration();
+
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(new TreeMap<String, Object>());
+        assertThrows(WSSecurityException.class,
+            () -> handler.receive(java.util.Collections.singletonList(WSConstants.TS), reqData));
+    }
+
+    @Test
+    public void testCustomCryptoLoader() throws Exception {
+        Crypto customCrypto = CryptoFactory.getInstance("wss40.properties");
+        AtomicInteger loads = new AtomicInteger();
+        CustomHandler handler = new CustomHandler() {
+            @Override
+            protected Crypto loadCryptoFromPropertiesFile(
+                String propFilename, RequestData reqData
+            ) throws WSSecurityException {
+                loads.incrementAndGet();
+                return customCrypto;
+            }
+        };
+
+        Map<String, Object> msgContext = new TreeMap<>();
+        msgContext.put(WSHandlerConstants.SIG_PROP_FILE, "crypto.properties");
+        RequestData reqData = new RequestData();
+        reqData.setMsgContext(msgContext);
+
+        // The Crypto of the overridden loader is cached by the handler, and not shared with other handlers
+        for (int i = 0; i < 2; i++) {
+            assertSame(customCrypto,
+                handler.loadCrypto(WSHandlerConstants.SIG_PROP_FILE, WSHandlerConstants.SIG_PROP_REF_ID, reqData));
+        }
+        assertEquals(1, loads.get());
+
+        Crypto crypto =
+            new CustomHandler().loadCrypto(WSHandlerConstants.SIG_PROP_FILE, WSHandlerConstants.SIG_PROP_REF_ID, reqData);
+        assertNotSame(customCrypto, crypto);
+        assertEquals(1, loads.get());
+    }
+
+}
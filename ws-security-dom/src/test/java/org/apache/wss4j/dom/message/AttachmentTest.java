@@ -24,6 +24,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PushbackInputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -31,6 +33,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.stream.Stream;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
@@ -48,6 +51,7 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
 import org.apache.wss4j.common.util.KeyUtils;
 import org.apache.wss4j.common.util.SOAPUtil;
+import org.apache.wss4j.common.util.ThresholdAttachmentBufferFactory;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.common.KeystoreCallbackHandler;
@@ -56,6 +60,7 @@ import org.apache.wss4j.dom.engine.WSSecurityEngine;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -76,6 +81,9 @@ public class AttachmentTest {
 
     private boolean isIBMJdK = System.getProperty("java.vendor").contains("IBM");
 
+    @TempDir
+    Path tempDir;
+
     public AttachmentTest() throws Exception {
         WSSConfig.init();
         crypto = CryptoFactory.getInstance();
@@ -252,6 +260,64 @@ public class AttachmentTest {
         assertEquals("text/xml", responseAttachment.getMimeType());
     }
 
+    @Test
+    public void testXMLAttachmentCompleteSignatureSpilledToDisk() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecSignature builder = new WSSecSignature(secHeader);
+        builder.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+
+        builder.getParts().add(new WSEncryptionPart("Body", "http://schemas.xmlsoap.org/soap/envelope/", "Content"));
+        builder.getParts().add(new WSEncryptionPart("cid:Attachments", "Element"));
+
+        final String attachmentId = UUID.randomUUID().toString();
+        final Attachment attachment = new Attachment();
+        attachment.setMimeType("text/xml");
+        attachment.addHeaders(getHeaders(attachmentId));
+        attachment.setId(attachmentId);
+        attachment.setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Collections.singletonList(attachment));
+        builder.setAttachmentCallbackHandler(attachmentCallbackHandler);
+
+        Document signedDoc = builder.build(crypto);
+
+        // The source stream does not support mark/reset, so the attachment has to be buffered,
+        // and the small threshold makes the buffer spill to a temporary file
+        final Attachment inboundAttachment = new Attachment();
+        inboundAttachment.setMimeType("text/xml");
+        inboundAttachment.addHeaders(getHeaders(attachmentId));
+        inboundAttachment.setId(attachmentId);
+        inboundAttachment.setSourceStream(
+            new PushbackInputStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)))
+        );
+
+        attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Collections.singletonList(inboundAttachment));
+        RequestData requestData = new RequestData();
+        requestData.setAttachmentCallbackHandler(attachmentCallbackHandler);
+        requestData.setAttachmentBufferFactory(new ThresholdAttachmentBufferFactory(16, tempDir));
+        requestData.setSigVerCrypto(crypto);
+        requestData.setCallbackHandler(new KeystoreCallbackHandler());
+        secEngine.processSecurityHeader(signedDoc, requestData);
+
+        assertFalse(attachmentCallbackHandler.getResponseAttachments().isEmpty());
+        Attachment responseAttachment = attachmentCallbackHandler.getResponseAttachments().get(0);
+        byte[] attachmentBytes;
+        try (InputStream inputStream = responseAttachment.getSourceStream()) {
+            attachmentBytes = readInputStream(inputStream);
+        }
+        assertTrue(Arrays.equals(attachmentBytes, SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+
+        // The temporary file is gone once the stream is closed
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
     @Test
     public void testInvalidXMLAttachmentCompleteSignature() throws Exception {
         Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
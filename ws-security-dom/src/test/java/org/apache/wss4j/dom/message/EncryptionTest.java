@@ -20,8 +20,10 @@
 package org.apache.wss4j.dom.message;
 
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
@@ -29,6 +31,8 @@ import javax.security.auth.callback.CallbackHandler;
 
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
+import org.apache.wss4j.common.cache.UnwrappedKeyCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.CryptoType;
@@ -61,6 +65,7 @@ import org.w3c.dom.Element;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -234,6 +239,170 @@ public class EncryptionTest {
         assertTrue(referenceType == REFERENCE_TYPE.KEY_IDENTIFIER);
     }
 
+    /**
+     * Test that the session key and the EncryptedKey of an earlier message are reused with an
+     * EncryptedKeySessionCache, until the maximum number of uses of the session is reached.
+     */
+    @Test
+    public void testEncryptedKeySessionCache() throws Exception {
+        EncryptedKeySessionCache sessionCache = new EncryptedKeySessionCache(Duration.ofMinutes(5), 2);
+
+        String[] cipherValues = new String[3];
+        for (int i = 0; i < cipherValues.length; i++) {
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+            builder.setUserInfo("wss40");
+            builder.setKeyIdentifierType(WSConstants.X509_KEY_IDENTIFIER);
+            builder.setKeyEncAlgo(WSConstants.KEYTRANSPORT_RSAOAEP);
+            builder.setEncryptedKeySessionCache(sessionCache);
+
+            KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+            Document encryptedDoc = builder.build(crypto, keyGen.generateKey());
+
+            Element cipherValue =
+                XMLUtils.findElement(builder.getEncryptedKeyElement(), "CipherValue", WSConstants.ENC_NS);
+            cipherValues[i] = cipherValue.getTextContent();
+
+            String outputString = XMLUtils.prettyDocumentToString(encryptedDoc);
+            assertFalse(outputString.contains("counter_port_type"));
+            verify(encryptedDoc, keystoreCallbackHandler, SOAP_BODY);
+        }
+
+        assertEquals(cipherValues[0], cipherValues[1]);
+        assertNotEquals(cipherValues[1], cipherValues[2]);
+
+        // The session of the third message is not reused with another symmetric algorithm
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+        builder.setUserInfo("wss40");
+        builder.setKeyIdentifierType(WSConstants.X509_KEY_IDENTIFIER);
+        builder.setKeyEncAlgo(WSConstants.KEYTRANSPORT_RSAOAEP);
+        builder.setSymmetricEncAlgorithm(WSConstants.AES_128_GCM);
+        builder.setEncryptedKeySessionCache(sessionCache);
+
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128_GCM);
+        Document encryptedDoc = builder.build(crypto, keyGen.generateKey());
+
+        Element cipherValue =
+            XMLUtils.findElement(builder.getEncryptedKeyElement(), "CipherValue", WSConstants.ENC_NS);
+        assertNotEquals(cipherValues[2], cipherValue.getTextContent());
+        verify(encryptedDoc, keystoreCallbackHandler, SOAP_BODY);
+    }
+
+    /**
+     * Test that a reused EncryptedKey is decrypted with the private key only once, when an
+     * UnwrappedKeyCache is configured.
+     */
+    @Test
+    public void testUnwrappedKeyCache() throws Exception {
+        EncryptedKeySessionCache sessionCache = new EncryptedKeySessionCache(Duration.ofMinutes(5), 10);
+        UnwrappedKeyCache unwrappedKeyCache = new UnwrappedKeyCache();
+        AtomicInteger passwordCallbacks = new AtomicInteger();
+        CallbackHandler countingCallbackHandler = callbacks -> {
+            passwordCallbacks.incrementAndGet();
+            keystoreCallbackHandler.handle(callbacks);
+        };
+
+        for (int i = 0; i < 2; i++) {
+            Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+            builder.setUserInfo("wss40");
+            builder.setKeyIdentifierType(WSConstants.X509_KEY_IDENTIFIER);
+            builder.setEncryptedKeySessionCache(sessionCache);
+
+            KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+            Document encryptedDoc = builder.build(crypto, keyGen.generateKey());
+            assertFalse(XMLUtils.prettyDocumentToString(encryptedDoc).contains("counter_port_type"));
+
+            RequestData data = new RequestData();
+            data.setCallbackHandler(countingCallbackHandler);
+            data.setDecCrypto(crypto);
+            data.setUnwrappedKeyCache(unwrappedKeyCache);
+            new WSSecurityEngine().processSecurityHeader(encryptedDoc, data);
+            assertTrue(XMLUtils.prettyDocumentToString(encryptedDoc).contains("counter_port_type"));
+        }
+
+        assertEquals(1, passwordCallbacks.get());
+        assertEquals(1, unwrappedKeyCache.size());
+        unwrappedKeyCache.close();
+    }
+
+    /**
+     * Test that encrypts the SOAP Body content of a large message in a streaming manner, and
+     * decrypts it again after the message has been serialized and parsed.
+     */
+    @Test
+    public void testStreamEncryption() throws Exception {
+        StringBuilder values = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            values.append("<value xmlns=\"\">").append(i).append("</value>");
+        }
+        String message = SOAPUtil.SAMPLE_SOAP_MSG.replace("<value xmlns=\"\">15</value>", values.toString());
+        Document doc = SOAPUtil.toSOAPPart(message);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+        builder.setUserInfo("wss40");
+        builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+        builder.setSymmetricEncAlgorithm(WSConstants.AES_256_GCM);
+        builder.setStreamEncryption(true);
+
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_256_GCM);
+        SecretKey symmetricKey = keyGen.generateKey();
+        Document encryptedDoc = builder.build(crypto, symmetricKey);
+
+        String outputString = XMLUtils.prettyDocumentToString(encryptedDoc);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(outputString);
+        }
+        assertFalse(outputString.contains("counter_port_type"));
+
+        Document parsedDoc = SOAPUtil.toSOAPPart(DOM2Writer.nodeToString(encryptedDoc));
+        verify(parsedDoc, keystoreCallbackHandler, SOAP_BODY);
+        assertTrue(DOM2Writer.nodeToString(parsedDoc).contains(">9999</value>"));
+    }
+
+    /**
+     * Test that encrypts an Element in a streaming manner
+     */
+    @Test
+    public void testStreamEncryptionElement() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt builder = new WSSecEncrypt(secHeader);
+        builder.setUserInfo("wss40");
+        builder.setKeyIdentifierType(WSConstants.BST_DIRECT_REFERENCE);
+        builder.setSymmetricEncAlgorithm(WSConstants.AES_128);
+        builder.setStreamEncryption(true);
+        builder.getParts().add(
+            new WSEncryptionPart("add", "http://ws.apache.org/counter/counter_port_type", "Element"));
+
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        Document encryptedDoc = builder.build(crypto, symmetricKey);
+
+        String outputString = XMLUtils.prettyDocumentToString(encryptedDoc);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug(outputString);
+        }
+        assertFalse(outputString.contains("counter_port_type"));
+
+        verify(encryptedDoc, keystoreCallbackHandler,
+               new javax.xml.namespace.QName("http://ws.apache.org/counter/counter_port_type", "add"));
+    }
+
     @Test
     public void testEncryptionDecryptionPublicKey() throws Exception {
         Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
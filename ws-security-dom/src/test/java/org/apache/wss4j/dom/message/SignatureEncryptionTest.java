@@ -475,6 +475,53 @@ public class SignatureEncryptionTest {
         newEngine.processSecurityHeader(doc, reqData);
     }
 
+    /**
+     * Test that signs and then encrypts an element, then performs decryption and verification
+     * with the Elements of the document indexed by their Id. The signed element is only found in
+     * the index if it is registered after decryption.
+     */
+    @Test
+    public void testSigningEncryptionElementIndexedIds() throws Exception {
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        WSSecHeader secHeader = new WSSecHeader(doc);
+        secHeader.insertSecurityHeader();
+
+        WSSecEncrypt encrypt = new WSSecEncrypt(secHeader);
+        WSSecSignature sign = new WSSecSignature(secHeader);
+        encrypt.setUserInfo("wss40");
+        sign.setUserInfo("wss40", "security");
+
+        WSEncryptionPart part =
+            new WSEncryptionPart(
+                    "add",
+                    "http://ws.apache.org/counter/counter_port_type",
+                    "Element");
+        sign.getParts().add(part);
+        encrypt.getParts().add(part);
+
+        sign.build(crypto);
+
+        KeyGenerator keyGen = KeyUtils.getKeyGenerator(WSConstants.AES_128);
+        SecretKey symmetricKey = keyGen.generateKey();
+        Document signedEncryptedDoc = encrypt.build(crypto, symmetricKey);
+
+        if (LOG.isDebugEnabled()) {
+            String outputString =
+                XMLUtils.prettyDocumentToString(signedEncryptedDoc);
+            LOG.debug(outputString);
+        }
+
+        RequestData reqData = new RequestData();
+        reqData.setSigVerCrypto(crypto);
+        reqData.setDecCrypto(crypto);
+        reqData.setCallbackHandler(callbackHandler);
+        reqData.setIndexElementIds(true);
+        WSHandlerResult results = secEngine.processSecurityHeader(signedEncryptedDoc, reqData);
+
+        assertEquals(1, results.getActionResults().get(WSConstants.SIGN).size());
+        assertEquals(1, results.getActionResults().get(WSConstants.ENCR).size());
+    }
+
     @Test
     public void testSigningEncryptionSOAP12Fault() throws Exception {
         Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
@@ -21,6 +21,7 @@ package org.apache.wss4j.dom.message;
 
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.util.DOM2Writer;
 import org.apache.wss4j.common.util.SOAPUtil;
 import org.apache.wss4j.dom.SOAPConstants;
 import org.apache.wss4j.dom.WSDataRef;
@@ -56,6 +57,12 @@ import java.io.InputStream;
 import java.security.KeyStore;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.xml.namespace.QName;
 
@@ -628,6 +635,91 @@ public class SignaturePartsTest {
         verifySignedKeyInfoResults(results);
     }
 
+    /**
+     * Test signing and verifying several parts with the References digested concurrently
+     */
+    @SuppressWarnings("unchecked")
+    @Test
+    public void testParallelDigest() throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        // Record the tasks that are submitted to the Executor, and the threads that run them
+        final AtomicInteger submittedTasks = new AtomicInteger();
+        final Set<Thread> taskThreads = ConcurrentHashMap.newKeySet();
+        Executor executor = task -> {
+            submittedTasks.incrementAndGet();
+            executorService.execute(() -> {
+                taskThreads.add(Thread.currentThread());
+                task.run();
+            });
+        };
+        try {
+            Document doc = SOAPUtil.toSOAPPart(SOAPMSG);
+            WSSecHeader secHeader = new WSSecHeader(doc);
+            secHeader.insertSecurityHeader();
+
+            WSSecTimestamp timestamp = new WSSecTimestamp(secHeader);
+            timestamp.build();
+
+            WSSecSignature sign = new WSSecSignature(secHeader);
+            sign.setUserInfo("16c73ab6-b892-458f-abf5-2f875f74882e", "security");
+            sign.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+            sign.setDigestExecutor(executor);
+            sign.getParts().add(new WSEncryptionPart("foobar", "urn:foo.bar", ""));
+            sign.getParts().add(new WSEncryptionPart("Timestamp", WSConstants.WSU_NS, ""));
+            sign.getParts().add(
+                new WSEncryptionPart(WSConstants.ELEM_BODY, WSConstants.URI_SOAP11_ENV, "")
+            );
+
+            Document signedDoc = sign.build(crypto);
+
+            if (LOG.isDebugEnabled()) {
+                String outputString =
+                    XMLUtils.prettyDocumentToString(signedDoc);
+                LOG.debug(outputString);
+            }
+
+            // The first Reference is digested on the calling thread, the others on the Executor
+            assertEquals(2, submittedTasks.get());
+            assertFalse(taskThreads.isEmpty());
+            assertFalse(taskThreads.contains(Thread.currentThread()));
+
+            // Verify sequentially and concurrently
+            verify(SOAPUtil.toSOAPPart(DOM2Writer.nodeToString(signedDoc)));
+            submittedTasks.set(0);
+            taskThreads.clear();
+
+            RequestData data = new RequestData();
+            data.setSigVerCrypto(crypto);
+            data.setDigestExecutor(executor);
+            WSHandlerResult results = secEngine.processSecurityHeader(signedDoc, data);
+
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.SIGN).get(0);
+            final List<WSDataRef> refs =
+                (List<WSDataRef>) actionResult.get(WSSecurityEngineResult.TAG_DATA_REF_URIS);
+            assertEquals(3, refs.size());
+            assertEquals(2, submittedTasks.get());
+            assertFalse(taskThreads.isEmpty());
+            assertFalse(taskThreads.contains(Thread.currentThread()));
+
+            // Now modify a signed header and check that verification fails
+            Element foobar =
+                XMLUtils.findElement(signedDoc.getDocumentElement(), "foobar", "urn:foo.bar");
+            foobar.setTextContent("modified");
+            try {
+                data = new RequestData();
+                data.setSigVerCrypto(crypto);
+                data.setDigestExecutor(executor);
+                secEngine.processSecurityHeader(signedDoc, data);
+                fail("Failure expected on a modified header");
+            } catch (WSSecurityException ex) {
+                assertTrue(ex.getErrorCode() == WSSecurityException.ErrorCode.FAILED_CHECK);
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
     private void verifySignedKeyInfoResults(WSHandlerResult results) {
 
         WSSecurityEngineResult actionResult =
@@ -19,9 +19,11 @@
 
 package org.apache.wss4j.dom.saml;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.security.auth.callback.CallbackHandler;
 
@@ -30,7 +32,10 @@ import org.w3c.dom.Document;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.VerifiedSamlAssertionCache;
+import org.apache.wss4j.common.util.DOM2Writer;
 import org.apache.wss4j.common.util.XMLUtils;
 import org.apache.wss4j.dom.WSConstants;
 import org.apache.wss4j.dom.common.CustomHandler;
@@ -46,12 +51,14 @@ import org.apache.wss4j.dom.handler.HandlerAction;
 import org.apache.wss4j.dom.handler.RequestData;
 import org.apache.wss4j.dom.handler.WSHandlerConstants;
 import org.apache.wss4j.dom.handler.WSHandlerResult;
+import org.apache.wss4j.dom.validate.Credential;
 
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -295,6 +302,169 @@ public class SamlTokenActionTest {
         assertTrue(receivedSamlAssertion.isSigned());
     }
 
+    @Test
+    public void testSignedAssertionActionWithAssertionCache() throws Exception {
+        SamlAssertionCache samlAssertionCache = new SamlAssertionCache();
+        CallbackHandler callbackHandler = new KeystoreCallbackHandler();
+
+        SAML1CallbackHandler samlCallbackHandler = new SAML1CallbackHandler();
+        samlCallbackHandler.setStatement(SAML1CallbackHandler.Statement.AUTHN);
+        samlCallbackHandler.setIssuer("www.example.com");
+        samlCallbackHandler.setIssuerCrypto(crypto);
+        samlCallbackHandler.setIssuerName("wss40");
+        samlCallbackHandler.setIssuerPassword("security");
+        samlCallbackHandler.setSignAssertion(true);
+
+        List<String> assertionIds = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final RequestData reqData = new RequestData();
+            reqData.setWssConfig(WSSConfig.getNewInstance());
+
+            java.util.Map<String, Object> config = new java.util.TreeMap<>();
+            config.put(WSHandlerConstants.PW_CALLBACK_REF, callbackHandler);
+            config.put(WSHandlerConstants.SAML_CALLBACK_REF, samlCallbackHandler);
+            config.put(WSHandlerConstants.SAML_ASSERTION_CACHE_INSTANCE, samlAssertionCache);
+            reqData.setMsgContext(config);
+
+            final Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+            CustomHandler handler = new CustomHandler();
+            HandlerAction action = new HandlerAction(WSConstants.ST_SIGNED);
+            handler.send(
+                doc,
+                reqData,
+                Collections.singletonList(action),
+                true
+            );
+
+            WSHandlerResult results = verify(doc, callbackHandler);
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.ST_SIGNED).get(0);
+
+            SamlAssertionWrapper receivedSamlAssertion =
+                (SamlAssertionWrapper) actionResult.get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+            assertNotNull(receivedSamlAssertion);
+            assertTrue(receivedSamlAssertion.isSigned());
+            assertionIds.add(receivedSamlAssertion.getId());
+        }
+
+        // The signed Assertion of the first message is reused for the second message
+        assertEquals(1, samlAssertionCache.size());
+        assertEquals(assertionIds.get(0), assertionIds.get(1));
+    }
+
+    @Test
+    public void testVerifiedAssertionCache() throws Exception {
+        String message = createSignedAssertionMessage();
+
+        // Count the verifications of the trust in the signature of the Assertion
+        AtomicInteger trustVerifications = new AtomicInteger();
+        WSSConfig wssConfig = WSSConfig.getNewInstance();
+        wssConfig.setValidator(WSConstants.SAML_TOKEN, new CustomSamlAssertionValidator() {
+            @Override
+            protected Credential verifySignedAssertion(
+                SamlAssertionWrapper samlAssertion, RequestData data
+            ) throws WSSecurityException {
+                trustVerifications.incrementAndGet();
+                return super.verifySignedAssertion(samlAssertion, data);
+            }
+        });
+        WSSecurityEngine engine = new WSSecurityEngine();
+        engine.setWssConfig(wssConfig);
+
+        VerifiedSamlAssertionCache verifiedAssertionCache = new VerifiedSamlAssertionCache();
+        for (int i = 0; i < 2; i++) {
+            RequestData requestData = new RequestData();
+            requestData.setSigVerCrypto(crypto);
+            requestData.setValidateSamlSubjectConfirmation(false);
+            requestData.setVerifiedSamlAssertionCache(verifiedAssertionCache);
+
+            WSHandlerResult results =
+                engine.processSecurityHeader(SOAPUtil.toSOAPPart(message), requestData);
+            WSSecurityEngineResult actionResult =
+                results.getActionResults().get(WSConstants.ST_SIGNED).get(0);
+
+            SamlAssertionWrapper receivedSamlAssertion =
+                (SamlAssertionWrapper) actionResult.get(WSSecurityEngineResult.TAG_SAML_ASSERTION);
+            assertTrue(receivedSamlAssertion.isSigned());
+            assertNotNull(receivedSamlAssertion.getSignatureKeyInfo());
+        }
+
+        // The trust in the signature was only verified for the first message
+        assertEquals(1, trustVerifications.get());
+        assertEquals(1, verifiedAssertionCache.size());
+
+        // A modified Assertion is not found in the cache, and fails signature verification
+        String modifiedMessage = message.replace("www.example.com", "www.example.org");
+        RequestData requestData = new RequestData();
+        requestData.setSigVerCrypto(crypto);
+        requestData.setValidateSamlSubjectConfirmation(false);
+        requestData.setVerifiedSamlAssertionCache(verifiedAssertionCache);
+        assertThrows(WSSecurityException.class, () ->
+            engine.processSecurityHeader(SOAPUtil.toSOAPPart(modifiedMessage), requestData));
+    }
+
+    @Test
+    public void testVerifiedAssertionCacheTimeToLive() throws Exception {
+        String message = createSignedAssertionMessage();
+
+        AtomicInteger trustVerifications = new AtomicInteger();
+        WSSConfig wssConfig = WSSConfig.getNewInstance();
+        wssConfig.setValidator(WSConstants.SAML_TOKEN, new CustomSamlAssertionValidator() {
+            @Override
+            protected Credential verifySignedAssertion(
+                SamlAssertionWrapper samlAssertion, RequestData data
+            ) throws WSSecurityException {
+                trustVerifications.incrementAndGet();
+                return super.verifySignedAssertion(samlAssertion, data);
+            }
+        });
+        WSSecurityEngine engine = new WSSecurityEngine();
+        engine.setWssConfig(wssConfig);
+
+        VerifiedSamlAssertionCache verifiedAssertionCache =
+            new VerifiedSamlAssertionCache(VerifiedSamlAssertionCache.DEFAULT_MAX_SIZE, Duration.ofMillis(100));
+        for (int i = 0; i < 2; i++) {
+            RequestData requestData = new RequestData();
+            requestData.setSigVerCrypto(crypto);
+            requestData.setValidateSamlSubjectConfirmation(false);
+            requestData.setVerifiedSamlAssertionCache(verifiedAssertionCache);
+
+            engine.processSecurityHeader(SOAPUtil.toSOAPPart(message), requestData);
+            Thread.sleep(200);
+        }
+
+        // The cached Assertion expired before the second message, so the trust was verified again
+        assertEquals(2, trustVerifications.get());
+    }
+
+    private String createSignedAssertionMessage() throws Exception {
+        final RequestData reqData = new RequestData();
+        reqData.setWssConfig(WSSConfig.getNewInstance());
+
+        SAML1CallbackHandler samlCallbackHandler = new SAML1CallbackHandler();
+        samlCallbackHandler.setStatement(SAML1CallbackHandler.Statement.AUTHN);
+        samlCallbackHandler.setIssuer("www.example.com");
+        samlCallbackHandler.setIssuerCrypto(crypto);
+        samlCallbackHandler.setIssuerName("wss40");
+        samlCallbackHandler.setIssuerPassword("security");
+        samlCallbackHandler.setSignAssertion(true);
+
+        java.util.Map<String, Object> config = new java.util.TreeMap<>();
+        config.put(WSHandlerConstants.SAML_CALLBACK_REF, samlCallbackHandler);
+        reqData.setMsgContext(config);
+
+        Document doc = SOAPUtil.toSOAPPart(SOAPUtil.SAMPLE_SOAP_MSG);
+        CustomHandler handler = new CustomHandler();
+        HandlerAction action = new HandlerAction(WSConstants.ST_UNSIGNED);
+        handler.send(
+            doc,
+            reqData,
+            Collections.singletonList(action),
+            true
+        );
+        return DOM2Writer.nodeToString(doc);
+    }
+
     private WSHandlerResult verify(
         Document doc, CallbackHandler callbackHandler
     ) throws Exception {
@@ -18,9 +18,13 @@
  */
 package org.apache.wss4j.policy.stax;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 import javax.xml.namespace.QName;
 
 import org.apache.neethi.Policy;
+import org.apache.wss4j.common.WSSPolicyException;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcerTemplate;
 
 public class OperationPolicy {
 
@@ -28,6 +32,9 @@ public class OperationPolicy {
     private String operationAction;
     private Policy policy;
     private String soapMessageVersionNamespace;
+    // The compiled policy, indexed by the initiator and soap12 flags
+    private final AtomicReferenceArray<PolicyEnforcerTemplate> policyEnforcerTemplates =
+        new AtomicReferenceArray<>(4);
 
     public OperationPolicy(QName operationName) {
         this.operationName = operationName;
@@ -55,6 +62,29 @@ public class OperationPolicy {
 
     public void setPolicy(Policy policy) {
         this.policy = policy;
+        for (int i = 0; i < policyEnforcerTemplates.length(); i++) {
+            policyEnforcerTemplates.set(i, null);
+        }
+    }
+
+    /**
+     * Get the compiled form of the (normalized) Policy. It is compiled on first use and then shared
+     * by all the PolicyEnforcers of this operation.
+     * @param initiator Whether the PolicyEnforcer is running in client or server mode
+     * @param soap12 Whether SOAP 1.2 is used or not
+     * @return the compiled Policy
+     * @throws WSSPolicyException if the Policy is invalid
+     */
+    public PolicyEnforcerTemplate getPolicyEnforcerTemplate(boolean initiator, boolean soap12)
+        throws WSSPolicyException {
+        int index = (initiator ? 2 : 0) + (soap12 ? 1 : 0);
+        PolicyEnforcerTemplate policyEnforcerTemplate = policyEnforcerTemplates.get(index);
+        if (policyEnforcerTemplate == null) {
+            // Concurrent callers may compile the same Policy, which is harmless
+            policyEnforcerTemplate = PolicyEnforcerTemplate.compile(policy, initiator, soap12);
+            policyEnforcerTemplates.compareAndSet(index, null, policyEnforcerTemplate);
+        }
+        return policyEnforcerTemplate;
     }
 
     public String getSoapMessageVersionNamespace() {
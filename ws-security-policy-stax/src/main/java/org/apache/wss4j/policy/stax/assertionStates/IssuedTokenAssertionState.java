@@ -34,6 +34,7 @@ import org.apache.xml.security.stax.securityEvent.TokenSecurityEvent;
 import org.apache.xml.security.stax.securityToken.SecurityToken;
 import org.apache.wss4j.stax.securityEvent.IssuedTokenSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
+import org.apache.wss4j.stax.validate.SamlAssertionView;
 import org.opensaml.saml.common.SAMLVersion;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
@@ -140,7 +141,7 @@ public class IssuedTokenAssertionState extends TokenAssertionState {
             }
             if ("TokenType".equals(child.getLocalName())) {
                 String content = child.getTextContent();
-                final SAMLVersion samlVersion = samlTokenSecurityEvent.getSamlAssertionWrapper().getSamlVersion();
+                final SAMLVersion samlVersion = samlTokenSecurityEvent.getSamlVersion();
                 if (WSSConstants.NS_SAML11_TOKEN_PROFILE_TYPE.equals(content)
                         && samlVersion != SAMLVersion.VERSION_11) {
                     return "Policy enforces SAML V1.1 token but got " + samlVersion.toString();
@@ -216,7 +217,13 @@ public class IssuedTokenAssertionState extends TokenAssertionState {
                 String claimTypeOptional = claimType.getAttributeNS(null, "Optional");
 
                 if (claimTypeOptional.length() == 0 || !Boolean.parseBoolean(claimTypeOptional)) {
-                    String errorMsg = findClaimInAssertion(samlTokenSecurityEvent.getSamlAssertionWrapper(), URI.create(claimTypeUri));
+                    SamlAssertionView samlAssertionView = samlTokenSecurityEvent.getSecurityToken().getSamlAssertionView();
+                    String errorMsg;
+                    if (samlAssertionView != null) {
+                        errorMsg = findClaimInAssertion(samlAssertionView, URI.create(claimTypeUri));
+                    } else {
+                        errorMsg = findClaimInAssertion(samlTokenSecurityEvent.getSamlAssertionWrapper(), URI.create(claimTypeUri));
+                    }
                     if (errorMsg != null) {
                         return errorMsg;
                     }
@@ -227,6 +234,29 @@ public class IssuedTokenAssertionState extends TokenAssertionState {
         return null;
     }
 
+    /**
+     * Find a claim in an Assertion that is processed on the event stream, in the same way as in the
+     * OpenSAML objects of the Assertion
+     */
+    protected String findClaimInAssertion(SamlAssertionView samlAssertionView, URI claimURI) {
+        if (samlAssertionView.getSamlVersion() == SAMLVersion.VERSION_20) {
+            List<String> values = samlAssertionView.getAttributes().get(claimURI.toString());
+            if (values != null && !values.isEmpty()) {
+                return null;
+            }
+        } else {
+            for (Map.Entry<String, List<String>> attribute : samlAssertionView.getAttributes().entrySet()) {
+                for (String attributeNamespace : samlAssertionView.getAttributeNamespaces(attribute.getKey())) {
+                    String desiredRole = URI.create(attributeNamespace).relativize(claimURI).toString();
+                    if (attribute.getKey().equals(desiredRole)) {
+                        return null;
+                    }
+                }
+            }
+        }
+        return "Attribute " + claimURI + " not found in the SAMLAssertion";
+    }
+
     protected String findClaimInAssertion(SamlAssertionWrapper samlAssertionWrapper, URI claimURI) {
         if (samlAssertionWrapper.getSaml1() != null) {
             return findClaimInAssertion(samlAssertionWrapper.getSaml1(), claimURI);
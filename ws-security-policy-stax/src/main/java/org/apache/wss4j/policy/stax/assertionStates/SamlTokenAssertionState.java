@@ -20,7 +20,6 @@ package org.apache.wss4j.policy.stax.assertionStates;
 
 import javax.xml.namespace.QName;
 
-import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.WSSPolicyException;
 import org.apache.wss4j.policy.SPConstants;
 import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
@@ -96,11 +95,11 @@ public class SamlTokenAssertionState extends TokenAssertionState {
             }
         }
         if (samlToken.getSamlTokenType() != null) {
-            final SamlAssertionWrapper samlAssertionWrapper = samlTokenSecurityEvent.getSamlAssertionWrapper();
+            final SAMLVersion samlVersion = samlTokenSecurityEvent.getSamlVersion();
             switch (samlToken.getSamlTokenType()) {
                 case WssSamlV11Token10:
-                    if (samlAssertionWrapper.getSamlVersion() != SAMLVersion.VERSION_11) {
-                        setErrorMessage("Policy enforces SamlVersion11Profile10 but we got " + samlAssertionWrapper.getSamlVersion());
+                    if (samlVersion != SAMLVersion.VERSION_11) {
+                        setErrorMessage("Policy enforces SamlVersion11Profile10 but we got " + samlVersion);
                         getPolicyAsserter().unassertPolicy(new QName(namespace, samlToken.getSamlTokenType().name()),
                                                          getErrorMessage());
                         return false;
@@ -108,8 +107,8 @@ public class SamlTokenAssertionState extends TokenAssertionState {
                     getPolicyAsserter().assertPolicy(new QName(namespace, samlToken.getSamlTokenType().name()));
                     break;
                 case WssSamlV11Token11:
-                    if (samlAssertionWrapper.getSamlVersion() != SAMLVersion.VERSION_11) {
-                        setErrorMessage("Policy enforces SamlVersion11Profile11 but we got " + samlAssertionWrapper.getSamlVersion());
+                    if (samlVersion != SAMLVersion.VERSION_11) {
+                        setErrorMessage("Policy enforces SamlVersion11Profile11 but we got " + samlVersion);
                         getPolicyAsserter().unassertPolicy(new QName(namespace, samlToken.getSamlTokenType().name()),
                                                            getErrorMessage());
                         return false;
@@ -117,8 +116,8 @@ public class SamlTokenAssertionState extends TokenAssertionState {
                     getPolicyAsserter().assertPolicy(new QName(namespace, samlToken.getSamlTokenType().name()));
                     break;
                 case WssSamlV20Token11:
-                    if (samlAssertionWrapper.getSamlVersion() != SAMLVersion.VERSION_20) {
-                        setErrorMessage("Policy enforces SamlVersion20Profile11 but we got " + samlAssertionWrapper.getSamlVersion());
+                    if (samlVersion != SAMLVersion.VERSION_20) {
+                        setErrorMessage("Policy enforces SamlVersion20Profile11 but we got " + samlVersion);
                         getPolicyAsserter().unassertPolicy(new QName(namespace, samlToken.getSamlTokenType().name()),
                                                            getErrorMessage());
                         return false;
@@ -0,0 +1,592 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.enforcer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javax.xml.namespace.QName;
+
+import org.apache.neethi.Assertion;
+import org.apache.neethi.ExactlyOne;
+import org.apache.neethi.PolicyComponent;
+import org.apache.neethi.PolicyContainingAssertion;
+import org.apache.neethi.PolicyOperator;
+import org.apache.neethi.builders.PrimitiveAssertion;
+import org.apache.wss4j.common.WSSPolicyException;
+import org.apache.wss4j.policy.SPConstants;
+import org.apache.wss4j.policy.SPConstants.IncludeTokenType;
+import org.apache.wss4j.policy.model.AbstractBinding;
+import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
+import org.apache.wss4j.policy.model.AbstractSymmetricAsymmetricBinding;
+import org.apache.wss4j.policy.model.AbstractToken;
+import org.apache.wss4j.policy.model.AlgorithmSuite;
+import org.apache.wss4j.policy.model.ContentEncryptedElements;
+import org.apache.wss4j.policy.model.EncryptedElements;
+import org.apache.wss4j.policy.model.EncryptedParts;
+import org.apache.wss4j.policy.model.HttpsToken;
+import org.apache.wss4j.policy.model.IssuedToken;
+import org.apache.wss4j.policy.model.KerberosToken;
+import org.apache.wss4j.policy.model.KeyValueToken;
+import org.apache.wss4j.policy.model.Layout;
+import org.apache.wss4j.policy.model.RelToken;
+import org.apache.wss4j.policy.model.RequiredElements;
+import org.apache.wss4j.policy.model.RequiredParts;
+import org.apache.wss4j.policy.model.SamlToken;
+import org.apache.wss4j.policy.model.SecureConversationToken;
+import org.apache.wss4j.policy.model.SecurityContextToken;
+import org.apache.wss4j.policy.model.SignedElements;
+import org.apache.wss4j.policy.model.SignedParts;
+import org.apache.wss4j.policy.model.SpnegoContextToken;
+import org.apache.wss4j.policy.model.Trust10;
+import org.apache.wss4j.policy.model.Trust13;
+import org.apache.wss4j.policy.model.UsernameToken;
+import org.apache.wss4j.policy.model.Wss10;
+import org.apache.wss4j.policy.model.Wss11;
+import org.apache.wss4j.policy.model.X509Token;
+import org.apache.wss4j.policy.stax.Assertable;
+import org.apache.wss4j.policy.stax.DummyPolicyAsserter;
+import org.apache.wss4j.policy.stax.PolicyAsserter;
+import org.apache.wss4j.policy.stax.assertionStates.AlgorithmSuiteAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.ContentEncryptedElementsAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.EncryptedElementsAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.EncryptedPartsAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.HttpsTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.IncludeTimeStampAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.IssuedTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.KerberosTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.KeyValueTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.OnlySignEntireHeadersAndBodyAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.ProtectionOrderAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.RelTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.RequiredElementsAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.RequiredPartsAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.SamlTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.SecureConversationTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.SecurityContextTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.SignatureConfirmationAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.SignatureProtectionAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.SignedElementsAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.SignedPartsAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.SpnegoContextTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.TokenProtectionAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.UsernameTokenAssertionState;
+import org.apache.wss4j.policy.stax.assertionStates.X509TokenAssertionState;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
+
+/**
+ * A PolicyEnforcerTemplate is the compiled form of a (normalized) Policy, as it is needed by the
+ * PolicyEnforcer: for every policy alternative, the assertions, the factories of the Assertables
+ * that verify them, and the Assertables that must be notified for each SecurityEvent type.
+ *
+ * Walking the Policy is independent of the message, so a template is compiled once per
+ * OperationPolicy (see OperationPolicy#getPolicyEnforcerTemplate) and is then shared between
+ * threads. For every message, only the (stateful) Assertables are instantiated.
+ */
+public final class PolicyEnforcerTemplate {
+
+    private static final PolicyAsserter DUMMY_POLICY_ASSERTER = new DummyPolicyAsserter();
+
+    private final List<Alternative> alternatives;
+
+    private PolicyEnforcerTemplate(List<Alternative> alternatives) {
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * Compile a template for the given Policy
+     * @param policyComponent The Policy. It _must_ be normalized!
+     * @param initiator Whether the PolicyEnforcer is running in client or server mode
+     * @param soap12 Whether SOAP 1.2 is used or not
+     * @return the compiled template
+     * @throws WSSPolicyException if the Policy is invalid
+     */
+    public static PolicyEnforcerTemplate compile(
+        PolicyComponent policyComponent, boolean initiator, boolean soap12
+    ) throws WSSPolicyException {
+        return compile(policyComponent,
+            (assertion, factories, policyAssertions) ->
+                addAssertableFactories(assertion, initiator, soap12, factories, policyAssertions));
+    }
+
+    static PolicyEnforcerTemplate compile(
+        PolicyComponent policyComponent, AssertableResolver assertableResolver
+    ) throws WSSPolicyException {
+        List<AlternativeBuilder> alternativeBuilders = new ArrayList<>();
+        buildAlternatives(policyComponent, alternativeBuilders, assertableResolver);
+
+        List<Alternative> alternatives = new ArrayList<>(alternativeBuilders.size());
+        for (AlternativeBuilder alternativeBuilder : alternativeBuilders) {
+            alternatives.add(alternativeBuilder.build());
+        }
+        return new PolicyEnforcerTemplate(Collections.unmodifiableList(alternatives));
+    }
+
+    /**
+     * Instantiate the Assertables of every policy alternative for a new message
+     */
+    List<AlternativeState> newAlternativeStates(
+        PolicyAsserter policyAsserter, String actorOrRole, int attachmentCount
+    ) {
+        List<AlternativeState> alternativeStates = new LinkedList<>();
+        for (Alternative alternative : alternatives) {
+            alternativeStates.add(alternative.newState(policyAsserter, actorOrRole, attachmentCount));
+        }
+        return alternativeStates;
+    }
+
+    /**
+     * Precondition: Policy _must_ be normalized!
+     */
+    private static void buildAlternatives(
+        PolicyComponent policyComponent, List<AlternativeBuilder> alternativeBuilders,
+        AssertableResolver assertableResolver
+    ) throws WSSPolicyException {
+        if (policyComponent instanceof PolicyOperator) {
+            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
+            for (PolicyComponent curPolicyComponent : policyOperator.getPolicyComponents()) {
+                if (policyOperator instanceof ExactlyOne) {
+                    AlternativeBuilder alternativeBuilder = new AlternativeBuilder();
+                    alternativeBuilders.add(alternativeBuilder);
+                    buildAlternative(curPolicyComponent, alternativeBuilder, assertableResolver);
+                } else {
+                    buildAlternatives(curPolicyComponent, alternativeBuilders, assertableResolver);
+                }
+            }
+        } else {
+            throw new WSSPolicyException("Invalid PolicyComponent: " + policyComponent
+                                         + " " + policyComponent.getType());
+        }
+    }
+
+    private static void buildAlternative(
+        PolicyComponent policyComponent, AlternativeBuilder alternativeBuilder,
+        AssertableResolver assertableResolver
+    ) throws WSSPolicyException {
+        if (policyComponent instanceof PolicyOperator) {
+            PolicyOperator policyOperator = (PolicyOperator) policyComponent;
+            for (PolicyComponent curPolicyComponent : policyOperator.getPolicyComponents()) {
+                buildAlternative(curPolicyComponent, alternativeBuilder, assertableResolver);
+            }
+        } else if (policyComponent instanceof AbstractSecurityAssertion) {
+            AbstractSecurityAssertion abstractSecurityAssertion = (AbstractSecurityAssertion) policyComponent;
+
+            List<AssertableFactory> factories = new ArrayList<>();
+            assertableResolver.resolve(abstractSecurityAssertion, factories, alternativeBuilder.policyAssertions);
+            for (AssertableFactory factory : factories) {
+                alternativeBuilder.addAssertable(abstractSecurityAssertion, factory);
+            }
+            if (abstractSecurityAssertion instanceof PolicyContainingAssertion) {
+                buildAlternative(((PolicyContainingAssertion) abstractSecurityAssertion).getPolicy(),
+                                 alternativeBuilder, assertableResolver);
+            }
+        } else if (!(policyComponent instanceof PrimitiveAssertion)) {
+            throw new WSSPolicyException("Unsupported PolicyComponent: " + policyComponent
+                                         + " type: " + policyComponent.getType());
+        }
+    }
+
+    // Don't return a Token that is not required
+    private static boolean isTokenRequired(AbstractToken token, boolean initiator) {
+        SPConstants.IncludeTokenType includeTokenType = token.getIncludeTokenType();
+        if (includeTokenType == IncludeTokenType.INCLUDE_TOKEN_NEVER) {
+            return false;
+        } else if (initiator && includeTokenType == IncludeTokenType.INCLUDE_TOKEN_ALWAYS_TO_RECIPIENT) {
+            return false;
+        } else if (initiator && includeTokenType == IncludeTokenType.INCLUDE_TOKEN_ONCE) {
+            return false;
+        } else if (!initiator && includeTokenType == IncludeTokenType.INCLUDE_TOKEN_ALWAYS_TO_INITIATOR) {
+            return false;
+        }
+        return true;
+    }
+
+    private static List<QName> getSecurityHeaderPath(boolean soap12, QName element) {
+        List<QName> elementPath = new LinkedList<>();
+        if (soap12) {
+            elementPath.addAll(WSSConstants.SOAP_12_WSSE_SECURITY_HEADER_PATH);
+        } else {
+            elementPath.addAll(WSSConstants.SOAP_11_WSSE_SECURITY_HEADER_PATH);
+        }
+        elementPath.add(element);
+        return elementPath;
+    }
+
+    private static void assertPolicy(List<Consumer<PolicyAsserter>> policyAssertions, Assertion assertion) {
+        policyAssertions.add(policyAsserter -> policyAsserter.assertPolicy(assertion));
+    }
+
+    private static void assertPolicy(List<Consumer<PolicyAsserter>> policyAssertions, QName qName) {
+        policyAssertions.add(policyAsserter -> policyAsserter.assertPolicy(qName));
+    }
+
+    /**
+     * Get the factories of the Assertables that verify the given assertion, and the policies
+     * that are asserted by the assertion itself.
+     */
+    static void addAssertableFactories(
+        AbstractSecurityAssertion abstractSecurityAssertion, boolean initiator, boolean soap12,
+        List<AssertableFactory> factories, List<Consumer<PolicyAsserter>> policyAssertions
+    ) {
+        boolean tokenRequired = true;
+        if (abstractSecurityAssertion instanceof AbstractToken) {
+            tokenRequired = isTokenRequired((AbstractToken)abstractSecurityAssertion, initiator);
+        }
+        final boolean tokenAsserted = !tokenRequired;
+
+        if (abstractSecurityAssertion instanceof ContentEncryptedElements) {
+            // initialized with asserted=true because it could be that parent elements are encrypted and
+            // therefore these element are also encrypted
+            // the test if it is really encrypted is done via the PolicyInputProcessor which emits
+            // EncryptedElementEvents for unencrypted elements with the unencrypted flag
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new ContentEncryptedElementsAssertionState(abstractSecurityAssertion, policyAsserter, true));
+        } else if (abstractSecurityAssertion instanceof EncryptedParts) {
+            // initialized with asserted=true with the same reason as by the EncryptedParts above
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new EncryptedPartsAssertionState(abstractSecurityAssertion, policyAsserter, true, attachmentCount, soap12));
+        } else if (abstractSecurityAssertion instanceof EncryptedElements) {
+            // initialized with asserted=true with the same reason as by the EncryptedParts above
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new EncryptedElementsAssertionState(abstractSecurityAssertion, policyAsserter, true));
+        } else if (abstractSecurityAssertion instanceof SignedParts) {
+            // initialized with asserted=true because it could be that parent elements are signed and
+            // therefore these element are also signed
+            // the test if it is really signed is done via the PolicyInputProcessor which emits SignedElementEvents for
+            // unsigned elements with the unsigned flag
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new SignedPartsAssertionState(abstractSecurityAssertion, policyAsserter, true, attachmentCount, soap12));
+        } else if (abstractSecurityAssertion instanceof SignedElements) {
+            // initialized with asserted=true with the same reason as by the SignedParts above
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new SignedElementsAssertionState(abstractSecurityAssertion, policyAsserter, true));
+        } else if (abstractSecurityAssertion instanceof RequiredElements) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new RequiredElementsAssertionState(abstractSecurityAssertion, policyAsserter, false));
+        } else if (abstractSecurityAssertion instanceof RequiredParts) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new RequiredPartsAssertionState(abstractSecurityAssertion, policyAsserter, false, soap12));
+        } else if (abstractSecurityAssertion instanceof UsernameToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new UsernameTokenAssertionState(abstractSecurityAssertion, tokenAsserted, policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof IssuedToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new IssuedTokenAssertionState(abstractSecurityAssertion, tokenAsserted, policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof X509Token) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new X509TokenAssertionState(abstractSecurityAssertion, tokenAsserted, policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof KerberosToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new KerberosTokenAssertionState(abstractSecurityAssertion, tokenAsserted, policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof SpnegoContextToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new SpnegoContextTokenAssertionState(abstractSecurityAssertion, tokenAsserted, policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof SecureConversationToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new SecureConversationTokenAssertionState(abstractSecurityAssertion, tokenAsserted,
+                                                          policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof SecurityContextToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new SecurityContextTokenAssertionState(abstractSecurityAssertion, tokenAsserted,
+                                                       policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof SamlToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new SamlTokenAssertionState(abstractSecurityAssertion, tokenAsserted, policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof RelToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new RelTokenAssertionState(abstractSecurityAssertion, tokenAsserted, policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof HttpsToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new HttpsTokenAssertionState(abstractSecurityAssertion, tokenAsserted || initiator,
+                                             policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof KeyValueToken) {
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new KeyValueTokenAssertionState(abstractSecurityAssertion, tokenAsserted, policyAsserter, initiator));
+        } else if (abstractSecurityAssertion instanceof AlgorithmSuite) {
+            // initialized with asserted=true because we do negative matching
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new AlgorithmSuiteAssertionState(abstractSecurityAssertion, policyAsserter, true));
+        } else if (abstractSecurityAssertion instanceof Layout) {
+            //factories.add(... new LayoutAssertionState(abstractSecurityAssertion, true));
+            String namespace = abstractSecurityAssertion.getName().getNamespaceURI();
+            assertPolicy(policyAssertions, new QName(namespace, SPConstants.LAYOUT_LAX));
+            assertPolicy(policyAssertions, new QName(namespace, SPConstants.LAYOUT_LAX_TIMESTAMP_FIRST));
+            assertPolicy(policyAssertions, new QName(namespace, SPConstants.LAYOUT_LAX_TIMESTAMP_LAST));
+            assertPolicy(policyAssertions, new QName(namespace, SPConstants.LAYOUT_STRICT));
+            assertPolicy(policyAssertions, abstractSecurityAssertion);
+        } else if (abstractSecurityAssertion instanceof AbstractBinding) {
+            assertPolicy(policyAssertions, abstractSecurityAssertion);
+            AbstractBinding abstractBinding = (AbstractBinding) abstractSecurityAssertion;
+            if (abstractBinding instanceof AbstractSymmetricAsymmetricBinding) {
+                AbstractSymmetricAsymmetricBinding abstractSymmetricAsymmetricBinding =
+                    (AbstractSymmetricAsymmetricBinding) abstractSecurityAssertion;
+                factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                    new ProtectionOrderAssertionState(abstractSymmetricAsymmetricBinding, policyAsserter, true));
+                factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                    new SignatureProtectionAssertionState(abstractSymmetricAsymmetricBinding, policyAsserter, true));
+                if (abstractSymmetricAsymmetricBinding.isOnlySignEntireHeadersAndBody()) {
+                    //initialized with asserted=true because we do negative matching
+                    factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                        new OnlySignEntireHeadersAndBodyAssertionState(abstractSecurityAssertion, policyAsserter,
+                                                                       true, actorOrRole));
+                }
+                factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                    new TokenProtectionAssertionState(abstractSecurityAssertion, policyAsserter, true, soap12));
+            }
+
+            //WSP1.3, 6.2 Timestamp Property
+            factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                new IncludeTimeStampAssertionState(abstractBinding, policyAsserter, true));
+            if (abstractBinding.isIncludeTimestamp()) {
+                List<QName> timestampElementPath = getSecurityHeaderPath(soap12, WSSConstants.TAG_WSU_TIMESTAMP);
+                factories.add((policyAsserter, actorOrRole, attachmentCount) -> {
+                    RequiredElementsAssertionState requiredElementsAssertionState =
+                        new RequiredElementsAssertionState(abstractBinding, policyAsserter, false);
+                    requiredElementsAssertionState.addElement(timestampElementPath);
+                    return requiredElementsAssertionState;
+                });
+                factories.add((policyAsserter, actorOrRole, attachmentCount) -> {
+                    SignedElementsAssertionState signedElementsAssertionState =
+                        new SignedElementsAssertionState(abstractSecurityAssertion, policyAsserter, true);
+                    signedElementsAssertionState.addElement(timestampElementPath);
+                    return signedElementsAssertionState;
+                });
+            }
+        } else if (abstractSecurityAssertion instanceof Wss10) {
+            Wss10 wss10 = (Wss10)abstractSecurityAssertion;
+            String namespace = wss10.getName().getNamespaceURI();
+            assertPolicy(policyAssertions, abstractSecurityAssertion);
+
+            if (wss10.isMustSupportRefEmbeddedToken()) {
+                assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_REF_EMBEDDED_TOKEN));
+            }
+            if (wss10.isMustSupportRefExternalURI()) {
+                assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_REF_EXTERNAL_URI));
+            }
+            if (wss10.isMustSupportRefIssuerSerial()) {
+                assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_REF_ISSUER_SERIAL));
+            }
+            if (wss10.isMustSupportRefKeyIdentifier()) {
+                assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_REF_KEY_IDENTIFIER));
+            }
+
+            if (abstractSecurityAssertion instanceof Wss11) {
+                Wss11 wss11 = (Wss11)abstractSecurityAssertion;
+                if (wss11.isMustSupportRefEncryptedKey()) {
+                    assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_REF_ENCRYPTED_KEY));
+                }
+                if (wss11.isMustSupportRefThumbprint()) {
+                    assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_REF_THUMBPRINT));
+                }
+                if (wss11.isRequireSignatureConfirmation()) {
+                    factories.add((policyAsserter, actorOrRole, attachmentCount) ->
+                        new SignatureConfirmationAssertionState(wss11, policyAsserter, true));
+                    if (initiator) {
+                        //9 WSS: SOAP Message Security Options [Signature Confirmation]
+                        List<QName> signatureConfirmationElementPath =
+                            getSecurityHeaderPath(soap12, WSSConstants.TAG_WSSE11_SIG_CONF);
+                        factories.add((policyAsserter, actorOrRole, attachmentCount) -> {
+                            RequiredElementsAssertionState requiredElementsAssertionState =
+                                new RequiredElementsAssertionState(wss11, policyAsserter, false);
+                            requiredElementsAssertionState.addElement(signatureConfirmationElementPath);
+                            return requiredElementsAssertionState;
+                        });
+                        factories.add((policyAsserter, actorOrRole, attachmentCount) -> {
+                            SignedElementsAssertionState signedElementsAssertionState =
+                                new SignedElementsAssertionState(wss11, policyAsserter, true);
+                            signedElementsAssertionState.addElement(signatureConfirmationElementPath);
+                            return signedElementsAssertionState;
+                        });
+                    }
+                }
+            }
+        } else if (abstractSecurityAssertion instanceof Trust10) {
+            Trust10 trust10 = (Trust10)abstractSecurityAssertion;
+            String namespace = trust10.getName().getNamespaceURI();
+            assertPolicy(policyAssertions, abstractSecurityAssertion);
+
+            if (trust10.isMustSupportClientChallenge()) {
+                assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_CLIENT_CHALLENGE));
+            }
+            if (trust10.isMustSupportIssuedTokens()) {
+                assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_ISSUED_TOKENS));
+            }
+            if (trust10.isMustSupportServerChallenge()) {
+                assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_SERVER_CHALLENGE));
+            }
+            if (trust10.isRequireClientEntropy()) {
+                assertPolicy(policyAssertions, new QName(namespace, SPConstants.REQUIRE_CLIENT_ENTROPY));
+            }
+            if (trust10.isRequireServerEntropy()) {
+                assertPolicy(policyAssertions, new QName(namespace, SPConstants.REQUIRE_SERVER_ENTROPY));
+            }
+            if (trust10 instanceof Trust13) {
+                Trust13 trust13 = (Trust13)trust10;
+                if (trust13.isMustSupportInteractiveChallenge()) {
+                    assertPolicy(policyAssertions, new QName(namespace, SPConstants.MUST_SUPPORT_INTERACTIVE_CHALLENGE));
+                }
+                if (trust13.isRequireAppliesTo()) {
+                    assertPolicy(policyAssertions, new QName(namespace, SPConstants.REQUIRE_APPLIES_TO));
+                }
+                if (trust13.isRequireRequestSecurityTokenCollection()) {
+                    assertPolicy(policyAssertions, new QName(namespace,
+                                                             SPConstants.REQUIRE_REQUEST_SECURITY_TOKEN_COLLECTION));
+                }
+                if (trust13.isScopePolicy15()) {
+                    assertPolicy(policyAssertions, new QName(namespace, SPConstants.SCOPE_POLICY_15));
+                }
+            }
+        } else {
+            assertPolicy(policyAssertions, abstractSecurityAssertion);
+        }
+
+        /*else if (abstractSecurityAssertion instanceof AsymmetricBinding) {
+        } else if (abstractSecurityAssertion instanceof SymmetricBinding) {
+        } else if (abstractSecurityAssertion instanceof TransportBinding) {
+        } */
+    }
+
+    /**
+     * Creates a new (stateful) Assertable for a message
+     */
+    @FunctionalInterface
+    interface AssertableFactory {
+        Assertable newAssertable(PolicyAsserter policyAsserter, String actorOrRole, int attachmentCount);
+    }
+
+    /**
+     * Resolves the Assertables of an assertion while the Policy is compiled
+     */
+    @FunctionalInterface
+    interface AssertableResolver {
+        void resolve(AbstractSecurityAssertion assertion, List<AssertableFactory> factories,
+                     List<Consumer<PolicyAsserter>> policyAssertions) throws WSSPolicyException;
+    }
+
+    private static final class AlternativeBuilder {
+        private final List<Assertion> assertions = new ArrayList<>();
+        private final List<AssertableFactory> factories = new ArrayList<>();
+        private final Map<SecurityEventConstants.Event, List<Integer>> slotsByEvent = new HashMap<>();
+        private final List<Consumer<PolicyAsserter>> policyAssertions = new ArrayList<>();
+
+        void addAssertable(Assertion assertion, AssertableFactory factory) {
+            // The event types are a property of the Assertable class, so a prototype is created
+            // to query them
+            Assertable prototype = factory.newAssertable(DUMMY_POLICY_ASSERTER, null, 0);
+            SecurityEventConstants.Event[] securityEventTypes = prototype.getSecurityEventType();
+            if (securityEventTypes.length == 0) {
+                // The Assertable would never be notified nor verified
+                return;
+            }
+
+            int slot = factories.size();
+            assertions.add(assertion);
+            factories.add(factory);
+            for (SecurityEventConstants.Event event : securityEventTypes) {
+                slotsByEvent.computeIfAbsent(event, k -> new ArrayList<>()).add(slot);
+            }
+        }
+
+        Alternative build() {
+            Map<SecurityEventConstants.Event, int[]> slots = new HashMap<>();
+            for (Map.Entry<SecurityEventConstants.Event, List<Integer>> entry : slotsByEvent.entrySet()) {
+                List<Integer> eventSlots = entry.getValue();
+                int[] slotArray = new int[eventSlots.size()];
+                for (int i = 0; i < slotArray.length; i++) {
+                    slotArray[i] = eventSlots.get(i);
+                }
+                slots.put(entry.getKey(), slotArray);
+            }
+            return new Alternative(assertions.toArray(new Assertion[0]),
+                                   factories.toArray(new AssertableFactory[0]),
+                                   slots, new ArrayList<>(policyAssertions));
+        }
+    }
+
+    /**
+     * A compiled policy alternative. The Assertables are addressed by their slot index.
+     */
+    static final class Alternative {
+        private final Assertion[] assertions;
+        private final AssertableFactory[] factories;
+        private final Map<SecurityEventConstants.Event, int[]> slotsByEvent;
+        private final List<Consumer<PolicyAsserter>> policyAssertions;
+
+        private Alternative(Assertion[] assertions, AssertableFactory[] factories,
+                            Map<SecurityEventConstants.Event, int[]> slotsByEvent,
+                            List<Consumer<PolicyAsserter>> policyAssertions) {
+            this.assertions = assertions;
+            this.factories = factories;
+            this.slotsByEvent = slotsByEvent;
+            this.policyAssertions = policyAssertions;
+        }
+
+        AlternativeState newState(PolicyAsserter policyAsserter, String actorOrRole, int attachmentCount) {
+            for (Consumer<PolicyAsserter> policyAssertion : policyAssertions) {
+                policyAssertion.accept(policyAsserter);
+            }
+            Assertable[] assertables = new Assertable[factories.length];
+            for (int i = 0; i < factories.length; i++) {
+                assertables[i] = factories[i].newAssertable(policyAsserter, actorOrRole, attachmentCount);
+            }
+            return new AlternativeState(this, assertables);
+        }
+    }
+
+    /**
+     * The per-message state of a policy alternative
+     */
+    static final class AlternativeState {
+        private static final int[] NO_SLOTS = new int[0];
+
+        private final Alternative alternative;
+        private final Assertable[] assertables;
+
+        private AlternativeState(Alternative alternative, Assertable[] assertables) {
+            this.alternative = alternative;
+            this.assertables = assertables;
+        }
+
+        /**
+         * @return the slots of the Assertables to notify for the given SecurityEvent type
+         */
+        int[] getSlots(SecurityEventConstants.Event securityEventType) {
+            int[] slots = alternative.slotsByEvent.get(securityEventType);
+            return slots != null ? slots : NO_SLOTS;
+        }
+
+        int size() {
+            return assertables.length;
+        }
+
+        Assertable getAssertable(int slot) {
+            return assertables[slot];
+        }
+
+        Assertion getAssertion(int slot) {
+            return alternative.assertions[slot];
+        }
+    }
+}
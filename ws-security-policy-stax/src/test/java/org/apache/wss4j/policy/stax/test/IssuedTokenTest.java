@@ -19,9 +19,12 @@
 
 package org.apache.wss4j.policy.stax.test;
 
+import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import javax.xml.namespace.QName;
 
@@ -42,10 +45,12 @@ import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.SamlTokenSecurityEvent;
 import org.apache.wss4j.stax.securityEvent.SignedPartSecurityEvent;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
+import org.apache.wss4j.stax.validate.SamlAssertionView;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.securityEvent.ContentEncryptedElementSecurityEvent;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.junit.jupiter.api.Test;
+import org.opensaml.saml.common.SAMLVersion;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -444,6 +449,62 @@ public class IssuedTokenTest extends AbstractPolicyTestBase {
         }
     }
 
+    @Test
+    public void testPolicyWithStreamedSAMLTokenMissingClaimType() throws Exception {
+
+        PolicyEnforcer policyEnforcer = buildAndStartPolicyEngine(samlPolicyString);
+
+        // The version, issuer and claims are taken from the view, without creating a SamlAssertionWrapper
+        SamlTokenSecurityEvent initiatorTokenSecurityEvent = new SamlTokenSecurityEvent();
+        SamlSecurityTokenImpl securityToken =
+            new SamlSecurityTokenImpl(
+                    new TestSamlAssertionView("initiatorToken", "http://initiatorTokenIssuer.com",
+                        Collections.singletonMap("http://schemas.xmlsoap.org/ws/2005/05/identity/claims/email",
+                                                 Collections.singletonList("test@example.com"))),
+                    getX509Token(WSSecurityTokenConstants.X509V3Token), null, null,
+                    WSSecurityTokenConstants.KEYIDENTIFIER_SECURITY_TOKEN_DIRECT_REFERENCE, null);
+        securityToken.addTokenUsage(WSSecurityTokenConstants.TOKENUSAGE_MAIN_SIGNATURE);
+        initiatorTokenSecurityEvent.setSecurityToken(securityToken);
+        policyEnforcer.registerSecurityEvent(initiatorTokenSecurityEvent);
+
+        SamlTokenSecurityEvent recipientTokenSecurityEvent = new SamlTokenSecurityEvent();
+        securityToken =
+            new SamlSecurityTokenImpl(
+                    new TestSamlAssertionView("recipientToken", "http://recipientTokenIssuer.com",
+                        Collections.emptyMap()),
+                    getX509Token(WSSecurityTokenConstants.X509V3Token), null, null,
+                    WSSecurityTokenConstants.KEYIDENTIFIER_SECURITY_TOKEN_DIRECT_REFERENCE, null);
+        securityToken.addTokenUsage(WSSecurityTokenConstants.TOKENUSAGE_MAIN_ENCRYPTION);
+        recipientTokenSecurityEvent.setSecurityToken(securityToken);
+        policyEnforcer.registerSecurityEvent(recipientTokenSecurityEvent);
+
+        List<XMLSecurityConstants.ContentType> protectionOrder = new LinkedList<>();
+        protectionOrder.add(XMLSecurityConstants.ContentType.SIGNATURE);
+        protectionOrder.add(XMLSecurityConstants.ContentType.ENCRYPTION);
+        SignedPartSecurityEvent signedPartSecurityEvent =
+                new SignedPartSecurityEvent(
+                        (InboundSecurityToken)recipientTokenSecurityEvent.getSecurityToken(), true, protectionOrder);
+        signedPartSecurityEvent.setElementPath(WSSConstants.SOAP_11_BODY_PATH);
+        policyEnforcer.registerSecurityEvent(signedPartSecurityEvent);
+
+        ContentEncryptedElementSecurityEvent contentEncryptedElementSecurityEvent =
+                new ContentEncryptedElementSecurityEvent(
+                        (InboundSecurityToken)recipientTokenSecurityEvent.getSecurityToken(), true, protectionOrder);
+        contentEncryptedElementSecurityEvent.setElementPath(WSSConstants.SOAP_11_BODY_PATH);
+        policyEnforcer.registerSecurityEvent(contentEncryptedElementSecurityEvent);
+
+        OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
+        operationSecurityEvent.setOperation(new QName("definitions"));
+
+        try {
+            policyEnforcer.registerSecurityEvent(operationSecurityEvent);
+            fail("Exception expected");
+        } catch (WSSecurityException e) {
+            assertTrue(e.getCause() instanceof PolicyViolationException);
+            assertEquals(e.getCause().getMessage(), "Attribute http://schemas.xmlsoap.org/ws/2005/05/identity/claims/surname not found in the SAMLAssertion");
+        }
+    }
+
     private static final String kerberosPolicyString =
             "<sp:AsymmetricBinding xmlns:sp=\"http://docs.oasis-open.org/ws-sx/ws-securitypolicy/200702\" xmlns:sp3=\"http://docs.oasis-open.org/ws-sx/ws-securitypolicy/200802\">\n" +
                     "<wsp:Policy xmlns:wsp=\"http://schemas.xmlsoap.org/ws/2004/09/policy\">\n" +
@@ -577,4 +638,106 @@ public class IssuedTokenTest extends AbstractPolicyTestBase {
                     "Policy enforces Kerberos token of type http://docs.oasisopen.org/wss/oasiswss-kerberos-tokenprofile-1.1#Kerberosv5APREQSHA1 but got http://docs.oasisopen.org/wss/oasiswss-kerberos-tokenprofile-1.1#GSS_Kerberosv5_AP_REQ");
         }
     }
+
+    /**
+     * A SAML 2.0 SamlAssertionView whose SamlAssertionWrapper must not be created
+     */
+    private static final class TestSamlAssertionView implements SamlAssertionView {
+
+        private final String id;
+        private final String issuer;
+        private final Map<String, List<String>> attributes;
+
+        TestSamlAssertionView(String id, String issuer, Map<String, List<String>> attributes) {
+            this.id = id;
+            this.issuer = issuer;
+            this.attributes = attributes;
+        }
+
+        @Override
+        public SAMLVersion getSamlVersion() {
+            return SAMLVersion.VERSION_20;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getIssuerString() {
+            return issuer;
+        }
+
+        @Override
+        public Instant getIssueInstant() {
+            return null;
+        }
+
+        @Override
+        public String getSubjectName() {
+            return null;
+        }
+
+        @Override
+        public List<String> getConfirmationMethods() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Instant getNotBefore() {
+            return null;
+        }
+
+        @Override
+        public Instant getNotOnOrAfter() {
+            return null;
+        }
+
+        @Override
+        public List<String> getAudiences() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isOneTimeUse() {
+            return false;
+        }
+
+        @Override
+        public Map<String, List<String>> getAttributes() {
+            return attributes;
+        }
+
+        @Override
+        public List<String> getAttributeNamespaces(String attributeName) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isSigned() {
+            return true;
+        }
+
+        @Override
+        public void checkConditions(int futureTTL) {
+        }
+
+        @Override
+        public void checkIssueInstant(int futureTTL, int ttl) {
+        }
+
+        @Override
+        public void checkAudienceRestrictions(List<String> audienceRestrictions) {
+        }
+
+        @Override
+        public void checkAuthnStatements(int futureTTL) {
+        }
+
+        @Override
+        public SamlAssertionWrapper getSamlAssertionWrapper() {
+            throw new AssertionError("The SamlAssertionWrapper must not be created");
+        }
+    }
 }
\ No newline at end of file
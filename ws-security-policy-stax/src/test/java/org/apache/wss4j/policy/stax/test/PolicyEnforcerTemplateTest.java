@@ -0,0 +1,177 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.policy.stax.test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.namespace.QName;
+
+import org.apache.neethi.Policy;
+import org.apache.wss4j.common.WSSPolicyException;
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.policy.SPConstants;
+import org.apache.wss4j.policy.model.AbstractSecurityAssertion;
+import org.apache.wss4j.policy.model.Header;
+import org.apache.wss4j.policy.model.RequiredParts;
+import org.apache.wss4j.policy.stax.Assertable;
+import org.apache.wss4j.policy.stax.OperationPolicy;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcer;
+import org.apache.wss4j.policy.stax.enforcer.PolicyEnforcerTemplate;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.securityEvent.OperationSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.RequiredPartSecurityEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Some tests for the compiled PolicyEnforcerTemplate of an OperationPolicy
+ */
+public class PolicyEnforcerTemplateTest extends AbstractPolicyTestBase {
+
+    private static final String SOAP_ACTION = "urn:definitions";
+
+    @Test
+    public void testTemplateIsSharedBetweenMessages() throws Exception {
+        OperationPolicy operationPolicy = newOperationPolicy("a");
+        List<OperationPolicy> operationPolicies = Collections.singletonList(operationPolicy);
+
+        PolicyEnforcerTemplate policyEnforcerTemplate = operationPolicy.getPolicyEnforcerTemplate(false, false);
+        assertSame(policyEnforcerTemplate, operationPolicy.getPolicyEnforcerTemplate(false, false));
+        assertNotSame(policyEnforcerTemplate, operationPolicy.getPolicyEnforcerTemplate(true, false));
+        assertNotSame(policyEnforcerTemplate, operationPolicy.getPolicyEnforcerTemplate(false, true));
+
+        // The state of one message must not leak into the next one
+        PolicyEnforcer policyEnforcer =
+            new PolicyEnforcer(operationPolicies, SOAP_ACTION, false, null, 0, null, false);
+        registerRequiredPart(policyEnforcer, "a");
+        registerOperation(policyEnforcer);
+        policyEnforcer.doFinal();
+
+        policyEnforcer = new PolicyEnforcer(operationPolicies, SOAP_ACTION, false, null, 0, null, false);
+        registerRequiredPart(policyEnforcer, "b");
+        try {
+            registerOperation(policyEnforcer);
+            fail("Exception expected");
+        } catch (WSSecurityException e) {
+            assertEquals(e.getMessage(), "Element {http://example.org}a must be present");
+        }
+
+        policyEnforcer = new PolicyEnforcer(operationPolicies, SOAP_ACTION, false, null, 0, null, false);
+        registerRequiredPart(policyEnforcer, "a");
+        registerOperation(policyEnforcer);
+        policyEnforcer.doFinal();
+
+        assertSame(policyEnforcerTemplate, operationPolicy.getPolicyEnforcerTemplate(false, false));
+    }
+
+    @Test
+    public void testSetPolicyInvalidatesTemplate() throws Exception {
+        OperationPolicy operationPolicy = newOperationPolicy("a");
+        List<OperationPolicy> operationPolicies = Collections.singletonList(operationPolicy);
+
+        PolicyEnforcerTemplate policyEnforcerTemplate = operationPolicy.getPolicyEnforcerTemplate(false, false);
+        operationPolicy.setPolicy(newPolicy("b"));
+        assertNotSame(policyEnforcerTemplate, operationPolicy.getPolicyEnforcerTemplate(false, false));
+
+        PolicyEnforcer policyEnforcer =
+            new PolicyEnforcer(operationPolicies, SOAP_ACTION, false, null, 0, null, false);
+        registerRequiredPart(policyEnforcer, "b");
+        registerOperation(policyEnforcer);
+        policyEnforcer.doFinal();
+
+        policyEnforcer = new PolicyEnforcer(operationPolicies, SOAP_ACTION, false, null, 0, null, false);
+        registerRequiredPart(policyEnforcer, "a");
+        try {
+            registerOperation(policyEnforcer);
+            fail("Exception expected");
+        } catch (WSSecurityException e) {
+            assertEquals(e.getMessage(), "Element {http://example.org}b must be present");
+        }
+    }
+
+    @Test
+    public void testCustomAssertables() throws Exception {
+        OperationPolicy operationPolicy = newOperationPolicy("a");
+        List<OperationPolicy> operationPolicies = Collections.singletonList(operationPolicy);
+        AtomicInteger calls = new AtomicInteger();
+
+        for (int i = 1; i <= 2; i++) {
+            PolicyEnforcer policyEnforcer =
+                new PolicyEnforcer(operationPolicies, SOAP_ACTION, false, null, 0, null, false) {
+                    @Override
+                    protected List<Assertable> getAssertableForAssertion(
+                        AbstractSecurityAssertion abstractSecurityAssertion
+                    ) throws WSSPolicyException {
+                        calls.incrementAndGet();
+                        return super.getAssertableForAssertion(abstractSecurityAssertion);
+                    }
+                };
+            // The custom Assertables are looked up for every message
+            assertEquals(i, calls.get());
+
+            registerRequiredPart(policyEnforcer, "b");
+            try {
+                registerOperation(policyEnforcer);
+                fail("Exception expected");
+            } catch (WSSecurityException e) {
+                assertEquals(e.getMessage(), "Element {http://example.org}a must be present");
+            }
+        }
+    }
+
+    private static OperationPolicy newOperationPolicy(String headerName) {
+        OperationPolicy operationPolicy = new OperationPolicy(new QName("definitions"));
+        operationPolicy.setOperationAction(SOAP_ACTION);
+        operationPolicy.setSoapMessageVersionNamespace(WSSConstants.NS_SOAP11);
+        operationPolicy.setPolicy(newPolicy(headerName));
+        return operationPolicy;
+    }
+
+    private static Policy newPolicy(String headerName) {
+        Policy policy = new Policy();
+        policy.addPolicyComponent(
+            new RequiredParts(SPConstants.SPVersion.SP12,
+                              Collections.singletonList(new Header(headerName, "http://example.org")))
+        );
+        return policy.normalize(true);
+    }
+
+    private static void registerRequiredPart(PolicyEnforcer policyEnforcer, String headerName)
+        throws WSSecurityException {
+        RequiredPartSecurityEvent requiredPartSecurityEvent = new RequiredPartSecurityEvent();
+        List<QName> headerPath = new ArrayList<>();
+        headerPath.addAll(WSSConstants.SOAP_11_HEADER_PATH);
+        headerPath.add(new QName("http://example.org", headerName));
+        requiredPartSecurityEvent.setElementPath(headerPath);
+        policyEnforcer.registerSecurityEvent(requiredPartSecurityEvent);
+    }
+
+    private static void registerOperation(PolicyEnforcer policyEnforcer) throws WSSecurityException {
+        OperationSecurityEvent operationSecurityEvent = new OperationSecurityEvent();
+        operationSecurityEvent.setOperation(new QName("definitions"));
+        policyEnforcer.registerSecurityEvent(operationSecurityEvent);
+    }
+}
@@ -27,6 +27,7 @@ import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
+import org.apache.wss4j.common.crypto.ReloadableMerlin;
 import org.apache.wss4j.common.util.Loader;
 import org.apache.xml.security.stax.config.ConfigurationProperties;
 
@@ -87,6 +88,9 @@ class WSSCrypto {
         if (crypto instanceof Merlin) {
             keyStore = ((Merlin)crypto).getKeyStore();
             cachedKeyStore = keyStore;
+        } else if (crypto instanceof ReloadableMerlin) {
+            keyStore = ((ReloadableMerlin)crypto).getMerlin().getKeyStore();
+            cachedKeyStore = keyStore;
         }
     }
 
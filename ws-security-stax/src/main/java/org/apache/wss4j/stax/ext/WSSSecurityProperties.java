@@ -32,17 +32,22 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executor;
 import java.util.regex.Pattern;
 
 import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
+import org.apache.wss4j.common.saml.VerifiedSamlAssertionCache;
+import org.apache.wss4j.common.util.AttachmentBufferFactory;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.validate.Validator;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
@@ -108,13 +113,20 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
     private ReplayCache timestampReplayCache;
     private ReplayCache nonceReplayCache;
     private ReplayCache samlOneTimeUseReplayCache;
+    private EncryptedKeySessionCache encryptedKeySessionCache;
+    private SamlAssertionCache samlAssertionCache;
+    private VerifiedSamlAssertionCache verifiedSamlAssertionCache;
     private boolean validateSamlSubjectConfirmation = true;
+    private boolean streamingSamlProcessing = false;
     private Collection<Pattern> subjectDNPatterns = new ArrayList<>();
     private Collection<Pattern> issuerDNPatterns = new ArrayList<>();
     private List<String> audienceRestrictions = new ArrayList<>();
     private boolean requireTimestampExpires;
 
     private CallbackHandler attachmentCallbackHandler;
+    private AttachmentBufferFactory attachmentBufferFactory;
+    private boolean parallelAttachmentDigest;
+    private Executor attachmentDigestExecutor;
     private Object msgContext;
     private boolean soap12;
     private DocumentCreator documentCreator;
@@ -164,16 +176,23 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.timestampReplayCache = wssSecurityProperties.timestampReplayCache;
         this.nonceReplayCache = wssSecurityProperties.nonceReplayCache;
         this.samlOneTimeUseReplayCache = wssSecurityProperties.samlOneTimeUseReplayCache;
+        this.encryptedKeySessionCache = wssSecurityProperties.encryptedKeySessionCache;
+        this.samlAssertionCache = wssSecurityProperties.samlAssertionCache;
+        this.verifiedSamlAssertionCache = wssSecurityProperties.verifiedSamlAssertionCache;
         this.allowRSA15KeyTransportAlgorithm = wssSecurityProperties.allowRSA15KeyTransportAlgorithm;
         this.derivedKeyIterations = wssSecurityProperties.derivedKeyIterations;
         this.useDerivedKeyForMAC = wssSecurityProperties.useDerivedKeyForMAC;
         this.addUsernameTokenNonce = wssSecurityProperties.addUsernameTokenNonce;
         this.addUsernameTokenCreated = wssSecurityProperties.addUsernameTokenCreated;
         this.validateSamlSubjectConfirmation = wssSecurityProperties.validateSamlSubjectConfirmation;
+        this.streamingSamlProcessing = wssSecurityProperties.streamingSamlProcessing;
         this.encryptSymmetricEncrytionKey = wssSecurityProperties.encryptSymmetricEncrytionKey;
         this.subjectDNPatterns = wssSecurityProperties.subjectDNPatterns;
         this.issuerDNPatterns = wssSecurityProperties.issuerDNPatterns;
         this.attachmentCallbackHandler = wssSecurityProperties.attachmentCallbackHandler;
+        this.attachmentBufferFactory = wssSecurityProperties.attachmentBufferFactory;
+        this.parallelAttachmentDigest = wssSecurityProperties.parallelAttachmentDigest;
+        this.attachmentDigestExecutor = wssSecurityProperties.attachmentDigestExecutor;
         this.msgContext = wssSecurityProperties.msgContext;
         this.audienceRestrictions = wssSecurityProperties.audienceRestrictions;
         this.requireTimestampExpires = wssSecurityProperties.requireTimestampExpires;
@@ -764,6 +783,42 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         return samlOneTimeUseReplayCache;
     }
 
+    /**
+     * Set the cache of session keys, to reuse the symmetric key and the EncryptedKey of an earlier
+     * message to the same recipient
+     */
+    public void setEncryptedKeySessionCache(EncryptedKeySessionCache encryptedKeySessionCache) {
+        this.encryptedKeySessionCache = encryptedKeySessionCache;
+    }
+
+    public EncryptedKeySessionCache getEncryptedKeySessionCache() {
+        return encryptedKeySessionCache;
+    }
+
+    /**
+     * Set the cache of the SAML Assertions created from the SAML CallbackHandler, so that an
+     * Assertion with the same content is not created and signed again for every message
+     */
+    public void setSamlAssertionCache(SamlAssertionCache samlAssertionCache) {
+        this.samlAssertionCache = samlAssertionCache;
+    }
+
+    public SamlAssertionCache getSamlAssertionCache() {
+        return samlAssertionCache;
+    }
+
+    /**
+     * Set the cache of the received SAML Assertions that have been successfully verified, so that
+     * the signature of an identical Assertion is not verified again
+     */
+    public void setVerifiedSamlAssertionCache(VerifiedSamlAssertionCache verifiedSamlAssertionCache) {
+        this.verifiedSamlAssertionCache = verifiedSamlAssertionCache;
+    }
+
+    public VerifiedSamlAssertionCache getVerifiedSamlAssertionCache() {
+        return verifiedSamlAssertionCache;
+    }
+
     public boolean isDisableBSPEnforcement() {
         return disableBSPEnforcement;
     }
@@ -828,6 +883,22 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.validateSamlSubjectConfirmation = validateSamlSubjectConfirmation;
     }
 
+    public boolean isStreamingSamlProcessing() {
+        return streamingSamlProcessing;
+    }
+
+    /**
+     * Whether to process a received SAML Assertion on the XML event stream. The signature of the
+     * Assertion is then verified with the streaming signature verifier, and the Assertion is passed
+     * to the SamlTokenValidator as a SamlAssertionView. A DOM Element and the OpenSAML objects of the
+     * Assertion are only created if they are asked for. The signature of the Assertion must reference
+     * the Assertion by its Id, and is always checked against the SAML signature profile. The default
+     * is false.
+     */
+    public void setStreamingSamlProcessing(boolean streamingSamlProcessing) {
+        this.streamingSamlProcessing = streamingSamlProcessing;
+    }
+
     public boolean isMustUnderstand() {
         return mustUnderstand;
     }
@@ -938,6 +1009,45 @@ public class WSSSecurityProperties extends XMLSecurityProperties {
         this.attachmentCallbackHandler = attachmentCallbackHandler;
     }
 
+    public AttachmentBufferFactory getAttachmentBufferFactory() {
+        return attachmentBufferFactory;
+    }
+
+    /**
+     * Set the AttachmentBufferFactory to buffer signed attachments with, while they are digested.
+     * The default is null, meaning that ThresholdAttachmentBufferFactory.getDefault() is used.
+     */
+    public void setAttachmentBufferFactory(AttachmentBufferFactory attachmentBufferFactory) {
+        this.attachmentBufferFactory = attachmentBufferFactory;
+    }
+
+    public boolean isParallelAttachmentDigest() {
+        return parallelAttachmentDigest;
+    }
+
+    /**
+     * Whether to digest the attachments referenced by a received Signature concurrently. The
+     * attachments are requested from the attachment CallbackHandler on the processing thread, but
+     * their source streams are then read on the attachment digest Executor, and must therefore be
+     * readable independently of each other. The default is false.
+     */
+    public void setParallelAttachmentDigest(boolean parallelAttachmentDigest) {
+        this.parallelAttachmentDigest = parallelAttachmentDigest;
+    }
+
+    public Executor getAttachmentDigestExecutor() {
+        return attachmentDigestExecutor;
+    }
+
+    /**
+     * Set the Executor to digest attachments on, if parallel attachment digesting is enabled.
+     * The default is null, meaning that a virtual thread is started per attachment if the JVM
+     * supports it, and the common ForkJoinPool is used otherwise.
+     */
+    public void setAttachmentDigestExecutor(Executor attachmentDigestExecutor) {
+        this.attachmentDigestExecutor = attachmentDigestExecutor;
+    }
+
     public Object getMsgContext() {
         return msgContext;
     }
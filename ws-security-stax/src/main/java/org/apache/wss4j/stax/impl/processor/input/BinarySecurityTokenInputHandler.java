@@ -56,9 +56,15 @@ public class BinarySecurityTokenInputHandler extends AbstractInputSecurityHeader
     @Override
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
                        final Deque<XMLSecEvent> eventQueue, final Integer index) throws XMLSecurityException {
-        @SuppressWarnings("unchecked")
-        final BinarySecurityTokenType binarySecurityTokenType =
-                ((JAXBElement<BinarySecurityTokenType>) parseStructure(eventQueue, index, securityProperties)).getValue();
+        final List<XMLSecEvent> xmlSecEvents = getResponsibleXMLSecEvents(eventQueue, index);
+        BinarySecurityTokenType binarySecurityTokenType =
+                SecurityHeaderElementParser.parseBinarySecurityToken(xmlSecEvents);
+        if (binarySecurityTokenType == null) {
+            @SuppressWarnings("unchecked")
+            JAXBElement<BinarySecurityTokenType> binarySecurityTokenTypeJAXBElement =
+                    (JAXBElement<BinarySecurityTokenType>) parseStructure(eventQueue, index, securityProperties);
+            binarySecurityTokenType = binarySecurityTokenTypeJAXBElement.getValue();
+        }
 
         checkBSPCompliance(inputProcessorChain, binarySecurityTokenType);
 
@@ -70,7 +76,6 @@ public class BinarySecurityTokenInputHandler extends AbstractInputSecurityHeader
             (WSInboundSecurityContext) inputProcessorChain.getSecurityContext();
         final WSSSecurityProperties wssSecurityProperties = (WSSSecurityProperties) securityProperties;
         final List<QName> elementPath = getElementPath(eventQueue);
-        final List<XMLSecEvent> xmlSecEvents = getResponsibleXMLSecEvents(eventQueue, index);
 
         final TokenContext tokenContext =
             new TokenContext(wssSecurityProperties, wsInboundSecurityContext, xmlSecEvents, elementPath);
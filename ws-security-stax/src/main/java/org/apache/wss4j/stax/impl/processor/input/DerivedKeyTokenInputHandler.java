@@ -58,9 +58,15 @@ public class DerivedKeyTokenInputHandler extends AbstractInputSecurityHeaderHand
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
                        Deque<XMLSecEvent> eventQueue, Integer index) throws XMLSecurityException {
 
-        @SuppressWarnings("unchecked")
-        final AbstractDerivedKeyTokenType derivedKeyTokenType =
-                ((JAXBElement<AbstractDerivedKeyTokenType>) parseStructure(eventQueue, index, securityProperties)).getValue();
+        AbstractDerivedKeyTokenType parsedDerivedKeyTokenType =
+                SecurityHeaderElementParser.parseDerivedKeyToken(getResponsibleXMLSecEvents(eventQueue, index));
+        if (parsedDerivedKeyTokenType == null) {
+            @SuppressWarnings("unchecked")
+            JAXBElement<AbstractDerivedKeyTokenType> derivedKeyTokenTypeJAXBElement =
+                    (JAXBElement<AbstractDerivedKeyTokenType>) parseStructure(eventQueue, index, securityProperties);
+            parsedDerivedKeyTokenType = derivedKeyTokenTypeJAXBElement.getValue();
+        }
+        final AbstractDerivedKeyTokenType derivedKeyTokenType = parsedDerivedKeyTokenType;
         if (derivedKeyTokenType.getId() == null) {
             derivedKeyTokenType.setId(IDGenerator.generateID(null));
         }
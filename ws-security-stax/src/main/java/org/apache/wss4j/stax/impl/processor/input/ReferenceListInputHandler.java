@@ -38,7 +38,11 @@ public class ReferenceListInputHandler extends AbstractInputSecurityHeaderHandle
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
                        final Deque<XMLSecEvent> eventQueue, final Integer index) throws XMLSecurityException {
 
-        final ReferenceList referenceList = (ReferenceList) parseStructure(eventQueue, index, securityProperties);
+        ReferenceList referenceList =
+                SecurityHeaderElementParser.parseReferenceList(getResponsibleXMLSecEvents(eventQueue, index));
+        if (referenceList == null) {
+            referenceList = (ReferenceList) parseStructure(eventQueue, index, securityProperties);
+        }
 
         //instantiate a new DecryptInputProcessor and add it to the chain
         inputProcessorChain.addProcessor(
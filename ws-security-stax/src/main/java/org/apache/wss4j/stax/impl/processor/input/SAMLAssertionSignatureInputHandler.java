@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.util.List;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.xml.security.binding.xmldsig.ReferenceType;
+import org.apache.xml.security.binding.xmldsig.SignatureType;
+import org.apache.xml.security.binding.xmldsig.TransformType;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.InboundSecurityContext;
+import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.processor.input.AbstractSignatureInputHandler;
+import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+
+/**
+ * Verifies the enveloped Signature of a SAML Assertion on the event stream. The SignedInfo is verified
+ * with the key of the Signature that was already resolved and validated by the SAMLTokenInputHandler,
+ * and the Reference to the Assertion is verified by a SAMLAssertionSignatureReferenceVerifyInputProcessor
+ * when the events of the security header are replayed.
+ */
+class SAMLAssertionSignatureInputHandler extends AbstractSignatureInputHandler {
+
+    private final XMLSecStartElement assertionStartElement;
+    private final String assertionId;
+    private final InboundSecurityToken signatureSecurityToken;
+
+    SAMLAssertionSignatureInputHandler(XMLSecStartElement assertionStartElement, String assertionId,
+                                       InboundSecurityToken signatureSecurityToken) {
+        this.assertionStartElement = assertionStartElement;
+        this.assertionId = assertionId;
+        this.signatureSecurityToken = signatureSecurityToken;
+    }
+
+    @Override
+    protected SignatureVerifier newSignatureVerifier(
+            final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
+            final SignatureType signatureType) throws XMLSecurityException {
+
+        checkSignatureProfile(signatureType);
+        return new SAMLAssertionSignatureVerifier(signatureType, inputProcessorChain.getSecurityContext(), securityProperties);
+    }
+
+    /**
+     * Check the Signature against the SAML signature profile, as the OpenSAML SAMLSignatureProfileValidator
+     * does, except that the Assertion must be referenced by its Id, as the Reference is resolved in the
+     * whole message.
+     */
+    private void checkSignatureProfile(SignatureType signatureType) throws WSSecurityException {
+        List<ReferenceType> references = signatureType.getSignedInfo().getReference();
+        if (references.size() != 1) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                new Object[] {"SAML signature must contain exactly one Reference"});
+        }
+
+        ReferenceType referenceType = references.get(0);
+        if (assertionId == null || !("#" + assertionId).equals(referenceType.getURI())) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                new Object[] {"SAML signature Reference must reference the Id of the Assertion"});
+        }
+
+        boolean envelopedSignature = false;
+        if (referenceType.getTransforms() != null) {
+            List<TransformType> transforms = referenceType.getTransforms().getTransform();
+            if (transforms.size() > 2) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                    new Object[] {"SAML signature Reference has more than two Transforms"});
+            }
+            for (TransformType transformType : transforms) {
+                String algorithm = transformType.getAlgorithm();
+                if (WSSConstants.NS_XMLDSIG_ENVELOPED_SIGNATURE.equals(algorithm)) {
+                    envelopedSignature = true;
+                } else if (!WSSConstants.NS_C14N_EXCL.equals(algorithm)
+                    && !WSSConstants.NS_C14N_EXCL_WITH_COMMENTS.equals(algorithm)) {
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                        new Object[] {"SAML signature Reference has an invalid Transform: " + algorithm});
+                }
+            }
+        }
+        if (!envelopedSignature) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                new Object[] {"SAML signature Reference is missing the enveloped signature Transform"});
+        }
+    }
+
+    @Override
+    protected void addSignatureReferenceInputProcessorToChain(
+            InputProcessorChain inputProcessorChain, XMLSecurityProperties securityProperties,
+            SignatureType signatureType, InboundSecurityToken inboundSecurityToken) throws XMLSecurityException {
+
+        inputProcessorChain.addProcessor(
+                new SAMLAssertionSignatureReferenceVerifyInputProcessor(inputProcessorChain, signatureType,
+                        inboundSecurityToken, securityProperties, assertionStartElement));
+    }
+
+    public class SAMLAssertionSignatureVerifier extends SignatureVerifier {
+
+        public SAMLAssertionSignatureVerifier(SignatureType signatureType, InboundSecurityContext inboundSecurityContext,
+                                              XMLSecurityProperties securityProperties) throws XMLSecurityException {
+            super(signatureType, inboundSecurityContext, securityProperties);
+        }
+
+        @Override
+        protected InboundSecurityToken retrieveSecurityToken(SignatureType signatureType,
+                                                             XMLSecurityProperties securityProperties,
+                                                             InboundSecurityContext inboundSecurityContext) {
+            return signatureSecurityToken;
+        }
+    }
+}
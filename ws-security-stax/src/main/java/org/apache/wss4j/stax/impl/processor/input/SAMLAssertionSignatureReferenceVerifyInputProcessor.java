@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.util.List;
+
+import javax.xml.namespace.QName;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.xml.security.binding.xmldsig.ReferenceType;
+import org.apache.xml.security.binding.xmldsig.SignatureType;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.processor.input.AbstractSignatureReferenceVerifyInputProcessor;
+import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+
+/**
+ * Verifies the digest of the Reference of the Signature of a SAML Assertion, when the events of
+ * the Assertion are replayed at the end of the security header. The Reference must resolve to the
+ * Assertion that contains the Signature, and not to another element with the same Id.
+ */
+class SAMLAssertionSignatureReferenceVerifyInputProcessor extends AbstractSignatureReferenceVerifyInputProcessor {
+
+    private final XMLSecStartElement assertionStartElement;
+
+    SAMLAssertionSignatureReferenceVerifyInputProcessor(
+            InputProcessorChain inputProcessorChain, SignatureType signatureType,
+            InboundSecurityToken inboundSecurityToken, XMLSecurityProperties securityProperties,
+            XMLSecStartElement assertionStartElement) throws XMLSecurityException {
+        super(inputProcessorChain, signatureType, inboundSecurityToken, securityProperties);
+        this.addAfterProcessor(SAMLAssertionSignatureReferenceVerifyInputProcessor.class.getName());
+        this.assertionStartElement = assertionStartElement;
+    }
+
+    @Override
+    protected void processElementPath(List<QName> elementPath, InputProcessorChain inputProcessorChain,
+                                      XMLSecEvent xmlSecEvent, ReferenceType referenceType)
+            throws XMLSecurityException {
+        // The Assertion itself is not a signed element of the message, so no SecurityEvent is fired
+        if (xmlSecEvent != assertionStartElement) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "empty",
+                new Object[] {"SAML signature Reference does not reference the signed Assertion"});
+        }
+    }
+}
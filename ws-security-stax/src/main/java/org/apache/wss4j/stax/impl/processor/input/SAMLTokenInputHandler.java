@@ -44,7 +44,9 @@ import org.apache.wss4j.binding.wss10.ObjectFactory;
 import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
+import org.apache.wss4j.common.saml.SAMLKeyInfo;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.saml.VerifiedSamlAssertionCache;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -54,6 +56,7 @@ import org.apache.wss4j.stax.securityEvent.WSSecurityEventConstants;
 import org.apache.wss4j.stax.securityToken.SamlSecurityToken;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.utils.WSSUtils;
+import org.apache.wss4j.stax.validate.SamlAssertionView;
 import org.apache.wss4j.stax.validate.SamlTokenValidator;
 import org.apache.wss4j.stax.validate.SamlTokenValidatorImpl;
 import org.apache.wss4j.stax.validate.TokenContext;
@@ -103,9 +106,14 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
                        Deque<XMLSecEvent> eventQueue, Integer index) throws XMLSecurityException {
 
+        final WSSSecurityProperties wssSecurityProperties = (WSSSecurityProperties) securityProperties;
+        if (wssSecurityProperties.isStreamingSamlProcessing()) {
+            handleStreaming(inputProcessorChain, wssSecurityProperties, eventQueue, index);
+            return;
+        }
+
         final Document samlTokenDocument = (Document) parseStructure(eventQueue, index, securityProperties);
 
-        final WSSSecurityProperties wssSecurityProperties = (WSSSecurityProperties) securityProperties;
         final WSInboundSecurityContext wsInboundSecurityContext = (WSInboundSecurityContext) inputProcessorChain.getSecurityContext();
         final Element samlElement = samlTokenDocument.getDocumentElement();
         final SamlAssertionWrapper samlAssertionWrapper = new SamlAssertionWrapper(samlElement);
@@ -116,8 +124,19 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
             samlTokenValidator = new SamlTokenValidatorImpl();
         }
 
+        // See if an identical Assertion has already been verified. The cache is not used if
+        // revocation is enabled, as the revocation status must be checked for every message
+        final VerifiedSamlAssertionCache verifiedAssertionCache = wssSecurityProperties.getVerifiedSamlAssertionCache();
+        String cacheKey = null;
+        SAMLKeyInfo verifiedKeyInfo = null;
+        if (verifiedAssertionCache != null && samlAssertionWrapper.isSigned()
+            && !wssSecurityProperties.isEnableRevocation()) {
+            cacheKey = VerifiedSamlAssertionCache.createCacheKey(samlAssertionWrapper);
+            verifiedKeyInfo = verifiedAssertionCache.getSignatureKeyInfo(cacheKey);
+        }
+
         //important: check the signature before we do other processing...
-        if (samlAssertionWrapper.isSigned()) {
+        if (samlAssertionWrapper.isSigned() && verifiedKeyInfo == null) {
             Signature signature = samlAssertionWrapper.getSignature();
             if (signature == null) {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN,
@@ -153,11 +172,89 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
                 throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE,
                         ex, "empty", new Object[] {"SAML signature validation failed"});
             }
+
+            if (cacheKey != null) {
+                SAMLKeyInfo samlKeyInfo = new SAMLKeyInfo(sigSecurityToken.getX509Certificates());
+                samlKeyInfo.setPublicKey(sigSecurityToken.getPublicKey());
+                verifiedAssertionCache.addVerifiedAssertion(cacheKey, samlAssertionWrapper, samlKeyInfo);
+            }
         }
 
-        final InboundSecurityToken subjectSecurityToken;
+        final List<String> methods = samlAssertionWrapper.getConfirmationMethods();
+        final InboundSecurityToken subjectSecurityToken =
+            parseSubjectSecurityToken(inputProcessorChain, securityProperties, eventQueue, 0, methods);
+
+        final List<XMLSecEvent> xmlSecEvents = getResponsibleXMLSecEvents(eventQueue, index);
+        final List<QName> elementPath = getElementPath(eventQueue);
+        final TokenContext tokenContext =
+            new TokenContext(wssSecurityProperties, wsInboundSecurityContext, xmlSecEvents, elementPath);
+
+        final SamlSecurityToken samlSecurityToken =
+                samlTokenValidator.validate(samlAssertionWrapper, subjectSecurityToken, tokenContext);
+
+        registerSamlSecurityToken(inputProcessorChain, wssSecurityProperties, samlSecurityToken, samlAssertionWrapper.getId(),
+                                  methods, subjectSecurityToken, elementPath);
+    }
+
+    /**
+     * Process the Assertion on the event stream. The signature of the Assertion is verified with the
+     * streaming signature verifier, and the SamlTokenValidator gets a SamlAssertionView of the Assertion,
+     * so a DOM Element and OpenSAML objects are only created if the validator asks for them.
+     */
+    private void handleStreaming(final InputProcessorChain inputProcessorChain,
+                                 final WSSSecurityProperties wssSecurityProperties,
+                                 Deque<XMLSecEvent> eventQueue, Integer index) throws XMLSecurityException {
+
+        final WSInboundSecurityContext wsInboundSecurityContext = (WSInboundSecurityContext) inputProcessorChain.getSecurityContext();
+        final List<XMLSecEvent> xmlSecEvents = getResponsibleXMLSecEvents(eventQueue, index);
+        final List<QName> elementPath = getElementPath(eventQueue);
+        final XMLSecStartElement assertionStartElement = xmlSecEvents.get(0).asStartElement();
+        final SamlAssertionView samlAssertionView = new SamlAssertionViewImpl(this, xmlSecEvents, wssSecurityProperties);
+
+        SamlTokenValidator samlTokenValidator = wssSecurityProperties.getValidator(assertionStartElement.getName());
+        if (samlTokenValidator == null) {
+            samlTokenValidator = new SamlTokenValidatorImpl();
+        }
+
+        //important: check the signature before we do other processing...
+        if (samlAssertionView.isSigned()) {
+            int signatureIdx = getChildElementIndex(eventQueue, index, WSSConstants.TAG_dsig_Signature);
+            int sigKeyInfoIdx = getChildElementIndex(eventQueue, signatureIdx, WSSConstants.TAG_dsig_KeyInfo);
+            if (sigKeyInfoIdx < 0) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, "noKeyInSAMLToken");
+            }
+            InboundSecurityToken sigSecurityToken =
+                parseKeyInfo(inputProcessorChain, wssSecurityProperties, eventQueue, sigKeyInfoIdx);
+            if (sigSecurityToken == null) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, "noKeyInSAMLToken");
+            }
+
+            samlTokenValidator.validate(sigSecurityToken, wssSecurityProperties);
+
+            // The SignedInfo is verified now, the Reference when the security header events are replayed
+            SAMLAssertionSignatureInputHandler signatureInputHandler =
+                new SAMLAssertionSignatureInputHandler(assertionStartElement, samlAssertionView.getId(), sigSecurityToken);
+            signatureInputHandler.handle(inputProcessorChain, wssSecurityProperties, eventQueue, signatureIdx);
+        }
+
+        final List<String> methods = samlAssertionView.getConfirmationMethods();
+        final InboundSecurityToken subjectSecurityToken =
+            parseSubjectSecurityToken(inputProcessorChain, wssSecurityProperties, eventQueue, index, methods);
+
+        final TokenContext tokenContext =
+            new TokenContext(wssSecurityProperties, wsInboundSecurityContext, xmlSecEvents, elementPath);
+
+        final SamlSecurityToken samlSecurityToken =
+                samlTokenValidator.validate(samlAssertionView, subjectSecurityToken, tokenContext);
+
+        registerSamlSecurityToken(inputProcessorChain, wssSecurityProperties, samlSecurityToken, samlAssertionView.getId(),
+                                  methods, subjectSecurityToken, elementPath);
+    }
+
+    private InboundSecurityToken parseSubjectSecurityToken(
+            InputProcessorChain inputProcessorChain, XMLSecurityProperties securityProperties,
+            Deque<XMLSecEvent> eventQueue, int startIndex, List<String> methods) throws XMLSecurityException {
 
-        List<String> methods = samlAssertionWrapper.getConfirmationMethods();
         boolean holderOfKey = false;
         if (methods != null) {
             for (String method : methods) {
@@ -168,27 +265,29 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
             }
         }
 
-        if (holderOfKey) {
-            int subjectKeyInfoIndex = getSubjectKeyInfoIndex(eventQueue);
-            if (subjectKeyInfoIndex < 0) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, "noKeyInSAMLToken");
-            }
+        if (!holderOfKey) {
+            return null;
+        }
 
-            subjectSecurityToken = parseKeyInfo(inputProcessorChain, securityProperties, eventQueue, subjectKeyInfoIndex);
-            if (subjectSecurityToken == null) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, "noKeyInSAMLToken");
-            }
-        } else {
-            subjectSecurityToken = null;
+        int subjectKeyInfoIndex = getSubjectKeyInfoIndex(eventQueue, startIndex);
+        if (subjectKeyInfoIndex < 0) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, "noKeyInSAMLToken");
         }
 
-        final List<XMLSecEvent> xmlSecEvents = getResponsibleXMLSecEvents(eventQueue, index);
-        final List<QName> elementPath = getElementPath(eventQueue);
-        final TokenContext tokenContext =
-            new TokenContext(wssSecurityProperties, wsInboundSecurityContext, xmlSecEvents, elementPath);
+        InboundSecurityToken subjectSecurityToken =
+            parseKeyInfo(inputProcessorChain, securityProperties, eventQueue, subjectKeyInfoIndex);
+        if (subjectSecurityToken == null) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, "noKeyInSAMLToken");
+        }
+        return subjectSecurityToken;
+    }
 
-        final SamlSecurityToken samlSecurityToken =
-                samlTokenValidator.validate(samlAssertionWrapper, subjectSecurityToken, tokenContext);
+    private void registerSamlSecurityToken(
+            InputProcessorChain inputProcessorChain, WSSSecurityProperties wssSecurityProperties,
+            final SamlSecurityToken samlSecurityToken, final String id, List<String> confirmationMethods,
+            InboundSecurityToken subjectSecurityToken, List<QName> elementPath) throws XMLSecurityException {
+
+        final WSInboundSecurityContext wsInboundSecurityContext = (WSInboundSecurityContext) inputProcessorChain.getSecurityContext();
 
         SecurityTokenProvider<InboundSecurityToken> subjectSecurityTokenProvider =
                 new SecurityTokenProvider<InboundSecurityToken>() {
@@ -200,16 +299,16 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
 
             @Override
             public String getId() {
-                return samlAssertionWrapper.getId();
+                return id;
             }
         };
 
-        wsInboundSecurityContext.registerSecurityTokenProvider(samlAssertionWrapper.getId(), subjectSecurityTokenProvider);
+        wsInboundSecurityContext.registerSecurityTokenProvider(id, subjectSecurityTokenProvider);
 
         //fire a tokenSecurityEvent
         SamlTokenSecurityEvent samlTokenSecurityEvent = new SamlTokenSecurityEvent();
         samlTokenSecurityEvent.setSecurityToken((SamlSecurityToken)subjectSecurityTokenProvider.getSecurityToken());
-        samlTokenSecurityEvent.setCorrelationID(samlAssertionWrapper.getId());
+        samlTokenSecurityEvent.setCorrelationID(id);
         wsInboundSecurityContext.registerSecurityEvent(samlTokenSecurityEvent);
 
         if (wssSecurityProperties.isValidateSamlSubjectConfirmation()) {
@@ -219,19 +318,57 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
             }
             SAMLTokenVerifierInputProcessor samlTokenVerifierInputProcessor =
                     new SAMLTokenVerifierInputProcessor(
-                            securityProperties, samlAssertionWrapper, subjectSecurityTokenProvider, subjectSecurityToken,
+                            wssSecurityProperties, confirmationMethods, subjectSecurityTokenProvider, subjectSecurityToken,
                             soap12);
             wsInboundSecurityContext.addSecurityEventListener(samlTokenVerifierInputProcessor);
             inputProcessorChain.addProcessor(samlTokenVerifierInputProcessor);
         }
     }
 
-    private int getSubjectKeyInfoIndex(Deque<XMLSecEvent> eventQueue) {
+    /**
+     * Get the index of the first child element with the given name of the element at parentIndex,
+     * or -1 if there is none.
+     */
+    private int getChildElementIndex(Deque<XMLSecEvent> eventQueue, int parentIndex, QName childName) {
+        if (parentIndex < 0) {
+            return -1;
+        }
         int idx = -1;
+        int depth = 0;
         Iterator<XMLSecEvent> xmlSecEventIterator = eventQueue.descendingIterator();
         while (xmlSecEventIterator.hasNext()) {
             XMLSecEvent xmlSecEvent = xmlSecEventIterator.next();
             idx++;
+            if (idx < parentIndex) {
+                continue;
+            }
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    if (depth == 2 && childName.equals(xmlSecEvent.asStartElement().getName())) {
+                        return idx;
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    if (depth == 0) {
+                        return -1;
+                    }
+                    break;
+            }
+        }
+        return -1;
+    }
+
+    private int getSubjectKeyInfoIndex(Deque<XMLSecEvent> eventQueue, int startIndex) {
+        int idx = -1;
+        Iterator<XMLSecEvent> xmlSecEventIterator = eventQueue.descendingIterator();
+        while (xmlSecEventIterator.hasNext()) {
+            XMLSecEvent xmlSecEvent = xmlSecEventIterator.next();
+            idx++;
+            if (idx < startIndex) {
+                continue;
+            }
             switch (xmlSecEvent.getEventType()) {
                 case XMLStreamConstants.START_ELEMENT:
                     QName elementName = xmlSecEvent.asStartElement().getName();
@@ -404,25 +541,29 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
     @Override
     protected <T> T parseStructure(Deque<XMLSecEvent> eventDeque, int index, XMLSecurityProperties securityProperties)
             throws XMLSecurityException {
-        Document document = null;
-        try {
-            document = ((WSSSecurityProperties) securityProperties).getDocumentCreator().newDocument();
-        } catch (ParserConfigurationException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, e);
-        }
-
         Iterator<XMLSecEvent> xmlSecEventIterator = eventDeque.descendingIterator();
         int curIdx = 0;
         while (curIdx++ < index) {
             xmlSecEventIterator.next();
         }
+        return (T) createDocument(xmlSecEventIterator, (WSSSecurityProperties) securityProperties);
+    }
+
+    Document createDocument(Iterator<XMLSecEvent> xmlSecEventIterator, WSSSecurityProperties securityProperties)
+            throws WSSecurityException {
+        Document document = null;
+        try {
+            document = securityProperties.getDocumentCreator().newDocument();
+        } catch (ParserConfigurationException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, e);
+        }
 
         Node currentNode = document;
         while (xmlSecEventIterator.hasNext()) {
             XMLSecEvent next = xmlSecEventIterator.next();
             currentNode = parseXMLEvent(next, currentNode, document);
         }
-        return (T) document;
+        return document;
     }
 
     //todo custom SAML unmarshaller directly to XMLObject?
@@ -529,7 +670,7 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
      */
     static class SAMLTokenVerifierInputProcessor extends AbstractInputProcessor implements SecurityEventListener {
 
-        private SamlAssertionWrapper samlAssertionWrapper;
+        private List<String> confirmationMethods;
         private SecurityTokenProvider<InboundSecurityToken> securityTokenProvider;
         private InboundSecurityToken subjectSecurityToken;
         private List<SignedElementSecurityEvent> samlTokenSignedElementSecurityEvents = new ArrayList<>();
@@ -540,14 +681,14 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
         private final List<QName> saml2TokenPath;
 
         SAMLTokenVerifierInputProcessor(XMLSecurityProperties securityProperties,
-                                        SamlAssertionWrapper samlAssertionWrapper,
+                                        List<String> confirmationMethods,
                                         SecurityTokenProvider<InboundSecurityToken> securityTokenProvider,
                                         InboundSecurityToken subjectSecurityToken,
                                         boolean soap12) {
             super(securityProperties);
             this.setPhase(XMLSecurityConstants.Phase.POSTPROCESSING);
             this.addAfterProcessor(OperationInputProcessor.class.getName());
-            this.samlAssertionWrapper = samlAssertionWrapper;
+            this.confirmationMethods = confirmationMethods;
             this.securityTokenProvider = securityTokenProvider;
             this.subjectSecurityToken = subjectSecurityToken;
 
@@ -602,14 +743,14 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
                 List<QName> elementPath = xmlSecStartElement.getElementPath();
                 if (elementPath.size() == 3 && WSSUtils.isInSOAPBody(elementPath)) {
                     inputProcessorChain.removeProcessor(this);
-                    checkPossessionOfKey(inputProcessorChain, samlAssertionWrapper, subjectSecurityToken);
+                    checkPossessionOfKey(inputProcessorChain, confirmationMethods, subjectSecurityToken);
                 }
             }
             return xmlSecEvent;
         }
 
         private void checkPossessionOfKey(
-                InputProcessorChain inputProcessorChain, SamlAssertionWrapper samlAssertionWrapper,
+                InputProcessorChain inputProcessorChain, List<String> confirmationMethods,
                 InboundSecurityToken subjectSecurityToken) throws WSSecurityException {
 
             boolean methodNotSatisfied = false;
@@ -619,7 +760,6 @@ public class SAMLTokenInputHandler extends AbstractInputSecurityHeaderHandler {
                 List<SecurityTokenProvider<? extends InboundSecurityToken>> securityTokenProviders =
                         inputProcessorChain.getSecurityContext().getRegisteredSecurityTokenProviders();
 
-                List<String> confirmationMethods = samlAssertionWrapper.getConfirmationMethods();
                 for (int i = 0; i < confirmationMethods.size(); i++) {
                     String confirmationMethod = confirmationMethods.get(i);
                     if (OpenSAMLUtil.isMethodHolderOfKey(confirmationMethod)) {
@@ -0,0 +1,444 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.datatype.DatatypeConfigurationException;
+import javax.xml.datatype.DatatypeFactory;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.events.Attribute;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.common.util.InetAddressUtils;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.ext.WSSSecurityProperties;
+import org.apache.wss4j.stax.validate.SamlAssertionView;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.opensaml.saml.common.SAMLVersion;
+import org.w3c.dom.Document;
+
+/**
+ * A SamlAssertionView of a SAML 1.0, 1.1 or 2.0 Assertion, which is read from the XML events of the
+ * Assertion in a single pass. The version of a SAML 1.x Assertion is taken from its MinorVersion.
+ */
+final class SamlAssertionViewImpl implements SamlAssertionView {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(SamlAssertionViewImpl.class);
+
+    private static final QName ATT_NULL_ISSUER = new QName(null, "Issuer");
+    private static final QName ATT_NULL_MINOR_VERSION = new QName(null, "MinorVersion");
+    private static final QName ATT_NULL_ISSUE_INSTANT = new QName(null, "IssueInstant");
+    private static final QName ATT_NULL_METHOD = new QName(null, "Method");
+    private static final QName ATT_NULL_NOT_BEFORE = new QName(null, "NotBefore");
+    private static final QName ATT_NULL_NOT_ON_OR_AFTER = new QName(null, "NotOnOrAfter");
+    private static final QName ATT_NULL_AUTHN_INSTANT = new QName(null, "AuthnInstant");
+    private static final QName ATT_NULL_AUTHENTICATION_INSTANT = new QName(null, "AuthenticationInstant");
+    private static final QName ATT_NULL_SESSION_NOT_ON_OR_AFTER = new QName(null, "SessionNotOnOrAfter");
+    private static final QName ATT_NULL_ADDRESS = new QName(null, "Address");
+    private static final QName ATT_NULL_IP_ADDRESS = new QName(null, "IPAddress");
+    private static final QName ATT_NULL_NAME = new QName(null, "Name");
+    private static final QName ATT_NULL_ATTRIBUTE_NAME = new QName(null, "AttributeName");
+    private static final QName ATT_NULL_ATTRIBUTE_NAMESPACE = new QName(null, "AttributeNamespace");
+
+    private final SAMLTokenInputHandler samlTokenInputHandler;
+    private final List<XMLSecEvent> xmlSecEvents;
+    private final WSSSecurityProperties securityProperties;
+
+    private final SAMLVersion samlVersion;
+    private String id;
+    private String issuer;
+    private Instant issueInstant;
+    private String subjectName;
+    private boolean conditions;
+    private Instant notBefore;
+    private Instant notOnOrAfter;
+    private boolean oneTimeUse;
+    private boolean signed;
+    private final List<String> confirmationMethods = new ArrayList<>();
+    private final List<String> audiences = new ArrayList<>();
+    private final List<AuthnStatement> authnStatements = new ArrayList<>();
+    private final Map<String, List<String>> attributes = new LinkedHashMap<>();
+    private final Map<String, List<String>> attributeNamespaces = new LinkedHashMap<>();
+
+    private SamlAssertionWrapper samlAssertionWrapper;
+
+    /**
+     * @param samlTokenInputHandler the handler to create the DOM of the Assertion with
+     * @param xmlSecEvents the events of the Assertion, from its start to its end element
+     * @param securityProperties the WSSSecurityProperties with the DocumentCreator to use
+     */
+    SamlAssertionViewImpl(SAMLTokenInputHandler samlTokenInputHandler, List<XMLSecEvent> xmlSecEvents,
+                          WSSSecurityProperties securityProperties) throws WSSecurityException {
+        this.samlTokenInputHandler = samlTokenInputHandler;
+        this.xmlSecEvents = xmlSecEvents;
+        this.securityProperties = securityProperties;
+
+        XMLSecStartElement assertionElement = xmlSecEvents.get(0).asStartElement();
+        if (WSSConstants.TAG_SAML2_ASSERTION.equals(assertionElement.getName())) {
+            samlVersion = SAMLVersion.VERSION_20;
+            id = getAttributeValue(assertionElement, WSSConstants.ATT_NULL_ID);
+        } else if (WSSConstants.TAG_SAML_ASSERTION.equals(assertionElement.getName())) {
+            String minorVersion = getAttributeValue(assertionElement, ATT_NULL_MINOR_VERSION);
+            samlVersion = minorVersion != null && "0".equals(minorVersion.trim())
+                ? SAMLVersion.VERSION_10 : SAMLVersion.VERSION_11;
+            id = getAttributeValue(assertionElement, WSSConstants.ATT_NULL_ASSERTION_ID);
+            issuer = getAttributeValue(assertionElement, ATT_NULL_ISSUER);
+        } else {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, "invalidSAMLsecurity");
+        }
+        issueInstant = getInstant(assertionElement, ATT_NULL_ISSUE_INSTANT);
+
+        parse();
+    }
+
+    private void parse() throws WSSecurityException {
+        final boolean saml2 = samlVersion == SAMLVersion.VERSION_20;
+        final String samlNamespace = saml2 ? WSSConstants.NS_SAML2 : WSSConstants.NS_SAML;
+
+        // the local names of the SAML elements from the Assertion to the current element, or null
+        // for elements of another namespace
+        final List<String> path = new ArrayList<>();
+        StringBuilder text = null;
+        int textDepth = 0;
+        boolean firstSubject = false;
+        boolean subjectSeen = false;
+        List<String> attributeValues = null;
+        String attributeName = null;
+        String attributeNamespace = null;
+
+        for (int i = 0; i < xmlSecEvents.size(); i++) {
+            XMLSecEvent xmlSecEvent = xmlSecEvents.get(i);
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    XMLSecStartElement startElement = xmlSecEvent.asStartElement();
+                    QName name = startElement.getName();
+                    path.add(samlNamespace.equals(name.getNamespaceURI()) ? name.getLocalPart() : null);
+                    int depth = path.size();
+
+                    if (depth == 2 && WSSConstants.TAG_dsig_Signature.equals(name)) {
+                        signed = true;
+                    } else if (depth == 2 && pathMatches(path, "Conditions")) {
+                        conditions = true;
+                        notBefore = getInstant(startElement, ATT_NULL_NOT_BEFORE);
+                        notOnOrAfter = getInstant(startElement, ATT_NULL_NOT_ON_OR_AFTER);
+                    } else if (depth == 3 && saml2 && pathMatches(path, "Conditions", "OneTimeUse")) {
+                        oneTimeUse = true;
+                    } else if (depth == 4 && (pathMatches(path, "Conditions", "AudienceRestriction", "Audience")
+                        || pathMatches(path, "Conditions", "AudienceRestrictionCondition", "Audience"))) {
+                        text = new StringBuilder();
+                        textDepth = depth;
+                    } else if (saml2 && depth == 2 && pathMatches(path, "Issuer")
+                        || saml2 && depth == 3 && pathMatches(path, "Subject", "NameID")) {
+                        text = new StringBuilder();
+                        textDepth = depth;
+                    } else if (saml2 && depth == 3 && pathMatches(path, "Subject", "SubjectConfirmation")) {
+                        confirmationMethods.add(getAttributeValue(startElement, ATT_NULL_METHOD));
+                    } else if (!saml2 && depth == 3 && "Subject".equals(path.get(2))) {
+                        firstSubject = !subjectSeen;
+                        subjectSeen = true;
+                    } else if (!saml2 && depth == 4 && firstSubject && "Subject".equals(path.get(2))
+                        && "NameIdentifier".equals(path.get(3))
+                        || !saml2 && depth == 5 && "Subject".equals(path.get(2))
+                        && "SubjectConfirmation".equals(path.get(3)) && "ConfirmationMethod".equals(path.get(4))) {
+                        text = new StringBuilder();
+                        textDepth = depth;
+                    } else if (saml2 && depth == 2 && pathMatches(path, "AuthnStatement")) {
+                        authnStatements.add(new AuthnStatement(
+                            getInstant(startElement, ATT_NULL_AUTHN_INSTANT),
+                            getInstant(startElement, ATT_NULL_SESSION_NOT_ON_OR_AFTER)));
+                    } else if (!saml2 && depth == 2 && pathMatches(path, "AuthenticationStatement")) {
+                        authnStatements.add(new AuthnStatement(
+                            getInstant(startElement, ATT_NULL_AUTHENTICATION_INSTANT), null));
+                    } else if (depth == 3 && (pathMatches(path, "AuthnStatement", "SubjectLocality")
+                        || pathMatches(path, "AuthenticationStatement", "SubjectLocality"))) {
+                        authnStatements.get(authnStatements.size() - 1).subjectLocalityAddress =
+                            getAttributeValue(startElement, saml2 ? ATT_NULL_ADDRESS : ATT_NULL_IP_ADDRESS);
+                    } else if (depth == 3 && pathMatches(path, "AttributeStatement", "Attribute")) {
+                        attributeName =
+                            getAttributeValue(startElement, saml2 ? ATT_NULL_NAME : ATT_NULL_ATTRIBUTE_NAME);
+                        attributeNamespace = saml2 ? null : getAttributeValue(startElement, ATT_NULL_ATTRIBUTE_NAMESPACE);
+                        attributeValues = attributes.computeIfAbsent(attributeName, k -> new ArrayList<>());
+                    } else if (depth == 4 && attributeValues != null
+                        && pathMatches(path, "AttributeStatement", "Attribute", "AttributeValue")) {
+                        if (attributeNamespace != null) {
+                            // Only recorded once per Attribute, for its first AttributeValue
+                            attributeNamespaces.computeIfAbsent(attributeName, k -> new ArrayList<>())
+                                .add(attributeNamespace);
+                            attributeNamespace = null;
+                        }
+                        text = new StringBuilder();
+                        textDepth = depth;
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                    if (text != null) {
+                        text.append(xmlSecEvent.asCharacters().getText());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (text != null && path.size() == textDepth) {
+                        // Text content is trimmed, and empty content is null, as with OpenSAML
+                        String value = text.toString().trim();
+                        if (value.isEmpty()) {
+                            value = null;
+                        }
+                        String localName = path.get(path.size() - 1);
+                        if ("Audience".equals(localName)) {
+                            audiences.add(value);
+                        } else if ("Issuer".equals(localName)) {
+                            issuer = value;
+                        } else if ("NameID".equals(localName) || "NameIdentifier".equals(localName)) {
+                            subjectName = value;
+                        } else if ("ConfirmationMethod".equals(localName)) {
+                            confirmationMethods.add(value);
+                        } else if ("AttributeValue".equals(localName)) {
+                            attributeValues.add(value);
+                        }
+                        text = null;
+                    }
+                    path.remove(path.size() - 1);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static boolean pathMatches(List<String> path, String... localNames) {
+        for (int i = 0; i < localNames.length; i++) {
+            if (!localNames[i].equals(path.get(i + 1))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String getAttributeValue(XMLSecStartElement startElement, QName attributeName) {
+        Attribute attribute = startElement.getAttributeByName(attributeName);
+        return attribute != null ? attribute.getValue() : null;
+    }
+
+    private static Instant getInstant(XMLSecStartElement startElement, QName attributeName)
+        throws WSSecurityException {
+        String value = getAttributeValue(startElement, attributeName);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return DatatypeFactoryHolder.DATATYPE_FACTORY.newXMLGregorianCalendar(value.trim())
+                .toGregorianCalendar().toInstant();
+        } catch (IllegalArgumentException e) {
+            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY_TOKEN, e);
+        }
+    }
+
+    @Override
+    public SAMLVersion getSamlVersion() {
+        return samlVersion;
+    }
+
+    @Override
+    public String getId() {
+        return id;
+    }
+
+    @Override
+    public String getIssuerString() {
+        return issuer;
+    }
+
+    @Override
+    public Instant getIssueInstant() {
+        return issueInstant;
+    }
+
+    @Override
+    public String getSubjectName() {
+        return subjectName;
+    }
+
+    @Override
+    public List<String> getConfirmationMethods() {
+        return Collections.unmodifiableList(confirmationMethods);
+    }
+
+    @Override
+    public Instant getNotBefore() {
+        return notBefore;
+    }
+
+    @Override
+    public Instant getNotOnOrAfter() {
+        return notOnOrAfter;
+    }
+
+    @Override
+    public List<String> getAudiences() {
+        return Collections.unmodifiableList(audiences);
+    }
+
+    @Override
+    public boolean isOneTimeUse() {
+        return oneTimeUse;
+    }
+
+    @Override
+    public Map<String, List<String>> getAttributes() {
+        return Collections.unmodifiableMap(attributes);
+    }
+
+    @Override
+    public List<String> getAttributeNamespaces(String attributeName) {
+        List<String> namespaces = attributeNamespaces.get(attributeName);
+        return namespaces != null ? Collections.unmodifiableList(namespaces) : Collections.emptyList();
+    }
+
+    @Override
+    public boolean isSigned() {
+        return signed;
+    }
+
+    @Override
+    public void checkConditions(int futureTTL) throws WSSecurityException {
+        if (notBefore != null) {
+            Instant currentTime = Instant.now();
+            currentTime = currentTime.plusSeconds(futureTTL);
+            if (notBefore.isAfter(currentTime)) {
+                LOG.warn("SAML Token condition (Not Before) not met");
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+            }
+        }
+
+        if (notOnOrAfter != null && notOnOrAfter.isBefore(Instant.now())) {
+            LOG.warn("SAML Token condition (Not On Or After) not met");
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+        }
+    }
+
+    @Override
+    public void checkIssueInstant(int futureTTL, int ttl) throws WSSecurityException {
+        // As in SamlAssertionWrapper, the IssueInstant is only checked if there are Conditions
+        if (!conditions || issueInstant == null) {
+            return;
+        }
+
+        // Check the IssueInstant is not in the future, subject to the future TTL
+        Instant currentTime = Instant.now().plusSeconds(futureTTL);
+        if (issueInstant.isAfter(currentTime)) {
+            LOG.warn("SAML Token IssueInstant not met");
+            throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+        }
+
+        // If there is no NotOnOrAfter, then impose a TTL on the IssueInstant.
+        if (notOnOrAfter == null) {
+            currentTime = currentTime.minusSeconds(ttl);
+
+            if (issueInstant.isBefore(currentTime)) {
+                LOG.warn("SAML Token IssueInstant not met. The assertion was created too long ago.");
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+            }
+        }
+    }
+
+    @Override
+    public void checkAudienceRestrictions(List<String> audienceRestrictions) throws WSSecurityException {
+        if (audienceRestrictions == null || audienceRestrictions.isEmpty() || audiences.isEmpty()) {
+            return;
+        }
+        for (String audience : audiences) {
+            if (audienceRestrictions.contains(audience)) {
+                return;
+            }
+        }
+        throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+    }
+
+    @Override
+    public void checkAuthnStatements(int futureTTL) throws WSSecurityException {
+        for (AuthnStatement authnStatement : authnStatements) {
+            // AuthnInstant in the future
+            Instant currentTime = Instant.now();
+            currentTime = currentTime.plusSeconds(futureTTL);
+            if (authnStatement.authnInstant == null || authnStatement.authnInstant.isAfter(currentTime)) {
+                LOG.warn("SAML Token AuthnInstant not met");
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+            }
+
+            // Stale SessionNotOnOrAfter
+            if (authnStatement.sessionNotOnOrAfter != null
+                && authnStatement.sessionNotOnOrAfter.isBefore(Instant.now())) {
+                LOG.warn("SAML Token SessionNotOnOrAfter not met");
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+            }
+
+            // Check that the SubjectLocality address is an IP address
+            String address = authnStatement.subjectLocalityAddress;
+            if (address != null
+                && !(InetAddressUtils.isIPv4Address(address) || InetAddressUtils.isIPv6Address(address))) {
+                LOG.warn("SAML Token SubjectLocality address is not valid: " + address);
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, "invalidSAMLsecurity");
+            }
+        }
+    }
+
+    @Override
+    public SamlAssertionWrapper getSamlAssertionWrapper() throws WSSecurityException {
+        if (samlAssertionWrapper == null) {
+            Document document = samlTokenInputHandler.createDocument(xmlSecEvents.iterator(), securityProperties);
+            samlAssertionWrapper = new SamlAssertionWrapper(document.getDocumentElement());
+        }
+        return samlAssertionWrapper;
+    }
+
+    private static final class AuthnStatement {
+
+        private final Instant authnInstant;
+        private final Instant sessionNotOnOrAfter;
+        private String subjectLocalityAddress;
+
+        AuthnStatement(Instant authnInstant, Instant sessionNotOnOrAfter) {
+            this.authnInstant = authnInstant;
+            this.sessionNotOnOrAfter = sessionNotOnOrAfter;
+        }
+    }
+
+    private static final class DatatypeFactoryHolder {
+
+        private static final DatatypeFactory DATATYPE_FACTORY = createDatatypeFactory();
+
+        private static DatatypeFactory createDatatypeFactory() {
+            try {
+                return DatatypeFactory.newInstance();
+            } catch (DatatypeConfigurationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,713 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.impl.processor.input;
+
+import java.math.BigInteger;
+import java.util.Base64;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+
+import org.apache.wss4j.binding.wss10.AttributedString;
+import org.apache.wss4j.binding.wss10.BinarySecurityTokenType;
+import org.apache.wss4j.binding.wss10.EncodedString;
+import org.apache.wss4j.binding.wss10.KeyIdentifierType;
+import org.apache.wss4j.binding.wss10.PasswordString;
+import org.apache.wss4j.binding.wss10.ReferenceType;
+import org.apache.wss4j.binding.wss10.SecurityTokenReferenceType;
+import org.apache.wss4j.binding.wss10.UsernameTokenType;
+import org.apache.wss4j.binding.wssc.AbstractDerivedKeyTokenType;
+import org.apache.wss4j.binding.wsu10.AttributedDateTime;
+import org.apache.wss4j.binding.wsu10.TimestampType;
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.xml.security.binding.xmlenc.ReferenceList;
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+
+/**
+ * Builds the JAXB binding objects of frequently processed security header elements directly from
+ * the XMLSecEvents of the element, instead of unmarshalling them with JAXB.
+ *
+ * Only elements that are valid against the WS-Security schemas, and whose content is fully
+ * understood here, are parsed: the children must appear in the order and with the cardinality of
+ * the schema, Ids must be unique NCNames, URIs, numbers and base64 values must be well-formed, and
+ * only attributes with a known type are accepted as extension attributes. For every other element
+ * null is returned, and the caller must unmarshal the element with parseStructure, which then
+ * reports the same (schema) errors as before. A parsed element is therefore equal to the object
+ * JAXB would have unmarshalled, with or without schema validation.
+ */
+public final class SecurityHeaderElementParser {
+
+    private static final QName TAG_XENC_DATA_REFERENCE = new QName(WSSConstants.NS_XMLENC, "DataReference");
+    private static final QName TAG_XENC_KEY_REFERENCE = new QName(WSSConstants.NS_XMLENC, "KeyReference");
+
+    private static final BigInteger MAX_UNSIGNED_LONG = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+
+    private static final org.apache.wss4j.binding.wss10.ObjectFactory WSSE_OBJECT_FACTORY =
+        new org.apache.wss4j.binding.wss10.ObjectFactory();
+    private static final org.apache.wss4j.binding.wsu10.ObjectFactory WSU_OBJECT_FACTORY =
+        new org.apache.wss4j.binding.wsu10.ObjectFactory();
+
+    /**
+     * Thrown when the element is not in the subset understood by this parser
+     */
+    private static final UnsupportedStructureException UNSUPPORTED = new UnsupportedStructureException();
+
+    private final List<XMLSecEvent> xmlSecEvents;
+    private final Set<String> ids = new HashSet<>();
+    private int position;
+
+    private SecurityHeaderElementParser(List<XMLSecEvent> xmlSecEvents) {
+        this.xmlSecEvents = xmlSecEvents;
+    }
+
+    /**
+     * Parse a wsu:Timestamp
+     *
+     * @param xmlSecEvents the XMLSecEvents of the element, as returned by getResponsibleXMLSecEvents
+     * @return the parsed TimestampType, or null if the element must be unmarshalled with JAXB
+     */
+    public static TimestampType parseTimestamp(List<XMLSecEvent> xmlSecEvents) {
+        SecurityHeaderElementParser parser = new SecurityHeaderElementParser(xmlSecEvents);
+        try {
+            TimestampType timestampType = parser.timestamp(parser.rootElement(WSSConstants.TAG_WSU_TIMESTAMP));
+            parser.finish();
+            return timestampType;
+        } catch (UnsupportedStructureException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a wsse:UsernameToken
+     *
+     * @param xmlSecEvents the XMLSecEvents of the element, as returned by getResponsibleXMLSecEvents
+     * @return the parsed UsernameTokenType, or null if the element must be unmarshalled with JAXB
+     */
+    public static UsernameTokenType parseUsernameToken(List<XMLSecEvent> xmlSecEvents) {
+        SecurityHeaderElementParser parser = new SecurityHeaderElementParser(xmlSecEvents);
+        try {
+            UsernameTokenType usernameTokenType =
+                parser.usernameToken(parser.rootElement(WSSConstants.TAG_WSSE_USERNAME_TOKEN));
+            parser.finish();
+            return usernameTokenType;
+        } catch (UnsupportedStructureException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a wsse:BinarySecurityToken. Tokens with an xop:Include are not parsed.
+     *
+     * @param xmlSecEvents the XMLSecEvents of the element, as returned by getResponsibleXMLSecEvents
+     * @return the parsed BinarySecurityTokenType, or null if the element must be unmarshalled with JAXB
+     */
+    public static BinarySecurityTokenType parseBinarySecurityToken(List<XMLSecEvent> xmlSecEvents) {
+        SecurityHeaderElementParser parser = new SecurityHeaderElementParser(xmlSecEvents);
+        try {
+            BinarySecurityTokenType binarySecurityTokenType =
+                parser.binarySecurityToken(parser.rootElement(WSSConstants.TAG_WSSE_BINARY_SECURITY_TOKEN));
+            parser.finish();
+            return binarySecurityTokenType;
+        } catch (UnsupportedStructureException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a wsse:SecurityTokenReference. Only wsse:Reference and wsse:KeyIdentifier children
+     * are parsed.
+     *
+     * @param xmlSecEvents the XMLSecEvents of the element, as returned by getResponsibleXMLSecEvents
+     * @return the parsed SecurityTokenReferenceType, or null if the element must be unmarshalled with JAXB
+     */
+    public static SecurityTokenReferenceType parseSecurityTokenReference(List<XMLSecEvent> xmlSecEvents) {
+        SecurityHeaderElementParser parser = new SecurityHeaderElementParser(xmlSecEvents);
+        try {
+            SecurityTokenReferenceType securityTokenReferenceType =
+                parser.securityTokenReference(parser.rootElement(WSSConstants.TAG_WSSE_SECURITY_TOKEN_REFERENCE));
+            parser.finish();
+            return securityTokenReferenceType;
+        } catch (UnsupportedStructureException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a xenc:ReferenceList. DataReferences and KeyReferences with child elements are not parsed.
+     *
+     * @param xmlSecEvents the XMLSecEvents of the element, as returned by getResponsibleXMLSecEvents
+     * @return the parsed ReferenceList, or null if the element must be unmarshalled with JAXB
+     */
+    public static ReferenceList parseReferenceList(List<XMLSecEvent> xmlSecEvents) {
+        SecurityHeaderElementParser parser = new SecurityHeaderElementParser(xmlSecEvents);
+        try {
+            ReferenceList referenceList = parser.referenceList(parser.rootElement(WSSConstants.TAG_xenc_ReferenceList));
+            parser.finish();
+            return referenceList;
+        } catch (UnsupportedStructureException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a wsc:DerivedKeyToken of the 2005/02 or the 2005/12 namespace. Tokens with a
+     * wsc:Properties child are not parsed.
+     *
+     * @param xmlSecEvents the XMLSecEvents of the element, as returned by getResponsibleXMLSecEvents
+     * @return the parsed DerivedKeyTokenType, or null if the element must be unmarshalled with JAXB
+     */
+    public static AbstractDerivedKeyTokenType parseDerivedKeyToken(List<XMLSecEvent> xmlSecEvents) {
+        SecurityHeaderElementParser parser = new SecurityHeaderElementParser(xmlSecEvents);
+        try {
+            AbstractDerivedKeyTokenType derivedKeyTokenType = parser.derivedKeyToken();
+            parser.finish();
+            return derivedKeyTokenType;
+        } catch (UnsupportedStructureException e) {
+            return null;
+        }
+    }
+
+    private TimestampType timestamp(XMLSecStartElement element) throws UnsupportedStructureException {
+        TimestampType timestampType = new TimestampType();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                timestampType.setId(id(attribute.getValue()));
+            } else {
+                otherAttribute(attribute, timestampType.getOtherAttributes());
+            }
+        }
+
+        XMLSecStartElement child = nextStartElement();
+        if (child != null && WSSConstants.TAG_WSU_CREATED.equals(child.getName())) {
+            timestampType.setCreated(attributedDateTime(child));
+            child = nextStartElement();
+        }
+        if (child != null && WSSConstants.TAG_WSU_EXPIRES.equals(child.getName())) {
+            timestampType.setExpires(attributedDateTime(child));
+            child = nextStartElement();
+        }
+        if (child != null) {
+            throw UNSUPPORTED;
+        }
+        endElement();
+        return timestampType;
+    }
+
+    private UsernameTokenType usernameToken(XMLSecStartElement element) throws UnsupportedStructureException {
+        UsernameTokenType usernameTokenType = new UsernameTokenType();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                usernameTokenType.setId(id(attribute.getValue()));
+            } else {
+                otherAttribute(attribute, usernameTokenType.getOtherAttributes());
+            }
+        }
+
+        XMLSecStartElement child = nextStartElement();
+        if (child == null || !WSSConstants.TAG_WSSE_USERNAME.equals(child.getName())) {
+            throw UNSUPPORTED;
+        }
+        AttributedString username = new AttributedString();
+        attributedString(child, username);
+        usernameTokenType.setUsername(username);
+
+        while ((child = nextStartElement()) != null) {
+            QName name = child.getName();
+            if (WSSConstants.TAG_WSSE_PASSWORD.equals(name)) {
+                PasswordString passwordString = new PasswordString();
+                for (XMLSecAttribute attribute : child.getOnElementDeclaredAttributes()) {
+                    if (WSSConstants.ATT_NULL_Type.equals(attribute.getName())) {
+                        passwordString.setType(anyURI(attribute.getValue()));
+                    } else {
+                        attributedStringAttribute(attribute, passwordString);
+                    }
+                }
+                passwordString.setValue(text());
+                usernameTokenType.getAny().add(WSSE_OBJECT_FACTORY.createPassword(passwordString));
+            } else if (WSSConstants.TAG_WSSE_NONCE.equals(name)) {
+                EncodedString encodedString = new EncodedString();
+                for (XMLSecAttribute attribute : child.getOnElementDeclaredAttributes()) {
+                    if (WSSConstants.ATT_NULL_ENCODING_TYPE.equals(attribute.getName())) {
+                        encodedString.setEncodingType(anyURI(attribute.getValue()));
+                    } else {
+                        attributedStringAttribute(attribute, encodedString);
+                    }
+                }
+                encodedString.setValue(text());
+                usernameTokenType.getAny().add(WSSE_OBJECT_FACTORY.createNonce(encodedString));
+            } else if (WSSConstants.TAG_WSU_CREATED.equals(name)) {
+                usernameTokenType.getAny().add(WSU_OBJECT_FACTORY.createCreated(attributedDateTime(child)));
+            } else {
+                throw UNSUPPORTED;
+            }
+        }
+        endElement();
+        return usernameTokenType;
+    }
+
+    private BinarySecurityTokenType binarySecurityToken(XMLSecStartElement element) throws UnsupportedStructureException {
+        BinarySecurityTokenType binarySecurityTokenType = new BinarySecurityTokenType();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            QName name = attribute.getName();
+            if (WSSConstants.ATT_WSU_ID.equals(name)) {
+                binarySecurityTokenType.setId(id(attribute.getValue()));
+            } else if (WSSConstants.ATT_NULL_VALUE_TYPE.equals(name)) {
+                binarySecurityTokenType.setValueType(anyURI(attribute.getValue()));
+            } else if (WSSConstants.ATT_NULL_ENCODING_TYPE.equals(name)) {
+                binarySecurityTokenType.setEncodingType(anyURI(attribute.getValue()));
+            } else {
+                otherAttribute(attribute, binarySecurityTokenType.getOtherAttributes());
+            }
+        }
+
+        String text = text();
+        if (!text.isEmpty()) {
+            binarySecurityTokenType.getContent().add(text);
+        }
+        return binarySecurityTokenType;
+    }
+
+    private SecurityTokenReferenceType securityTokenReference(XMLSecStartElement element)
+        throws UnsupportedStructureException {
+
+        SecurityTokenReferenceType securityTokenReferenceType = new SecurityTokenReferenceType();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            QName name = attribute.getName();
+            if (WSSConstants.ATT_WSU_ID.equals(name)) {
+                securityTokenReferenceType.setId(id(attribute.getValue()));
+            } else if (WSSConstants.ATT_WSSE_USAGE.equals(name)) {
+                for (String usage : attribute.getValue().split(" ", -1)) {
+                    if (usage.isEmpty()) {
+                        throw UNSUPPORTED;
+                    }
+                    securityTokenReferenceType.getUsage().add(anyURI(usage));
+                }
+            } else {
+                otherAttribute(attribute, securityTokenReferenceType.getOtherAttributes());
+            }
+        }
+
+        XMLSecStartElement child;
+        while ((child = nextStartElement()) != null) {
+            QName name = child.getName();
+            if (WSSConstants.TAG_WSSE_REFERENCE.equals(name)) {
+                ReferenceType referenceType = new ReferenceType();
+                for (XMLSecAttribute attribute : child.getOnElementDeclaredAttributes()) {
+                    QName attributeName = attribute.getName();
+                    if (WSSConstants.ATT_NULL_URI.equals(attributeName)) {
+                        referenceType.setURI(anyURI(attribute.getValue()));
+                    } else if (WSSConstants.ATT_NULL_VALUE_TYPE.equals(attributeName)) {
+                        referenceType.setValueType(anyURI(attribute.getValue()));
+                    } else {
+                        otherAttribute(attribute, referenceType.getOtherAttributes());
+                    }
+                }
+                emptyContent();
+                securityTokenReferenceType.getAny().add(WSSE_OBJECT_FACTORY.createReference(referenceType));
+            } else if (WSSConstants.TAG_WSSE_KEY_IDENTIFIER.equals(name)) {
+                KeyIdentifierType keyIdentifierType = new KeyIdentifierType();
+                for (XMLSecAttribute attribute : child.getOnElementDeclaredAttributes()) {
+                    QName attributeName = attribute.getName();
+                    if (WSSConstants.ATT_NULL_VALUE_TYPE.equals(attributeName)) {
+                        keyIdentifierType.setValueType(anyURI(attribute.getValue()));
+                    } else if (WSSConstants.ATT_NULL_ENCODING_TYPE.equals(attributeName)) {
+                        keyIdentifierType.setEncodingType(anyURI(attribute.getValue()));
+                    } else {
+                        attributedStringAttribute(attribute, keyIdentifierType);
+                    }
+                }
+                keyIdentifierType.setValue(text());
+                securityTokenReferenceType.getAny().add(WSSE_OBJECT_FACTORY.createKeyIdentifier(keyIdentifierType));
+            } else {
+                throw UNSUPPORTED;
+            }
+        }
+        endElement();
+        return securityTokenReferenceType;
+    }
+
+    private ReferenceList referenceList(XMLSecStartElement element) throws UnsupportedStructureException {
+        if (!element.getOnElementDeclaredAttributes().isEmpty()) {
+            throw UNSUPPORTED;
+        }
+
+        ReferenceList referenceList = new ReferenceList();
+        List<JAXBElement<org.apache.xml.security.binding.xmlenc.ReferenceType>> references =
+            referenceList.getDataReferenceOrKeyReference();
+        XMLSecStartElement child;
+        while ((child = nextStartElement()) != null) {
+            QName name = child.getName();
+            if (!TAG_XENC_DATA_REFERENCE.equals(name) && !TAG_XENC_KEY_REFERENCE.equals(name)) {
+                throw UNSUPPORTED;
+            }
+            List<XMLSecAttribute> attributes = child.getOnElementDeclaredAttributes();
+            if (attributes.size() != 1 || !WSSConstants.ATT_NULL_URI.equals(attributes.get(0).getName())) {
+                throw UNSUPPORTED;
+            }
+            org.apache.xml.security.binding.xmlenc.ReferenceType referenceType =
+                new org.apache.xml.security.binding.xmlenc.ReferenceType();
+            referenceType.setURI(anyURI(attributes.get(0).getValue()));
+            if (nextStartElement() != null) {
+                throw UNSUPPORTED;
+            }
+            endElement();
+            references.add(new JAXBElement<>(name, org.apache.xml.security.binding.xmlenc.ReferenceType.class,
+                                             ReferenceList.class, referenceType));
+        }
+        if (references.isEmpty()) {
+            throw UNSUPPORTED;
+        }
+        endElement();
+        return referenceList;
+    }
+
+    private AbstractDerivedKeyTokenType derivedKeyToken() throws UnsupportedStructureException {
+        XMLSecStartElement element = rootElement(null);
+        String namespace = element.getName().getNamespaceURI();
+        boolean wsc0512 = WSSConstants.TAG_WSC0512_DKT.equals(element.getName());
+        if (!wsc0512 && !WSSConstants.TAG_WSC0502_DKT.equals(element.getName())) {
+            throw UNSUPPORTED;
+        }
+
+        String id = null;
+        String algorithm = null;
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            QName name = attribute.getName();
+            if (WSSConstants.ATT_WSU_ID.equals(name)) {
+                id = id(attribute.getValue());
+            } else if (WSSConstants.ATT_NULL_Algorithm.equals(name)) {
+                algorithm = anyURI(attribute.getValue());
+            } else {
+                throw UNSUPPORTED;
+            }
+        }
+
+        SecurityTokenReferenceType securityTokenReference = null;
+        BigInteger generation = null;
+        BigInteger offset = null;
+        BigInteger length = null;
+        String label = null;
+        byte[] nonce = null;
+
+        XMLSecStartElement child = nextStartElement();
+        if (child != null && WSSConstants.TAG_WSSE_SECURITY_TOKEN_REFERENCE.equals(child.getName())) {
+            securityTokenReference = securityTokenReference(child);
+            child = nextStartElement();
+        }
+        if (child != null && isChild(child, namespace, "Generation")) {
+            generation = unsignedLong(text());
+            child = nextStartElement();
+        } else if (child != null && isChild(child, namespace, "Offset")) {
+            offset = unsignedLong(text());
+            child = nextStartElement();
+        }
+        if (child != null && (generation != null || offset != null) && isChild(child, namespace, "Length")) {
+            length = unsignedLong(text());
+            child = nextStartElement();
+        }
+        if (child != null && isChild(child, namespace, "Label")) {
+            label = text();
+            child = nextStartElement();
+        }
+        if (child != null && isChild(child, namespace, "Nonce")) {
+            nonce = base64Binary(text());
+            child = nextStartElement();
+        }
+        if (child != null) {
+            throw UNSUPPORTED;
+        }
+        endElement();
+
+        if (wsc0512) {
+            org.apache.wss4j.binding.wssc13.DerivedKeyTokenType derivedKeyTokenType =
+                new org.apache.wss4j.binding.wssc13.DerivedKeyTokenType();
+            derivedKeyTokenType.setId(id);
+            derivedKeyTokenType.setAlgorithm(algorithm);
+            derivedKeyTokenType.setSecurityTokenReference(securityTokenReference);
+            derivedKeyTokenType.setGeneration(generation);
+            derivedKeyTokenType.setOffset(offset);
+            derivedKeyTokenType.setLength(length);
+            derivedKeyTokenType.setLabel(label);
+            derivedKeyTokenType.setNonce(nonce);
+            return derivedKeyTokenType;
+        }
+        org.apache.wss4j.binding.wssc200502.DerivedKeyTokenType derivedKeyTokenType =
+            new org.apache.wss4j.binding.wssc200502.DerivedKeyTokenType();
+        derivedKeyTokenType.setId(id);
+        derivedKeyTokenType.setAlgorithm(algorithm);
+        derivedKeyTokenType.setSecurityTokenReference(securityTokenReference);
+        derivedKeyTokenType.setGeneration(generation);
+        derivedKeyTokenType.setOffset(offset);
+        derivedKeyTokenType.setLength(length);
+        derivedKeyTokenType.setLabel(label);
+        derivedKeyTokenType.setNonce(nonce);
+        return derivedKeyTokenType;
+    }
+
+    private static boolean isChild(XMLSecStartElement element, String namespace, String localName) {
+        QName name = element.getName();
+        return namespace.equals(name.getNamespaceURI()) && localName.equals(name.getLocalPart());
+    }
+
+    private AttributedDateTime attributedDateTime(XMLSecStartElement element) throws UnsupportedStructureException {
+        AttributedDateTime attributedDateTime = new AttributedDateTime();
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+                attributedDateTime.setId(id(attribute.getValue()));
+            } else {
+                otherAttribute(attribute, attributedDateTime.getOtherAttributes());
+            }
+        }
+        attributedDateTime.setValue(text());
+        return attributedDateTime;
+    }
+
+    private void attributedString(XMLSecStartElement element, AttributedString attributedString)
+        throws UnsupportedStructureException {
+        for (XMLSecAttribute attribute : element.getOnElementDeclaredAttributes()) {
+            attributedStringAttribute(attribute, attributedString);
+        }
+        attributedString.setValue(text());
+    }
+
+    private void attributedStringAttribute(XMLSecAttribute attribute, AttributedString attributedString)
+        throws UnsupportedStructureException {
+        if (WSSConstants.ATT_WSU_ID.equals(attribute.getName())) {
+            attributedString.setId(id(attribute.getValue()));
+        } else {
+            otherAttribute(attribute, attributedString.getOtherAttributes());
+        }
+    }
+
+    /**
+     * Extension attributes are only accepted if their type is known, as the schema validates them
+     * if it declares them. The attribute must not be in the namespace of the element, which is
+     * WS-Security 1.0 or WS-Security Utility for all the elements with an extension attribute.
+     */
+    private void otherAttribute(XMLSecAttribute attribute, Map<QName, String> otherAttributes)
+        throws UnsupportedStructureException {
+        QName name = attribute.getName();
+        if (WSSConstants.ATT_WSU_ID.equals(name)) {
+            otherAttributes.put(name, id(attribute.getValue()));
+        } else if (WSSConstants.ATT_WSSE11_TOKEN_TYPE.equals(name)) {
+            otherAttributes.put(name, anyURI(attribute.getValue()));
+        } else {
+            throw UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Accept ASCII NCNames only, which are not changed by the whitespace collapsing of xsd:ID
+     */
+    private String id(String value) throws UnsupportedStructureException {
+        if (value.isEmpty() || !ids.add(value)) {
+            throw UNSUPPORTED;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            boolean valid = c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_'
+                || i > 0 && (c >= '0' && c <= '9' || c == '-' || c == '.');
+            if (!valid) {
+                throw UNSUPPORTED;
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Accept URI references that consist of ASCII URI characters with well-formed escapes only
+     */
+    private static String anyURI(String value) throws UnsupportedStructureException {
+        boolean fragment = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                || "-._~:/?@!$&'()*+,;=".indexOf(c) >= 0) {
+                continue;
+            }
+            if (c == '#' && !fragment) {
+                fragment = true;
+            } else if (c == '%' && i + 2 < value.length()
+                && Character.digit(value.charAt(i + 1), 16) >= 0 && Character.digit(value.charAt(i + 2), 16) >= 0) {
+                i += 2;
+            } else {
+                throw UNSUPPORTED;
+            }
+        }
+        return value;
+    }
+
+    private static BigInteger unsignedLong(String value) throws UnsupportedStructureException {
+        if (value.isEmpty() || value.length() > 20) {
+            throw UNSUPPORTED;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw UNSUPPORTED;
+            }
+        }
+        BigInteger unsignedLong = new BigInteger(value);
+        if (unsignedLong.compareTo(MAX_UNSIGNED_LONG) > 0) {
+            throw UNSUPPORTED;
+        }
+        return unsignedLong;
+    }
+
+    /**
+     * Accept canonical base64 without whitespace only
+     */
+    private static byte[] base64Binary(String value) throws UnsupportedStructureException {
+        byte[] bytes;
+        try {
+            bytes = Base64.getDecoder().decode(value);
+        } catch (IllegalArgumentException e) {
+            throw UNSUPPORTED;
+        }
+        if (!Base64.getEncoder().encodeToString(bytes).equals(value)) {
+            throw UNSUPPORTED;
+        }
+        return bytes;
+    }
+
+    private XMLSecStartElement rootElement(QName name) throws UnsupportedStructureException {
+        if (xmlSecEvents.isEmpty() || xmlSecEvents.get(0).getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw UNSUPPORTED;
+        }
+        XMLSecStartElement element = xmlSecEvents.get(0).asStartElement();
+        if (name != null && !name.equals(element.getName())) {
+            throw UNSUPPORTED;
+        }
+        position = 1;
+        return element;
+    }
+
+    private void finish() throws UnsupportedStructureException {
+        if (position != xmlSecEvents.size()) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Return the next child element of element-only content, or null if the end of the parent
+     * element is reached. The end element itself is not consumed.
+     */
+    private XMLSecStartElement nextStartElement() throws UnsupportedStructureException {
+        while (position < xmlSecEvents.size()) {
+            XMLSecEvent xmlSecEvent = xmlSecEvents.get(position);
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    position++;
+                    return xmlSecEvent.asStartElement();
+                case XMLStreamConstants.END_ELEMENT:
+                    return null;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.SPACE:
+                    if (!xmlSecEvent.asCharacters().isWhiteSpace()) {
+                        throw UNSUPPORTED;
+                    }
+                    position++;
+                    break;
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    position++;
+                    break;
+                default:
+                    throw UNSUPPORTED;
+            }
+        }
+        throw UNSUPPORTED;
+    }
+
+    private void endElement() throws UnsupportedStructureException {
+        if (nextStartElement() != null) {
+            throw UNSUPPORTED;
+        }
+        position++;
+    }
+
+    /**
+     * Read the content of an element without any character or element children
+     */
+    private void emptyContent() throws UnsupportedStructureException {
+        while (position < xmlSecEvents.size()) {
+            switch (xmlSecEvents.get(position++).getEventType()) {
+                case XMLStreamConstants.END_ELEMENT:
+                    return;
+                case XMLStreamConstants.COMMENT:
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    break;
+                default:
+                    throw UNSUPPORTED;
+            }
+        }
+        throw UNSUPPORTED;
+    }
+
+    /**
+     * Read the text of a simple content element, up to and including its end element
+     */
+    private String text() throws UnsupportedStructureException {
+        String text = null;
+        StringBuilder stringBuilder = null;
+        while (position < xmlSecEvents.size()) {
+            XMLSecEvent xmlSecEvent = xmlSecEvents.get(position++);
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.END_ELEMENT:
+                    if (stringBuilder != null) {
+                        return stringBuilder.toString();
+                    }
+                    return text == null ? "" : text;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    String characters = xmlSecEvent.asCharacters().getText();
+                    if (text == null) {
+                        text = characters;
+                    } else {
+                        if (stringBuilder == null) {
+                            stringBuilder = new StringBuilder(text);
+                        }
+                        stringBuilder.append(characters);
+                    }
+                    break;
+                default:
+                    throw UNSUPPORTED;
+            }
+        }
+        throw UNSUPPORTED;
+    }
+
+    private static final class UnsupportedStructureException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedStructureException() {
+            super(null, null, false, false);
+        }
+    }
+}
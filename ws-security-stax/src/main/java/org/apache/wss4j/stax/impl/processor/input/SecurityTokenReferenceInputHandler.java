@@ -59,9 +59,14 @@ public class SecurityTokenReferenceInputHandler extends AbstractInputSecurityHea
     public void handle(final InputProcessorChain inputProcessorChain, final XMLSecurityProperties securityProperties,
                        Deque<XMLSecEvent> eventQueue, Integer index) throws XMLSecurityException {
 
-        @SuppressWarnings("unchecked")
-        final SecurityTokenReferenceType securityTokenReferenceType =
-                ((JAXBElement<SecurityTokenReferenceType>) parseStructure(eventQueue, index, securityProperties)).getValue();
+        SecurityTokenReferenceType securityTokenReferenceType =
+                SecurityHeaderElementParser.parseSecurityTokenReference(getResponsibleXMLSecEvents(eventQueue, index));
+        if (securityTokenReferenceType == null) {
+            @SuppressWarnings("unchecked")
+            JAXBElement<SecurityTokenReferenceType> securityTokenReferenceTypeJAXBElement =
+                    (JAXBElement<SecurityTokenReferenceType>) parseStructure(eventQueue, index, securityProperties);
+            securityTokenReferenceType = securityTokenReferenceTypeJAXBElement.getValue();
+        }
 
         QName attributeName = null;
         String attributeValue = null;
@@ -65,11 +65,15 @@ public class TimestampInputHandler extends AbstractInputSecurityHeaderHandler {
         }
         wssecurityContextInbound.put(WSSConstants.TIMESTAMP_PROCESSED, Boolean.TRUE);
 
-        @SuppressWarnings("unchecked")
-        final TimestampType timestampType =
-                ((JAXBElement<TimestampType>) parseStructure(eventQueue, index, securityProperties)).getValue();
-
         final List<XMLSecEvent> xmlSecEvents = getResponsibleXMLSecEvents(eventQueue, index);
+        TimestampType timestampType = SecurityHeaderElementParser.parseTimestamp(xmlSecEvents);
+        if (timestampType == null) {
+            @SuppressWarnings("unchecked")
+            JAXBElement<TimestampType> timestampTypeJAXBElement =
+                    (JAXBElement<TimestampType>) parseStructure(eventQueue, index, securityProperties);
+            timestampType = timestampTypeJAXBElement.getValue();
+        }
+
         List<QName> elementPath = getElementPath(eventQueue);
 
         checkBSPCompliance(inputProcessorChain, timestampType, xmlSecEvents);
@@ -18,17 +18,22 @@
  */
 package org.apache.wss4j.stax.impl.processor.input;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.time.Instant;
 import java.time.temporal.ChronoField;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.security.auth.callback.Callback;
 import javax.security.auth.callback.CallbackHandler;
@@ -43,6 +48,8 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.BufferedAttachmentInputStream;
+import org.apache.wss4j.common.util.DigestTasks;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -77,7 +84,11 @@ import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 
 public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignatureReferenceVerifyInputProcessor {
 
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(WSSSignatureReferenceVerifyInputProcessor.class);
+
     private boolean replayChecked = false;
+    private Set<ReferenceType> verifiedAttachmentReferences;
 
     public WSSSignatureReferenceVerifyInputProcessor(InputProcessorChain inputProcessorChain,
             SignatureType signatureType, InboundSecurityToken inboundSecurityToken,
@@ -94,108 +105,190 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             final ReferenceType referenceType) throws XMLSecurityException, XMLStreamException {
 
         if (referenceType.getURI().startsWith("cid:")) {
-
-            CallbackHandler attachmentCallbackHandler =
-                    ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
-            if (attachmentCallbackHandler == null) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY,
-                        "empty", new Object[] {"no attachment callbackhandler supplied"}
-                );
+            if (((WSSSecurityProperties) getSecurityProperties()).isParallelAttachmentDigest()) {
+                //all the attachments are digested concurrently when the first one is verified
+                if (verifiedAttachmentReferences == null) {
+                    verifyAttachmentReferences(inputProcessorChain);
+                }
+                if (verifiedAttachmentReferences.contains(referenceType)) {
+                    return;
+                }
             }
-
-            String attachmentId = AttachmentUtils.getAttachmentId(referenceType.getURI());
-
-            AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
-            attachmentRequestCallback.setAttachmentId(attachmentId);
+            AttachmentReference attachmentReference = prepareAttachmentReference(inputProcessorChain, referenceType);
             try {
-                attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
-            } catch (Exception e) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+                attachmentReference.digest();
+                verifyAttachmentReference(inputProcessorChain, attachmentReference);
+            } finally {
+                attachmentReference.release();
             }
-            List<Attachment> attachments = attachmentRequestCallback.getAttachments();
-            if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY,
-                        "empty", new Object[] {"Attachment not found"}
-                );
+        } else {
+            super.verifyExternalReference(
+                    inputProcessorChain, inputStream, referenceType);
+        }
+    }
+
+    /**
+     * Digest the attachments of all the cid: References concurrently, and verify them in the order
+     * of the References. The attachments are requested, and the security events are registered, on
+     * the calling thread, as the CallbackHandler and the SecurityContext are not thread-safe.
+     * An attachment that is referenced more than once is only digested concurrently for its first
+     * Reference, as its source stream can only be read once at a time.
+     */
+    private void verifyAttachmentReferences(InputProcessorChain inputProcessorChain)
+            throws XMLSecurityException, XMLStreamException {
+        verifiedAttachmentReferences = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        List<AttachmentReference> attachmentReferences = new ArrayList<>();
+        try {
+            Set<String> attachmentIds = new HashSet<>();
+            for (ReferenceType referenceType : getSignatureType().getSignedInfo().getReference()) {
+                String uri = referenceType.getURI();
+                if (uri != null && uri.startsWith("cid:") && attachmentIds.add(AttachmentUtils.getAttachmentId(uri))) {
+                    attachmentReferences.add(prepareAttachmentReference(inputProcessorChain, referenceType));
+                }
             }
 
-            final Attachment attachment = attachments.get(0);
+            Executor executor = ((WSSSecurityProperties) getSecurityProperties()).getAttachmentDigestExecutor();
+            if (executor == null) {
+                executor = DigestTasks.getDefaultExecutor();
+            }
+            List<Runnable> tasks = new ArrayList<>(attachmentReferences.size());
+            for (AttachmentReference attachmentReference : attachmentReferences) {
+                tasks.add(attachmentReference::digest);
+            }
+            DigestTasks.runAll(tasks, executor);
 
-            InputStream attachmentInputStream = attachment.getSourceStream();
-            if (!attachmentInputStream.markSupported()) {
-                attachmentInputStream = new BufferedInputStream(attachmentInputStream);
+            for (AttachmentReference attachmentReference : attachmentReferences) {
+                verifyAttachmentReference(inputProcessorChain, attachmentReference);
+                verifiedAttachmentReferences.add(attachmentReference.referenceType);
+            }
+        } finally {
+            for (AttachmentReference attachmentReference : attachmentReferences) {
+                attachmentReference.release();
             }
-            //todo workaround 2GB limit somehow?
-            attachmentInputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
+        }
+    }
 
-            try {
-                DigestOutputStream digestOutputStream =
-                        createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
-                UnsyncBufferedOutputStream bufferedDigestOutputStream =
-                        new UnsyncBufferedOutputStream(digestOutputStream);
-
-                if (referenceType.getTransforms() != null) {
-                    Transformer transformer =
-                            buildTransformerChain(referenceType, bufferedDigestOutputStream, inputProcessorChain, null);
-                    if (!(transformer instanceof AttachmentContentSignatureTransform)) {
-                        throw new WSSecurityException(
-                                WSSecurityException.ErrorCode.INVALID_SECURITY,
-                                "empty",
-                                new Object[] {"First transform must be Attachment[Content|Complete]SignatureTransform"}
-                        );
-                    }
-                    Map<String, Object> transformerProperties = new HashMap<>(2);
-                    transformerProperties.put(
-                            AttachmentContentSignatureTransform.ATTACHMENT, attachment);
-                    transformer.setProperties(transformerProperties);
+    private AttachmentReference prepareAttachmentReference(
+            InputProcessorChain inputProcessorChain, ReferenceType referenceType) throws XMLSecurityException {
 
-                    transformer.transform(attachmentInputStream);
+        CallbackHandler attachmentCallbackHandler =
+                ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler();
+        if (attachmentCallbackHandler == null) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY,
+                    "empty", new Object[] {"no attachment callbackhandler supplied"}
+            );
+        }
 
-                    bufferedDigestOutputStream.close();
-                } else {
-                    XMLSecurityUtils.copy(attachmentInputStream, bufferedDigestOutputStream);
-                    bufferedDigestOutputStream.close();
-                }
-                compareDigest(digestOutputStream.getDigestValue(), referenceType);
+        String attachmentId = AttachmentUtils.getAttachmentId(referenceType.getURI());
 
-                //reset the inputStream to be able to reuse it
-                attachmentInputStream.reset();
+        AttachmentRequestCallback attachmentRequestCallback = new AttachmentRequestCallback();
+        attachmentRequestCallback.setAttachmentId(attachmentId);
+        try {
+            attachmentCallbackHandler.handle(new Callback[]{attachmentRequestCallback});
+        } catch (Exception e) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY, e);
+        }
+        List<Attachment> attachments = attachmentRequestCallback.getAttachments();
+        if (attachments == null || attachments.isEmpty() || !attachmentId.equals(attachments.get(0).getId())) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY,
+                    "empty", new Object[] {"Attachment not found"}
+            );
+        }
 
-            } catch (IOException e) {
-                throw new XMLSecurityException(e);
+        AttachmentReference attachmentReference =
+            new AttachmentReference(referenceType, attachmentId, attachments.get(0));
+        boolean prepared = false;
+        try {
+            attachmentReference.attachmentInputStream = new BufferedAttachmentInputStream(
+                    attachmentReference.attachment.getSourceStream(),
+                    ((WSSSecurityProperties) getSecurityProperties()).getAttachmentBufferFactory());
+
+            attachmentReference.digestOutputStream =
+                    createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
+            attachmentReference.bufferedDigestOutputStream =
+                    new UnsyncBufferedOutputStream(attachmentReference.digestOutputStream);
+
+            if (referenceType.getTransforms() != null) {
+                Transformer transformer = buildTransformerChain(
+                        referenceType, attachmentReference.bufferedDigestOutputStream, inputProcessorChain, null);
+                if (!(transformer instanceof AttachmentContentSignatureTransform)) {
+                    throw new WSSecurityException(
+                            WSSecurityException.ErrorCode.INVALID_SECURITY,
+                            "empty",
+                            new Object[] {"First transform must be Attachment[Content|Complete]SignatureTransform"}
+                    );
+                }
+                Map<String, Object> transformerProperties = new HashMap<>(2);
+                transformerProperties.put(
+                        AttachmentContentSignatureTransform.ATTACHMENT, attachmentReference.attachment);
+                transformer.setProperties(transformerProperties);
+                attachmentReference.transformer = transformer;
             }
+            prepared = true;
+        } catch (IOException e) {
+            throw new XMLSecurityException(e);
+        } finally {
+            if (!prepared) {
+                attachmentReference.release();
+            }
+        }
+        return attachmentReference;
+    }
 
-            //create a new attachment and do the result callback
-            final Attachment resultAttachment = new Attachment();
-            resultAttachment.setId(attachmentId);
-            resultAttachment.setMimeType(attachment.getMimeType());
-            resultAttachment.addHeaders(attachment.getHeaders());
-            resultAttachment.setSourceStream(attachmentInputStream);
+    private void verifyAttachmentReference(
+            InputProcessorChain inputProcessorChain, AttachmentReference attachmentReference)
+            throws XMLSecurityException, XMLStreamException {
 
-            AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
-            attachmentResultCallback.setAttachmentId(attachmentId);
-            attachmentResultCallback.setAttachment(resultAttachment);
-            try {
-                attachmentCallbackHandler.handle(new Callback[]{attachmentResultCallback});
-            } catch (Exception e) {
-                throw new WSSecurityException(
-                        WSSecurityException.ErrorCode.INVALID_SECURITY, e);
-            }
+        if (attachmentReference.exception instanceof XMLSecurityException) {
+            throw (XMLSecurityException) attachmentReference.exception;
+        } else if (attachmentReference.exception instanceof XMLStreamException) {
+            throw (XMLStreamException) attachmentReference.exception;
+        } else if (attachmentReference.exception != null) {
+            throw new XMLSecurityException(attachmentReference.exception);
+        }
 
-            // Create a security event for this signed Attachment
-            final DocumentContext documentContext = inputProcessorChain.getDocumentContext();
-            SignedPartSecurityEvent signedPartSecurityEvent =
-                new SignedPartSecurityEvent(getInboundSecurityToken(), true, documentContext.getProtectionOrder());
-            signedPartSecurityEvent.setAttachment(true);
-            signedPartSecurityEvent.setCorrelationID(referenceType.getId());
-            inputProcessorChain.getSecurityContext().registerSecurityEvent(signedPartSecurityEvent);
-        } else {
-            super.verifyExternalReference(
-                    inputProcessorChain, inputStream, referenceType);
+        final ReferenceType referenceType = attachmentReference.referenceType;
+        final String attachmentId = attachmentReference.attachmentId;
+        compareDigest(attachmentReference.digestOutputStream.getDigestValue(), referenceType);
+
+        //read the attachment again from the start to be able to reuse it
+        InputStream resultInputStream;
+        try {
+            resultInputStream = attachmentReference.attachmentInputStream.getReplayStream();
+        } catch (IOException e) {
+            throw new XMLSecurityException(e);
+        }
+        attachmentReference.attachmentInputStream = null;
+
+        //create a new attachment and do the result callback
+        final Attachment resultAttachment = new Attachment();
+        resultAttachment.setId(attachmentId);
+        resultAttachment.setMimeType(attachmentReference.attachment.getMimeType());
+        resultAttachment.addHeaders(attachmentReference.attachment.getHeaders());
+        resultAttachment.setSourceStream(resultInputStream);
+
+        AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
+        attachmentResultCallback.setAttachmentId(attachmentId);
+        attachmentResultCallback.setAttachment(resultAttachment);
+        try {
+            ((WSSSecurityProperties) getSecurityProperties()).getAttachmentCallbackHandler()
+                .handle(new Callback[]{attachmentResultCallback});
+        } catch (Exception e) {
+            throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY, e);
         }
+
+        // Create a security event for this signed Attachment
+        final DocumentContext documentContext = inputProcessorChain.getDocumentContext();
+        SignedPartSecurityEvent signedPartSecurityEvent =
+            new SignedPartSecurityEvent(getInboundSecurityToken(), true, documentContext.getProtectionOrder());
+        signedPartSecurityEvent.setAttachment(true);
+        signedPartSecurityEvent.setCorrelationID(referenceType.getId());
+        inputProcessorChain.getSecurityContext().registerSecurityEvent(signedPartSecurityEvent);
     }
 
     private void checkBSPCompliance(WSInboundSecurityContext securityContext) throws WSSecurityException {
@@ -316,16 +409,10 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             final String cacheKey =
                     timestampSecurityEvent.getCreated().get(ChronoField.MILLI_OF_SECOND)
                     + "" + Arrays.hashCode(getSignatureType().getSignatureValue().getValue());
-            if (replayCache.contains(cacheKey)) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.MESSAGE_EXPIRED);
-            }
-
-            // Store the Timestamp/SignatureValue combination in the cache
+            // Store the Timestamp/SignatureValue combination in the cache, unless it is already there
             Instant expires = timestampSecurityEvent.getExpires();
-            if (expires != null) {
-                replayCache.add(cacheKey, expires);
-            } else {
-                replayCache.add(cacheKey);
+            if (!replayCache.addIfAbsent(cacheKey, expires)) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.MESSAGE_EXPIRED);
             }
         }
     }
@@ -445,4 +532,53 @@ public class WSSSignatureReferenceVerifyInputProcessor extends AbstractSignature
             this.addAfterProcessor(WSSSignatureReferenceVerifyInputProcessor.class.getName());
         }
     }
+
+    /**
+     * An attachment referenced by the Signature, with the transforms and the digest stream to
+     * verify it with. Only digest() may be called on a thread other than the processing thread.
+     */
+    private static final class AttachmentReference {
+
+        private final ReferenceType referenceType;
+        private final String attachmentId;
+        private final Attachment attachment;
+        private BufferedAttachmentInputStream attachmentInputStream;
+        private DigestOutputStream digestOutputStream;
+        private UnsyncBufferedOutputStream bufferedDigestOutputStream;
+        private Transformer transformer;
+        private Exception exception;
+
+        AttachmentReference(ReferenceType referenceType, String attachmentId, Attachment attachment) {
+            this.referenceType = referenceType;
+            this.attachmentId = attachmentId;
+            this.attachment = attachment;
+        }
+
+        void digest() {
+            try {
+                if (transformer != null) {
+                    transformer.transform(attachmentInputStream);
+                } else {
+                    XMLSecurityUtils.copy(attachmentInputStream, bufferedDigestOutputStream);
+                }
+                bufferedDigestOutputStream.close();
+            } catch (Exception e) {
+                exception = e;
+            }
+        }
+
+        /**
+         * Release the attachment buffer, unless the attachment was passed on in the result callback
+         */
+        void release() {
+            if (attachmentInputStream != null) {
+                try {
+                    attachmentInputStream.release();
+                } catch (IOException e) {
+                    LOG.debug("Error releasing the attachment buffer: {}", e.getMessage());
+                }
+                attachmentInputStream = null;
+            }
+        }
+    }
 }
@@ -40,6 +40,7 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSSConstants;
@@ -274,71 +275,42 @@ public class EncryptedKeyOutputProcessor extends AbstractOutputProcessor {
                 createStartElementAndOutputAsEvent(subOutputProcessorChain, WSSConstants.TAG_xenc_CipherData, false, null);
                 createStartElementAndOutputAsEvent(subOutputProcessorChain, WSSConstants.TAG_xenc_CipherValue, false, null);
 
-                try {
-                    //encrypt the symmetric session key with the public key from the receiver:
-                    String jceid = JCEAlgorithmMapper.translateURItoJCEID(encryptionKeyTransportAlgorithm);
-                    Cipher cipher = Cipher.getInstance(jceid);
-
-                    AlgorithmParameterSpec algorithmParameterSpec = null;
-                    if (XMLSecurityConstants.NS_XENC11_RSAOAEP.equals(encryptionKeyTransportAlgorithm)
-                        || XMLSecurityConstants.NS_XENC_RSAOAEPMGF1P.equals(encryptionKeyTransportAlgorithm)) {
-
-                        String jceDigestAlgorithm = "SHA-1";
-                        String encryptionKeyTransportDigestAlgorithm =
-                            getSecurityProperties().getEncryptionKeyTransportDigestAlgorithm();
-                        if (encryptionKeyTransportDigestAlgorithm != null) {
-                            jceDigestAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(encryptionKeyTransportDigestAlgorithm);
-                        }
-
-                        PSource.PSpecified pSource = PSource.PSpecified.DEFAULT;
-                        byte[] oaepParams = getSecurityProperties().getEncryptionKeyTransportOAEPParams();
-                        if (oaepParams != null) {
-                            pSource = new PSource.PSpecified(oaepParams);
-                        }
-
-                        MGF1ParameterSpec mgfParameterSpec = new MGF1ParameterSpec("SHA-1");
-                        if (encryptionKeyTransportMGFAlgorithm != null) {
-                            String jceMGFAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(encryptionKeyTransportMGFAlgorithm);
-                            mgfParameterSpec = new MGF1ParameterSpec(jceMGFAlgorithm);
-                        }
-                        algorithmParameterSpec = new OAEPParameterSpec(jceDigestAlgorithm, "MGF1", mgfParameterSpec, pSource);
-                    }
-
-                    cipher.init(Cipher.WRAP_MODE, publicKey, algorithmParameterSpec);
-
-                    Key secretKey = securityToken.getSecretKey("");
+                Key secretKey = securityToken.getSecretKey("");
+
+                // Reuse the EncryptedKey of an earlier message, if its session key is reused
+                EncryptedKeySessionCache encryptedKeySessionCache =
+                    ((WSSSecurityProperties)getSecurityProperties()).getEncryptedKeySessionCache();
+                String sessionKey = null;
+                byte[] encryptedEphemeralKey = null;
+                if (encryptedKeySessionCache != null) {
+                    sessionKey =
+                        WSSUtils.getEncryptedKeySessionKey((WSSSecurityProperties)getSecurityProperties(), publicKey);
+                    encryptedEphemeralKey = encryptedKeySessionCache.getEncryptedKey(sessionKey, secretKey);
+                }
 
-                    int blockSize = cipher.getBlockSize();
-                    if (blockSize > 0 && blockSize < secretKey.getEncoded().length) {
-                        throw new WSSecurityException(
-                                WSSecurityException.ErrorCode.FAILURE,
-                                "unsupportedKeyTransp",
-                                new Object[] {"public key algorithm too weak to encrypt symmetric key"}
-                        );
+                if (encryptedEphemeralKey == null) {
+                    encryptedEphemeralKey =
+                        wrapSecretKey(publicKey, secretKey, encryptionKeyTransportAlgorithm, encryptionKeyTransportMGFAlgorithm);
+                    if (encryptedKeySessionCache != null) {
+                        encryptedKeySessionCache.setEncryptedKey(sessionKey, secretKey, encryptedEphemeralKey);
                     }
-                    byte[] encryptedEphemeralKey = cipher.wrap(secretKey);
-
-                    if (((WSSSecurityProperties)getSecurityProperties()).getCallbackHandler() != null) {
-                        // Store the Encrypted Key in the CallbackHandler for processing on the inbound side
-                        WSPasswordCallback callback =
-                            new WSPasswordCallback(securityToken.getId(), WSPasswordCallback.SECRET_KEY);
-                        callback.setKey(encryptedEphemeralKey);
-                        try {
-                            ((WSSSecurityProperties)getSecurityProperties()).getCallbackHandler().handle(new Callback[]{callback});
-                        } catch (IOException | UnsupportedCallbackException e) { // NOPMD
-                            // Do nothing
-                        }
-                    }
-
-                    createCharactersAndOutputAsEvent(subOutputProcessorChain,
-                                                     XMLUtils.encodeToString(encryptedEphemeralKey));
+                }
 
-                } catch (NoSuchPaddingException | NoSuchAlgorithmException
-                    | InvalidKeyException | IllegalBlockSizeException
-                    | InvalidAlgorithmParameterException e) {
-                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+                if (((WSSSecurityProperties)getSecurityProperties()).getCallbackHandler() != null) {
+                    // Store the Encrypted Key in the CallbackHandler for processing on the inbound side
+                    WSPasswordCallback callback =
+                        new WSPasswordCallback(securityToken.getId(), WSPasswordCallback.SECRET_KEY);
+                    callback.setKey(encryptedEphemeralKey);
+                    try {
+                        ((WSSSecurityProperties)getSecurityProperties()).getCallbackHandler().handle(new Callback[]{callback});
+                    } catch (IOException | UnsupportedCallbackException e) { // NOPMD
+                        // Do nothing
+                    }
                 }
 
+                createCharactersAndOutputAsEvent(subOutputProcessorChain,
+                                                 XMLUtils.encodeToString(encryptedEphemeralKey));
+
                 createEndElementAndOutputAsEvent(subOutputProcessorChain, WSSConstants.TAG_xenc_CipherValue);
                 createEndElementAndOutputAsEvent(subOutputProcessorChain, WSSConstants.TAG_xenc_CipherData);
 
@@ -350,6 +322,59 @@ public class EncryptedKeyOutputProcessor extends AbstractOutputProcessor {
             }
         }
 
+        /**
+         * Encrypt the symmetric session key with the public key from the receiver
+         */
+        private byte[] wrapSecretKey(
+                PublicKey publicKey, Key secretKey, String encryptionKeyTransportAlgorithm,
+                String encryptionKeyTransportMGFAlgorithm) throws XMLSecurityException {
+            try {
+                String jceid = JCEAlgorithmMapper.translateURItoJCEID(encryptionKeyTransportAlgorithm);
+                Cipher cipher = Cipher.getInstance(jceid);
+
+                AlgorithmParameterSpec algorithmParameterSpec = null;
+                if (XMLSecurityConstants.NS_XENC11_RSAOAEP.equals(encryptionKeyTransportAlgorithm)
+                    || XMLSecurityConstants.NS_XENC_RSAOAEPMGF1P.equals(encryptionKeyTransportAlgorithm)) {
+
+                    String jceDigestAlgorithm = "SHA-1";
+                    String encryptionKeyTransportDigestAlgorithm =
+                        getSecurityProperties().getEncryptionKeyTransportDigestAlgorithm();
+                    if (encryptionKeyTransportDigestAlgorithm != null) {
+                        jceDigestAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(encryptionKeyTransportDigestAlgorithm);
+                    }
+
+                    PSource.PSpecified pSource = PSource.PSpecified.DEFAULT;
+                    byte[] oaepParams = getSecurityProperties().getEncryptionKeyTransportOAEPParams();
+                    if (oaepParams != null) {
+                        pSource = new PSource.PSpecified(oaepParams);
+                    }
+
+                    MGF1ParameterSpec mgfParameterSpec = new MGF1ParameterSpec("SHA-1");
+                    if (encryptionKeyTransportMGFAlgorithm != null) {
+                        String jceMGFAlgorithm = JCEAlgorithmMapper.translateURItoJCEID(encryptionKeyTransportMGFAlgorithm);
+                        mgfParameterSpec = new MGF1ParameterSpec(jceMGFAlgorithm);
+                    }
+                    algorithmParameterSpec = new OAEPParameterSpec(jceDigestAlgorithm, "MGF1", mgfParameterSpec, pSource);
+                }
+
+                cipher.init(Cipher.WRAP_MODE, publicKey, algorithmParameterSpec);
+
+                int blockSize = cipher.getBlockSize();
+                if (blockSize > 0 && blockSize < secretKey.getEncoded().length) {
+                    throw new WSSecurityException(
+                            WSSecurityException.ErrorCode.FAILURE,
+                            "unsupportedKeyTransp",
+                            new Object[] {"public key algorithm too weak to encrypt symmetric key"}
+                    );
+                }
+                return cipher.wrap(secretKey);
+            } catch (NoSuchPaddingException | NoSuchAlgorithmException
+                | InvalidKeyException | IllegalBlockSizeException
+                | InvalidAlgorithmParameterException e) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+            }
+        }
+
         protected void createSecurityTokenReferenceStructureForEncryptedKey(
                 OutputProcessorChain outputProcessorChain,
                 OutboundSecurityToken securityToken,
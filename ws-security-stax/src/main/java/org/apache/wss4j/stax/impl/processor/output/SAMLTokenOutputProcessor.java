@@ -36,6 +36,7 @@ import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.OpenSAMLUtil;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.saml.bean.KeyInfoBean;
 import org.apache.wss4j.common.saml.bean.SubjectBean;
@@ -81,19 +82,7 @@ public class SAMLTokenOutputProcessor extends AbstractOutputProcessor {
         try {
             final SAMLCallback samlCallback = new SAMLCallback();
             SAMLUtil.doSAMLCallback(((WSSSecurityProperties) getSecurityProperties()).getSamlCallbackHandler(), samlCallback);
-            SamlAssertionWrapper samlAssertionWrapper = new SamlAssertionWrapper(samlCallback);
-
-            if (samlCallback.isSignAssertion()) {
-                samlAssertionWrapper.signAssertion(
-                        samlCallback.getIssuerKeyName(),
-                        samlCallback.getIssuerKeyPassword(),
-                        samlCallback.getIssuerCrypto(),
-                        samlCallback.isSendKeyValue(),
-                        samlCallback.getCanonicalizationAlgorithm(),
-                        samlCallback.getSignatureAlgorithm(),
-                        samlCallback.getSignatureDigestAlgorithm()
-                );
-            }
+            SamlAssertionWrapper samlAssertionWrapper = createSamlAssertion(samlCallback);
 
             boolean senderVouches = false;
             boolean hok = false;
@@ -227,6 +216,45 @@ public class SAMLTokenOutputProcessor extends AbstractOutputProcessor {
         outputProcessorChain.processEvent(xmlSecEvent);
     }
 
+    /**
+     * Create the (signed) SAML Assertion for the SAMLCallback, or reuse a cached one if a
+     * SamlAssertionCache is configured
+     */
+    private SamlAssertionWrapper createSamlAssertion(SAMLCallback samlCallback) throws XMLSecurityException {
+        SamlAssertionCache samlAssertionCache = ((WSSSecurityProperties) getSecurityProperties()).getSamlAssertionCache();
+        Document doc = null;
+        if (samlAssertionCache != null) {
+            try {
+                doc = ((WSSSecurityProperties) getSecurityProperties()).getDocumentCreator().newDocument();
+            } catch (ParserConfigurationException ex) {
+                throw new XMLSecurityException(ex);
+            }
+            SamlAssertionWrapper samlAssertionWrapper = samlAssertionCache.getAssertion(samlCallback, doc);
+            if (samlAssertionWrapper != null) {
+                return samlAssertionWrapper;
+            }
+        }
+
+        SamlAssertionWrapper samlAssertionWrapper = new SamlAssertionWrapper(samlCallback);
+
+        if (samlCallback.isSignAssertion()) {
+            samlAssertionWrapper.signAssertion(
+                    samlCallback.getIssuerKeyName(),
+                    samlCallback.getIssuerKeyPassword(),
+                    samlCallback.getIssuerCrypto(),
+                    samlCallback.isSendKeyValue(),
+                    samlCallback.getCanonicalizationAlgorithm(),
+                    samlCallback.getSignatureAlgorithm(),
+                    samlCallback.getSignatureDigestAlgorithm()
+            );
+        }
+
+        if (samlAssertionCache != null) {
+            samlAssertionWrapper = samlAssertionCache.addAssertion(samlCallback, samlAssertionWrapper, doc);
+        }
+        return samlAssertionWrapper;
+    }
+
     private GenericOutboundSecurityToken getSecurityToken(SAMLCallback samlCallback,
                                               OutputProcessorChain outputProcessorChain) throws WSSecurityException {
         CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
@@ -18,7 +18,6 @@
  */
 package org.apache.wss4j.stax.impl.processor.output;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -37,6 +36,7 @@ import org.apache.wss4j.common.ext.AttachmentRequestCallback;
 import org.apache.wss4j.common.ext.AttachmentResultCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.util.AttachmentUtils;
+import org.apache.wss4j.common.util.BufferedAttachmentInputStream;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurePart;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -199,13 +199,13 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                     }
 
                     DigestOutputStream digestOutputStream = createMessageDigestOutputStream(signaturePartDef.getDigestAlgo());
-                    InputStream inputStream = attachment.getSourceStream();
-                    if (!inputStream.markSupported()) {
-                        inputStream = new BufferedInputStream(inputStream);
-                    }
-                    inputStream.mark(Integer.MAX_VALUE); //we can process at maximum 2G with the standard jdk streams
-
+                    BufferedAttachmentInputStream inputStream = null;
+                    InputStream resultInputStream = null;
                     try {
+                        inputStream = new BufferedAttachmentInputStream(
+                                attachment.getSourceStream(),
+                                ((WSSSecurityProperties) getSecurityProperties()).getAttachmentBufferFactory());
+
                         Transformer transformer = buildTransformerChain(digestOutputStream, signaturePartDef, null);
 
                         Map<String, Object> transformerProperties = new HashMap<>(2);
@@ -217,10 +217,18 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
 
                         digestOutputStream.close();
 
-                        //reset the inputStream to be able to reuse it
-                        inputStream.reset();
+                        //read the attachment again from the start to be able to reuse it
+                        resultInputStream = inputStream.getReplayStream();
                     } catch (IOException | XMLStreamException e) {
                         throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_SIGNATURE, e);
+                    } finally {
+                        if (resultInputStream == null && inputStream != null) {
+                            try {
+                                inputStream.release();
+                            } catch (IOException e) {
+                                LOG.debug("Error releasing the attachment buffer: {}", e.getMessage());
+                            }
+                        }
                     }
 
                     String calculatedDigest = XMLUtils.encodeToString(digestOutputStream.getDigestValue());
@@ -233,7 +241,7 @@ public class WSSSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                     resultAttachment.setId(attachment.getId());
                     resultAttachment.setMimeType(attachment.getMimeType());
                     resultAttachment.addHeaders(attachment.getHeaders());
-                    resultAttachment.setSourceStream(inputStream);
+                    resultAttachment.setSourceStream(resultInputStream);
 
                     AttachmentResultCallback attachmentResultCallback = new AttachmentResultCallback();
                     attachmentResultCallback.setAttachmentId(resultAttachment.getId());
@@ -47,6 +47,7 @@ import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.securityToken.SamlSecurityToken;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
+import org.apache.wss4j.stax.validate.SamlAssertionView;
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
@@ -56,7 +57,8 @@ import org.opensaml.saml.common.SAMLVersion;
 
 public class SamlSecurityTokenImpl extends AbstractInboundSecurityToken implements SamlSecurityToken {
 
-    private final SamlAssertionWrapper samlAssertionWrapper;
+    private final SamlAssertionView samlAssertionView;
+    private SamlAssertionWrapper samlAssertionWrapper;
     private InboundSecurityToken subjectSecurityToken;
     private Crypto crypto;
     private WSSSecurityProperties securityProperties;
@@ -69,6 +71,7 @@ public class SamlSecurityTokenImpl extends AbstractInboundSecurityToken implemen
                                  WSSecurityTokenConstants.KeyIdentifier keyIdentifier,
                                  WSSSecurityProperties securityProperties) throws WSSecurityException {
         super(wsInboundSecurityContext, id, keyIdentifier, false);
+        this.samlAssertionView = null;
         this.securityProperties = securityProperties;
         if (securityProperties.getCallbackHandler() != null) {
             // Try to get the Assertion from a CallbackHandler
@@ -120,12 +123,28 @@ public class SamlSecurityTokenImpl extends AbstractInboundSecurityToken implemen
                                  WSSecurityTokenConstants.KeyIdentifier keyIdentifier,
                                  WSSSecurityProperties securityProperties) {
         super(wsInboundSecurityContext, samlAssertionWrapper.getId(), keyIdentifier, true);
+        this.samlAssertionView = null;
         this.samlAssertionWrapper = samlAssertionWrapper;
         this.crypto = crypto;
         this.subjectSecurityToken = subjectSecurityToken;
         this.securityProperties = securityProperties;
     }
 
+    /**
+     * Create a token of an Assertion that is processed on the event stream. The SamlAssertionWrapper
+     * is only created if getSamlAssertionWrapper is called.
+     */
+    public SamlSecurityTokenImpl(SamlAssertionView samlAssertionView, InboundSecurityToken subjectSecurityToken,
+                                 WSInboundSecurityContext wsInboundSecurityContext, Crypto crypto,
+                                 WSSecurityTokenConstants.KeyIdentifier keyIdentifier,
+                                 WSSSecurityProperties securityProperties) {
+        super(wsInboundSecurityContext, samlAssertionView.getId(), keyIdentifier, true);
+        this.samlAssertionView = samlAssertionView;
+        this.crypto = crypto;
+        this.subjectSecurityToken = subjectSecurityToken;
+        this.securityProperties = securityProperties;
+    }
+
     @Override
     public boolean isAsymmetric() throws XMLSecurityException {
         if (this.subjectSecurityToken != null && this.subjectSecurityToken.isAsymmetric()) {
@@ -191,17 +210,24 @@ public class SamlSecurityTokenImpl extends AbstractInboundSecurityToken implemen
     public void verify() throws XMLSecurityException {
         //todo revisit verify for every security token incl. public-key
         //todo should we call verify implicit when accessing the keys?
-        if (samlAssertionWrapper == null) {
+        List<String> methods;
+        boolean signed;
+        if (samlAssertionView != null) {
+            methods = samlAssertionView.getConfirmationMethods();
+            signed = samlAssertionView.isSigned();
+        } else if (samlAssertionWrapper != null) {
+            methods = samlAssertionWrapper.getConfirmationMethods();
+            signed = samlAssertionWrapper.isSigned();
+        } else {
             return;
         }
         String confirmMethod = null;
-        List<String> methods = samlAssertionWrapper.getConfirmationMethods();
         if (methods != null && !methods.isEmpty()) {
             confirmMethod = methods.get(0);
         }
         // If HOK + Token is signed then we don't need to verify the subject cert, as we
         // indirectly trust it
-        if (!OpenSAMLUtil.isMethodHolderOfKey(confirmMethod) && !samlAssertionWrapper.isSigned()) {
+        if (!OpenSAMLUtil.isMethodHolderOfKey(confirmMethod) && !signed) {
             X509Certificate[] x509Certificates = getX509Certificates();
             if (x509Certificates != null && x509Certificates.length > 0) {
                 boolean enableRevocation = false;
@@ -224,11 +250,15 @@ public class SamlSecurityTokenImpl extends AbstractInboundSecurityToken implemen
 
     @Override
     public WSSecurityTokenConstants.TokenType getTokenType() {
-        if (samlAssertionWrapper != null
-            && samlAssertionWrapper.getSamlVersion() == SAMLVersion.VERSION_10) {
+        SAMLVersion samlVersion = null;
+        if (samlAssertionView != null) {
+            samlVersion = samlAssertionView.getSamlVersion();
+        } else if (samlAssertionWrapper != null) {
+            samlVersion = samlAssertionWrapper.getSamlVersion();
+        }
+        if (samlVersion == SAMLVersion.VERSION_10) {
             return WSSecurityTokenConstants.SAML_10_TOKEN;
-        } else if (samlAssertionWrapper != null
-            && samlAssertionWrapper.getSamlVersion() == SAMLVersion.VERSION_11) {
+        } else if (samlVersion == SAMLVersion.VERSION_11) {
             return WSSecurityTokenConstants.SAML_11_TOKEN;
         }
         return WSSecurityTokenConstants.SAML_20_TOKEN;
@@ -245,16 +275,22 @@ public class SamlSecurityTokenImpl extends AbstractInboundSecurityToken implemen
             this.principal = new SAMLTokenPrincipal() {
                 @Override
                 public SamlAssertionWrapper getToken() {
-                    return samlAssertionWrapper;
+                    return getSamlAssertionWrapper();
                 }
 
                 @Override
                 public String getName() {
+                    if (samlAssertionView != null) {
+                        return samlAssertionView.getSubjectName();
+                    }
                     return samlAssertionWrapper.getSubjectName();
                 }
 
                 @Override
                 public String getId() {
+                    if (samlAssertionView != null) {
+                        return samlAssertionView.getId();
+                    }
                     return samlAssertionWrapper.getId();
                 }
             };
@@ -262,8 +298,24 @@ public class SamlSecurityTokenImpl extends AbstractInboundSecurityToken implemen
         return this.principal;
     }
 
+    @Override
+    public SamlAssertionView getSamlAssertionView() {
+        return samlAssertionView;
+    }
+
+    /**
+     * Get the SamlAssertionWrapper of the Assertion. For an Assertion that is processed on the event
+     * stream it is created on the first call.
+     */
     @Override
     public SamlAssertionWrapper getSamlAssertionWrapper() {
+        if (samlAssertionWrapper == null && samlAssertionView != null) {
+            try {
+                samlAssertionWrapper = samlAssertionView.getSamlAssertionWrapper();
+            } catch (WSSecurityException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+        }
         return samlAssertionWrapper;
     }
 }
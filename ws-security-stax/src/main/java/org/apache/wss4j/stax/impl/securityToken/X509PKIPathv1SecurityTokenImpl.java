@@ -29,7 +29,9 @@ import java.util.List;
 
 import javax.security.auth.callback.CallbackHandler;
 
+import org.apache.wss4j.common.crypto.CertificateInternCache;
 import org.apache.wss4j.common.crypto.Crypto;
+import org.apache.wss4j.common.crypto.CryptoBase;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSInboundSecurityContext;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -49,19 +51,35 @@ public class X509PKIPathv1SecurityTokenImpl extends X509SecurityTokenImpl {
         super(WSSecurityTokenConstants.X509PkiPathV1Token, wsInboundSecurityContext, crypto,
                 callbackHandler, id, keyIdentifier, securityProperties, true);
 
-        try (InputStream in = new UnsyncByteArrayInputStream(binaryContent)) {
-            CertPath certPath = getCrypto().getCertificateFactory().generateCertPath(in);
-            List<? extends Certificate> l = certPath.getCertificates();
-            X509Certificate[] certs = new X509Certificate[l.size()];
-            Iterator<? extends Certificate> iterator = l.iterator();
-            for (int i = 0; i < l.size(); i++) {
-                certs[i] = (X509Certificate) iterator.next();
+        Crypto tokenCrypto = getCrypto();
+        CertificateInternCache certificateCache = null;
+        if (tokenCrypto instanceof CryptoBase) {
+            certificateCache = ((CryptoBase)tokenCrypto).getCertificateCache();
+        }
+
+        X509Certificate[] certs;
+        if (certificateCache != null) {
+            // The same certificate path is only parsed once
+            try {
+                certs = certificateCache.getCertificates(binaryContent, tokenCrypto.getCertificateFactory());
+            } catch (CertificateException e) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e, "parseError");
             }
-            if (certs.length > 0) {
-                setX509Certificates(certs);
+        } else {
+            try (InputStream in = new UnsyncByteArrayInputStream(binaryContent)) {
+                CertPath certPath = tokenCrypto.getCertificateFactory().generateCertPath(in);
+                List<? extends Certificate> l = certPath.getCertificates();
+                certs = new X509Certificate[l.size()];
+                Iterator<? extends Certificate> iterator = l.iterator();
+                for (int i = 0; i < l.size(); i++) {
+                    certs[i] = (X509Certificate) iterator.next();
+                }
+            } catch (CertificateException | IOException e) {
+                throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e, "parseError");
             }
-        } catch (CertificateException | IOException e) {
-            throw new WSSecurityException(WSSecurityException.ErrorCode.INVALID_SECURITY, e, "parseError");
+        }
+        if (certs.length > 0) {
+            setX509Certificates(certs);
         }
     }
 
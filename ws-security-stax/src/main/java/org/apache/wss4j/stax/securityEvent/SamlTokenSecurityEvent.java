@@ -19,9 +19,11 @@
 package org.apache.wss4j.stax.securityEvent;
 
 import org.apache.wss4j.common.ext.WSSecurityException;
-import org.apache.wss4j.common.principal.SAMLTokenPrincipal;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.stax.securityToken.SamlSecurityToken;
+import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
+import org.apache.wss4j.stax.validate.SamlAssertionView;
+import org.opensaml.saml.common.SAMLVersion;
 
 public class SamlTokenSecurityEvent extends IssuedTokenSecurityEvent<SamlSecurityToken> {
 
@@ -31,10 +33,35 @@ public class SamlTokenSecurityEvent extends IssuedTokenSecurityEvent<SamlSecurit
 
     @Override
     public String getIssuerName() throws WSSecurityException {
+        SamlAssertionView samlAssertionView = getSecurityToken().getSamlAssertionView();
+        if (samlAssertionView != null) {
+            return samlAssertionView.getIssuerString();
+        }
         return getSamlAssertionWrapper().getIssuerString();
     }
 
+    /**
+     * Get the SAML version of the Assertion from the token type, without creating the
+     * SamlAssertionWrapper of an Assertion that is processed on the event stream.
+     */
+    public SAMLVersion getSamlVersion() {
+        WSSecurityTokenConstants.TokenType tokenType = getSecurityToken().getTokenType();
+        if (WSSecurityTokenConstants.SAML_10_TOKEN.equals(tokenType)) {
+            return SAMLVersion.VERSION_10;
+        } else if (WSSecurityTokenConstants.SAML_11_TOKEN.equals(tokenType)) {
+            return SAMLVersion.VERSION_11;
+        }
+        return SAMLVersion.VERSION_20;
+    }
+
     public SamlAssertionWrapper getSamlAssertionWrapper() throws WSSecurityException {
-        return ((SAMLTokenPrincipal)getSecurityToken().getPrincipal()).getToken();
+        try {
+            return getSecurityToken().getSamlAssertionWrapper();
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof WSSecurityException) {
+                throw (WSSecurityException)e.getCause();
+            }
+            throw e;
+        }
     }
 }
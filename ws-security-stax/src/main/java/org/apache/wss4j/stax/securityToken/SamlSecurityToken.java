@@ -19,8 +19,24 @@
 package org.apache.wss4j.stax.securityToken;
 
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.apache.wss4j.stax.validate.SamlAssertionView;
 
 public interface SamlSecurityToken extends SubjectAndPrincipalSecurityToken {
 
+    /**
+     * Get the SamlAssertionWrapper of the Assertion. For an Assertion that is processed on the event
+     * stream it is created on the first call.
+     *
+     * @throws IllegalStateException with the WSSecurityException as cause, if the SamlAssertionWrapper
+     * of an Assertion that is processed on the event stream cannot be created
+     */
     SamlAssertionWrapper getSamlAssertionWrapper();
+
+    /**
+     * Get the SamlAssertionView of an Assertion that is processed on the event stream, or null if
+     * the token holds a SamlAssertionWrapper instead.
+     */
+    default SamlAssertionView getSamlAssertionView() {
+        return null;
+    }
 }
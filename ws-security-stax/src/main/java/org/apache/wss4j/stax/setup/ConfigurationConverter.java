@@ -24,6 +24,9 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
@@ -31,13 +34,18 @@ import javax.security.auth.callback.CallbackHandler;
 import javax.xml.namespace.QName;
 
 import org.apache.wss4j.common.ConfigurationConstants;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.cache.ReplayCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.CryptoRegistry;
 import org.apache.wss4j.common.crypto.JasyptPasswordEncryptor;
 import org.apache.wss4j.common.crypto.PasswordEncryptor;
 import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
+import org.apache.wss4j.common.saml.VerifiedSamlAssertionCache;
 import org.apache.wss4j.common.util.Loader;
+import org.apache.wss4j.common.util.ThresholdAttachmentBufferFactory;
 import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSConstants.UsernameTokenPasswordType;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
@@ -187,7 +195,8 @@ public final class ConfigurationConverter {
                 properties.setSignatureCrypto((Crypto)sigRef);
             } else if (sigRef instanceof Properties) {
                 foundSigRef = true;
-                properties.setSignatureCryptoProperties((Properties)sigRef, passwordEncryptor);
+                setCrypto((Properties)sigRef, passwordEncryptor,
+                          properties::setSignatureCrypto, properties::setSignatureCryptoProperties);
             }
             if (foundSigRef && properties.getSignatureUser() == null) {
                 properties.setSignatureUser(getDefaultX509Identifier(properties, true));
@@ -197,15 +206,10 @@ public final class ConfigurationConverter {
         if (!foundSigRef) {
             String sigPropFile = getString(ConfigurationConstants.SIG_PROP_FILE, config);
             if (sigPropFile != null) {
-                try {
-                    Properties sigProperties =
-                        CryptoFactory.getProperties(sigPropFile, getClassLoader());
-                    properties.setSignatureCryptoProperties(sigProperties, passwordEncryptor);
-                    if (properties.getSignatureUser() == null) {
-                        properties.setSignatureUser(getDefaultX509Identifier(properties, true));
-                    }
-                } catch (WSSecurityException e) {
-                    LOG.error(e.getMessage(), e);
+                setCrypto(sigPropFile, passwordEncryptor,
+                          properties::setSignatureCrypto, properties::setSignatureCryptoProperties);
+                if (properties.getSignatureUser() == null) {
+                    properties.setSignatureUser(getDefaultX509Identifier(properties, true));
                 }
             }
         }
@@ -219,20 +223,16 @@ public final class ConfigurationConverter {
                 properties.setSignatureVerificationCrypto((Crypto)sigVerRef);
             } else if (sigVerRef instanceof Properties) {
                 foundSigVerRef = true;
-                properties.setSignatureVerificationCryptoProperties((Properties)sigVerRef, passwordEncryptor);
+                setCrypto((Properties)sigVerRef, passwordEncryptor,
+                          properties::setSignatureVerificationCrypto, properties::setSignatureVerificationCryptoProperties);
             }
         }
 
         if (!foundSigVerRef) {
             String sigPropFile = getString(ConfigurationConstants.SIG_VER_PROP_FILE, config);
             if (sigPropFile != null) {
-                try {
-                    Properties sigProperties =
-                        CryptoFactory.getProperties(sigPropFile, getClassLoader());
-                    properties.setSignatureVerificationCryptoProperties(sigProperties, passwordEncryptor);
-                } catch (WSSecurityException e) {
-                    LOG.error(e.getMessage(), e);
-                }
+                setCrypto(sigPropFile, passwordEncryptor,
+                          properties::setSignatureVerificationCrypto, properties::setSignatureVerificationCryptoProperties);
             }
         }
 
@@ -245,20 +245,16 @@ public final class ConfigurationConverter {
                 properties.setEncryptionCrypto((Crypto)encRef);
             } else if (encRef instanceof Properties) {
                 foundEncRef = true;
-                properties.setEncryptionCryptoProperties((Properties)encRef, passwordEncryptor);
+                setCrypto((Properties)encRef, passwordEncryptor,
+                          properties::setEncryptionCrypto, properties::setEncryptionCryptoProperties);
             }
         }
 
         if (!foundEncRef) {
             String encPropFile = getString(ConfigurationConstants.ENC_PROP_FILE, config);
             if (encPropFile != null) {
-                try {
-                    Properties encProperties =
-                        CryptoFactory.getProperties(encPropFile, getClassLoader());
-                    properties.setEncryptionCryptoProperties(encProperties, passwordEncryptor);
-                } catch (WSSecurityException e) {
-                    LOG.error(e.getMessage(), e);
-                }
+                setCrypto(encPropFile, passwordEncryptor,
+                          properties::setEncryptionCrypto, properties::setEncryptionCryptoProperties);
             }
         }
 
@@ -271,20 +267,60 @@ public final class ConfigurationConverter {
                 properties.setDecryptionCrypto((Crypto)decRef);
             } else if (decRef instanceof Properties) {
                 foundDecRef = true;
-                properties.setDecryptionCryptoProperties((Properties)decRef, passwordEncryptor);
+                setCrypto((Properties)decRef, passwordEncryptor,
+                          properties::setDecryptionCrypto, properties::setDecryptionCryptoProperties);
             }
         }
 
         if (!foundDecRef) {
             String encPropFile = getString(ConfigurationConstants.DEC_PROP_FILE, config);
             if (encPropFile != null) {
-                try {
-                    Properties encProperties =
-                        CryptoFactory.getProperties(encPropFile, getClassLoader());
-                    properties.setDecryptionCryptoProperties(encProperties, passwordEncryptor);
-                } catch (WSSecurityException e) {
-                    LOG.error(e.getMessage(), e);
-                }
+                setCrypto(encPropFile, passwordEncryptor,
+                          properties::setDecryptionCrypto, properties::setDecryptionCryptoProperties);
+            }
+        }
+    }
+
+    /**
+     * Set the Crypto for the given Crypto properties from the shared CryptoRegistry, so that the
+     * KeyStore is not loaded again for every converted configuration. If the Crypto cannot be
+     * loaded, the properties are set instead, and the error is reported when the Crypto is used.
+     */
+    private static void setCrypto(
+        Properties cryptoProperties,
+        PasswordEncryptor passwordEncryptor,
+        Consumer<Crypto> cryptoSetter,
+        BiConsumer<Properties, PasswordEncryptor> cryptoPropertiesSetter
+    ) {
+        try {
+            cryptoSetter.accept(CryptoRegistry.getInstance().getCrypto(
+                cryptoProperties, Loader.getClassLoader(CryptoFactory.class), passwordEncryptor));
+        } catch (WSSecurityException e) {
+            LOG.debug(e.getMessage(), e);
+            cryptoPropertiesSetter.accept(cryptoProperties, passwordEncryptor);
+        }
+    }
+
+    /**
+     * Set the Crypto for the given properties file from the shared CryptoRegistry. The registry
+     * loads the Crypto again if the properties file has been modified.
+     */
+    private static void setCrypto(
+        String propFile,
+        PasswordEncryptor passwordEncryptor,
+        Consumer<Crypto> cryptoSetter,
+        BiConsumer<Properties, PasswordEncryptor> cryptoPropertiesSetter
+    ) {
+        CryptoRegistry cryptoRegistry = CryptoRegistry.getInstance();
+        try {
+            cryptoSetter.accept(cryptoRegistry.getCrypto(propFile, getClassLoader(), passwordEncryptor));
+        } catch (WSSecurityException e) {
+            LOG.debug(e.getMessage(), e);
+            try {
+                Properties cryptoProperties = cryptoRegistry.getProperties(propFile, getClassLoader());
+                cryptoPropertiesSetter.accept(cryptoProperties, passwordEncryptor);
+            } catch (WSSecurityException ex) {
+                LOG.error(ex.getMessage(), ex);
             }
         }
     }
@@ -448,6 +484,14 @@ public final class ConfigurationConverter {
             decodeBooleanConfigValue(ConfigurationConstants.VALIDATE_SAML_SUBJECT_CONFIRMATION, true, config);
         properties.setValidateSamlSubjectConfirmation(validateSamlSubjectConf);
 
+        boolean streamingSaml =
+            decodeBooleanConfigValue(ConfigurationConstants.STREAMING_SAML_PROCESSING, false, config);
+        properties.setStreamingSamlProcessing(streamingSaml);
+
+        boolean parallelAttachmentDigest =
+            decodeBooleanConfigValue(ConfigurationConstants.PARALLEL_ATTACHMENT_DIGEST, false, config);
+        properties.setParallelAttachmentDigest(parallelAttachmentDigest);
+
         boolean includeSignatureToken =
             decodeBooleanConfigValue(ConfigurationConstants.INCLUDE_SIGNATURE_TOKEN, false, config);
         properties.setIncludeSignatureToken(includeSignatureToken);
@@ -594,6 +638,24 @@ public final class ConfigurationConverter {
             properties.setSamlOneTimeUseReplayCache(samlOneTimeUseCache);
         }
 
+        EncryptedKeySessionCache encryptedKeySessionCache =
+            (EncryptedKeySessionCache)config.get(ConfigurationConstants.ENCRYPTED_KEY_SESSION_CACHE_INSTANCE);
+        if (encryptedKeySessionCache != null) {
+            properties.setEncryptedKeySessionCache(encryptedKeySessionCache);
+        }
+
+        SamlAssertionCache samlAssertionCache =
+            (SamlAssertionCache)config.get(ConfigurationConstants.SAML_ASSERTION_CACHE_INSTANCE);
+        if (samlAssertionCache != null) {
+            properties.setSamlAssertionCache(samlAssertionCache);
+        }
+
+        VerifiedSamlAssertionCache verifiedSamlAssertionCache =
+            (VerifiedSamlAssertionCache)config.get(ConfigurationConstants.VERIFIED_SAML_ASSERTION_CACHE_INSTANCE);
+        if (verifiedSamlAssertionCache != null) {
+            properties.setVerifiedSamlAssertionCache(verifiedSamlAssertionCache);
+        }
+
         String derivedSignatureKeyLength = getString(ConfigurationConstants.DERIVED_SIGNATURE_KEY_LENGTH, config);
         if (derivedSignatureKeyLength != null) {
             int sigLength = Integer.parseInt(derivedSignatureKeyLength);
@@ -619,6 +681,21 @@ public final class ConfigurationConverter {
         if (convertedDerivedKeyIdentifier != null) {
             properties.setDerivedKeyKeyIdentifier(convertedDerivedKeyIdentifier);
         }
+
+        String attachmentBufferThreshold = getString(ConfigurationConstants.ATTACHMENT_BUFFER_THRESHOLD, config);
+        if (attachmentBufferThreshold != null) {
+            try {
+                int threshold = Integer.parseInt(attachmentBufferThreshold);
+                properties.setAttachmentBufferFactory(new ThresholdAttachmentBufferFactory(threshold));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Error in configuring the attachment buffer threshold: " + e.getMessage());
+            }
+        }
+
+        Object digestExecutor = config.get(ConfigurationConstants.DIGEST_EXECUTOR);
+        if (digestExecutor instanceof Executor) {
+            properties.setAttachmentDigestExecutor((Executor)digestExecutor);
+        }
     }
 
     private static Collection<Pattern> getCertConstraints(String certConstraints, String certConstraintsSeparator) {
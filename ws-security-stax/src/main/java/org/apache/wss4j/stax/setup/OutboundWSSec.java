@@ -23,15 +23,21 @@ import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.spec.SecretKeySpec;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.stream.XMLStreamWriter;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoType;
+import org.apache.wss4j.common.crypto.ReloadableMerlin;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.DocumentCreatorImpl;
@@ -79,15 +85,46 @@ import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 /**
  * Outbound Streaming-WebService-Security
  * An instance of this class can be retrieved over the WSSec class
+ *
+ * The configured actions are compiled into the list of OutputProcessors to set up for a message
+ * once, on the first message, so the actions of the security properties must not be changed after
+ * the OutboundWSSec is created. The OutputProcessors are still created for every message, and are
+ * ordered by the OutputProcessorChain as they are added to it.
+ *
+ * The private key and certificates for signature, and the certificates for encryption, that are
+ * obtained from the Crypto are reused for KEY_CACHE_TIME_TO_LIVE. They are obtained again before
+ * that if the password returned by the CallbackHandler (which is still called for every message)
+ * changes, if a ReloadableMerlin Crypto has reloaded its keystore, or after clearCachedKeys().
  */
 public class OutboundWSSec {
 
+    /**
+     * How long the keys and certificates obtained from the Crypto are reused
+     */
+    public static final Duration KEY_CACHE_TIME_TO_LIVE = Duration.ofMinutes(5);
+
     private final WSSSecurityProperties securityProperties;
 
+    // The actions are compiled once, and reused for every message
+    private volatile CompiledActions compiledActions;
+
+    // The keys and certificates obtained from the Crypto for an earlier message
+    private volatile CachedKeys signatureKeys;
+    private volatile CachedKeys encryptionKeys;
+
     public OutboundWSSec(WSSSecurityProperties securityProperties) {
         this.securityProperties = securityProperties;
     }
 
+    /**
+     * Obtain the keys and certificates from the Crypto again for the next message, e.g. after
+     * the keystore of a Crypto was changed in place.
+     */
+    public void clearCachedKeys() {
+        signatureKeys = null;
+        encryptionKeys = null;
+    }
+
     /**
      * This method is the entry point for the incoming security-engine.
      * Hand over a outputStream and use the returned XMLStreamWriter for further processing
@@ -177,7 +214,14 @@ public class OutboundWSSec {
             final SecurityHeaderOutputProcessor securityHeaderOutputProcessor = new SecurityHeaderOutputProcessor();
             initializeOutputProcessor(outputProcessorChain, securityHeaderOutputProcessor, null, -1);
 
-            ConfiguredAction configuredAction = configureActions(outputProcessorChain);
+            CompiledActions actions = getCompiledActions();
+            for (ConfiguredOutputProcessor configuredOutputProcessor : actions.outputProcessors) {
+                initializeOutputProcessor(
+                    outputProcessorChain, configuredOutputProcessor.factory.newOutputProcessor(),
+                    configuredOutputProcessor.action, configuredOutputProcessor.actionOrder
+                );
+            }
+            ConfiguredAction configuredAction = actions.configuredAction;
 
             // Set up appropriate keys
             if (configuredAction.signatureAction) {
@@ -274,7 +318,7 @@ public class OutboundWSSec {
         // We have no supplied key. So use the PasswordCallback to get a secret key or password
         String alias = securityProperties.getSignatureUser();
         WSPasswordCallback pwCb = new WSPasswordCallback(alias, WSPasswordCallback.SIGNATURE);
-            WSSUtils.doPasswordCallback(securityProperties.getCallbackHandler(), pwCb);
+        WSSUtils.doPasswordCallback(securityProperties.getCallbackHandler(), pwCb);
 
         String password = pwCb.getPassword();
         byte[] secretKey = pwCb.getKey();
@@ -282,13 +326,21 @@ public class OutboundWSSec {
         X509Certificate[] x509Certificates = null;
         try {
             if (password != null && securityProperties.getSignatureCrypto() != null) {
-                key = securityProperties.getSignatureCrypto().getPrivateKey(alias, password);
-                CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
-                cryptoType.setAlias(alias);
-                x509Certificates = securityProperties.getSignatureCrypto().getX509Certificates(cryptoType);
-                if (x509Certificates == null || x509Certificates.length == 0) {
-                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_SIGNATURE, "noUserCertsFound",
-                                                  new Object[] {alias});
+                Crypto crypto = getCurrentCrypto(securityProperties.getSignatureCrypto());
+                CachedKeys cachedKeys = signatureKeys;
+                if (cachedKeys != null && cachedKeys.matches(alias, password, crypto)) {
+                    key = cachedKeys.key;
+                    x509Certificates = cachedKeys.x509Certificates.clone();
+                } else {
+                    key = crypto.getPrivateKey(alias, password);
+                    CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+                    cryptoType.setAlias(alias);
+                    x509Certificates = crypto.getX509Certificates(cryptoType);
+                    if (x509Certificates == null || x509Certificates.length == 0) {
+                        throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_SIGNATURE, "noUserCertsFound",
+                                                      new Object[] {alias});
+                    }
+                    signatureKeys = new CachedKeys(alias, password, crypto, key, x509Certificates.clone());
                 }
             } else if (secretKey != null) {
                 x509Certificates = null;
@@ -336,26 +388,56 @@ public class OutboundWSSec {
     ) throws XMLSecurityException {
         final String symmetricEncryptionAlgorithm = securityProperties.getEncryptionSymAlgorithm();
 
+        // Set up a security token with the certs required to encrypt the symmetric key
+        final GenericOutboundSecurityToken encryptedKeyToken =
+            securityProperties.isEncryptSymmetricEncryptionKey()
+                ? createEncryptedKeyToken(outputProcessorChain, securityProperties) : null;
+
         // First check to see if a Symmetric key is available
         GenericOutboundSecurityToken securityToken =
             getOutboundSecurityToken(outputProcessorChain, WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION);
         if (securityToken == null || securityToken.getSecretKey(symmetricEncryptionAlgorithm) == null) {
-            //prepare the symmetric session key for all encryption parts
-            String keyAlgorithm = JCEAlgorithmMapper.getJCEKeyAlgorithmFromURI(securityProperties.getEncryptionSymAlgorithm());
-            KeyGenerator keyGen;
-            try {
-                keyGen = KeyGenerator.getInstance(keyAlgorithm);
-            } catch (NoSuchAlgorithmException e) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+            Key symmetricKey = null;
+
+            // Reuse the session key of an earlier message to the same recipient, if configured
+            EncryptedKeySessionCache encryptedKeySessionCache = securityProperties.getEncryptedKeySessionCache();
+            String sessionKey = null;
+            if (encryptedKeySessionCache != null && encryptedKeyToken != null) {
+                PublicKey publicKey = encryptedKeyToken.getPublicKey();
+                if (encryptedKeyToken.getX509Certificates() != null
+                    && encryptedKeyToken.getX509Certificates().length > 0) {
+                    publicKey = encryptedKeyToken.getX509Certificates()[0].getPublicKey();
+                }
+                sessionKey = WSSUtils.getEncryptedKeySessionKey(securityProperties, publicKey);
+                EncryptedKeySessionCache.Session session = encryptedKeySessionCache.getSession(sessionKey);
+                if (session != null) {
+                    symmetricKey = session.getSecretKey();
+                }
             }
-            //the sun JCE provider expects the real key size for 3DES (112 or 168 bit)
-            //whereas bouncy castle expects the block size of 128 or 192 bits
-            if (keyAlgorithm.contains("AES")) {
-                int keyLength = JCEAlgorithmMapper.getKeyLengthFromURI(securityProperties.getEncryptionSymAlgorithm());
-                keyGen.init(keyLength);
+
+            if (symmetricKey == null) {
+                //prepare the symmetric session key for all encryption parts
+                String keyAlgorithm = JCEAlgorithmMapper.getJCEKeyAlgorithmFromURI(securityProperties.getEncryptionSymAlgorithm());
+                KeyGenerator keyGen;
+                try {
+                    keyGen = KeyGenerator.getInstance(keyAlgorithm);
+                } catch (NoSuchAlgorithmException e) {
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILURE, e);
+                }
+                //the sun JCE provider expects the real key size for 3DES (112 or 168 bit)
+                //whereas bouncy castle expects the block size of 128 or 192 bits
+                if (keyAlgorithm.contains("AES")) {
+                    int keyLength = JCEAlgorithmMapper.getKeyLengthFromURI(securityProperties.getEncryptionSymAlgorithm());
+                    keyGen.init(keyLength);
+                }
+
+                symmetricKey = keyGen.generateKey();
+                if (sessionKey != null) {
+                    // The EncryptedKey is added to the session by the EncryptedKeyOutputProcessor
+                    encryptedKeySessionCache.addSession(sessionKey, symmetricKey, null);
+                }
             }
 
-            final Key symmetricKey = keyGen.generateKey();
             final String symmId = IDGenerator.generateID(null);
 
             final GenericOutboundSecurityToken symmetricSecurityToken =
@@ -379,12 +461,38 @@ public class OutboundWSSec {
             outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION, symmId);
         }
 
-        if (!securityProperties.isEncryptSymmetricEncryptionKey()) {
+        if (encryptedKeyToken == null) {
             // No EncryptedKey Token required here, so return
             return;
         }
 
-        // Set up a security token with the certs required to encrypt the symmetric key
+        final String id = encryptedKeyToken.getId();
+        encryptedKeyToken.addWrappedToken(securityToken);
+        securityToken.setKeyWrappingToken(encryptedKeyToken);
+
+        // binarySecurityToken.setSha1Identifier(reference);
+        final SecurityTokenProvider<OutboundSecurityToken> encryptedKeyTokenProvider =
+            new SecurityTokenProvider<OutboundSecurityToken>() {
+
+            @Override
+            public OutboundSecurityToken getSecurityToken() throws WSSecurityException {
+                return encryptedKeyToken;
+            }
+
+            @Override
+            public String getId() {
+                return id;
+            }
+        };
+
+        outputProcessorChain.getSecurityContext().registerSecurityTokenProvider(id, encryptedKeyTokenProvider);
+        outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTED_KEY, id);
+    }
+
+    private GenericOutboundSecurityToken createEncryptedKeyToken(
+        OutputProcessorChainImpl outputProcessorChain,
+        WSSSecurityProperties securityProperties
+    ) throws XMLSecurityException {
         X509Certificate[] x509Certificates = null;
         PublicKey publicKey = null;
         if (securityProperties.isUseReqSigCertForEncryption()) {
@@ -402,13 +510,20 @@ public class OutboundWSSec {
             x509Certificates = new X509Certificate[1];
             x509Certificates[0] = securityProperties.getEncryptionUseThisCertificate();
         } else {
-            CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
-            cryptoType.setAlias(securityProperties.getEncryptionUser());
-            Crypto crypto = securityProperties.getEncryptionCrypto();
-            x509Certificates = crypto.getX509Certificates(cryptoType);
-            if (x509Certificates == null || x509Certificates.length == 0) {
-                throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, "noUserCertsFound",
-                                              new Object[] {securityProperties.getEncryptionUser(), "encryption"});
+            String alias = securityProperties.getEncryptionUser();
+            Crypto crypto = getCurrentCrypto(securityProperties.getEncryptionCrypto());
+            CachedKeys cachedKeys = encryptionKeys;
+            if (cachedKeys != null && cachedKeys.matches(alias, null, crypto)) {
+                x509Certificates = cachedKeys.x509Certificates.clone();
+            } else {
+                CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+                cryptoType.setAlias(alias);
+                x509Certificates = crypto.getX509Certificates(cryptoType);
+                if (x509Certificates == null || x509Certificates.length == 0) {
+                    throw new WSSecurityException(WSSecurityException.ErrorCode.FAILED_ENCRYPTION, "noUserCertsFound",
+                                                  new Object[] {alias, "encryption"});
+                }
+                encryptionKeys = new CachedKeys(alias, null, crypto, null, x509Certificates.clone());
             }
         }
 
@@ -420,29 +535,7 @@ public class OutboundWSSec {
 
         // Create a new outbound EncryptedKey token for the cert
         final String id = IDGenerator.generateID(null);
-        final GenericOutboundSecurityToken encryptedKeyToken =
-            new GenericOutboundSecurityToken(id, WSSecurityTokenConstants.X509V3Token, publicKey, x509Certificates);
-
-        encryptedKeyToken.addWrappedToken(securityToken);
-        securityToken.setKeyWrappingToken(encryptedKeyToken);
-
-        // binarySecurityToken.setSha1Identifier(reference);
-        final SecurityTokenProvider<OutboundSecurityToken> encryptedKeyTokenProvider =
-            new SecurityTokenProvider<OutboundSecurityToken>() {
-
-            @Override
-            public OutboundSecurityToken getSecurityToken() throws WSSecurityException {
-                return encryptedKeyToken;
-            }
-
-            @Override
-            public String getId() {
-                return id;
-            }
-        };
-
-        outputProcessorChain.getSecurityContext().registerSecurityTokenProvider(id, encryptedKeyTokenProvider);
-        outputProcessorChain.getSecurityContext().put(WSSConstants.PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTED_KEY, id);
+        return new GenericOutboundSecurityToken(id, WSSecurityTokenConstants.X509V3Token, publicKey, x509Certificates);
     }
 
     private void setupKerberosKey(
@@ -575,8 +668,22 @@ public class OutboundWSSec {
             }
     }
 
-    private ConfiguredAction configureActions(OutputProcessorChainImpl outputProcessorChain) throws XMLSecurityException {
-        ConfiguredAction configuredAction = new ConfiguredAction();
+    /**
+     * Get the actions compiled from the security properties. They are compiled once, on the first
+     * message, as the security properties are not changed after the OutboundWSSec is created.
+     */
+    private CompiledActions getCompiledActions() throws XMLSecurityException {
+        CompiledActions actions = compiledActions;
+        if (actions == null) {
+            actions = compileActions();
+            compiledActions = actions;
+        }
+        return actions;
+    }
+
+    private CompiledActions compileActions() throws XMLSecurityException {
+        CompiledActions compiled = new CompiledActions();
+        ConfiguredAction configuredAction = compiled.configuredAction;
 
         //todo some combinations are not possible atm: eg Action.SIGNATURE and Action.USERNAMETOKEN_SIGNED
         //todo they use the same signature parts
@@ -598,68 +705,46 @@ public class OutboundWSSec {
         int actionOrder = -1;
         for (XMLSecurityConstants.Action action : securityProperties.getActions()) {
             if (WSSConstants.TIMESTAMP.equals(action)) {
-                final TimestampOutputProcessor timestampOutputProcessor = new TimestampOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, timestampOutputProcessor, action, -1);
+                compiled.add(TimestampOutputProcessor::new, action, -1);
             } else if (WSSConstants.SIGNATURE.equals(action)) {
                 configuredAction.signatureAction = true;
-                final BinarySecurityTokenOutputProcessor binarySecurityTokenOutputProcessor =
-                    new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, binarySecurityTokenOutputProcessor, action, -1);
-
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action, ++actionOrder);
+                compiled.add(BinarySecurityTokenOutputProcessor::new, action, -1);
+                compiled.add(WSSSignatureOutputProcessor::new, action, ++actionOrder);
 
             } else if (WSSConstants.ENCRYPTION.equals(action)) {
                 configuredAction.encryptionAction = true;
-                EncryptedKeyOutputProcessor encryptedKeyOutputProcessor = null;
                 ++actionOrder;
                 if (securityProperties.isEncryptSymmetricEncryptionKey()) {
-                    final BinarySecurityTokenOutputProcessor binarySecurityTokenOutputProcessor =
-                        new BinarySecurityTokenOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, binarySecurityTokenOutputProcessor, action, -1);
-
-                    encryptedKeyOutputProcessor = new EncryptedKeyOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, encryptedKeyOutputProcessor, action, actionOrder);
+                    compiled.add(BinarySecurityTokenOutputProcessor::new, action, -1);
+                    compiled.add(EncryptedKeyOutputProcessor::new, action, actionOrder);
                 }
 
-                final EncryptOutputProcessor encryptOutputProcessor = new EncryptOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, encryptOutputProcessor, action, actionOrder);
+                compiled.add(EncryptOutputProcessor::new, action, actionOrder);
 
-                if (encryptedKeyOutputProcessor == null) {
-                    final ReferenceListOutputProcessor referenceListOutputProcessor = new ReferenceListOutputProcessor();
-                    referenceListOutputProcessor.addAfterProcessor(EncryptEndingOutputProcessor.class);
-                    initializeOutputProcessor(outputProcessorChain, referenceListOutputProcessor, action, actionOrder);
+                if (!securityProperties.isEncryptSymmetricEncryptionKey()) {
+                    compiled.add(OutboundWSSec::newReferenceListOutputProcessor, action, actionOrder);
                 }
 
             } else if (WSSConstants.USERNAMETOKEN.equals(action)) {
-                final UsernameTokenOutputProcessor usernameTokenOutputProcessor = new UsernameTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, usernameTokenOutputProcessor, action, -1);
+                compiled.add(UsernameTokenOutputProcessor::new, action, -1);
             } else if (WSSConstants.USERNAMETOKEN_SIGNED.equals(action)) {
-                final UsernameTokenOutputProcessor usernameTokenOutputProcessor = new UsernameTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, usernameTokenOutputProcessor, action, -1);
-
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action, ++actionOrder);
+                compiled.add(UsernameTokenOutputProcessor::new, action, -1);
+                compiled.add(WSSSignatureOutputProcessor::new, action, ++actionOrder);
 
             } else if (WSSConstants.SIGNATURE_CONFIRMATION.equals(action)) {
-                final SignatureConfirmationOutputProcessor signatureConfirmationOutputProcessor =
-                        new SignatureConfirmationOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureConfirmationOutputProcessor, action, -1);
+                compiled.add(SignatureConfirmationOutputProcessor::new, action, -1);
 
             } else if (WSSConstants.SIGNATURE_WITH_DERIVED_KEY.equals(action)) {
                 ++actionOrder;
                 if (securityProperties.getDerivedKeyTokenReference() == WSSConstants.DerivedKeyTokenReference.EncryptedKey) {
                     if (derivedSignatureButNotDerivedEncryption) {
-                        final EncryptedKeyOutputProcessor encryptedKeyOutputProcessor = new EncryptedKeyOutputProcessor();
-                        initializeOutputProcessor(outputProcessorChain, encryptedKeyOutputProcessor, action, actionOrder);
+                        compiled.add(EncryptedKeyOutputProcessor::new, action, actionOrder);
                     }
                     configuredAction.encryptionAction = true;
                     configuredAction.derivedEncryption = true;
                 } else if (securityProperties.getDerivedKeyTokenReference()
                     == WSSConstants.DerivedKeyTokenReference.SecurityContextToken) {
-                    final SecurityContextTokenOutputProcessor securityContextTokenOutputProcessor =
-                            new SecurityContextTokenOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, securityContextTokenOutputProcessor, action, -1);
+                    compiled.add(SecurityContextTokenOutputProcessor::new, action, -1);
                     configuredAction.signatureAction = true;
                     configuredAction.derivedSignature = true;
                 } else {
@@ -667,52 +752,36 @@ public class OutboundWSSec {
                     configuredAction.derivedSignature = true;
                 }
 
-                final DerivedKeyTokenOutputProcessor derivedKeyTokenOutputProcessor = new DerivedKeyTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, derivedKeyTokenOutputProcessor, action, -1);
-
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action, actionOrder);
+                compiled.add(DerivedKeyTokenOutputProcessor::new, action, -1);
+                compiled.add(WSSSignatureOutputProcessor::new, action, actionOrder);
 
             } else if (WSSConstants.ENCRYPTION_WITH_DERIVED_KEY.equals(action)) {
                 configuredAction.encryptionAction = true;
                 configuredAction.derivedEncryption = true;
 
-                EncryptedKeyOutputProcessor encryptedKeyOutputProcessor = null;
+                boolean encryptedKey = false;
 
                 ++actionOrder;
                 if (securityProperties.getDerivedKeyTokenReference() == WSSConstants.DerivedKeyTokenReference.EncryptedKey) {
-                    encryptedKeyOutputProcessor = new EncryptedKeyOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, encryptedKeyOutputProcessor, action, actionOrder);
+                    compiled.add(EncryptedKeyOutputProcessor::new, action, actionOrder);
+                    encryptedKey = true;
 
                 } else if (securityProperties.getDerivedKeyTokenReference()
                     == WSSConstants.DerivedKeyTokenReference.SecurityContextToken) {
-                    final SecurityContextTokenOutputProcessor securityContextTokenOutputProcessor =
-                            new SecurityContextTokenOutputProcessor();
-                    initializeOutputProcessor(outputProcessorChain, securityContextTokenOutputProcessor, action, actionOrder);
+                    compiled.add(SecurityContextTokenOutputProcessor::new, action, actionOrder);
                 }
-                final DerivedKeyTokenOutputProcessor derivedKeyTokenOutputProcessor = new DerivedKeyTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, derivedKeyTokenOutputProcessor, action, actionOrder);
+                compiled.add(DerivedKeyTokenOutputProcessor::new, action, actionOrder);
+                compiled.add(EncryptOutputProcessor::new, action, actionOrder);
 
-                final EncryptOutputProcessor encryptOutputProcessor = new EncryptOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, encryptOutputProcessor, action, actionOrder);
-
-                if (encryptedKeyOutputProcessor == null) {
-                    final ReferenceListOutputProcessor referenceListOutputProcessor = new ReferenceListOutputProcessor();
-                    referenceListOutputProcessor.addAfterProcessor(EncryptEndingOutputProcessor.class);
-                    initializeOutputProcessor(outputProcessorChain, referenceListOutputProcessor, action, actionOrder);
+                if (!encryptedKey) {
+                    compiled.add(OutboundWSSec::newReferenceListOutputProcessor, action, actionOrder);
                 }
             } else if (WSSConstants.SAML_TOKEN_SIGNED.equals(action)) {
                 configuredAction.signatureAction = true;
                 configuredAction.signedSAML = true;
-                final BinarySecurityTokenOutputProcessor binarySecurityTokenOutputProcessor =
-                    new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, binarySecurityTokenOutputProcessor, action, -1);
-
-                final SAMLTokenOutputProcessor samlTokenOutputProcessor = new SAMLTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, samlTokenOutputProcessor, action, -1);
-
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action, ++actionOrder);
+                compiled.add(BinarySecurityTokenOutputProcessor::new, action, -1);
+                compiled.add(SAMLTokenOutputProcessor::new, action, -1);
+                compiled.add(WSSSignatureOutputProcessor::new, action, ++actionOrder);
 
                 if (securityProperties.getDocumentCreator() == null) {
                     try {
@@ -723,8 +792,7 @@ public class OutboundWSSec {
                 }
 
             } else if (WSSConstants.SAML_TOKEN_UNSIGNED.equals(action)) {
-                final SAMLTokenOutputProcessor samlTokenOutputProcessor = new SAMLTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, samlTokenOutputProcessor, action, -1);
+                compiled.add(SAMLTokenOutputProcessor::new, action, -1);
 
                 if (securityProperties.getDocumentCreator() == null) {
                     try {
@@ -736,34 +804,102 @@ public class OutboundWSSec {
             } else if (WSSConstants.SIGNATURE_WITH_KERBEROS_TOKEN.equals(action)) {
                 configuredAction.kerberos = true;
                 configuredAction.signatureKerberos = true;
-                final BinarySecurityTokenOutputProcessor kerberosTokenOutputProcessor =
-                        new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, kerberosTokenOutputProcessor, action, -1);
-
-                final WSSSignatureOutputProcessor signatureOutputProcessor = new WSSSignatureOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action, ++actionOrder);
+                compiled.add(BinarySecurityTokenOutputProcessor::new, action, -1);
+                compiled.add(WSSSignatureOutputProcessor::new, action, ++actionOrder);
             } else if (WSSConstants.ENCRYPTION_WITH_KERBEROS_TOKEN.equals(action)) {
                 configuredAction.kerberos = true;
                 configuredAction.encryptionKerberos = true;
-                final BinarySecurityTokenOutputProcessor kerberosTokenOutputProcessor =
-                        new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, kerberosTokenOutputProcessor, action, -1);
-
-                final EncryptOutputProcessor encryptOutputProcessor = new EncryptOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, encryptOutputProcessor, action, ++actionOrder);
+                compiled.add(BinarySecurityTokenOutputProcessor::new, action, -1);
+                compiled.add(EncryptOutputProcessor::new, action, ++actionOrder);
             } else if (WSSConstants.KERBEROS_TOKEN.equals(action)) {
                 configuredAction.kerberos = true;
-                final BinarySecurityTokenOutputProcessor kerberosTokenOutputProcessor =
-                    new BinarySecurityTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, kerberosTokenOutputProcessor, action, -1);
+                compiled.add(BinarySecurityTokenOutputProcessor::new, action, -1);
             } else if (WSSConstants.CUSTOM_TOKEN.equals(action)) {
-                final CustomTokenOutputProcessor unknownTokenOutputProcessor =
-                    new CustomTokenOutputProcessor();
-                initializeOutputProcessor(outputProcessorChain, unknownTokenOutputProcessor, action, -1);
+                compiled.add(CustomTokenOutputProcessor::new, action, -1);
             }
         }
 
-        return configuredAction;
+        return compiled;
+    }
+
+    /**
+     * Get the Crypto to obtain the keys and certificates of a message from. For a ReloadableMerlin
+     * this is its current Merlin instance, so that the key and certificates are consistent, and
+     * so that a reload is detected.
+     */
+    private static Crypto getCurrentCrypto(Crypto crypto) {
+        if (crypto instanceof ReloadableMerlin) {
+            return ((ReloadableMerlin) crypto).getMerlin();
+        }
+        return crypto;
+    }
+
+    private static OutputProcessor newReferenceListOutputProcessor() throws XMLSecurityException {
+        final ReferenceListOutputProcessor referenceListOutputProcessor = new ReferenceListOutputProcessor();
+        referenceListOutputProcessor.addAfterProcessor(EncryptEndingOutputProcessor.class);
+        return referenceListOutputProcessor;
+    }
+
+    /**
+     * Creates a new OutputProcessor instance for a message
+     */
+    @FunctionalInterface
+    private interface OutputProcessorFactory {
+        OutputProcessor newOutputProcessor() throws XMLSecurityException;
+    }
+
+    /**
+     * An OutputProcessor to create and initialize for every message
+     */
+    private static final class ConfiguredOutputProcessor {
+        private final OutputProcessorFactory factory;
+        private final XMLSecurityConstants.Action action;
+        private final int actionOrder;
+
+        ConfiguredOutputProcessor(OutputProcessorFactory factory, XMLSecurityConstants.Action action, int actionOrder) {
+            this.factory = factory;
+            this.action = action;
+            this.actionOrder = actionOrder;
+        }
+    }
+
+    /**
+     * The OutputProcessors (in the order in which they are added to the chain) and the key
+     * requirements of the configured actions
+     */
+    private static final class CompiledActions {
+        private final List<ConfiguredOutputProcessor> outputProcessors = new ArrayList<>();
+        private final ConfiguredAction configuredAction = new ConfiguredAction();
+
+        void add(OutputProcessorFactory factory, XMLSecurityConstants.Action action, int actionOrder) {
+            outputProcessors.add(new ConfiguredOutputProcessor(factory, action, actionOrder));
+        }
+    }
+
+    /**
+     * The key and certificates obtained from a Crypto for an alias (and password)
+     */
+    private static final class CachedKeys {
+        private final String alias;
+        private final String password;
+        private final Crypto crypto;
+        private final Instant expires;
+        private final Key key;
+        private final X509Certificate[] x509Certificates;
+
+        CachedKeys(String alias, String password, Crypto crypto, Key key, X509Certificate[] x509Certificates) {
+            this.alias = alias;
+            this.password = password;
+            this.crypto = crypto;
+            this.expires = Instant.now().plus(KEY_CACHE_TIME_TO_LIVE);
+            this.key = key;
+            this.x509Certificates = x509Certificates;
+        }
+
+        boolean matches(String alias, String password, Crypto crypto) {
+            return this.crypto == crypto && Objects.equals(this.alias, alias)
+                && Objects.equals(this.password, password) && Instant.now().isBefore(expires);
+        }
     }
 
     private static class ConfiguredAction {
@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.security.Key;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
@@ -38,6 +39,7 @@ import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.events.Attribute;
 
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.stax.ext.WSSConstants;
@@ -649,4 +651,19 @@ public class WSSUtils extends XMLSecurityUtils {
         return tmp;
     }
 
+    /**
+     * Get the key of the EncryptedKeySessionCache session for the given recipient, and the key
+     * transport and symmetric encryption algorithms of the given WSSSecurityProperties
+     */
+    public static String getEncryptedKeySessionKey(WSSSecurityProperties securityProperties, PublicKey publicKey) {
+        byte[] oaepParams = securityProperties.getEncryptionKeyTransportOAEPParams();
+        return EncryptedKeySessionCache.createSessionKey(
+            publicKey,
+            securityProperties.getEncryptionKeyTransportAlgorithm(),
+            securityProperties.getEncryptionKeyTransportDigestAlgorithm(),
+            securityProperties.getEncryptionKeyTransportMGFAlgorithm(),
+            oaepParams == null ? null : XMLUtils.encodeToString(oaepParams),
+            securityProperties.getEncryptionSymAlgorithm()
+        );
+    }
 }
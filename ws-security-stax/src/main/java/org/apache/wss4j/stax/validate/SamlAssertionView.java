@@ -0,0 +1,103 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.wss4j.stax.validate;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.wss4j.common.ext.WSSecurityException;
+import org.apache.wss4j.common.saml.SamlAssertionWrapper;
+import org.opensaml.saml.common.SAMLVersion;
+
+/**
+ * A read-only view of a received SAML Assertion, which is extracted from the XML events of the
+ * Assertion when SAML Assertions are processed on the event stream. A DOM Element and the OpenSAML
+ * objects of the Assertion are only created when getSamlAssertionWrapper is called.
+ */
+public interface SamlAssertionView {
+
+    SAMLVersion getSamlVersion();
+
+    String getId();
+
+    String getIssuerString();
+
+    Instant getIssueInstant();
+
+    /**
+     * Get the NameID of the Subject (SAML 2.0), or the NameIdentifier of the first Subject of the
+     * statements (SAML 1.1), or null if there is none.
+     */
+    String getSubjectName();
+
+    List<String> getConfirmationMethods();
+
+    Instant getNotBefore();
+
+    Instant getNotOnOrAfter();
+
+    /**
+     * Get the Audiences of all AudienceRestrictions of the Conditions of the Assertion
+     */
+    List<String> getAudiences();
+
+    boolean isOneTimeUse();
+
+    /**
+     * Get the values of the Attributes of the AttributeStatements of the Assertion by Attribute name.
+     * Only the character content of an AttributeValue is returned.
+     */
+    Map<String, List<String>> getAttributes();
+
+    /**
+     * Get the AttributeNamespaces of the SAML 1.1 Attributes with the given AttributeName that have an
+     * AttributeValue. This is empty for a SAML 2.0 Assertion.
+     */
+    List<String> getAttributeNamespaces(String attributeName);
+
+    boolean isSigned();
+
+    /**
+     * Check the Conditions of the Assertion, as SamlAssertionWrapper#checkConditions does.
+     */
+    void checkConditions(int futureTTL) throws WSSecurityException;
+
+    /**
+     * Check the IssueInstant of the Assertion, as SamlAssertionWrapper#checkIssueInstant does.
+     */
+    void checkIssueInstant(int futureTTL, int ttl) throws WSSecurityException;
+
+    /**
+     * Check the AudienceRestrictions of the Assertion, as SamlAssertionWrapper#checkAudienceRestrictions does.
+     */
+    void checkAudienceRestrictions(List<String> audienceRestrictions) throws WSSecurityException;
+
+    /**
+     * Check the AuthnStatements of the Assertion, as SamlAssertionWrapper#checkAuthnStatements does.
+     */
+    void checkAuthnStatements(int futureTTL) throws WSSecurityException;
+
+    /**
+     * Get a SamlAssertionWrapper of the Assertion. The DOM Element and OpenSAML objects of the Assertion
+     * are created on the first call.
+     */
+    SamlAssertionWrapper getSamlAssertionWrapper() throws WSSecurityException;
+}
@@ -28,4 +28,14 @@ public interface SamlTokenValidator extends SignatureTokenValidator {
     <T extends SamlSecurityToken & InboundSecurityToken> T validate(
             SamlAssertionWrapper samlAssertionWrapper, InboundSecurityToken subjectSecurityToken,
             TokenContext tokenContext) throws WSSecurityException;
+
+    /**
+     * Validate a SAML Assertion that is processed on the event stream. By default the DOM Element and
+     * OpenSAML objects of the Assertion are created, and it is validated as a SamlAssertionWrapper.
+     */
+    default <T extends SamlSecurityToken & InboundSecurityToken> T validate(
+            SamlAssertionView samlAssertionView, InboundSecurityToken subjectSecurityToken,
+            TokenContext tokenContext) throws WSSecurityException {
+        return validate(samlAssertionView.getSamlAssertionWrapper(), subjectSecurityToken, tokenContext);
+    }
 }
@@ -145,14 +145,70 @@ public class SamlTokenValidatorImpl extends SignatureTokenValidatorImpl implemen
         return token;
     }
 
+    /**
+     * Validate a SAML Assertion that is processed on the event stream, without creating its DOM
+     * Element and OpenSAML objects. The signature of the Assertion has already been checked against
+     * the SAML signature profile when it was verified on the event stream. Subclasses that customize
+     * the SamlAssertionWrapper based checks must customize the SamlAssertionView based ones as well.
+     */
+    @Override
+    public <T extends SamlSecurityToken & InboundSecurityToken> T validate(final SamlAssertionView samlAssertionView,
+                                                 final InboundSecurityToken subjectSecurityToken,
+                                                 final TokenContext tokenContext) throws WSSecurityException {
+        // Check conditions
+        checkConditions(samlAssertionView,
+                        tokenContext.getWssSecurityProperties().getAudienceRestrictions());
+
+        // Check the AuthnStatements of the assertion (if any)
+        checkAuthnStatements(samlAssertionView);
+
+        // Check the Subject Confirmation requirements
+        verifySubjectConfirmationMethod(samlAssertionView);
+
+        // Check OneTimeUse Condition
+        checkOneTimeUse(samlAssertionView,
+                        tokenContext.getWssSecurityProperties().getSamlOneTimeUseReplayCache());
+
+        Crypto sigVerCrypto = null;
+        if (samlAssertionView.isSigned()) {
+            sigVerCrypto = tokenContext.getWssSecurityProperties().getSignatureVerificationCrypto();
+        }
+        SamlSecurityTokenImpl securityToken = new SamlSecurityTokenImpl(
+                samlAssertionView, subjectSecurityToken,
+                tokenContext.getWsSecurityContext(),
+                sigVerCrypto,
+                WSSecurityTokenConstants.KeyIdentifier_NoKeyInfo,
+                tokenContext.getWssSecurityProperties());
+
+        securityToken.setElementPath(tokenContext.getElementPath());
+        securityToken.setXMLSecEvent(tokenContext.getFirstXMLSecEvent());
+        @SuppressWarnings("unchecked")
+        T token = (T)securityToken;
+        return token;
+    }
+
     /**
      * Check the Subject Confirmation method requirements
      */
     protected void verifySubjectConfirmationMethod(
         SamlAssertionWrapper samlAssertion
     ) throws WSSecurityException {
+        verifySubjectConfirmationMethod(samlAssertion.getConfirmationMethods(), samlAssertion.isSigned());
+    }
+
+    /**
+     * Check the Subject Confirmation method requirements of an Assertion processed on the event stream
+     */
+    protected void verifySubjectConfirmationMethod(
+        SamlAssertionView samlAssertion
+    ) throws WSSecurityException {
+        verifySubjectConfirmationMethod(samlAssertion.getConfirmationMethods(), samlAssertion.isSigned());
+    }
+
+    private void verifySubjectConfirmationMethod(
+        List<String> methods, boolean signed
+    ) throws WSSecurityException {
 
-        List<String> methods = samlAssertion.getConfirmationMethods();
         if (methods == null || methods.isEmpty()) {
             if (requiredSubjectConfirmationMethod != null) {
                 LOG.warn("A required subject confirmation method was not present");
@@ -165,7 +221,6 @@ public class SamlTokenValidatorImpl extends SignatureTokenValidatorImpl implemen
             }
         }
 
-        boolean signed = samlAssertion.isSigned();
         boolean requiredMethodFound = false;
         boolean standardMethodFound = false;
         if (methods != null) {
@@ -238,6 +293,31 @@ public class SamlTokenValidatorImpl extends SignatureTokenValidatorImpl implemen
         samlAssertion.checkAuthnStatements(futureTTL);
     }
 
+    /**
+     * Check the Conditions of an Assertion processed on the event stream.
+     */
+    protected void checkConditions(
+        SamlAssertionView samlAssertion, List<String> audienceRestrictions
+    ) throws WSSecurityException {
+        checkConditions(samlAssertion);
+        samlAssertion.checkAudienceRestrictions(audienceRestrictions);
+    }
+
+    /**
+     * Check the Conditions of an Assertion processed on the event stream.
+     */
+    protected void checkConditions(SamlAssertionView samlAssertion) throws WSSecurityException {
+        samlAssertion.checkConditions(futureTTL);
+        samlAssertion.checkIssueInstant(futureTTL, ttl);
+    }
+
+    /**
+     * Check the AuthnStatements of an Assertion processed on the event stream (if any)
+     */
+    protected void checkAuthnStatements(SamlAssertionView samlAssertion) throws WSSecurityException {
+        samlAssertion.checkAuthnStatements(futureTTL);
+    }
+
     /**
      * Check the "OneTimeUse" Condition of the Assertion. If this is set then the Assertion
      * is cached (if a cache is defined), and must not have been previously cached
@@ -251,18 +331,34 @@ public class SamlTokenValidatorImpl extends SignatureTokenValidatorImpl implemen
             && samlAssertion.getSaml2().getConditions().getOneTimeUse() != null) {
             String identifier = samlAssertion.getId();
 
-            if (replayCache.contains(identifier)) {
+            Instant expires = samlAssertion.getSaml2().getConditions().getNotOnOrAfter();
+            if (!replayCache.addIfAbsent(identifier, expires)) {
                 throw new WSSecurityException(
                     WSSecurityException.ErrorCode.INVALID_SECURITY,
                     "badSamlToken",
                     new Object[] {"A replay attack has been detected"});
             }
+        }
+    }
 
-            Instant expires = samlAssertion.getSaml2().getConditions().getNotOnOrAfter();
-            if (expires != null) {
-                replayCache.add(identifier, expires);
-            } else {
-                replayCache.add(identifier);
+    /**
+     * Check the "OneTimeUse" Condition of an Assertion processed on the event stream. If this is set
+     * then the Assertion is cached (if a cache is defined), and must not have been previously cached
+     */
+    protected void checkOneTimeUse(
+        SamlAssertionView samlAssertion, ReplayCache replayCache
+    ) throws WSSecurityException {
+        if (replayCache != null
+            && samlAssertion.getSamlVersion().equals(SAMLVersion.VERSION_20)
+            && samlAssertion.isOneTimeUse()) {
+            String identifier = samlAssertion.getId();
+
+            Instant expires = samlAssertion.getNotOnOrAfter();
+            if (!replayCache.addIfAbsent(identifier, expires)) {
+                throw new WSSecurityException(
+                    WSSecurityException.ErrorCode.INVALID_SECURITY,
+                    "badSamlToken",
+                    new Object[] {"A replay attack has been detected"});
             }
         }
     }
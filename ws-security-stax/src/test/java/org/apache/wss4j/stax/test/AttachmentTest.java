@@ -420,6 +420,140 @@ public class AttachmentTest extends AbstractTestBase {
         assertEquals("text/xml", responseAttachment.getMimeType());
     }
 
+    @Test
+    public void testMultipleAttachmentCompleteSignatureParallelDigest() throws Exception {
+
+        final String attachment1Id = UUID.randomUUID().toString();
+        final Attachment[] attachment = new Attachment[2];
+        attachment[0] = new Attachment();
+        attachment[0].setMimeType("text/xml");
+        attachment[0].addHeaders(getHeaders(attachment1Id));
+        attachment[0].setId(attachment1Id);
+        attachment[0].setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+
+        final String attachment2Id = UUID.randomUUID().toString();
+        attachment[1] = new Attachment();
+        attachment[1].setMimeType("text/plain");
+        attachment[1].addHeaders(getHeaders(attachment2Id));
+        attachment[1].setId(attachment2Id);
+        attachment[1].setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            List<WSSConstants.Action> actions = new ArrayList<>();
+            actions.add(WSSConstants.SIGNATURE);
+            securityProperties.setActions(actions);
+            securityProperties.loadSignatureKeyStore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setSignatureUser("transmitter");
+            securityProperties.addSignaturePart(new SecurePart(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Body"), SecurePart.Modifier.Element));
+            securityProperties.addSignaturePart(new SecurePart("cid:Attachments", SecurePart.Modifier.Element));
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+
+            AttachmentCallbackHandler attachmentCallbackHandler =
+                new AttachmentCallbackHandler(Arrays.asList(attachment));
+            securityProperties.setAttachmentCallbackHandler(attachmentCallbackHandler);
+
+            OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+            XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+            xmlStreamWriter.close();
+        }
+
+        //done signature; now test sig-verification:
+        AttachmentCallbackHandler attachmentCallbackHandler =
+            new AttachmentCallbackHandler(Arrays.asList(attachment));
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setAttachmentCallbackHandler(attachmentCallbackHandler);
+            securityProperties.setParallelAttachmentDigest(true);
+
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+            Document document = StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+            NodeList sigReferences = document.getElementsByTagNameNS(WSConstants.SIG_NS, "Reference");
+            assertEquals(3, sigReferences.getLength());
+        }
+
+        assertEquals(2, attachmentCallbackHandler.getResponseAttachments().size());
+        Attachment responseAttachment = attachmentCallbackHandler.getResponseAttachments().get(0);
+        assertEquals(attachment1Id, responseAttachment.getId());
+        byte[] attachmentBytes = readInputStream(responseAttachment.getSourceStream());
+        assertTrue(Arrays.equals(attachmentBytes, SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("text/xml", responseAttachment.getMimeType());
+
+        responseAttachment = attachmentCallbackHandler.getResponseAttachments().get(1);
+        assertEquals(attachment2Id, responseAttachment.getId());
+        attachmentBytes = readInputStream(responseAttachment.getSourceStream());
+        assertTrue(Arrays.equals(attachmentBytes, SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+        assertEquals("text/plain", responseAttachment.getMimeType());
+    }
+
+    @Test
+    public void testInvalidMultipleAttachmentCompleteSignatureParallelDigest() throws Exception {
+
+        final String attachment1Id = UUID.randomUUID().toString();
+        final Attachment[] attachment = new Attachment[2];
+        attachment[0] = new Attachment();
+        attachment[0].setMimeType("text/xml");
+        attachment[0].addHeaders(getHeaders(attachment1Id));
+        attachment[0].setId(attachment1Id);
+        attachment[0].setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+
+        final String attachment2Id = UUID.randomUUID().toString();
+        attachment[1] = new Attachment();
+        attachment[1].setMimeType("text/plain");
+        attachment[1].addHeaders(getHeaders(attachment2Id));
+        attachment[1].setId(attachment2Id);
+        attachment[1].setSourceStream(new ByteArrayInputStream(SOAPUtil.SAMPLE_SOAP_MSG.getBytes(StandardCharsets.UTF_8)));
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            List<WSSConstants.Action> actions = new ArrayList<>();
+            actions.add(WSSConstants.SIGNATURE);
+            securityProperties.setActions(actions);
+            securityProperties.loadSignatureKeyStore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setSignatureUser("transmitter");
+            securityProperties.addSignaturePart(new SecurePart(new QName("http://schemas.xmlsoap.org/soap/envelope/", "Body"), SecurePart.Modifier.Element));
+            securityProperties.addSignaturePart(new SecurePart("cid:Attachments", SecurePart.Modifier.Element));
+            securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+
+            AttachmentCallbackHandler attachmentCallbackHandler =
+                new AttachmentCallbackHandler(Arrays.asList(attachment));
+            securityProperties.setAttachmentCallbackHandler(attachmentCallbackHandler);
+
+            OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+            XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+            xmlStreamWriter.close();
+        }
+
+        //done signature; now test sig-verification:
+        {
+            attachment[1].addHeader(AttachmentUtils.MIME_HEADER_CONTENT_DESCRIPTION, "Kaputt");
+
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setAttachmentCallbackHandler(new AttachmentCallbackHandler(Arrays.asList(attachment)));
+            securityProperties.setParallelAttachmentDigest(true);
+
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+            try {
+                StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+                fail("Exception expected");
+            } catch (XMLStreamException e) {
+                assertTrue(e.getCause() instanceof XMLSecurityException);
+                assertTrue(e.getCause().getMessage().startsWith("Invalid digest of reference cid:"));
+            }
+        }
+    }
+
     @Test
     public void testXMLAttachmentContentEncryption() throws Exception {
 
@@ -26,6 +26,7 @@ import java.nio.charset.StandardCharsets;
 import java.security.KeyStore;
 import java.security.Security;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -51,6 +52,7 @@ import org.apache.commons.compress.compressors.gzip.GzipCompressorOutputStream;
 import org.apache.wss4j.common.ConfigurationConstants;
 import org.apache.wss4j.common.WSEncryptionPart;
 import org.apache.wss4j.common.bsp.BSPRule;
+import org.apache.wss4j.common.cache.EncryptedKeySessionCache;
 import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.ext.WSSecurityException;
@@ -88,6 +90,7 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -151,6 +154,49 @@ public class EncDecryptionTest extends AbstractTestBase {
         }
     }
 
+    /**
+     * Test that the session key and the EncryptedKey of an earlier message are reused with an
+     * EncryptedKeySessionCache, until the session is used up or another algorithm is used.
+     */
+    @Test
+    public void testEncryptedKeySessionCacheOutbound() throws Exception {
+        EncryptedKeySessionCache sessionCache = new EncryptedKeySessionCache(Duration.ofMinutes(5), 2);
+
+        String[] symAlgorithms = {
+            WSSConstants.NS_XENC_AES256, WSSConstants.NS_XENC_AES256,
+            WSSConstants.NS_XENC_AES256, WSSConstants.NS_XENC11_AES256_GCM,
+        };
+        String[] cipherValues = new String[symAlgorithms.length];
+        for (int i = 0; i < symAlgorithms.length; i++) {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            List<WSSConstants.Action> actions = new ArrayList<>();
+            actions.add(WSSConstants.ENCRYPTION);
+            securityProperties.setActions(actions);
+            securityProperties.loadEncryptionKeystore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+            securityProperties.setEncryptionUser("receiver");
+            securityProperties.setEncryptionSymAlgorithm(symAlgorithms[i]);
+            securityProperties.setEncryptedKeySessionCache(sessionCache);
+
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            ByteArrayOutputStream baos = doOutboundSecurity(securityProperties, sourceDocument);
+
+            Document document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray()));
+            XPathExpression xPathExpression =
+                getXPath("/soap:Envelope/soap:Header/wsse:Security/xenc:EncryptedKey/xenc:CipherData/xenc:CipherValue");
+            Node node = (Node) xPathExpression.evaluate(document, XPathConstants.NODE);
+            assertNotNull(node);
+            cipherValues[i] = node.getTextContent();
+
+            doInboundSecurityWithWSS4J(document, WSHandlerConstants.ENCRYPTION);
+        }
+
+        assertEquals(cipherValues[0], cipherValues[1]);
+        // The session is used up
+        assertNotEquals(cipherValues[1], cipherValues[2]);
+        // The session of the third message is not reused with another symmetric algorithm
+        assertNotEquals(cipherValues[2], cipherValues[3]);
+    }
+
     @Test
     public void testEncDecryptionDefaultConfigurationInbound() throws Exception {
 
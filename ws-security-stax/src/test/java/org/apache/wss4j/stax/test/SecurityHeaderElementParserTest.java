@@ -0,0 +1,278 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.wss4j.stax.test;
+
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBIntrospector;
+import jakarta.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.wss4j.stax.ext.WSSConstants;
+import org.apache.wss4j.stax.impl.processor.input.SecurityHeaderElementParser;
+import org.apache.wss4j.stax.setup.WSSec;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * The security header elements built by the SecurityHeaderElementParser must be equal to the ones
+ * unmarshalled by JAXB with schema validation, and elements that are not understood by the parser
+ * must be left to JAXB.
+ */
+public class SecurityHeaderElementParserTest extends AbstractTestBase {
+
+    private static final String NAMESPACES =
+        " xmlns:wsse=\"" + WSSConstants.NS_WSSE10 + "\""
+        + " xmlns:wsse11=\"" + WSSConstants.NS_WSSE11 + "\""
+        + " xmlns:wsu=\"" + WSSConstants.NS_WSU10 + "\""
+        + " xmlns:xenc=\"" + WSSConstants.NS_XMLENC + "\""
+        + " xmlns:ds=\"" + WSSConstants.NS_DSIG + "\""
+        + " xmlns:wsc=\"" + WSSConstants.NS_WSC_05_12 + "\""
+        + " xmlns:wsc0502=\"" + WSSConstants.NS_WSC_05_02 + "\"";
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        WSSec.init();
+    }
+
+    @Test
+    public void testTimestamp() throws Exception {
+        assertParsed(SecurityHeaderElementParser::parseTimestamp,
+            "<wsu:Timestamp" + NAMESPACES + " wsu:Id=\"TS-1\">\n"
+            + "  <wsu:Created>2024-01-01T00:00:00.000Z</wsu:Created>\n"
+            + "  <!-- comment -->\n"
+            + "  <wsu:Expires wsu:Id=\"TS-2\">2024-01-01T00:05:00.000Z</wsu:Expires>\n"
+            + "</wsu:Timestamp>");
+        assertParsed(SecurityHeaderElementParser::parseTimestamp,
+            "<wsu:Timestamp" + NAMESPACES + "><wsu:Expires>2024-01-01T00:05:00Z</wsu:Expires></wsu:Timestamp>");
+
+        // Expires before Created
+        assertNotParsed(SecurityHeaderElementParser::parseTimestamp,
+            "<wsu:Timestamp" + NAMESPACES + "><wsu:Expires>2024-01-01T00:05:00Z</wsu:Expires>"
+            + "<wsu:Created>2024-01-01T00:00:00Z</wsu:Created></wsu:Timestamp>");
+        // Unqualified extension attribute
+        assertNotParsed(SecurityHeaderElementParser::parseTimestamp,
+            "<wsu:Timestamp" + NAMESPACES + "><wsu:Created ValueType=\"x\">2024-01-01T00:00:00Z</wsu:Created></wsu:Timestamp>");
+        // Duplicate Id
+        assertNotParsed(SecurityHeaderElementParser::parseTimestamp,
+            "<wsu:Timestamp" + NAMESPACES + " wsu:Id=\"TS-1\"><wsu:Created wsu:Id=\"TS-1\">2024-01-01T00:00:00Z</wsu:Created>"
+            + "</wsu:Timestamp>");
+        // Extension element
+        assertNotParsed(SecurityHeaderElementParser::parseTimestamp,
+            "<wsu:Timestamp" + NAMESPACES + "><wsu:Created>2024-01-01T00:00:00Z</wsu:Created><ds:KeyName>k</ds:KeyName>"
+            + "</wsu:Timestamp>");
+    }
+
+    @Test
+    public void testUsernameToken() throws Exception {
+        assertParsed(SecurityHeaderElementParser::parseUsernameToken,
+            "<wsse:UsernameToken" + NAMESPACES + " wsu:Id=\"UT-1\">\n"
+            + "  <wsse:Username>alice</wsse:Username>\n"
+            + "  <wsse:Password Type=\"" + WSSConstants.NS_PASSWORD_DIGEST + "\">MDEyMzQ1Njc4OWFiY2RlZmdoaWo=</wsse:Password>\n"
+            + "  <wsse:Nonce EncodingType=\"" + WSSConstants.SOAPMESSAGE_NS10_BASE64_ENCODING + "\">bm9uY2U=</wsse:Nonce>\n"
+            + "  <wsu:Created>2024-01-01T00:00:00.000Z</wsu:Created>\n"
+            + "</wsse:UsernameToken>");
+
+        // Salt and Iteration are left to JAXB
+        assertNotParsed(SecurityHeaderElementParser::parseUsernameToken,
+            "<wsse:UsernameToken" + NAMESPACES + "><wsse:Username>alice</wsse:Username>"
+            + "<wsse11:Salt>c2FsdA==</wsse11:Salt><wsse11:Iteration>1000</wsse11:Iteration></wsse:UsernameToken>");
+        // Missing Username
+        assertNotParsed(SecurityHeaderElementParser::parseUsernameToken,
+            "<wsse:UsernameToken" + NAMESPACES + "><wsse:Password>secret</wsse:Password></wsse:UsernameToken>");
+        // Element content in the Password
+        assertNotParsed(SecurityHeaderElementParser::parseUsernameToken,
+            "<wsse:UsernameToken" + NAMESPACES + "><wsse:Username>alice</wsse:Username>"
+            + "<wsse:Password><ds:KeyName>k</ds:KeyName></wsse:Password></wsse:UsernameToken>");
+    }
+
+    @Test
+    public void testBinarySecurityToken() throws Exception {
+        assertParsed(SecurityHeaderElementParser::parseBinarySecurityToken,
+            "<wsse:BinarySecurityToken" + NAMESPACES + " wsu:Id=\"X509-1\""
+            + " ValueType=\"" + WSSConstants.NS_X509_V3_TYPE + "\""
+            + " EncodingType=\"" + WSSConstants.SOAPMESSAGE_NS10_BASE64_ENCODING + "\">"
+            + "MIIBAAAA\nAAAAAAAA</wsse:BinarySecurityToken>");
+
+        // xop:Include is left to JAXB
+        assertNotParsed(SecurityHeaderElementParser::parseBinarySecurityToken,
+            "<wsse:BinarySecurityToken" + NAMESPACES + " ValueType=\"" + WSSConstants.NS_X509_V3_TYPE + "\">"
+            + "<xop:Include xmlns:xop=\"http://www.w3.org/2004/08/xop/include\" href=\"cid:1\"/>"
+            + "</wsse:BinarySecurityToken>");
+        // Id that is not an NCName
+        assertNotParsed(SecurityHeaderElementParser::parseBinarySecurityToken,
+            "<wsse:BinarySecurityToken" + NAMESPACES + " wsu:Id=\"1\">MIIB</wsse:BinarySecurityToken>");
+    }
+
+    @Test
+    public void testSecurityTokenReference() throws Exception {
+        assertParsed(SecurityHeaderElementParser::parseSecurityTokenReference,
+            "<wsse:SecurityTokenReference" + NAMESPACES + " wsu:Id=\"STR-1\""
+            + " wsse11:TokenType=\"" + WSSConstants.NS_SAML20_TOKEN_PROFILE_TYPE + "\">"
+            + "<wsse:KeyIdentifier ValueType=\"" + WSSConstants.NS_SAML20_TYPE + "\">_1234</wsse:KeyIdentifier>"
+            + "</wsse:SecurityTokenReference>");
+        assertParsed(SecurityHeaderElementParser::parseSecurityTokenReference,
+            "<wsse:SecurityTokenReference" + NAMESPACES + ">\n"
+            + "  <wsse:Reference URI=\"#X509-1\" ValueType=\"" + WSSConstants.NS_X509_V3_TYPE + "\"/>\n"
+            + "</wsse:SecurityTokenReference>");
+
+        // ds:X509Data is left to JAXB
+        assertNotParsed(SecurityHeaderElementParser::parseSecurityTokenReference,
+            "<wsse:SecurityTokenReference" + NAMESPACES + "><ds:X509Data><ds:X509SKI>AAAA</ds:X509SKI></ds:X509Data>"
+            + "</wsse:SecurityTokenReference>");
+        // Character content in the empty Reference
+        assertNotParsed(SecurityHeaderElementParser::parseSecurityTokenReference,
+            "<wsse:SecurityTokenReference" + NAMESPACES + "><wsse:Reference URI=\"#X509-1\"> </wsse:Reference>"
+            + "</wsse:SecurityTokenReference>");
+        // Malformed URI
+        assertNotParsed(SecurityHeaderElementParser::parseSecurityTokenReference,
+            "<wsse:SecurityTokenReference" + NAMESPACES + "><wsse:Reference URI=\"#X509 1\"/>"
+            + "</wsse:SecurityTokenReference>");
+    }
+
+    @Test
+    public void testReferenceList() throws Exception {
+        assertParsed(SecurityHeaderElementParser::parseReferenceList,
+            "<xenc:ReferenceList" + NAMESPACES + ">\n"
+            + "  <xenc:DataReference URI=\"#ED-1\"/>\n"
+            + "  <xenc:KeyReference URI=\"#EK-1\"></xenc:KeyReference>\n"
+            + "  <xenc:DataReference URI=\"#ED-2\"/>\n"
+            + "</xenc:ReferenceList>");
+
+        // Empty ReferenceList
+        assertNotParsed(SecurityHeaderElementParser::parseReferenceList,
+            "<xenc:ReferenceList" + NAMESPACES + "></xenc:ReferenceList>");
+        // Missing URI
+        assertNotParsed(SecurityHeaderElementParser::parseReferenceList,
+            "<xenc:ReferenceList" + NAMESPACES + "><xenc:DataReference/></xenc:ReferenceList>");
+    }
+
+    @Test
+    public void testDerivedKeyToken() throws Exception {
+        assertParsed(SecurityHeaderElementParser::parseDerivedKeyToken,
+            "<wsc:DerivedKeyToken" + NAMESPACES + " wsu:Id=\"DK-1\" Algorithm=\"" + WSSConstants.P_SHA_1_2005_12 + "\">\n"
+            + "  <wsse:SecurityTokenReference><wsse:Reference URI=\"#EK-1\"/></wsse:SecurityTokenReference>\n"
+            + "  <wsc:Offset>0</wsc:Offset>\n"
+            + "  <wsc:Length>32</wsc:Length>\n"
+            + "  <wsc:Label>WS-SecureConversation</wsc:Label>\n"
+            + "  <wsc:Nonce>AAECAwQFBgcICQoLDA0ODw==</wsc:Nonce>\n"
+            + "</wsc:DerivedKeyToken>");
+        assertParsed(SecurityHeaderElementParser::parseDerivedKeyToken,
+            "<wsc0502:DerivedKeyToken" + NAMESPACES + ">"
+            + "<wsse:SecurityTokenReference><wsse:Reference URI=\"#EK-1\"/></wsse:SecurityTokenReference>"
+            + "<wsc0502:Generation>1</wsc0502:Generation><wsc0502:Nonce>AAECAwQFBgcICQoLDA0ODw==</wsc0502:Nonce>"
+            + "</wsc0502:DerivedKeyToken>");
+
+        // Properties are left to JAXB
+        assertNotParsed(SecurityHeaderElementParser::parseDerivedKeyToken,
+            "<wsc:DerivedKeyToken" + NAMESPACES + "><wsc:Properties/><wsc:Length>32</wsc:Length></wsc:DerivedKeyToken>");
+        // Length without Offset or Generation
+        assertNotParsed(SecurityHeaderElementParser::parseDerivedKeyToken,
+            "<wsc:DerivedKeyToken" + NAMESPACES + "><wsc:Length>32</wsc:Length></wsc:DerivedKeyToken>");
+        // Non-canonical base64 Nonce
+        assertNotParsed(SecurityHeaderElementParser::parseDerivedKeyToken,
+            "<wsc:DerivedKeyToken" + NAMESPACES + "><wsc:Nonce>AAB=</wsc:Nonce></wsc:DerivedKeyToken>");
+        // Offset out of range
+        assertNotParsed(SecurityHeaderElementParser::parseDerivedKeyToken,
+            "<wsc:DerivedKeyToken" + NAMESPACES + "><wsc:Offset>18446744073709551616</wsc:Offset></wsc:DerivedKeyToken>");
+    }
+
+    private static void assertParsed(Function<List<XMLSecEvent>, Object> parser, String xml) throws Exception {
+        Object parsed = parser.apply(getXMLSecEvents(xml));
+        assertNotNull(parsed);
+
+        Unmarshaller unmarshaller = WSSConstants.getJaxbUnmarshaller(false);
+        Object unmarshalled = JAXBIntrospector.getValue(unmarshaller.unmarshal(new StreamSource(new StringReader(xml))));
+        assertEquivalent(unmarshalled, parsed);
+    }
+
+    private static void assertNotParsed(Function<List<XMLSecEvent>, Object> parser, String xml) throws Exception {
+        assertNull(parser.apply(getXMLSecEvents(xml)));
+    }
+
+    private static List<XMLSecEvent> getXMLSecEvents(String xml) throws Exception {
+        XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml));
+        List<XMLSecEvent> xmlSecEvents = new ArrayList<>();
+        XMLSecStartElement parentXMLSecStartElement = null;
+        while (xmlStreamReader.hasNext()) {
+            int eventType = xmlStreamReader.next();
+            if (eventType == XMLStreamConstants.END_DOCUMENT) {
+                break;
+            }
+            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXMLSecStartElement);
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                parentXMLSecStartElement = xmlSecEvent.asStartElement();
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
+            }
+            xmlSecEvents.add(xmlSecEvent);
+        }
+        return xmlSecEvents;
+    }
+
+    /**
+     * Compare the fields of the binding objects. JAXB leaves Lists without any items null.
+     */
+    private static void assertEquivalent(Object expected, Object actual) throws Exception {
+        if (expected instanceof JAXBElement) {
+            assertEquals(((JAXBElement<?>) expected).getName(), ((JAXBElement<?>) actual).getName());
+            assertEquivalent(((JAXBElement<?>) expected).getValue(), ((JAXBElement<?>) actual).getValue());
+        } else if (expected instanceof List || actual instanceof List) {
+            List<?> expectedList = expected == null ? new ArrayList<>() : (List<?>) expected;
+            List<?> actualList = actual == null ? new ArrayList<>() : (List<?>) actual;
+            assertEquals(expectedList.size(), actualList.size());
+            for (int i = 0; i < expectedList.size(); i++) {
+                assertEquivalent(expectedList.get(i), actualList.get(i));
+            }
+        } else if (expected instanceof byte[]) {
+            assertArrayEquals((byte[]) expected, (byte[]) actual);
+        } else if (expected == null || expected instanceof String || expected instanceof Number
+            || expected instanceof Map) {
+            assertEquals(expected, actual);
+        } else {
+            assertEquals(expected.getClass(), actual.getClass());
+            for (Class<?> clazz = expected.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        field.setAccessible(true);
+                        assertEquivalent(field.get(expected), field.get(actual));
+                    }
+                }
+            }
+        }
+    }
+}
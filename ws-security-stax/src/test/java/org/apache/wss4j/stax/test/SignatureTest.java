@@ -23,12 +23,14 @@ import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
 import java.security.Security;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
@@ -47,6 +49,7 @@ import javax.xml.xpath.XPathExpression;
 import org.apache.wss4j.common.ConfigurationConstants;
 import org.apache.wss4j.common.bsp.BSPRule;
 import org.apache.wss4j.common.crypto.CryptoFactory;
+import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.ext.WSPasswordCallback;
 import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.dom.WSConstants;
@@ -128,6 +131,55 @@ public class SignatureTest extends AbstractTestBase {
         }
     }
 
+    @Test
+    public void testSignatureOutboundWSSecReuse() throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        List<WSSConstants.Action> actions = new ArrayList<>();
+        actions.add(WSSConstants.SIGNATURE);
+        securityProperties.setActions(actions);
+        final AtomicInteger privateKeyLookups = new AtomicInteger();
+        Properties cryptoProperties =
+            CryptoFactory.getProperties("transmitter-crypto.properties", this.getClass().getClassLoader());
+        securityProperties.setSignatureCrypto(new Merlin(cryptoProperties, this.getClass().getClassLoader(), null) {
+            @Override
+            public PrivateKey getPrivateKey(String identifier, String password) throws WSSecurityException {
+                privateKeyLookups.incrementAndGet();
+                return super.getPrivateKey(identifier, password);
+            }
+        });
+        securityProperties.setSignatureUser("transmitter");
+        final CallbackHandlerImpl callbackHandler = new CallbackHandlerImpl();
+        final AtomicInteger passwordCallbacks = new AtomicInteger();
+        securityProperties.setCallbackHandler(callbacks -> {
+            passwordCallbacks.incrementAndGet();
+            callbackHandler.handle(callbacks);
+        });
+
+        // The same OutboundWSSec is used for several messages
+        OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+        for (int i = 0; i < 4; i++) {
+            if (i == 3) {
+                wsSecOut.clearCachedKeys();
+            }
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+            xmlStreamWriter.close();
+
+            Document document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray()));
+            NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_dsig_Signature.getNamespaceURI(), WSSConstants.TAG_dsig_Signature.getLocalPart());
+            assertEquals(1, nodeList.getLength());
+
+            doInboundSecurityWithWSS4J(document, WSHandlerConstants.SIGNATURE);
+        }
+
+        // The CallbackHandler is consulted for every message, so a changed password or key is picked up
+        assertEquals(4, passwordCallbacks.get());
+        // The private key is reused until the cached keys are cleared
+        assertEquals(2, privateKeyLookups.get());
+    }
+
     @Test
     public void testSignatureDefaultConfigurationInbound() throws Exception {
 
@@ -34,6 +34,7 @@ import javax.security.auth.callback.UnsupportedCallbackException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 
+import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.Merlin;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.bean.ActionBean;
@@ -80,6 +81,7 @@ public class SAMLCallbackHandlerImpl implements CallbackHandler {
     private List<Object> customAttributeValues;
     private ConditionsBean conditions;
     private SubjectConfirmationDataBean subjectConfirmationData;
+    private Crypto issuerCrypto;
 
     private boolean signAssertion = true;
 
@@ -91,13 +93,17 @@ public class SAMLCallbackHandlerImpl implements CallbackHandler {
         if (callbacks[0] instanceof SAMLCallback) {
             try {
                 SAMLCallback samlCallback = (SAMLCallback) callbacks[0];
-                KeyStore keyStore = KeyStore.getInstance("jks");
-                InputStream input = this.getClass().getClassLoader().getResourceAsStream("saml/issuer.jks");
-                keyStore.load(input, "default".toCharArray());
-                input.close();
-
-                Merlin crypto = new Merlin();
-                crypto.setKeyStore(keyStore);
+                Crypto crypto = issuerCrypto;
+                if (crypto == null) {
+                    KeyStore keyStore = KeyStore.getInstance("jks");
+                    InputStream input = this.getClass().getClassLoader().getResourceAsStream("saml/issuer.jks");
+                    keyStore.load(input, "default".toCharArray());
+                    input.close();
+
+                    Merlin merlin = new Merlin();
+                    merlin.setKeyStore(keyStore);
+                    crypto = merlin;
+                }
                 samlCallback.setIssuerCrypto(crypto);
                 samlCallback.setIssuerKeyName("samlissuer");
                 samlCallback.setIssuerKeyPassword("default");
@@ -302,6 +308,14 @@ public class SAMLCallbackHandlerImpl implements CallbackHandler {
         this.issuerFormat = issuerFormat;
     }
 
+    public Crypto getIssuerCrypto() {
+        return issuerCrypto;
+    }
+
+    public void setIssuerCrypto(Crypto issuerCrypto) {
+        this.issuerCrypto = issuerCrypto;
+    }
+
     public boolean isSignAssertion() {
         return signAssertion;
     }
@@ -36,8 +36,10 @@ import org.apache.wss4j.common.crypto.Crypto;
 import org.apache.wss4j.common.crypto.CryptoFactory;
 import org.apache.wss4j.common.crypto.CryptoType;
 import org.apache.wss4j.common.crypto.Merlin;
+import org.apache.wss4j.common.ext.WSSecurityException;
 import org.apache.wss4j.common.saml.SAMLCallback;
 import org.apache.wss4j.common.saml.SAMLUtil;
+import org.apache.wss4j.common.saml.SamlAssertionCache;
 import org.apache.wss4j.common.saml.SamlAssertionWrapper;
 import org.apache.wss4j.common.saml.bean.KeyInfoBean;
 import org.apache.wss4j.common.saml.bean.Version;
@@ -52,6 +54,7 @@ import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.impl.securityToken.HttpsSecurityTokenImpl;
 import org.apache.wss4j.stax.securityEvent.HttpsTokenSecurityEvent;
 import org.apache.wss4j.stax.securityToken.HttpsSecurityToken;
+import org.apache.wss4j.stax.securityToken.SamlSecurityToken;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.setup.InboundWSSec;
 import org.apache.wss4j.stax.setup.OutboundWSSec;
@@ -60,13 +63,21 @@ import org.apache.wss4j.stax.test.AbstractTestBase;
 import org.apache.wss4j.stax.test.CallbackHandlerImpl;
 import org.apache.wss4j.stax.test.utils.StAX2DOM;
 import org.apache.wss4j.stax.test.utils.XmlReaderToWriter;
+import org.apache.wss4j.stax.validate.SamlTokenValidator;
+import org.apache.wss4j.stax.validate.SamlTokenValidatorImpl;
+import org.apache.wss4j.stax.validate.SignatureTokenValidatorImpl;
+import org.apache.wss4j.stax.validate.TokenContext;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
+import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SAMLTokenHOKTest extends AbstractTestBase {
 
@@ -628,6 +639,78 @@ public class SAMLTokenHOKTest extends AbstractTestBase {
         }
     }
 
+    @Test
+    public void testSAML2AuthnOutboundWithAssertionCache() throws Exception {
+        KeyStore issuerKeyStore = KeyStore.getInstance("jks");
+        issuerKeyStore.load(this.getClass().getClassLoader().getResourceAsStream("saml/issuer.jks"), "default".toCharArray());
+        Merlin issuerCrypto = new Merlin();
+        issuerCrypto.setKeyStore(issuerKeyStore);
+
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(this.getClass().getClassLoader().getResourceAsStream("transmitter.jks"), "default".toCharArray());
+        Merlin crypto = new Merlin();
+        crypto.setKeyStore(keyStore);
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("transmitter");
+
+        SAMLCallbackHandlerImpl callbackHandler = new SAMLCallbackHandlerImpl();
+        callbackHandler.setSamlVersion(Version.SAML_20);
+        callbackHandler.setStatement(SAMLCallbackHandlerImpl.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_HOLDER_KEY);
+        callbackHandler.setIssuer("www.example.com");
+        callbackHandler.setCerts(crypto.getX509Certificates(cryptoType));
+        callbackHandler.setIssuerCrypto(issuerCrypto);
+
+        SamlAssertionCache samlAssertionCache = new SamlAssertionCache();
+        List<String> assertionIds = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            if (i == 2) {
+                // A different issuer Crypto must not get the Assertion signed by the first one
+                Merlin otherIssuerCrypto = new Merlin();
+                otherIssuerCrypto.setKeyStore(issuerKeyStore);
+                callbackHandler.setIssuerCrypto(otherIssuerCrypto);
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            {
+                WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+                List<WSSConstants.Action> actions = new ArrayList<>();
+                actions.add(WSSConstants.SAML_TOKEN_SIGNED);
+                securityProperties.setActions(actions);
+                securityProperties.setSamlCallbackHandler(callbackHandler);
+                securityProperties.setSamlAssertionCache(samlAssertionCache);
+                securityProperties.loadSignatureKeyStore(this.getClass().getClassLoader().getResource("transmitter.jks"), "default".toCharArray());
+                securityProperties.setSignatureUser("transmitter");
+                securityProperties.setCallbackHandler(new CallbackHandlerImpl());
+
+                OutboundWSSec wsSecOut = WSSec.getOutboundWSSec(securityProperties);
+                XMLStreamWriter xmlStreamWriter = wsSecOut.processOutMessage(baos, StandardCharsets.UTF_8.name(), new ArrayList<SecurityEvent>());
+                XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml"));
+                XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+                xmlStreamWriter.close();
+
+                Document document = documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray()));
+                NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_dsig_Signature.getNamespaceURI(), WSSConstants.TAG_dsig_Signature.getLocalPart());
+                assertEquals(nodeList.getLength(), 2);
+
+                nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_SAML2_ASSERTION.getNamespaceURI(), WSSConstants.TAG_SAML2_ASSERTION.getLocalPart());
+                assertEquals(nodeList.getLength(), 1);
+                assertionIds.add(((Element) nodeList.item(0)).getAttributeNS(null, "ID"));
+            }
+
+            //done signature; now test sig-verification:
+            {
+                String action = WSHandlerConstants.SIGNATURE + " " + WSHandlerConstants.SAML_TOKEN_SIGNED;
+                Properties properties = new Properties();
+                doInboundSecurityWithWSS4J_1(documentBuilderFactory.newDocumentBuilder().parse(new ByteArrayInputStream(baos.toByteArray())), action, properties, false);
+            }
+        }
+
+        assertEquals(assertionIds.get(0), assertionIds.get(1));
+        assertNotEquals(assertionIds.get(1), assertionIds.get(2));
+        assertEquals(2, samlAssertionCache.size());
+    }
+
     @Test
     public void testSAML2AuthnAssertionInbound() throws Exception {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -670,6 +753,90 @@ public class SAMLTokenHOKTest extends AbstractTestBase {
         }
     }
 
+    @Test
+    public void testSAML2AuthnAssertionStreamingInbound() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+            callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+            callbackHandler.setConfirmationMethod(SAML2Constants.CONF_HOLDER_KEY);
+            callbackHandler.setIssuer("www.example.com");
+
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            String action = WSHandlerConstants.SAML_TOKEN_SIGNED;
+            Properties properties = new Properties();
+            properties.put(WSHandlerConstants.SAML_CALLBACK_REF, callbackHandler);
+            Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, properties);
+
+            //some test that we can really sure we get what we want from WSS4J
+            NodeList nodeList = securedDocument.getElementsByTagNameNS(WSSConstants.TAG_dsig_Signature.getNamespaceURI(), WSSConstants.TAG_dsig_Signature.getLocalPart());
+            assertEquals(nodeList.getLength(), 2);
+            assertEquals(nodeList.item(0).getParentNode().getLocalName(), WSSConstants.TAG_SAML2_ASSERTION.getLocalPart());
+            assertEquals(nodeList.item(1).getParentNode().getLocalName(), WSSConstants.TAG_WSSE_SECURITY.getLocalPart());
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //done signature; now test sig-verification:
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setStreamingSamlProcessing(true);
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+            Document document = StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+            //header element must still be there
+            NodeList nodeList = document.getElementsByTagNameNS(WSSConstants.TAG_dsig_Signature.getNamespaceURI(), WSSConstants.TAG_dsig_Signature.getLocalPart());
+            assertEquals(nodeList.getLength(), 2);
+            assertEquals(nodeList.item(0).getParentNode().getLocalName(), WSSConstants.TAG_SAML2_ASSERTION.getLocalPart());
+            assertEquals(nodeList.item(1).getParentNode().getLocalName(), WSSConstants.TAG_WSSE_SECURITY.getLocalPart());
+        }
+    }
+
+    @Test
+    public void testSAML2AuthnAssertionStreamingInboundCustomValidator() throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+            callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+            callbackHandler.setConfirmationMethod(SAML2Constants.CONF_HOLDER_KEY);
+            callbackHandler.setIssuer("www.example.com");
+
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            String action = WSHandlerConstants.SAML_TOKEN_SIGNED;
+            Properties properties = new Properties();
+            properties.put(WSHandlerConstants.SAML_CALLBACK_REF, callbackHandler);
+            Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, properties);
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //done signature; now test sig-verification with a validator that only validates SamlAssertionWrappers:
+        {
+            final List<SamlAssertionWrapper> validatedAssertions = new ArrayList<>();
+            SamlTokenValidator validator = new WrapperSamlTokenValidator(validatedAssertions);
+
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+            securityProperties.setStreamingSamlProcessing(true);
+            securityProperties.addValidator(WSSConstants.TAG_SAML2_ASSERTION, validator);
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+            StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+            assertEquals(1, validatedAssertions.size());
+            SamlAssertionWrapper samlAssertionWrapper = validatedAssertions.get(0);
+            assertNotNull(samlAssertionWrapper.getId());
+            assertTrue(samlAssertionWrapper.isSigned());
+            assertEquals("www.example.com", samlAssertionWrapper.getIssuerString());
+        }
+    }
+
     @Test
     public void testSAML2AuthnAssertionIssuerSerialOutbound() throws Exception {
 
@@ -1025,4 +1192,24 @@ public class SAMLTokenHOKTest extends AbstractTestBase {
         }
     }
 
+    /**
+     * A SamlTokenValidator that only implements the SamlAssertionWrapper based validation
+     */
+    private static class WrapperSamlTokenValidator extends SignatureTokenValidatorImpl implements SamlTokenValidator {
+
+        private final List<SamlAssertionWrapper> validatedAssertions;
+
+        WrapperSamlTokenValidator(List<SamlAssertionWrapper> validatedAssertions) {
+            this.validatedAssertions = validatedAssertions;
+        }
+
+        @Override
+        public <T extends SamlSecurityToken & InboundSecurityToken> T validate(
+                SamlAssertionWrapper samlAssertionWrapper, InboundSecurityToken subjectSecurityToken,
+                TokenContext tokenContext) throws WSSecurityException {
+            validatedAssertions.add(samlAssertionWrapper);
+            return new SamlTokenValidatorImpl().validate(samlAssertionWrapper, subjectSecurityToken, tokenContext);
+        }
+    }
+
 }
\ No newline at end of file
@@ -95,6 +95,138 @@ public class SAMLTokenNegativeTest extends AbstractTestBase {
         }
     }
 
+    @Test
+    public void testSAML2AuthnAssertionModifiedStreamingInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+            callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+            callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+            callbackHandler.setIssuer("www.example.com");
+
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            String action = WSHandlerConstants.SAML_TOKEN_SIGNED;
+            Properties properties = new Properties();
+            properties.put(WSHandlerConstants.SAML_CALLBACK_REF, callbackHandler);
+            properties.setProperty(WSHandlerConstants.SIG_KEY_ID, "DirectReference");
+            Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, properties);
+
+            //some test that we can really sure we get what we want from WSS4J
+            NodeList nodeList = securedDocument.getElementsByTagNameNS(WSSConstants.TAG_dsig_Signature.getNamespaceURI(), WSSConstants.TAG_dsig_Signature.getLocalPart());
+            assertEquals(nodeList.getLength(), 2);
+
+            NodeList list = securedDocument.getElementsByTagNameNS(WSConstants.SAML2_NS, "Assertion");
+            Element assertionElement = (Element) list.item(0);
+            assertionElement.setAttributeNS(null, "MinorVersion", "5");
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //done signature; now test sig-verification:
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("saml/issuer.jks"), "default".toCharArray());
+            securityProperties.setStreamingSamlProcessing(true);
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties, false, true);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+            try {
+                StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+                fail("XMLStreamException expected");
+            } catch (XMLStreamException e) {
+                assertNotNull(e.getCause());
+                assertNotNull(e.getCause().getCause());
+            }
+        }
+    }
+
+    /**
+     * The signed Assertion is wrapped in an Object of its own Signature, and the outer Assertion with
+     * the same ID is modified. The Reference must be resolved to the outer Assertion.
+     */
+    @Test
+    public void testSAML2AuthnAssertionWrappedStreamingInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            Document securedDocument = createSenderVouchesDocument();
+
+            NodeList list = securedDocument.getElementsByTagNameNS(WSConstants.SAML2_NS, "Assertion");
+            Element assertionElement = (Element) list.item(0);
+            Element wrappedAssertionElement = (Element) assertionElement.cloneNode(true);
+            Element wrappedSigElement =
+                (Element) wrappedAssertionElement.getElementsByTagNameNS(WSConstants.SIG_NS, "Signature").item(0);
+            wrappedAssertionElement.removeChild(wrappedSigElement);
+
+            Element sigElement = (Element) assertionElement.getElementsByTagNameNS(WSConstants.SIG_NS, "Signature").item(0);
+            Element objectElement = securedDocument.createElementNS(WSConstants.SIG_NS, "ds:Object");
+            objectElement.appendChild(wrappedAssertionElement);
+            sigElement.appendChild(objectElement);
+
+            assertionElement.getElementsByTagNameNS(WSConstants.SAML2_NS, "NameID").item(0).setTextContent("uid=attacker");
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //done signature; now test sig-verification:
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("saml/issuer.jks"), "default".toCharArray());
+            securityProperties.setStreamingSamlProcessing(true);
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties, false, true);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+            try {
+                StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+                fail("XMLStreamException expected");
+            } catch (XMLStreamException e) {
+                assertNotNull(e.getCause());
+            }
+        }
+    }
+
+    /**
+     * A modified copy of the signed Assertion, with the same ID and Signature, follows the signed
+     * Assertion in the security header.
+     */
+    @Test
+    public void testSAML2AuthnAssertionDuplicatedStreamingInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            Document securedDocument = createSenderVouchesDocument();
+
+            NodeList list = securedDocument.getElementsByTagNameNS(WSConstants.SAML2_NS, "Assertion");
+            Element assertionElement = (Element) list.item(0);
+            Element duplicatedAssertionElement = (Element) assertionElement.cloneNode(true);
+            duplicatedAssertionElement.getElementsByTagNameNS(WSConstants.SAML2_NS, "NameID").item(0)
+                .setTextContent("uid=attacker");
+            assertionElement.getParentNode().insertBefore(duplicatedAssertionElement, assertionElement.getNextSibling());
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        //done signature; now test sig-verification:
+        {
+            WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+            securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("saml/issuer.jks"), "default".toCharArray());
+            securityProperties.setStreamingSamlProcessing(true);
+            InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties, false, true);
+            XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray())));
+
+            try {
+                StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+                fail("XMLStreamException expected");
+            } catch (XMLStreamException e) {
+                assertNotNull(e.getCause());
+            }
+        }
+    }
+
     @Test
     public void testSAML1SignedKeyHolderSigModifiedInbound() throws Exception {
 
@@ -273,4 +405,23 @@ public class SAMLTokenNegativeTest extends AbstractTestBase {
             }
         }
     }
+
+    private Document createSenderVouchesDocument() throws Exception {
+        SAML2CallbackHandler callbackHandler = new SAML2CallbackHandler();
+        callbackHandler.setStatement(SAML2CallbackHandler.Statement.AUTHN);
+        callbackHandler.setConfirmationMethod(SAML2Constants.CONF_SENDER_VOUCHES);
+        callbackHandler.setIssuer("www.example.com");
+
+        InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+        String action = WSHandlerConstants.SAML_TOKEN_SIGNED;
+        Properties properties = new Properties();
+        properties.put(WSHandlerConstants.SAML_CALLBACK_REF, callbackHandler);
+        properties.setProperty(WSHandlerConstants.SIG_KEY_ID, "DirectReference");
+        Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, properties);
+
+        //some test that we can really sure we get what we want from WSS4J
+        NodeList nodeList = securedDocument.getElementsByTagNameNS(WSSConstants.TAG_dsig_Signature.getNamespaceURI(), WSSConstants.TAG_dsig_Signature.getLocalPart());
+        assertEquals(nodeList.getLength(), 2);
+        return securedDocument;
+    }
 }
\ No newline at end of file
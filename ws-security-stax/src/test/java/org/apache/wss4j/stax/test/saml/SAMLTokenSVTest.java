@@ -40,6 +40,7 @@ import org.apache.wss4j.stax.ext.WSSConstants;
 import org.apache.wss4j.stax.ext.WSSSecurityProperties;
 import org.apache.wss4j.stax.impl.securityToken.HttpsSecurityTokenImpl;
 import org.apache.wss4j.stax.securityEvent.HttpsTokenSecurityEvent;
+import org.apache.wss4j.stax.securityEvent.SamlTokenSecurityEvent;
 import org.apache.wss4j.stax.securityToken.HttpsSecurityToken;
 import org.apache.wss4j.stax.securityToken.WSSecurityTokenConstants;
 import org.apache.wss4j.stax.setup.InboundWSSec;
@@ -52,6 +53,7 @@ import org.apache.wss4j.stax.test.utils.XmlReaderToWriter;
 import org.apache.wss4j.stax.utils.WSSUtils;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.junit.jupiter.api.Test;
+import org.opensaml.saml.common.SAMLVersion;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
@@ -386,6 +388,75 @@ public class SAMLTokenSVTest extends AbstractTestBase {
         }
     }
 
+    @Test
+    public void testSAML1AssertionStreamingInbound() throws Exception {
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        {
+            SAML1CallbackHandler callbackHandler = new SAML1CallbackHandler();
+            callbackHandler.setStatement(SAML1CallbackHandler.Statement.AUTHZ);
+            callbackHandler.setIssuer("www.example.com");
+            callbackHandler.setResource("http://resource.org");
+            callbackHandler.setSignAssertion(false);
+
+            InputStream sourceDocument = this.getClass().getClassLoader().getResourceAsStream("testdata/plain-soap-1.1.xml");
+            String action = WSHandlerConstants.SAML_TOKEN_UNSIGNED;
+            Properties properties = new Properties();
+            properties.put(WSHandlerConstants.SAML_CALLBACK_REF, callbackHandler);
+            Document securedDocument = doOutboundSecurityWithWSS4J(sourceDocument, action, properties);
+
+            javax.xml.transform.Transformer transformer = TRANSFORMER_FACTORY.newTransformer();
+            transformer.transform(new DOMSource(securedDocument), new StreamResult(baos));
+        }
+
+        String message = new String(baos.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(message.contains("MinorVersion=\"1\""));
+
+        // The version of the streamed Assertion is taken from its MinorVersion
+        SamlTokenSecurityEvent samlTokenSecurityEvent = processStreamingInbound(message);
+        assertEquals(WSSecurityTokenConstants.SAML_11_TOKEN, samlTokenSecurityEvent.getSecurityToken().getTokenType());
+        assertEquals(SAMLVersion.VERSION_11, samlTokenSecurityEvent.getSamlVersion());
+        assertEquals("www.example.com", samlTokenSecurityEvent.getIssuerName());
+
+        samlTokenSecurityEvent = processStreamingInbound(message.replace("MinorVersion=\"1\"", "MinorVersion=\"0\""));
+        assertEquals(WSSecurityTokenConstants.SAML_10_TOKEN, samlTokenSecurityEvent.getSecurityToken().getTokenType());
+        assertEquals(SAMLVersion.VERSION_10, samlTokenSecurityEvent.getSamlVersion());
+    }
+
+    private SamlTokenSecurityEvent processStreamingInbound(String message) throws Exception {
+        WSSSecurityProperties securityProperties = new WSSSecurityProperties();
+        securityProperties.loadSignatureVerificationKeystore(this.getClass().getClassLoader().getResource("receiver.jks"), "default".toCharArray());
+        securityProperties.setCallbackHandler(new SAMLCallbackHandlerImpl());
+        securityProperties.setStreamingSamlProcessing(true);
+        InboundWSSec wsSecIn = WSSec.getInboundWSSec(securityProperties);
+
+        HttpsTokenSecurityEvent httpsTokenSecurityEvent = new HttpsTokenSecurityEvent();
+        httpsTokenSecurityEvent.setAuthenticationType(HttpsTokenSecurityEvent.AuthenticationType.HttpsClientCertificateAuthentication);
+        CryptoType cryptoType = new CryptoType(CryptoType.TYPE.ALIAS);
+        cryptoType.setAlias("transmitter");
+        HttpsSecurityToken httpsSecurityToken = new HttpsSecurityTokenImpl(
+                securityProperties.getSignatureVerificationCrypto().getX509Certificates(cryptoType)[0]);
+        httpsTokenSecurityEvent.setSecurityToken(httpsSecurityToken);
+
+        List<SecurityEvent> requestSecurityEvents = new ArrayList<>();
+        requestSecurityEvents.add(httpsTokenSecurityEvent);
+
+        final List<SamlTokenSecurityEvent> samlTokenSecurityEvents = new ArrayList<>();
+        XMLStreamReader xmlStreamReader = wsSecIn.processInMessage(
+                xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(message.getBytes(StandardCharsets.UTF_8))),
+                requestSecurityEvents,
+                securityEvent -> {
+                    if (securityEvent instanceof SamlTokenSecurityEvent) {
+                        samlTokenSecurityEvents.add((SamlTokenSecurityEvent)securityEvent);
+                    }
+                });
+
+        StAX2DOM.readDoc(documentBuilderFactory.newDocumentBuilder(), xmlStreamReader);
+
+        assertEquals(1, samlTokenSecurityEvents.size());
+        return samlTokenSecurityEvents.get(0);
+    }
+
     @Test
     public void testSAML2AuthnAssertionOutbound() throws Exception {
 